@@ -45,7 +45,7 @@ public class GBDaoGenerator {
 
 
     public static void main(String[] args) throws Exception {
-        Schema schema = new Schema(21, MAIN_PACKAGE + ".entities");
+        Schema schema = new Schema(26, MAIN_PACKAGE + ".entities");
 
         Entity userAttributes = addUserAttributes(schema);
         Entity user = addUserInfo(schema, userAttributes);
@@ -82,6 +82,11 @@ public class GBDaoGenerator {
 
         addBipActivitySummary(schema, user, device);
 
+        addSleepNight(schema, device);
+        addSleepNightSession(schema, device);
+        addActivitySampleAggregate(schema, user, device);
+        addSampleWatermark(schema, device);
+
         new DaoGenerator().generateAll(schema, "app/src/main/java");
     }
 
@@ -424,6 +429,7 @@ public class GBDaoGenerator {
         summary.addIntProperty("baseAltitude").javaDocGetterAndSetter("Temporary, bip-specific");
 
         summary.addStringProperty("gpxTrack").codeBeforeGetter(OVERRIDE);
+        summary.addStringProperty("binaryTrack").javaDocGetterAndSetter("Path to the compact binary track that exports are generated from");
 
         Property deviceId = summary.addLongProperty("deviceId").notNull().codeBeforeGetter(OVERRIDE).getProperty();
         summary.addToOne(device, deviceId);
@@ -431,6 +437,93 @@ public class GBDaoGenerator {
         summary.addToOne(user, userId);
     }
 
+    private static void addSleepNight(Schema schema, Entity device) {
+        Entity sleepNight = addEntity(schema, "SleepNight");
+        sleepNight.setJavaDoc("The precomputed sleep of one night, so that the sleep charts do not have to\n" +
+                "analyze the samples of every night again.");
+        sleepNight.addIdProperty();
+        Property deviceId = sleepNight.addLongProperty("deviceId").notNull().getProperty();
+        Property nightStart = sleepNight.addIntProperty("nightStart").notNull()
+                .javaDocGetterAndSetter("Start of the analyzed 24h window in seconds, noon of the previous day").getProperty();
+        Index indexUnique = new Index();
+        indexUnique.addProperty(deviceId);
+        indexUnique.addProperty(nightStart);
+        indexUnique.makeUnique();
+        sleepNight.addIndex(indexUnique);
+        sleepNight.addToOne(device, deviceId);
+        sleepNight.addLongProperty("lightSleepSeconds").notNull();
+        sleepNight.addLongProperty("deepSleepSeconds").notNull();
+        sleepNight.addIntProperty("sessionCount").notNull();
+    }
+
+    private static void addSleepNightSession(Schema schema, Entity device) {
+        Entity sleepSession = addEntity(schema, "SleepNightSession");
+        sleepSession.setJavaDoc("A sleep session of a precomputed night, see SleepNight.");
+        sleepSession.addIdProperty();
+        Property deviceId = sleepSession.addLongProperty("deviceId").notNull().getProperty();
+        Property nightStart = sleepSession.addIntProperty("nightStart").notNull()
+                .javaDocGetterAndSetter("Start of the night this session belongs to in seconds").getProperty();
+        Index index = new Index();
+        index.addProperty(deviceId);
+        index.addProperty(nightStart);
+        sleepSession.addIndex(index);
+        sleepSession.addToOne(device, deviceId);
+        sleepSession.addIntProperty("sleepStart").notNull()
+                .javaDocGetterAndSetter("Timestamp of the first sleep sample in seconds");
+        sleepSession.addIntProperty("sleepEnd").notNull()
+                .javaDocGetterAndSetter("Timestamp of the last sleep sample in seconds");
+        sleepSession.addLongProperty("lightSleepSeconds").notNull();
+        sleepSession.addLongProperty("deepSleepSeconds").notNull();
+    }
+
+    private static void addActivitySampleAggregate(Schema schema, Entity user, Entity device) {
+        Entity aggregate = addEntity(schema, "ActivitySampleAggregate");
+        aggregate.setJavaDoc("Old activity samples of any device, rolled up into buckets of a few minutes\n" +
+                "to keep the database small.");
+        aggregate.addIdProperty();
+        Property deviceId = aggregate.addLongProperty("deviceId").notNull().getProperty();
+        Property timestamp = aggregate.addIntProperty("timestamp").notNull()
+                .javaDocGetterAndSetter("Start of the bucket in seconds").getProperty();
+        Index indexUnique = new Index();
+        indexUnique.addProperty(deviceId);
+        indexUnique.addProperty(timestamp);
+        indexUnique.makeUnique();
+        aggregate.addIndex(indexUnique);
+        aggregate.addToOne(device, deviceId);
+        Property userId = aggregate.addLongProperty("userId").notNull().getProperty();
+        aggregate.addToOne(user, userId);
+        aggregate.addIntProperty("duration").notNull().javaDocGetterAndSetter("Length of the bucket in seconds");
+        aggregate.addIntProperty("sampleCount").notNull();
+        aggregate.addIntProperty(SAMPLE_RAW_KIND).notNull().javaDocGetterAndSetter("The most frequent raw kind in the bucket");
+        aggregate.addIntProperty(SAMPLE_RAW_INTENSITY).notNull().javaDocGetterAndSetter("The average raw intensity");
+        aggregate.addIntProperty(SAMPLE_STEPS).notNull().javaDocGetterAndSetter("The sum of the steps");
+        aggregate.addIntProperty("heartRateMin").notNull();
+        aggregate.addIntProperty("heartRateAvg").notNull();
+        aggregate.addIntProperty("heartRateMax").notNull();
+        aggregate.addIntProperty("activitySeconds").notNull();
+        aggregate.addIntProperty("lightSleepSeconds").notNull();
+        aggregate.addIntProperty("deepSleepSeconds").notNull();
+        aggregate.addIntProperty("notWornSeconds").notNull();
+    }
+
+    private static void addSampleWatermark(Schema schema, Entity device) {
+        Entity watermark = addEntity(schema, "SampleWatermark");
+        watermark.setJavaDoc("The range and number of the samples of a device in one sample table, maintained\n" +
+                "when samples are added, so that it does not need to be queried.");
+        watermark.addIdProperty();
+        Property deviceId = watermark.addLongProperty("deviceId").notNull().getProperty();
+        Property sampleTable = watermark.addStringProperty("sampleTable").notNull().getProperty();
+        Index indexUnique = new Index();
+        indexUnique.addProperty(deviceId);
+        indexUnique.addProperty(sampleTable);
+        indexUnique.makeUnique();
+        watermark.addIndex(indexUnique);
+        watermark.addToOne(device, deviceId);
+        watermark.addIntProperty("earliestTimestamp").notNull();
+        watermark.addIntProperty("latestTimestamp").notNull();
+        watermark.addLongProperty("rowCount").notNull();
+    }
+
     private static Property findProperty(Entity entity, String propertyName) {
         for (Property prop : entity.getProperties()) {
             if (propertyName.equals(prop.getPropertyName())) {
@@ -42,6 +42,7 @@ import android.provider.ContactsContract.PhoneLookup;
 import android.util.Log;
 import android.util.TypedValue;
 
+import androidx.annotation.Nullable;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
 import java.io.File;
@@ -56,7 +57,9 @@ import java.util.concurrent.locks.ReentrantLock;
 
 import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
+import nodomain.freeyourgadget.gadgetbridge.database.BackgroundMigrator;
 import nodomain.freeyourgadget.gadgetbridge.database.DBOpenHelper;
+import nodomain.freeyourgadget.gadgetbridge.database.SampleRetention;
 import nodomain.freeyourgadget.gadgetbridge.devices.DeviceManager;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoMaster;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
@@ -69,11 +72,14 @@ import nodomain.freeyourgadget.gadgetbridge.model.DeviceService;
 import nodomain.freeyourgadget.gadgetbridge.model.DeviceType;
 import nodomain.freeyourgadget.gadgetbridge.service.NotificationCollectorMonitorService;
 import nodomain.freeyourgadget.gadgetbridge.util.AndroidUtils;
+import nodomain.freeyourgadget.gadgetbridge.util.DevicePrefsSnapshot;
 import nodomain.freeyourgadget.gadgetbridge.util.FileUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
 import nodomain.freeyourgadget.gadgetbridge.util.GBPrefs;
 import nodomain.freeyourgadget.gadgetbridge.util.LimitedQueue;
 import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
+import nodomain.freeyourgadget.gadgetbridge.util.PrefsSnapshot;
+import nodomain.freeyourgadget.gadgetbridge.util.PrefsSnapshotCache;
 
 import static nodomain.freeyourgadget.gadgetbridge.model.DeviceType.AMAZFITBIP;
 import static nodomain.freeyourgadget.gadgetbridge.model.DeviceType.AMAZFITCOR;
@@ -107,6 +113,7 @@ public class GBApplication extends Application {
     private static LimitedQueue mIDSenderLookup = new LimitedQueue(16);
     private static Prefs prefs;
     private static GBPrefs gbPrefs;
+    private static PrefsSnapshotCache prefsSnapshotCache;
     private static LockHandler lockHandler;
     /**
      * Note: is null on Lollipop and Kitkat
@@ -184,8 +191,10 @@ public class GBApplication extends Application {
         if (getPrefsFileVersion() != CURRENT_PREFS_VERSION) {
             migratePrefs(getPrefsFileVersion());
         }
+        prefsSnapshotCache = new PrefsSnapshotCache(prefs);
 
         setupExceptionHandler();
+        SampleRetention.scheduleAlarm(context);
 
         deviceManager = new DeviceManager(this);
         String language = prefs.getString("language", "default");
@@ -275,6 +284,7 @@ public class GBApplication extends Application {
             lockHandler = new LockHandler();
         }
         lockHandler.init(daoMaster, helper);
+        BackgroundMigrator.start(this);
     }
 
     public static Context getContext() {
@@ -291,6 +301,15 @@ public class GBApplication extends Application {
         return deviceService;
     }
 
+    /**
+     * Returns the facade for talking to the given device only.
+     *
+     * @see DeviceService#forDevice(GBDevice)
+     */
+    public static DeviceService deviceService(@Nullable GBDevice device) {
+        return deviceService.forDevice(device);
+    }
+
     /**
      * Returns the DBHandler instance for reading/writing or throws GBException
      * when that was not successful
@@ -568,6 +587,7 @@ public class GBApplication extends Application {
         if (lockHandler != null) {
             lockHandler.closeDb();
         }
+        BackgroundMigrator.clear();
         boolean result = deleteOldActivityDatabase(context);
         result &= getContext().deleteDatabase(DATABASE_NAME);
         return result;
@@ -890,6 +910,20 @@ public class GBApplication extends Application {
         return gbPrefs;
     }
 
+    /**
+     * Returns a snapshot of the global preferences that are read on hot paths.
+     */
+    public static PrefsSnapshot getPrefsSnapshot() {
+        return prefsSnapshotCache.getSnapshot();
+    }
+
+    /**
+     * Returns a snapshot of the device specific preferences that are read on hot paths.
+     */
+    public static DevicePrefsSnapshot getDevicePrefsSnapshot(String deviceAddress) {
+        return prefsSnapshotCache.getDeviceSnapshot(deviceAddress);
+    }
+
     public DeviceManager getDeviceManager() {
         return deviceManager;
     }
@@ -20,6 +20,7 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
 import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
+import nodomain.freeyourgadget.gadgetbridge.database.SampleWatermarks;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoMaster;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
 
@@ -89,6 +90,7 @@ public class LockHandler implements DBHandler {
         if (session == null) {
             throw new IllegalStateException("session must not be null");
         }
+        SampleWatermarks.get(session).flush(session);
         session.clear();
         session.getDatabase().close();
         session = null;
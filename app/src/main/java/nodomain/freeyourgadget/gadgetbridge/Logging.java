@@ -21,8 +21,10 @@ import android.util.Log;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 
+import ch.qos.logback.classic.AsyncAppender;
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.Appender;
@@ -31,11 +33,17 @@ import ch.qos.logback.core.encoder.Encoder;
 import ch.qos.logback.core.encoder.LayoutWrappingEncoder;
 import ch.qos.logback.core.util.StatusPrinter;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
+import nodomain.freeyourgadget.gadgetbridge.util.PacketCapture;
 
 public abstract class Logging {
     public static final String PROP_LOGFILES_DIR = "GB_LOGFILES_DIR";
 
+    // how long to wait for queued log events to be written when file logging is disabled
+    private static final long MAX_FLUSH_MILLIS = 1000;
+
     private FileAppender<ILoggingEvent> fileLogger;
+    private AsyncAppender asyncFileLogger;
+    private String logDirectory;
 
     public void setupLogging(boolean enable) {
         try {
@@ -44,13 +52,16 @@ public abstract class Logging {
             }
             if (enable) {
                 startFileLogger();
+                PacketCapture.start(new File(logDirectory));
             } else {
                 stopFileLogger();
+                PacketCapture.stop();
             }
             getLogger().info("Gadgetbridge version: " + BuildConfig.VERSION_NAME);
         } catch (IOException ex) {
             Log.e("GBApplication", "External files dir not available, cannot log to file", ex);
             stopFileLogger();
+            PacketCapture.stop();
         }
     }
 
@@ -78,6 +89,7 @@ public abstract class Logging {
         }
         // used by assets/logback.xml since the location cannot be statically determined
         System.setProperty(PROP_LOGFILES_DIR, dir);
+        logDirectory = dir;
         rememberFileLogger();
     }
 
@@ -87,22 +99,37 @@ public abstract class Logging {
 
     private void startFileLogger() {
         if (fileLogger != null && !fileLogger.isStarted()) {
-            addFileLogger(fileLogger);
             fileLogger.setLazy(false); // hack to make sure that start() actually opens the file
             fileLogger.start();
+            addFileLogger(asyncFileLogger);
         }
     }
 
     private void stopFileLogger() {
         if (fileLogger != null && fileLogger.isStarted()) {
+            // the async appender cannot be restarted, so it is only detached and keeps running
+            removeFileLogger(asyncFileLogger);
+            awaitQueuedEvents();
             fileLogger.stop();
-            removeFileLogger(fileLogger);
+        }
+    }
+
+    private void awaitQueuedEvents() {
+        long deadline = System.currentTimeMillis() + MAX_FLUSH_MILLIS;
+        while (asyncFileLogger.getNumberOfElementsInQueue() > 0 && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
         }
     }
 
     private void rememberFileLogger() {
         ch.qos.logback.classic.Logger root = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
-        fileLogger = (FileAppender<ILoggingEvent>) root.getAppender("FILE");
+        asyncFileLogger = (AsyncAppender) root.getAppender("ASYNC_FILE");
+        fileLogger = (FileAppender<ILoggingEvent>) asyncFileLogger.getAppender("FILE");
     }
 
     private void addFileLogger(Appender<ILoggingEvent> fileLogger) {
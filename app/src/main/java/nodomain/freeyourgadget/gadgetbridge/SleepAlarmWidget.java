@@ -102,10 +102,11 @@ public class SleepAlarmWidget extends AppWidgetProvider {
 
             // overwrite the first alarm and activate it, without
 
+            GBDevice selectedDevice = null;
             Context appContext = context.getApplicationContext();
             if (appContext instanceof GBApplication) {
                 GBApplication gbApp = (GBApplication) appContext;
-                GBDevice selectedDevice = gbApp.getDeviceManager().getSelectedDevice();
+                selectedDevice = gbApp.getDeviceManager().getSelectedDevice();
                 if (selectedDevice == null || !selectedDevice.isInitialized()) {
                     GB.toast(context,
                             context.getString(R.string.appwidget_not_connected),
@@ -124,7 +125,7 @@ public class SleepAlarmWidget extends AppWidgetProvider {
             Alarm alarm = AlarmUtils.createSingleShot(0,true, calendar);
             ArrayList<Alarm> alarms = new ArrayList<>(1);
             alarms.add(alarm);
-            GBApplication.deviceService().onSetAlarms(alarms);
+            GBApplication.deviceService(selectedDevice).onSetAlarms(alarms);
 
 //            if (GBApplication.isRunningLollipopOrLater()) {
 //                setAlarmViaAlarmManager(context, calendar.getTimeInMillis());
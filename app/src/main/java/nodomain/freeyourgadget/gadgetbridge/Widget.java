@@ -155,7 +155,7 @@ public class Widget extends AppWidgetProvider {
                 context.getString(R.string.busy_task_fetch_activity_data),
                 Toast.LENGTH_SHORT, GB.INFO);
 
-        GBApplication.deviceService().onFetchRecordedData(RecordedDataTypes.TYPE_ACTIVITY);
+        GBApplication.deviceService(device).onFetchRecordedData(RecordedDataTypes.TYPE_ACTIVITY);
     }
 
     public void updateWidget() {
@@ -37,6 +37,7 @@ import java.util.Locale;
 import androidx.core.app.NavUtils;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.util.AndroidUtils;
 
 /**
@@ -211,6 +212,16 @@ public abstract class AbstractSettingsActivity extends AppCompatPreferenceActivi
         }
     }
 
+    /**
+     * Sends the given configuration to all initialized devices, for preferences that are not
+     * specific to a single device.
+     */
+    protected void sendConfiguration(String config) {
+        for (GBDevice device : GBApplication.app().getDeviceManager().getInitializedDevices()) {
+            GBApplication.deviceService(device).onSendConfiguration(config);
+        }
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         switch (item.getItemId()) {
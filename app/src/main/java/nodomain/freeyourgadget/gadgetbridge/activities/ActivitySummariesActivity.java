@@ -24,6 +24,7 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.util.SparseBooleanArray;
 import android.view.ActionMode;
@@ -53,8 +54,12 @@ import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.adapter.ActivitySummariesAdapter;
 import nodomain.freeyourgadget.gadgetbridge.entities.BaseActivitySummary;
+import nodomain.freeyourgadget.gadgetbridge.export.ActivityTrackExporter;
+import nodomain.freeyourgadget.gadgetbridge.export.BinaryActivityTrackReader;
+import nodomain.freeyourgadget.gadgetbridge.export.TCXExporter;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySummary;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityTrack;
 import nodomain.freeyourgadget.gadgetbridge.model.RecordedDataTypes;
 import nodomain.freeyourgadget.gadgetbridge.util.AndroidUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
@@ -194,7 +199,20 @@ public class ActivitySummariesActivity extends AbstractListActivity<BaseActivity
                                 }
                             }
                         }
-                        shareMultiple(paths);
+                        shareMultiple(paths, "application/gpx+xml");
+                        processed = true;
+                        break;
+                    case R.id.activity_action_export_tcx:
+                        List<BaseActivitySummary> toExport = new ArrayList<>();
+                        for (int i = 0; i < checked.size(); i++) {
+                            if (checked.valueAt(i)) {
+                                BaseActivitySummary item = getItemAdapter().getItem(checked.keyAt(i));
+                                if (item != null) {
+                                    toExport.add(item);
+                                }
+                            }
+                        }
+                        new ExportTcxTask(toExport).execute();
                         processed = true;
                         break;
                     case R.id.activity_action_select_all:
@@ -273,7 +291,7 @@ public class ActivitySummariesActivity extends AbstractListActivity<BaseActivity
 
     private void fetchTrackData() {
         if (mGBDevice.isInitialized() && !mGBDevice.isBusy()) {
-            GBApplication.deviceService().onFetchRecordedData(RecordedDataTypes.TYPE_GPS_TRACKS);
+            GBApplication.deviceService(mGBDevice).onFetchRecordedData(RecordedDataTypes.TYPE_GPS_TRACKS);
         } else {
             swipeLayout.setRefreshing(false);
             if (!mGBDevice.isInitialized()) {
@@ -282,7 +300,68 @@ public class ActivitySummariesActivity extends AbstractListActivity<BaseActivity
         }
     }
 
-    private void shareMultiple(List<String> paths){
+    /**
+     * Exports the given activities in the background and shares the resulting TCX files.
+     */
+    private class ExportTcxTask extends AsyncTask<Void, Void, List<String>> {
+        private final List<BaseActivitySummary> summaries;
+
+        ExportTcxTask(List<BaseActivitySummary> summaries) {
+            this.summaries = summaries;
+        }
+
+        @Override
+        protected List<String> doInBackground(Void... params) {
+            List<String> paths = new ArrayList<>();
+            for (BaseActivitySummary summary : summaries) {
+                String tcxTrack = exportTcx(summary);
+                if (tcxTrack != null) {
+                    paths.add(tcxTrack);
+                }
+            }
+            return paths;
+        }
+
+        @Override
+        protected void onPostExecute(List<String> paths) {
+            if (!isFinishing()) {
+                shareMultiple(paths, "application/vnd.garmin.tcx+xml");
+            }
+        }
+    }
+
+    /**
+     * Streams the stored binary track of the given activity into a TCX file next to it.
+     * @return the path of the TCX file or null if the activity has no (readable) binary track
+     */
+    private String exportTcx(BaseActivitySummary summary) {
+        String binaryTrack = summary.getBinaryTrack();
+        if (binaryTrack == null) {
+            return null;
+        }
+        File trackFile = new File(binaryTrack);
+        File targetFile = new File(trackFile.getParentFile(), trackFile.getName().replaceFirst("\\.gbtrack$", "") + ".tcx");
+
+        ActivityTrack track = new ActivityTrack();
+        track.setUser(summary.getUser());
+        track.setDevice(summary.getDevice());
+        track.setName(summary.getName() + "-" + summary.getId());
+        track.setBaseTime(summary.getStartTime());
+        track.setEndTime(summary.getEndTime());
+
+        TCXExporter exporter = new TCXExporter();
+        exporter.setCreator(GBApplication.app().getNameAndVersion());
+        exporter.setSport(TCXExporter.sportForActivityKind(summary.getActivityKind()));
+        try (BinaryActivityTrackReader reader = new BinaryActivityTrackReader(trackFile)) {
+            exporter.performExport(track, reader, targetFile);
+            return targetFile.getAbsolutePath();
+        } catch (IOException | ActivityTrackExporter.GPXTrackEmptyException ex) {
+            GB.toast(this, "Unable to export TCX track: " + ex.getMessage(), Toast.LENGTH_LONG, GB.ERROR, ex);
+            return null;
+        }
+    }
+
+    private void shareMultiple(List<String> paths, String mimeType){
 
         ArrayList<Uri> uris = new ArrayList<>();
         for(String path: paths){
@@ -292,7 +371,7 @@ public class ActivitySummariesActivity extends AbstractListActivity<BaseActivity
 
         if(uris.size() > 0) {
             final Intent intent = new Intent(Intent.ACTION_SEND_MULTIPLE);
-            intent.setType("application/gpx+xml");
+            intent.setType(mimeType);
             intent.putParcelableArrayListExtra(Intent.EXTRA_STREAM, uris);
             startActivity(Intent.createChooser(intent, "SHARE"));
         } else {
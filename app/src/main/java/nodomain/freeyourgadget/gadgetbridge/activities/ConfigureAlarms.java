@@ -163,6 +163,6 @@ public class ConfigureAlarms extends AbstractGBActivity {
     }
 
     private void sendAlarmsToDevice() {
-        GBApplication.deviceService().onSetAlarms(mGBAlarmListAdapter.getAlarmList());
+        GBApplication.deviceService(getGbDevice()).onSetAlarms(mGBAlarmListAdapter.getAlarmList());
     }
 }
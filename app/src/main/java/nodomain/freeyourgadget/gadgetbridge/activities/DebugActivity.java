@@ -40,6 +40,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Objects;
@@ -50,6 +51,7 @@ import androidx.core.app.RemoteInput;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.model.CallSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.DeviceService;
@@ -60,6 +62,9 @@ import nodomain.freeyourgadget.gadgetbridge.model.NotificationType;
 import nodomain.freeyourgadget.gadgetbridge.model.RecordedDataTypes;
 import nodomain.freeyourgadget.gadgetbridge.service.serial.GBDeviceProtocol;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
+import nodomain.freeyourgadget.gadgetbridge.util.GBScheduler;
+import nodomain.freeyourgadget.gadgetbridge.util.NotificationLatencyTracer;
+import nodomain.freeyourgadget.gadgetbridge.util.PacketCapture;
 
 import static android.content.Intent.EXTRA_SUBJECT;
 import static nodomain.freeyourgadget.gadgetbridge.util.GB.NOTIFICATION_CHANNEL_ID;
@@ -183,7 +188,7 @@ public class DebugActivity extends AbstractGBActivity {
         rebootButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                GBApplication.deviceService().onReset(GBDeviceProtocol.RESET_FLAGS_REBOOT);
+                getSelectedDeviceService().onReset(GBDeviceProtocol.RESET_FLAGS_REBOOT);
             }
         });
 
@@ -198,7 +203,7 @@ public class DebugActivity extends AbstractGBActivity {
                         .setPositiveButton(R.string.ok, new DialogInterface.OnClickListener() {
                             @Override
                             public void onClick(DialogInterface dialog, int which) {
-                                GBApplication.deviceService().onReset(GBDeviceProtocol.RESET_FLAGS_FACTORY_RESET);
+                                getSelectedDeviceService().onReset(GBDeviceProtocol.RESET_FLAGS_FACTORY_RESET);
                             }
                         })
                         .setNegativeButton(R.string.Cancel, new DialogInterface.OnClickListener() {
@@ -215,7 +220,7 @@ public class DebugActivity extends AbstractGBActivity {
             @Override
             public void onClick(View v) {
                 GB.toast("Measuring heart rate, please wait...", Toast.LENGTH_LONG, GB.INFO);
-                GBApplication.deviceService().onHeartRateTest();
+                getSelectedDeviceService().onHeartRateTest();
             }
         });
 
@@ -273,7 +278,7 @@ public class DebugActivity extends AbstractGBActivity {
         fetchDebugLogsButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                GBApplication.deviceService().onFetchRecordedData(RecordedDataTypes.TYPE_DEBUGLOGS);
+                getSelectedDeviceService().onFetchRecordedData(RecordedDataTypes.TYPE_DEBUGLOGS);
             }
         });
 
@@ -285,6 +290,14 @@ public class DebugActivity extends AbstractGBActivity {
             }
         });
 
+        Button notificationLatencyButton = findViewById(R.id.notificationLatencyButton);
+        notificationLatencyButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                showNotificationLatency();
+            }
+        });
+
         Button shareLogButton = findViewById(R.id.shareLog);
         shareLogButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -294,6 +307,24 @@ public class DebugActivity extends AbstractGBActivity {
         });
     }
 
+    private void showNotificationLatency() {
+        String latency = NotificationLatencyTracer.dump() + GBScheduler.getInstance().dump();
+        LOG.info("Notification latency:\n" + latency);
+        new AlertDialog.Builder(this)
+                .setCancelable(true)
+                .setTitle("Notification latency")
+                .setMessage(latency)
+                .setPositiveButton(R.string.ok, null)
+                .setNeutralButton("Reset", new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        NotificationLatencyTracer.reset();
+                        GBScheduler.getInstance().resetStatistics();
+                    }
+                })
+                .show();
+    }
+
     private void showWarning() {
         new AlertDialog.Builder(this)
                 .setCancelable(true)
@@ -314,8 +345,20 @@ public class DebugActivity extends AbstractGBActivity {
                 .show();
     }
 
+    /**
+     * Returns the service for the device that connected last, the commands for a single device
+     * are sent to that one.
+     */
+    private DeviceService getSelectedDeviceService() {
+        GBDevice device = GBApplication.app().getDeviceManager().getSelectedDevice();
+        if (device == null) {
+            return GBApplication.deviceService();
+        }
+        return GBApplication.deviceService(device);
+    }
+
     private void testNewFunctionality() {
-        GBApplication.deviceService().onTestNewFunction();
+        getSelectedDeviceService().onTestNewFunction();
     }
 
     private void shareLog() {
@@ -327,10 +370,22 @@ public class DebugActivity extends AbstractGBActivity {
                 return;
             }
 
-            Intent emailIntent = new Intent(android.content.Intent.ACTION_SEND);
+            ArrayList<Uri> files = new ArrayList<>();
+            files.add(Uri.fromFile(logFile));
+            try {
+                // the packets are only formatted now, capturing them is cheaper that way
+                File packetsFile = PacketCapture.exportText(logFile.getParentFile());
+                if (packetsFile != null) {
+                    files.add(Uri.fromFile(packetsFile));
+                }
+            } catch (IOException ex) {
+                LOG.warn("Unable to export the packet capture", ex);
+            }
+
+            Intent emailIntent = new Intent(Intent.ACTION_SEND_MULTIPLE);
             emailIntent.setType("*/*");
             emailIntent.putExtra(EXTRA_SUBJECT, "Gadgetbridge log file");
-            emailIntent.putExtra(Intent.EXTRA_STREAM, Uri.fromFile(logFile));
+            emailIntent.putParcelableArrayListExtra(Intent.EXTRA_STREAM, files);
             startActivity(Intent.createChooser(emailIntent, "Share File"));
         }
     }
@@ -216,7 +216,7 @@ public class SettingsActivity extends AbstractSettingsActivity {
                 invokeLater(new Runnable() {
                     @Override
                     public void run() {
-                        GBApplication.deviceService().onSendConfiguration(PREF_MEASUREMENT_SYSTEM);
+                        sendConfiguration(PREF_MEASUREMENT_SYSTEM);
                     }
                 });
                 preference.setSummary(newVal.toString());
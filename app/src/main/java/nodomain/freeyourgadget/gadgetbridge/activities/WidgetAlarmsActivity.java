@@ -100,10 +100,11 @@ public class WidgetAlarmsActivity extends Activity implements View.OnClickListen
 
         // overwrite the first alarm and activate it, without
 
+        GBDevice selectedDevice = null;
         Context appContext = this.getApplicationContext();
         if (appContext instanceof GBApplication) {
             GBApplication gbApp = (GBApplication) appContext;
-            GBDevice selectedDevice = gbApp.getDeviceManager().getSelectedDevice();
+            selectedDevice = gbApp.getDeviceManager().getSelectedDevice();
             if (selectedDevice == null || !selectedDevice.isInitialized()) {
                 GB.toast(this,
                         this.getString(R.string.appwidget_not_connected),
@@ -122,7 +123,7 @@ public class WidgetAlarmsActivity extends Activity implements View.OnClickListen
         Alarm alarm = AlarmUtils.createSingleShot(0, true, calendar);
         ArrayList<Alarm> alarms = new ArrayList<>(1);
         alarms.add(alarm);
-        GBApplication.deviceService().onSetAlarms(alarms);
+        GBApplication.deviceService(selectedDevice).onSetAlarms(alarms);
 
 
     }
@@ -33,7 +33,6 @@ import android.widget.PopupMenu;
 
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
-import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,6 +40,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import androidx.fragment.app.Fragment;
@@ -52,11 +52,11 @@ import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.activities.ExternalPebbleJSActivity;
 import nodomain.freeyourgadget.gadgetbridge.adapter.GBDeviceAppAdapter;
+import nodomain.freeyourgadget.gadgetbridge.devices.pebble.PBWCacheIndex;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDeviceApp;
 import nodomain.freeyourgadget.gadgetbridge.model.DeviceService;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.pebble.PebbleProtocol;
-import nodomain.freeyourgadget.gadgetbridge.util.FileUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.PebbleUtils;
 
 
@@ -146,93 +146,76 @@ public abstract class AbstractAppManagerFragment extends Fragment {
 
     protected List<GBDeviceApp> getCachedApps(List<UUID> uuids) {
         List<GBDeviceApp> cachedAppList = new ArrayList<>();
-        File cachePath;
-        try {
-            cachePath = PebbleUtils.getPbwCacheDir();
-        } catch (IOException e) {
-            LOG.warn("could not get external dir while reading pbw cache.");
-            return cachedAppList;
-        }
+        Map<String, GBDeviceApp> cacheIndex = PBWCacheIndex.getApps();
 
-        File[] files;
+        List<String> baseNames;
         if (uuids == null) {
-            files = cachePath.listFiles();
+            baseNames = new ArrayList<>(cacheIndex.keySet());
         } else {
-            files = new File[uuids.size()];
-            int index = 0;
+            baseNames = new ArrayList<>(uuids.size());
             for (UUID uuid : uuids) {
-                files[index++] = new File(uuid.toString() + ".pbw");
+                baseNames.add(uuid.toString());
             }
         }
-        if (files != null) {
-            for (File file : files) {
-                if (file.getName().endsWith(".pbw")) {
-                    String baseName = file.getName().substring(0, file.getName().length() - 4);
-                    //metadata
-                    File jsonFile = new File(cachePath, baseName + ".json");
-                    //configuration
-                    File configFile = new File(cachePath, baseName + "_config.js");
-                    try {
-                        String jsonstring = FileUtils.getStringFromFile(jsonFile);
-                        JSONObject json = new JSONObject(jsonstring);
-                        cachedAppList.add(new GBDeviceApp(json, configFile.exists()));
-                    } catch (Exception e) {
-                        LOG.info("could not read json file for " + baseName);
-                        //FIXME: this is really ugly, if we do not find system uuids in pbw cache add them manually. Also duplicated code
-                        switch (baseName) {
-                            case "8f3c8686-31a1-4f5f-91f5-01600c9bdc59":
-                                cachedAppList.add(new GBDeviceApp(UUID.fromString(baseName), "Tic Toc (System)", "Pebble Inc.", "", GBDeviceApp.Type.WATCHFACE_SYSTEM));
-                                break;
-                            case "1f03293d-47af-4f28-b960-f2b02a6dd757":
-                                cachedAppList.add(new GBDeviceApp(UUID.fromString(baseName), "Music (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
-                                break;
-                            case "b2cae818-10f8-46df-ad2b-98ad2254a3c1":
-                                cachedAppList.add(new GBDeviceApp(UUID.fromString(baseName), "Notifications (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
-                                break;
-                            case "67a32d95-ef69-46d4-a0b9-854cc62f97f9":
-                                cachedAppList.add(new GBDeviceApp(UUID.fromString(baseName), "Alarms (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
-                                break;
-                            case "18e443ce-38fd-47c8-84d5-6d0c775fbe55":
-                                cachedAppList.add(new GBDeviceApp(UUID.fromString(baseName), "Watchfaces (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
-                                break;
-                            case "0863fc6a-66c5-4f62-ab8a-82ed00a98b5d":
-                                cachedAppList.add(new GBDeviceApp(UUID.fromString(baseName), "Send Text (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
-                                break;
+        for (String baseName : baseNames) {
+            GBDeviceApp cachedApp = cacheIndex.get(baseName);
+            if (cachedApp != null) {
+                cachedAppList.add(cachedApp);
+            } else {
+                LOG.info("no cached metadata for " + baseName);
+                //FIXME: this is really ugly, if we do not find system uuids in pbw cache add them manually. Also duplicated code
+                switch (baseName) {
+                    case "8f3c8686-31a1-4f5f-91f5-01600c9bdc59":
+                        cachedAppList.add(new GBDeviceApp(UUID.fromString(baseName), "Tic Toc (System)", "Pebble Inc.", "", GBDeviceApp.Type.WATCHFACE_SYSTEM));
+                        break;
+                    case "1f03293d-47af-4f28-b960-f2b02a6dd757":
+                        cachedAppList.add(new GBDeviceApp(UUID.fromString(baseName), "Music (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
+                        break;
+                    case "b2cae818-10f8-46df-ad2b-98ad2254a3c1":
+                        cachedAppList.add(new GBDeviceApp(UUID.fromString(baseName), "Notifications (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
+                        break;
+                    case "67a32d95-ef69-46d4-a0b9-854cc62f97f9":
+                        cachedAppList.add(new GBDeviceApp(UUID.fromString(baseName), "Alarms (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
+                        break;
+                    case "18e443ce-38fd-47c8-84d5-6d0c775fbe55":
+                        cachedAppList.add(new GBDeviceApp(UUID.fromString(baseName), "Watchfaces (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
+                        break;
+                    case "0863fc6a-66c5-4f62-ab8a-82ed00a98b5d":
+                        cachedAppList.add(new GBDeviceApp(UUID.fromString(baseName), "Send Text (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
+                        break;
+                }
+                /*
+                else if (baseName.equals("4dab81a6-d2fc-458a-992c-7a1f3b96a970")) {
+                    cachedAppList.add(new GBDeviceApp(UUID.fromString("4dab81a6-d2fc-458a-992c-7a1f3b96a970"), "Sports (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
+                } else if (baseName.equals("cf1e816a-9db0-4511-bbb8-f60c48ca8fac")) {
+                    cachedAppList.add(new GBDeviceApp(UUID.fromString("cf1e816a-9db0-4511-bbb8-f60c48ca8fac"), "Golf (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
+                }
+                */
+                if (mGBDevice != null) {
+                    if (PebbleUtils.hasHealth(mGBDevice.getModel())) {
+                        if (baseName.equals(PebbleProtocol.UUID_PEBBLE_HEALTH.toString())) {
+                            cachedAppList.add(new GBDeviceApp(PebbleProtocol.UUID_PEBBLE_HEALTH, "Health (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
+                            continue;
                         }
-                        /*
-                        else if (baseName.equals("4dab81a6-d2fc-458a-992c-7a1f3b96a970")) {
-                            cachedAppList.add(new GBDeviceApp(UUID.fromString("4dab81a6-d2fc-458a-992c-7a1f3b96a970"), "Sports (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
-                        } else if (baseName.equals("cf1e816a-9db0-4511-bbb8-f60c48ca8fac")) {
-                            cachedAppList.add(new GBDeviceApp(UUID.fromString("cf1e816a-9db0-4511-bbb8-f60c48ca8fac"), "Golf (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
+                    }
+                    if (PebbleUtils.hasHRM(mGBDevice.getModel())) {
+                        if (baseName.equals(PebbleProtocol.UUID_WORKOUT.toString())) {
+                            cachedAppList.add(new GBDeviceApp(PebbleProtocol.UUID_WORKOUT, "Workout (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
+                            continue;
                         }
-                        */
-                        if (mGBDevice != null) {
-                            if (PebbleUtils.hasHealth(mGBDevice.getModel())) {
-                                if (baseName.equals(PebbleProtocol.UUID_PEBBLE_HEALTH.toString())) {
-                                    cachedAppList.add(new GBDeviceApp(PebbleProtocol.UUID_PEBBLE_HEALTH, "Health (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
-                                    continue;
-                                }
-                            }
-                            if (PebbleUtils.hasHRM(mGBDevice.getModel())) {
-                                if (baseName.equals(PebbleProtocol.UUID_WORKOUT.toString())) {
-                                    cachedAppList.add(new GBDeviceApp(PebbleProtocol.UUID_WORKOUT, "Workout (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
-                                    continue;
-                                }
-                            }
-                            if (PebbleUtils.getFwMajor(mGBDevice.getFirmwareVersion()) >= 4) {
-                                if (baseName.equals("3af858c3-16cb-4561-91e7-f1ad2df8725f")) {
-                                    cachedAppList.add(new GBDeviceApp(UUID.fromString(baseName), "Kickstart (System)", "Pebble Inc.", "", GBDeviceApp.Type.WATCHFACE_SYSTEM));
-                                }
-                                if (baseName.equals(PebbleProtocol.UUID_WEATHER.toString())) {
-                                    cachedAppList.add(new GBDeviceApp(PebbleProtocol.UUID_WEATHER, "Weather (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
-                                }
-                            }
+                    }
+                    if (PebbleUtils.getFwMajor(mGBDevice.getFirmwareVersion()) >= 4) {
+                        if (baseName.equals("3af858c3-16cb-4561-91e7-f1ad2df8725f")) {
+                            cachedAppList.add(new GBDeviceApp(UUID.fromString(baseName), "Kickstart (System)", "Pebble Inc.", "", GBDeviceApp.Type.WATCHFACE_SYSTEM));
                         }
-                        if (uuids == null) {
-                            cachedAppList.add(new GBDeviceApp(UUID.fromString(baseName), baseName, "N/A", "", GBDeviceApp.Type.UNKNOWN));
+                        if (baseName.equals(PebbleProtocol.UUID_WEATHER.toString())) {
+                            cachedAppList.add(new GBDeviceApp(PebbleProtocol.UUID_WEATHER, "Weather (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
                         }
                     }
                 }
+                if (uuids == null) {
+                    cachedAppList.add(new GBDeviceApp(UUID.fromString(baseName), baseName, "N/A", "", GBDeviceApp.Type.UNKNOWN));
+                }
             }
         }
         return cachedAppList;
@@ -249,7 +232,7 @@ public abstract class AbstractAppManagerFragment extends Fragment {
         LocalBroadcastManager.getInstance(getContext()).registerReceiver(mReceiver, filter);
 
         if (PebbleUtils.getFwMajor(mGBDevice.getFirmwareVersion()) < 3) {
-            GBApplication.deviceService().onAppInfoReq();
+            GBApplication.deviceService(mGBDevice).onAppInfoReq();
             if (isCacheManager()) {
                 refreshList();
             }
@@ -296,7 +279,11 @@ public abstract class AbstractAppManagerFragment extends Fragment {
             ArrayList<UUID> concatUuids = AppManagerActivity.getUuidsFromFile(concatFilename);
             uuids.addAll(concatUuids);
         }
-        GBApplication.deviceService().onAppReorder(uuids.toArray(new UUID[uuids.size()]));
+        GBApplication.deviceService(mGBDevice).onAppReorder(uuids.toArray(new UUID[uuids.size()]));
+    }
+
+    public GBDevice getGBDevice() {
+        return mGBDevice;
     }
 
     public boolean openPopupMenu(View view, GBDeviceApp deviceApp) {
@@ -381,6 +368,7 @@ public abstract class AbstractAppManagerFragment extends Fragment {
                         LOG.info("deleted file: " + fileToDelete.toString());
                     }
                 }
+                PBWCacheIndex.remove(selectedApp.getUUID());
                 AppManagerActivity.deleteFromAppOrderFile("pbwcacheorder.txt", selectedApp.getUUID()); // FIXME: only if successful
                 // fall through
             case R.id.appmanager_app_delete:
@@ -390,7 +378,7 @@ public abstract class AbstractAppManagerFragment extends Fragment {
                     Intent refreshIntent = new Intent(AbstractAppManagerFragment.ACTION_REFRESH_APPLIST);
                     LocalBroadcastManager.getInstance(getContext()).sendBroadcast(refreshIntent);
                 }
-                GBApplication.deviceService().onAppDelete(selectedApp.getUUID());
+                GBApplication.deviceService(mGBDevice).onAppDelete(selectedApp.getUUID());
                 return true;
             case R.id.appmanager_app_reinstall:
                 File cachePath;
@@ -400,27 +388,27 @@ public abstract class AbstractAppManagerFragment extends Fragment {
                     LOG.warn("could not get external dir while trying to access pbw cache.");
                     return true;
                 }
-                GBApplication.deviceService().onInstallApp(Uri.fromFile(cachePath));
+                GBApplication.deviceService(mGBDevice).onInstallApp(Uri.fromFile(cachePath));
                 return true;
             case R.id.appmanager_health_activate:
-                GBApplication.deviceService().onInstallApp(Uri.parse("fake://health"));
+                GBApplication.deviceService(mGBDevice).onInstallApp(Uri.parse("fake://health"));
                 return true;
             case R.id.appmanager_hrm_activate:
-                GBApplication.deviceService().onInstallApp(Uri.parse("fake://hrm"));
+                GBApplication.deviceService(mGBDevice).onInstallApp(Uri.parse("fake://hrm"));
                 return true;
             case R.id.appmanager_weather_activate:
-                GBApplication.deviceService().onInstallApp(Uri.parse("fake://weather"));
+                GBApplication.deviceService(mGBDevice).onInstallApp(Uri.parse("fake://weather"));
                 return true;
             case R.id.appmanager_health_deactivate:
             case R.id.appmanager_hrm_deactivate:
             case R.id.appmanager_weather_deactivate:
-                GBApplication.deviceService().onAppDelete(selectedApp.getUUID());
+                GBApplication.deviceService(mGBDevice).onAppDelete(selectedApp.getUUID());
                 return true;
             case R.id.appmanager_weather_install_provider:
                 startActivity(new Intent(Intent.ACTION_VIEW, Uri.parse("https://f-droid.org/app/ru.gelin.android.weather.notification")));
                 return true;
             case R.id.appmanager_app_configure:
-                GBApplication.deviceService().onAppStart(selectedApp.getUUID(), true);
+                GBApplication.deviceService(mGBDevice).onAppStart(selectedApp.getUUID(), true);
 
                 Intent startIntent = new Intent(getContext().getApplicationContext(), ExternalPebbleJSActivity.class);
                 startIntent.putExtra(DeviceService.EXTRA_APP_UUID, selectedApp.getUUID());
@@ -762,11 +762,11 @@ public abstract class AbstractChartFragment extends AbstractGBFragment {
         return sample;
     }
 
-    private int getTSEnd() {
+    protected int getTSEnd() {
         return toTimestamp(getEndDate());
     }
 
-    private int getTSStart() {
+    protected int getTSStart() {
         return toTimestamp(getStartDate());
     }
 
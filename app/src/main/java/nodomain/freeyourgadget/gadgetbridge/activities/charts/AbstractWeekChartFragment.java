@@ -280,19 +280,32 @@ public abstract class AbstractWeekChartFragment extends AbstractChartFragment {
     }
 
     private List<? extends ActivitySample> getSamplesOfDay(DBHandler db, Calendar day, int offsetHours, GBDevice device) {
-        int startTs;
-        int endTs;
+        int startTs = getStartOfDay(day, offsetHours);
+        int endTs = startTs + 24 * 60 * 60 - 1;
 
+        return getSamples(db, device, startTs, endTs);
+    }
+
+    /**
+     * Returns the timestamp in seconds at which the 24h window for the given day starts.
+     */
+    protected int getStartOfDay(Calendar day, int offsetHours) {
         day = (Calendar) day.clone(); // do not modify the caller's argument
         day.set(Calendar.HOUR_OF_DAY, 0);
         day.set(Calendar.MINUTE, 0);
         day.set(Calendar.SECOND, 0);
         day.add(Calendar.HOUR, offsetHours);
 
-        startTs = (int) (day.getTimeInMillis() / 1000);
-        endTs = startTs + 24 * 60 * 60 - 1;
+        return (int) (day.getTimeInMillis() / 1000);
+    }
 
-        return getSamples(db, device, startTs, endTs);
+    /**
+     * Calculates the amounts for the given day, which are then cached by the caller.
+     * The default implementation analyzes all samples of the day.
+     */
+    protected ActivityAmounts calculateActivityAmountsForDay(DBHandler db, Calendar day, int offsetHours, GBDevice device) {
+        ActivityAnalysis analysis = new ActivityAnalysis();
+        return analysis.calculateActivityAmounts(getSamplesOfDay(db, day, offsetHours, device));
     }
 
     @Override
@@ -341,8 +354,7 @@ public abstract class AbstractWeekChartFragment extends AbstractChartFragment {
         }
 
         if (amounts == null) {
-            ActivityAnalysis analysis = new ActivityAnalysis();
-            amounts = analysis.calculateActivityAmounts(getSamplesOfDay(db, day, mOffsetHours, device));
+            amounts = calculateActivityAmountsForDay(db, day, mOffsetHours, device);
             if (activityAmountCache != null) {
                 activityAmountCache.add(key, amounts);
             }
@@ -20,100 +20,32 @@ package nodomain.freeyourgadget.gadgetbridge.activities.charts;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
 import java.util.List;
 
-import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmount;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmounts;
-import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityStatistics;
 
 public class ActivityAnalysis {
     public static final Logger LOG = LoggerFactory.getLogger(ActivityAnalysis.class);
 
-    // store raw steps and duration
-    protected HashMap<Integer, Long> stats = new HashMap<Integer, Long>();
-    // max speed determined from samples
-    private int maxSpeed = 0;
+    // reused for every calculation
+    private final ActivityStatistics statistics = new ActivityStatistics();
 
     public ActivityAmounts calculateActivityAmounts(List<? extends ActivitySample> samples) {
-        ActivityAmount deepSleep = new ActivityAmount(ActivityKind.TYPE_DEEP_SLEEP);
-        ActivityAmount lightSleep = new ActivityAmount(ActivityKind.TYPE_LIGHT_SLEEP);
-        ActivityAmount notWorn = new ActivityAmount(ActivityKind.TYPE_NOT_WORN);
-        ActivityAmount activity = new ActivityAmount(ActivityKind.TYPE_ACTIVITY);
+        return calculateStatistics(samples).getActivityAmounts();
+    }
 
-        ActivityAmount previousAmount = null;
-        ActivitySample previousSample = null;
+    /**
+     * Returns the statistics of the given samples. The result is only valid until the next
+     * calculation, copy it with {@link ActivityStatistics#merge(ActivityStatistics)} to keep it.
+     */
+    public ActivityStatistics calculateStatistics(List<? extends ActivitySample> samples) {
+        statistics.reset();
         for (ActivitySample sample : samples) {
-            ActivityAmount amount;
-            switch (sample.getKind()) {
-                case ActivityKind.TYPE_DEEP_SLEEP:
-                    amount = deepSleep;
-                    break;
-                case ActivityKind.TYPE_LIGHT_SLEEP:
-                    amount = lightSleep;
-                    break;
-                case ActivityKind.TYPE_NOT_WORN:
-                    amount = notWorn;
-                    break;
-                case ActivityKind.TYPE_ACTIVITY:
-                default:
-                    amount = activity;
-                    break;
-            }
-
-            int steps = sample.getSteps();
-            if (steps > 0) {
-                amount.addSteps(steps);
-            }
-
-            if (previousSample != null) {
-                long timeDifference = sample.getTimestamp() - previousSample.getTimestamp();
-                if (previousSample.getRawKind() == sample.getRawKind()) {
-                    amount.addSeconds(timeDifference);
-                } else {
-                    long sharedTimeDifference = (long) (timeDifference / 2.0f);
-                    previousAmount.addSeconds(sharedTimeDifference);
-                    amount.addSeconds(sharedTimeDifference);
-                }
-
-                // add time
-                if (steps > 0 && sample.getKind() == ActivityKind.TYPE_ACTIVITY) {
-                    if (steps > maxSpeed) {
-                        maxSpeed = steps;
-                    }
-
-                    if (!stats.containsKey(steps)) {
-//                        LOG.debug("Adding: " + steps);
-                        stats.put(steps, timeDifference);
-                    } else {
-                        long time = stats.get(steps);
-//                        LOG.debug("Updating: " + steps + " " + timeDifference + time);
-                        stats.put(steps, timeDifference + time);
-                    }
-                }
-            }
-
-            amount.setStartDate(sample.getTimestamp());
-            amount.setEndDate(sample.getTimestamp());
-
-            previousAmount = amount;
-            previousSample = sample;
-        }
-
-        ActivityAmounts result = new ActivityAmounts();
-        if (deepSleep.getTotalSeconds() > 0) {
-            result.addAmount(deepSleep);
-        }
-        if (lightSleep.getTotalSeconds() > 0) {
-            result.addAmount(lightSleep);
+            statistics.add(sample);
         }
-        if (activity.getTotalSeconds() > 0) {
-            result.addAmount(activity);
-        }
-        result.calculatePercentages();
-
-        return result;
+        return statistics;
     }
 
     int calculateTotalSteps(List<? extends ActivitySample> samples) {
@@ -64,6 +64,7 @@ public class ChartsActivity extends AbstractGBFragmentActivity implements Charts
     private SwipeRefreshLayout swipeLayout;
 
     LimitedQueue mActivityAmountCache = new LimitedQueue(60);
+    LimitedQueue mActivityStatisticsCache = new LimitedQueue(60);
 
     private static class ShowDurationDialog extends Dialog {
         private final String mDuration;
@@ -287,7 +288,7 @@ public class ChartsActivity extends AbstractGBFragmentActivity implements Charts
 
     private void fetchActivityData() {
         if (getDevice().isInitialized()) {
-            GBApplication.deviceService().onFetchRecordedData(RecordedDataTypes.TYPE_ACTIVITY);
+            GBApplication.deviceService(mGBDevice).onFetchRecordedData(RecordedDataTypes.TYPE_ACTIVITY);
         } else {
             swipeLayout.setRefreshing(false);
             GB.toast(this, getString(R.string.device_not_connected), Toast.LENGTH_SHORT, GB.ERROR);
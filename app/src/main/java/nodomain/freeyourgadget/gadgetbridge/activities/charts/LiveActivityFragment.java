@@ -38,7 +38,6 @@ import com.github.mikephil.charting.components.YAxis;
 import com.github.mikephil.charting.data.BarData;
 import com.github.mikephil.charting.data.BarDataSet;
 import com.github.mikephil.charting.data.BarEntry;
-import com.github.mikephil.charting.data.ChartData;
 import com.github.mikephil.charting.data.Entry;
 import com.github.mikephil.charting.data.LineData;
 import com.github.mikephil.charting.data.LineDataSet;
@@ -65,12 +64,15 @@ import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityUser;
 import nodomain.freeyourgadget.gadgetbridge.model.DeviceService;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
+import nodomain.freeyourgadget.gadgetbridge.util.GBPrefs;
 
 public class LiveActivityFragment extends AbstractChartFragment {
     private static final Logger LOG = LoggerFactory.getLogger(LiveActivityFragment.class);
     private static final int MAX_STEPS_PER_MINUTE = 300;
     private static final int MIN_STEPS_PER_MINUTE = 60;
     private static final int RESET_COUNT = 10; // reset the max steps per minute value every 10s
+    private static final int RECENT_HISTORY_SECONDS = 5 * 60; // shown in full resolution
+    private static final int HISTORY_BUCKET_SIZE = 10; // older values are reduced to min/max of 10 values
 
     private BarEntry totalStepsEntry;
     private BarEntry stepsPerMinuteEntry;
@@ -84,8 +86,13 @@ public class LiveActivityFragment extends AbstractChartFragment {
 
     private final Steps mSteps = new Steps();
     private ScheduledExecutorService pulseScheduler;
+    // the device the realtime data is requested from
+    private GBDevice realtimeDevice;
     private int maxStepsResetCounter;
     private LineDataSet mHeartRateSet;
+    private LiveHistoryBuffer mStepsHistory;
+    private LiveHistoryBuffer mHeartRateHistory;
+    private int mStepsPerMinuteLimit = -1;
     private int mHeartRate;
     private int mMaxHeartRate = 0;
     private TimestampTranslation tsTranslation;
@@ -211,7 +218,7 @@ public class LiveActivityFragment extends AbstractChartFragment {
             mSteps.maxStepsPerMinute = 0;
         }
         // Or: count down the steps until goal reached? And then flash GOAL REACHED -> Set stretch goal
-        LOG.info("Steps: " + steps + ", total: " + mSteps.getTotalSteps() + ", current: " + mSteps.getStepsPerMinute(false));
+        LOG.debug("Steps: " + steps + ", total: " + mSteps.getTotalSteps() + ", current: " + mSteps.getStepsPerMinute(false));
 
 //        addEntries();
     }
@@ -223,9 +230,12 @@ public class LiveActivityFragment extends AbstractChartFragment {
 //        int extraRoom = maxStepsPerMinute/5;
 //        buggy in MPAndroidChart? Disable.
 //        stepsPerMinuteCurrentYAxis.setAxisMaxValue(Math.max(MIN_STEPS_PER_MINUTE, maxStepsPerMinute + extraRoom));
-        LimitLine target = new LimitLine(maxStepsPerMinute);
-        stepsPerMinuteCurrentYAxis.removeAllLimitLines();
-        stepsPerMinuteCurrentYAxis.addLimitLine(target);
+        if (maxStepsPerMinute != mStepsPerMinuteLimit) {
+            LimitLine target = new LimitLine(maxStepsPerMinute);
+            stepsPerMinuteCurrentYAxis.removeAllLimitLines();
+            stepsPerMinuteCurrentYAxis.addLimitLine(target);
+            mStepsPerMinuteLimit = maxStepsPerMinute;
+        }
 
         int stepsPerMinute = mSteps.getStepsPerMinute(true);
         mStepsPerMinuteCurrentChart.setSingleEntryYValue(stepsPerMinute);
@@ -234,14 +244,15 @@ public class LiveActivityFragment extends AbstractChartFragment {
             return;
         }
 
-        ChartData data = mStepsPerMinuteHistoryChart.getData();
         if (stepsPerMinute < 0) {
             stepsPerMinute = 0;
         }
-        mHistorySet.addEntry(new Entry(timestamp, stepsPerMinute));
+        mStepsHistory.add(timestamp, stepsPerMinute);
+        mStepsHistory.fillEntries(mHistorySet.getValues());
         int hr = getCurrentHeartRate();
         if (hr > HeartRateUtils.getInstance().getMinHeartRate()) {
-            mHeartRateSet.addEntry(new Entry(timestamp, hr));
+            mHeartRateHistory.add(timestamp, hr);
+            mHeartRateHistory.fillEntries(mHeartRateSet.getValues());
         }
     }
 
@@ -339,6 +350,8 @@ public class LiveActivityFragment extends AbstractChartFragment {
             return;
         }
 
+        mHistorySet.notifyDataSetChanged();
+        mHeartRateSet.notifyDataSetChanged();
         historyData.notifyDataChanged();
         mTotalStepsData.notifyDataSetChanged();
         mStepsPerMinuteData.notifyDataSetChanged();
@@ -347,7 +360,9 @@ public class LiveActivityFragment extends AbstractChartFragment {
         renderCharts();
 
         // have to enable it again and again to keep it measuring
-        GBApplication.deviceService().onEnableRealtimeHeartRateMeasurement(true);
+        if (realtimeDevice != null) {
+            GBApplication.deviceService(realtimeDevice).onEnableRealtimeHeartRateMeasurement(true);
+        }
     }
 
     private int getPulseIntervalMillis() {
@@ -366,8 +381,14 @@ public class LiveActivityFragment extends AbstractChartFragment {
             return;
         }
 
-        GBApplication.deviceService().onEnableRealtimeSteps(enable);
-        GBApplication.deviceService().onEnableRealtimeHeartRateMeasurement(enable);
+        if (enable) {
+            ChartsHost chartsHost = getChartsHost();
+            realtimeDevice = chartsHost != null ? chartsHost.getDevice() : null;
+        }
+        if (realtimeDevice != null) {
+            GBApplication.deviceService(realtimeDevice).onEnableRealtimeSteps(enable);
+            GBApplication.deviceService(realtimeDevice).onEnableRealtimeHeartRateMeasurement(enable);
+        }
         if (enable) {
             if (getActivity() != null) {
                 getActivity().getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
@@ -492,6 +513,13 @@ public class LiveActivityFragment extends AbstractChartFragment {
 
         mHeartRateSet = createHeartrateSet(new ArrayList<Entry>(), getString(R.string.live_activity_heart_rate));
         mHeartRateSet.setDrawValues(false);
+
+        int historyMinutes = GBApplication.getPrefs().getInt(GBPrefs.CHART_LIVE_HISTORY_MINUTES, GBPrefs.CHART_LIVE_HISTORY_MINUTES_DEFAULT);
+        int historySeconds = Math.max(1, historyMinutes) * 60;
+        int historyValues = historySeconds * 1000 / getPulseIntervalMillis();
+        int recentValues = Math.min(historyValues, RECENT_HISTORY_SECONDS * 1000 / getPulseIntervalMillis());
+        mStepsHistory = new LiveHistoryBuffer(recentValues, historyValues, HISTORY_BUCKET_SIZE);
+        mHeartRateHistory = new LiveHistoryBuffer(recentValues, historyValues, HISTORY_BUCKET_SIZE);
     }
 
     @Override
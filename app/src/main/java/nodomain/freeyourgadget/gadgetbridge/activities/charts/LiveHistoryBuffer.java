@@ -0,0 +1,165 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.activities.charts;
+
+import com.github.mikephil.charting.data.Entry;
+
+import java.util.List;
+
+/**
+ * A fixed-capacity history of values for the live activity charts. The most recent values
+ * are kept in full resolution, older values are downsampled into buckets of which only the
+ * minimum and maximum are retained. Values that do not fit into the configured history
+ * length are dropped, so memory usage and the number of chart entries stay constant
+ * regardless of how long the live activity is running.
+ */
+public class LiveHistoryBuffer {
+    private final int[] recentX;
+    private final float[] recentY;
+    private int recentStart;
+    private int recentSize;
+
+    private final int bucketSize;
+    private final int[] olderX;
+    private final float[] olderY;
+    private int olderStart;
+    private int olderSize;
+
+    // the bucket that is currently being filled with values evicted from the recent window
+    private int bucketCount;
+    private int bucketMinX;
+    private float bucketMinY;
+    private int bucketMaxX;
+    private float bucketMaxY;
+
+    private final Entry[] entryPool;
+
+    /**
+     * @param recentCapacity the number of values kept in full resolution
+     * @param historyCapacity the total number of values covered, including the recent ones
+     * @param bucketSize the number of older values that are combined into one min/max pair
+     */
+    public LiveHistoryBuffer(int recentCapacity, int historyCapacity, int bucketSize) {
+        if (recentCapacity <= 0 || bucketSize < 2) {
+            throw new IllegalArgumentException("invalid capacity");
+        }
+        this.bucketSize = bucketSize;
+        recentX = new int[recentCapacity];
+        recentY = new float[recentCapacity];
+
+        int olderBuckets = Math.max(0, historyCapacity - recentCapacity) / bucketSize;
+        olderX = new int[olderBuckets * 2];
+        olderY = new float[olderBuckets * 2];
+
+        entryPool = new Entry[olderX.length + recentX.length];
+    }
+
+    public void add(int x, float y) {
+        if (recentSize == recentX.length) {
+            evictOldestRecent();
+        }
+        int index = (recentStart + recentSize) % recentX.length;
+        recentX[index] = x;
+        recentY[index] = y;
+        recentSize++;
+    }
+
+    public int size() {
+        return olderSize + recentSize;
+    }
+
+    public void clear() {
+        recentStart = recentSize = 0;
+        olderStart = olderSize = 0;
+        bucketCount = 0;
+    }
+
+    /**
+     * Replaces the content of the given list with entries for all values, in chronological
+     * order. The entries are reused between invocations, so the list must not be kept.
+     */
+    public void fillEntries(List<Entry> entries) {
+        entries.clear();
+        int poolIndex = 0;
+        for (int i = 0; i < olderSize; i++) {
+            int index = (olderStart + i) % olderX.length;
+            entries.add(getEntry(poolIndex++, olderX[index], olderY[index]));
+        }
+        for (int i = 0; i < recentSize; i++) {
+            int index = (recentStart + i) % recentX.length;
+            entries.add(getEntry(poolIndex++, recentX[index], recentY[index]));
+        }
+    }
+
+    private Entry getEntry(int poolIndex, int x, float y) {
+        Entry entry = entryPool[poolIndex];
+        if (entry == null) {
+            entry = new Entry(x, y);
+            entryPool[poolIndex] = entry;
+        } else {
+            entry.setX(x);
+            entry.setY(y);
+        }
+        return entry;
+    }
+
+    private void evictOldestRecent() {
+        int x = recentX[recentStart];
+        float y = recentY[recentStart];
+        recentStart = (recentStart + 1) % recentX.length;
+        recentSize--;
+
+        if (olderX.length == 0) {
+            return;
+        }
+        if (bucketCount == 0) {
+            bucketMinX = bucketMaxX = x;
+            bucketMinY = bucketMaxY = y;
+        } else {
+            if (y < bucketMinY) {
+                bucketMinX = x;
+                bucketMinY = y;
+            }
+            if (y > bucketMaxY) {
+                bucketMaxX = x;
+                bucketMaxY = y;
+            }
+        }
+        if (++bucketCount == bucketSize) {
+            // keep min and max in chronological order
+            if (bucketMinX <= bucketMaxX) {
+                addOlder(bucketMinX, bucketMinY);
+                addOlder(bucketMaxX, bucketMaxY);
+            } else {
+                addOlder(bucketMaxX, bucketMaxY);
+                addOlder(bucketMinX, bucketMinY);
+            }
+            bucketCount = 0;
+        }
+    }
+
+    private void addOlder(int x, float y) {
+        if (olderSize == olderX.length) {
+            olderStart = (olderStart + 1) % olderX.length;
+            olderSize--;
+        }
+        int index = (olderStart + olderSize) % olderX.length;
+        olderX[index] = x;
+        olderY[index] = y;
+        olderSize++;
+    }
+}
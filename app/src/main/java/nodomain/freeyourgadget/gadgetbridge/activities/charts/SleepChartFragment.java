@@ -50,11 +50,11 @@ import java.util.concurrent.TimeUnit;
 
 import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.activities.HeartRateUtils;
-import nodomain.freeyourgadget.gadgetbridge.activities.charts.SleepAnalysis.SleepSession;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.model.SleepSession;
 import nodomain.freeyourgadget.gadgetbridge.util.DateTimeUtils;
 
 
@@ -76,8 +76,8 @@ public class SleepChartFragment extends AbstractChartFragment {
 
         MySleepChartsData mySleepChartsData = refreshSleepAmounts(device, samples);
         if (mySleepChartsData.sleepSessions.size()>0) {
-            long tstart = mySleepChartsData.sleepSessions.get(0).getSleepStart().getTime() / 1000;
-            long tend = mySleepChartsData.sleepSessions.get(mySleepChartsData.sleepSessions.size() - 1).getSleepEnd().getTime() / 1000;
+            long tstart = mySleepChartsData.sleepSessions.get(0).getSleepStartTimestamp();
+            long tend = mySleepChartsData.sleepSessions.get(mySleepChartsData.sleepSessions.size() - 1).getSleepEndTimestamp();
 
             for (Iterator<ActivitySample> iterator = (Iterator<ActivitySample>) samples.iterator(); iterator.hasNext(); ) {
                 ActivitySample sample = iterator.next();
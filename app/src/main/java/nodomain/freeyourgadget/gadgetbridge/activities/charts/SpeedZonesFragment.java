@@ -17,6 +17,7 @@
     along with this program.  If not, see <http://www.gnu.org/licenses/>. */
 package nodomain.freeyourgadget.gadgetbridge.activities.charts;
 
+import android.app.Activity;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -34,15 +35,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
 import java.util.List;
-import java.util.Map;
 
 import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityStatistics;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityUser;
+import nodomain.freeyourgadget.gadgetbridge.util.LimitedQueue;
 
 
 public class SpeedZonesFragment extends AbstractChartFragment {
@@ -52,16 +56,60 @@ public class SpeedZonesFragment extends AbstractChartFragment {
 
     @Override
     protected ChartsData refreshInBackground(ChartsHost chartsHost, DBHandler db, GBDevice device) {
-        List<? extends ActivitySample> samples = getSamples(db, device);
+        ActivityStatistics statistics = getStatistics(db, device, getTSStart(), getTSEnd());
 
-        MySpeedZonesData mySpeedZonesData = refreshStats(samples);
+        MySpeedZonesData mySpeedZonesData = refreshStats(statistics);
 
         return new MyChartsData(mySpeedZonesData);
     }
 
-    private MySpeedZonesData refreshStats(List<? extends ActivitySample> samples) {
+    /**
+     * Merges the statistics of each day of the range. The statistics of complete days
+     * in the past are cached, so that they are reused when the range is changed.
+     */
+    private ActivityStatistics getStatistics(DBHandler db, GBDevice device, int tsStart, int tsEnd) {
+        LimitedQueue statisticsCache = null;
+        Activity activity = getActivity();
+        if (activity != null) {
+            statisticsCache = ((ChartsActivity) activity).mActivityStatisticsCache;
+        }
+
         ActivityAnalysis analysis = new ActivityAnalysis();
-        analysis.calculateActivityAmounts(samples);
+        ActivityStatistics result = new ActivityStatistics();
+        int now = (int) (System.currentTimeMillis() / 1000);
+        Calendar day = GregorianCalendar.getInstance();
+        day.setTimeInMillis(tsStart * 1000L);
+        day.set(Calendar.HOUR_OF_DAY, 0);
+        day.set(Calendar.MINUTE, 0);
+        day.set(Calendar.SECOND, 0);
+        day.set(Calendar.MILLISECOND, 0);
+        int dayStart = (int) (day.getTimeInMillis() / 1000);
+        while (dayStart <= tsEnd) {
+            day.add(Calendar.DATE, 1);
+            int nextDayStart = (int) (day.getTimeInMillis() / 1000);
+            int from = Math.max(dayStart, tsStart);
+            int to = Math.min(nextDayStart - 1, tsEnd);
+            boolean cacheable = statisticsCache != null && from == dayStart && to == nextDayStart - 1 && nextDayStart <= now;
+
+            ActivityStatistics dayStatistics = null;
+            if (cacheable) {
+                dayStatistics = (ActivityStatistics) statisticsCache.lookup(dayStart);
+            }
+            if (dayStatistics == null) {
+                dayStatistics = analysis.calculateStatistics(getSamples(db, device, from, to));
+                if (cacheable) {
+                    ActivityStatistics copy = new ActivityStatistics();
+                    copy.merge(dayStatistics);
+                    statisticsCache.add(dayStart, copy);
+                }
+            }
+            result.merge(dayStatistics);
+            dayStart = nextDayStart;
+        }
+        return result;
+    }
+
+    private MySpeedZonesData refreshStats(ActivityStatistics statistics) {
         BarData data = new BarData();
         data.setValueTextColor(CHART_TEXT_COLOR);
         List<BarEntry> entries = new ArrayList<>();
@@ -74,8 +122,11 @@ public class SpeedZonesFragment extends AbstractChartFragment {
             distanceFactorCm = user.getHeightCm() * user.GENDER_FEMALE_DISTANCE_FACTOR / 1000;
         }*/
 
-        for (Map.Entry<Integer, Long> entry : analysis.stats.entrySet()) {
-            entries.add(new BarEntry(entry.getKey(), entry.getValue() / 60));
+        for (int steps = 1; steps <= ActivityStatistics.MAX_STEPS_PER_MINUTE; steps++) {
+            long seconds = statistics.getSecondsAtStepsPerMinute(steps);
+            if (seconds > 0) {
+                entries.add(new BarEntry(steps, seconds / 60));
+            }
         }
 
         BarDataSet set = new BarDataSet(entries, "");
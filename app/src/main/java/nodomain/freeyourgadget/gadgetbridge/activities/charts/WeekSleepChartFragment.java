@@ -22,11 +22,16 @@ import com.github.mikephil.charting.components.LegendEntry;
 import com.github.mikephil.charting.formatter.ValueFormatter;
 
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
+import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
+import nodomain.freeyourgadget.gadgetbridge.database.SleepNightCache;
+import nodomain.freeyourgadget.gadgetbridge.entities.SleepNight;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmount;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmounts;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
@@ -59,6 +64,22 @@ public class WeekSleepChartFragment extends AbstractWeekChartFragment {
         return -12;
     }
 
+    @Override
+    protected ActivityAmounts calculateActivityAmountsForDay(DBHandler db, Calendar day, int offsetHours, GBDevice device) {
+        SleepNightCache nightCache = new SleepNightCache(db.getDaoSession(), device, getProvider(db, device));
+        SleepNight night = nightCache.getNight(SleepNightCache.getNightStart(day));
+
+        ActivityAmount deepSleep = new ActivityAmount(ActivityKind.TYPE_DEEP_SLEEP);
+        deepSleep.addSeconds(night.getDeepSleepSeconds());
+        ActivityAmount lightSleep = new ActivityAmount(ActivityKind.TYPE_LIGHT_SLEEP);
+        lightSleep.addSeconds(night.getLightSleepSeconds());
+
+        ActivityAmounts amounts = new ActivityAmounts();
+        amounts.addAmount(deepSleep);
+        amounts.addAmount(lightSleep);
+        return amounts;
+    }
+
 
     @Override
     protected long calculateBalance(ActivityAmounts activityAmounts) {
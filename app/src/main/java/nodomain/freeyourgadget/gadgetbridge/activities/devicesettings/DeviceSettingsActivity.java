@@ -27,6 +27,8 @@ import androidx.preference.PreferenceScreen;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+
 import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.activities.AbstractGBActivity;
 import nodomain.freeyourgadget.gadgetbridge.devices.DeviceCoordinator;
@@ -50,7 +52,7 @@ public class DeviceSettingsActivity extends AbstractGBActivity implements
             Fragment fragment = getSupportFragmentManager().findFragmentByTag(DeviceSpecificSettingsFragment.FRAGMENT_TAG);
             if (fragment == null) {
                 DeviceCoordinator coordinator = DeviceHelper.getInstance().getCoordinator(device);
-                fragment = DeviceSpecificSettingsFragment.newInstance(device.getAddress(), coordinator.getSupportedDeviceSpecificSettings(device));
+                fragment = DeviceSpecificSettingsFragment.newInstance(device, getSupportedSettings(coordinator));
             }
             getSupportFragmentManager()
                     .beginTransaction()
@@ -64,7 +66,7 @@ public class DeviceSettingsActivity extends AbstractGBActivity implements
     public boolean onPreferenceStartScreen(PreferenceFragmentCompat caller, PreferenceScreen preferenceScreen) {
         DeviceCoordinator coordinator = DeviceHelper.getInstance().getCoordinator(device);
 
-        PreferenceFragmentCompat fragment = DeviceSpecificSettingsFragment.newInstance(device.getAddress(), coordinator.getSupportedDeviceSpecificSettings(device));
+        PreferenceFragmentCompat fragment = DeviceSpecificSettingsFragment.newInstance(device, getSupportedSettings(coordinator));
         Bundle args = fragment.getArguments();
         args.putString(PreferenceFragmentCompat.ARG_PREFERENCE_ROOT, preferenceScreen.getKey());
         fragment.setArguments(args);
@@ -76,4 +78,13 @@ public class DeviceSettingsActivity extends AbstractGBActivity implements
                 .commit();
         return true;
     }
+
+    private int[] getSupportedSettings(DeviceCoordinator coordinator) {
+        int[] settings = coordinator.getSupportedDeviceSpecificSettings(device);
+        if (settings != null && coordinator.supportsActivityTracking()) {
+            settings = Arrays.copyOf(settings, settings.length + 1);
+            settings[settings.length - 1] = R.xml.devicesettings_activity_retention;
+        }
+        return settings;
+    }
 }
\ No newline at end of file
@@ -18,6 +18,7 @@ import java.util.Objects;
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.devices.makibeshr3.MakibesHR3Constants;
 import nodomain.freeyourgadget.gadgetbridge.devices.miband.MiBandConst;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
 import nodomain.freeyourgadget.gadgetbridge.util.XTimePreference;
 import nodomain.freeyourgadget.gadgetbridge.util.XTimePreferenceFragment;
@@ -52,9 +53,12 @@ public class DeviceSpecificSettingsFragment extends PreferenceFragmentCompat {
 
     static final String FRAGMENT_TAG = "DEVICE_SPECIFIC_SETTINGS_FRAGMENT";
 
-    private void setSettingsFileSuffix(String settingsFileSuffix, @NonNull int[] supportedSettings) {
+    private GBDevice device;
+
+    private void setDevice(GBDevice device, @NonNull int[] supportedSettings) {
         Bundle args = new Bundle();
-        args.putString("settingsFileSuffix", settingsFileSuffix);
+        args.putParcelable(GBDevice.EXTRA_DEVICE, device);
+        args.putString("settingsFileSuffix", device.getAddress());
         args.putIntArray("supportedSettings", supportedSettings);
         setArguments(args);
     }
@@ -66,9 +70,10 @@ public class DeviceSpecificSettingsFragment extends PreferenceFragmentCompat {
         if (arguments == null) {
             return;
         }
+        device = arguments.getParcelable(GBDevice.EXTRA_DEVICE);
         String settingsFileSuffix = arguments.getString("settingsFileSuffix", null);
         int[] supportedSettings = arguments.getIntArray("supportedSettings");
-        if (settingsFileSuffix == null || supportedSettings == null) {
+        if (device == null || settingsFileSuffix == null || supportedSettings == null) {
             return;
         }
 
@@ -120,7 +125,7 @@ public class DeviceSpecificSettingsFragment extends PreferenceFragmentCompat {
                     invokeLater(new Runnable() {
                         @Override
                         public void run() {
-                            GBApplication.deviceService().onSendConfiguration(PREF_DISCONNECT_NOTIFICATION_START);
+                            GBApplication.deviceService(device).onSendConfiguration(PREF_DISCONNECT_NOTIFICATION_START);
                         }
                     });
                     return true;
@@ -137,7 +142,7 @@ public class DeviceSpecificSettingsFragment extends PreferenceFragmentCompat {
                     invokeLater(new Runnable() {
                         @Override
                         public void run() {
-                            GBApplication.deviceService().onSendConfiguration(PREF_DISCONNECT_NOTIFICATION_END);
+                            GBApplication.deviceService(device).onSendConfiguration(PREF_DISCONNECT_NOTIFICATION_END);
                         }
                     });
                     return true;
@@ -157,7 +162,7 @@ public class DeviceSpecificSettingsFragment extends PreferenceFragmentCompat {
                     invokeLater(new Runnable() {
                         @Override
                         public void run() {
-                            GBApplication.deviceService().onSendConfiguration(PREF_DISCONNECT_NOTIFICATION);
+                            GBApplication.deviceService(device).onSendConfiguration(PREF_DISCONNECT_NOTIFICATION);
                         }
                     });
                     return true;
@@ -178,7 +183,7 @@ public class DeviceSpecificSettingsFragment extends PreferenceFragmentCompat {
                     invokeLater(new Runnable() {
                         @Override
                         public void run() {
-                            GBApplication.deviceService().onSendConfiguration(PREF_NIGHT_MODE_START);
+                            GBApplication.deviceService(device).onSendConfiguration(PREF_NIGHT_MODE_START);
                         }
                     });
                     return true;
@@ -195,7 +200,7 @@ public class DeviceSpecificSettingsFragment extends PreferenceFragmentCompat {
                     invokeLater(new Runnable() {
                         @Override
                         public void run() {
-                            GBApplication.deviceService().onSendConfiguration(PREF_NIGHT_MODE_END);
+                            GBApplication.deviceService(device).onSendConfiguration(PREF_NIGHT_MODE_END);
                         }
                     });
                     return true;
@@ -217,7 +222,7 @@ public class DeviceSpecificSettingsFragment extends PreferenceFragmentCompat {
                     invokeLater(new Runnable() {
                         @Override
                         public void run() {
-                            GBApplication.deviceService().onSendConfiguration(PREF_NIGHT_MODE);
+                            GBApplication.deviceService(device).onSendConfiguration(PREF_NIGHT_MODE);
                         }
                     });
                     return true;
@@ -238,7 +243,7 @@ public class DeviceSpecificSettingsFragment extends PreferenceFragmentCompat {
                     invokeLater(new Runnable() {
                         @Override
                         public void run() {
-                            GBApplication.deviceService().onSendConfiguration(PREF_DO_NOT_DISTURB_START);
+                            GBApplication.deviceService(device).onSendConfiguration(PREF_DO_NOT_DISTURB_START);
                         }
                     });
                     return true;
@@ -255,7 +260,7 @@ public class DeviceSpecificSettingsFragment extends PreferenceFragmentCompat {
                     invokeLater(new Runnable() {
                         @Override
                         public void run() {
-                            GBApplication.deviceService().onSendConfiguration(PREF_DO_NOT_DISTURB_END);
+                            GBApplication.deviceService(device).onSendConfiguration(PREF_DO_NOT_DISTURB_END);
                         }
                     });
                     return true;
@@ -276,7 +281,7 @@ public class DeviceSpecificSettingsFragment extends PreferenceFragmentCompat {
                     invokeLater(new Runnable() {
                         @Override
                         public void run() {
-                            GBApplication.deviceService().onSendConfiguration(PREF_DO_NOT_DISTURB);
+                            GBApplication.deviceService(device).onSendConfiguration(PREF_DO_NOT_DISTURB);
                         }
                     });
                     return true;
@@ -306,7 +311,7 @@ public class DeviceSpecificSettingsFragment extends PreferenceFragmentCompat {
                     invokeLater(new Runnable() {
                         @Override
                         public void run() {
-                            GBApplication.deviceService().onSendConfiguration(PREF_MI2_ROTATE_WRIST_TO_SWITCH_INFO);
+                            GBApplication.deviceService(device).onSendConfiguration(PREF_MI2_ROTATE_WRIST_TO_SWITCH_INFO);
                         }
                     });
                     return true;
@@ -323,7 +328,7 @@ public class DeviceSpecificSettingsFragment extends PreferenceFragmentCompat {
                     invokeLater(new Runnable() {
                         @Override
                         public void run() {
-                            GBApplication.deviceService().onSendConfiguration(PREF_DISPLAY_ON_LIFT_START);
+                            GBApplication.deviceService(device).onSendConfiguration(PREF_DISPLAY_ON_LIFT_START);
                         }
                     });
                     return true;
@@ -340,7 +345,7 @@ public class DeviceSpecificSettingsFragment extends PreferenceFragmentCompat {
                     invokeLater(new Runnable() {
                         @Override
                         public void run() {
-                            GBApplication.deviceService().onSendConfiguration(PREF_DISPLAY_ON_LIFT_END);
+                            GBApplication.deviceService(device).onSendConfiguration(PREF_DISPLAY_ON_LIFT_END);
                         }
                     });
                     return true;
@@ -362,7 +367,7 @@ public class DeviceSpecificSettingsFragment extends PreferenceFragmentCompat {
                     invokeLater(new Runnable() {
                         @Override
                         public void run() {
-                            GBApplication.deviceService().onSendConfiguration(PREF_ACTIVATE_DISPLAY_ON_LIFT);
+                            GBApplication.deviceService(device).onSendConfiguration(PREF_ACTIVATE_DISPLAY_ON_LIFT);
                         }
                     });
                     return true;
@@ -391,9 +396,9 @@ public class DeviceSpecificSettingsFragment extends PreferenceFragmentCompat {
         }
     }
 
-    static DeviceSpecificSettingsFragment newInstance(String settingsFileSuffix, @NonNull int[] supportedSettings) {
+    static DeviceSpecificSettingsFragment newInstance(GBDevice device, @NonNull int[] supportedSettings) {
         DeviceSpecificSettingsFragment fragment = new DeviceSpecificSettingsFragment();
-        fragment.setSettingsFileSuffix(settingsFileSuffix, supportedSettings);
+        fragment.setDevice(device, supportedSettings);
 
         return fragment;
     }
@@ -423,7 +428,7 @@ public class DeviceSpecificSettingsFragment extends PreferenceFragmentCompat {
                     invokeLater(new Runnable() {
                         @Override
                         public void run() {
-                            GBApplication.deviceService().onSendConfiguration(preferenceKey);
+                            GBApplication.deviceService(device).onSendConfiguration(preferenceKey);
                         }
                     });
                     return true;
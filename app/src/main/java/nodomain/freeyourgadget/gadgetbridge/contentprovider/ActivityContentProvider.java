@@ -0,0 +1,291 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.contentprovider;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.UriMatcher;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import de.greenrobot.dao.identityscope.IdentityScopeType;
+import nodomain.freeyourgadget.gadgetbridge.BuildConfig;
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.activities.HeartRateUtils;
+import nodomain.freeyourgadget.gadgetbridge.devices.AbstractSampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.devices.DeviceCoordinator;
+import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.entities.AbstractActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.entities.BaseActivitySummary;
+import nodomain.freeyourgadget.gadgetbridge.entities.BaseActivitySummaryDao;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoMaster;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
+import nodomain.freeyourgadget.gadgetbridge.entities.Device;
+import nodomain.freeyourgadget.gadgetbridge.entities.DeviceDao;
+import nodomain.freeyourgadget.gadgetbridge.entities.SampleWatermark;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.util.DeviceHelper;
+
+/**
+ * Read-only access to the activity data for other apps, which need the READ_ACTIVITY_DATA
+ * permission. Instead of exporting the whole database, apps can sync incrementally:
+ * <ul>
+ * <li>devices: one row per device, with the range and number of its stored samples, so
+ * that apps can tell whether there is anything new</li>
+ * <li>devices/&lt;address&gt;/samples: the samples of a device, normalized</li>
+ * <li>devices/&lt;address&gt;/summaries: the activity summaries (workouts) of a device</li>
+ * </ul>
+ * Samples and summaries are returned in pages, in ascending order of their _id. The _id of
+ * a sample changes whenever it is written again, so samples come in the order in which they
+ * were stored, including those that were synced later for earlier times, and replaced ones
+ * come again. The next page starts after the _id of the last row, which is passed as the
+ * {@link #PARAM_AFTER} query parameter; keeping the last _id is all an app needs to get only
+ * what is new next time. All timestamps are in seconds.
+ */
+public class ActivityContentProvider extends ContentProvider {
+    private static final Logger LOG = LoggerFactory.getLogger(ActivityContentProvider.class);
+
+    public static final String AUTHORITY = BuildConfig.APPLICATION_ID + ".activity_provider";
+    public static final Uri DEVICES_URI = Uri.parse("content://" + AUTHORITY + "/devices");
+
+    /**
+     * Only rows after this _id, exclusive.
+     */
+    public static final String PARAM_AFTER = "after";
+    /**
+     * Only rows until this timestamp, inclusive; for summaries the start time.
+     */
+    public static final String PARAM_TO = "to";
+    /**
+     * The maximum number of rows, at most {@link #MAX_PAGE_SIZE}.
+     */
+    public static final String PARAM_LIMIT = "limit";
+
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+    public static final int MAX_PAGE_SIZE = 10000;
+
+    public static final String[] DEVICE_COLUMNS = new String[]{"_id", "address", "name", "type", "earliest_sample", "latest_sample", "sample_count"};
+    public static final String[] SAMPLE_COLUMNS = new String[]{"_id", "timestamp", "kind", "steps", "intensity", "heart_rate"};
+    public static final String[] SUMMARY_COLUMNS = new String[]{"_id", "name", "start_time", "end_time", "kind"};
+
+    private static final int DEVICES = 1;
+    private static final int SAMPLES = 2;
+    private static final int SUMMARIES = 3;
+    private static final UriMatcher uriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
+
+    static {
+        uriMatcher.addURI(AUTHORITY, "devices", DEVICES);
+        uriMatcher.addURI(AUTHORITY, "devices/*/samples", SAMPLES);
+        uriMatcher.addURI(AUTHORITY, "devices/*/summaries", SUMMARIES);
+    }
+
+    public static Uri getSamplesUri(String address) {
+        return DEVICES_URI.buildUpon().appendPath(address).appendPath("samples").build();
+    }
+
+    public static Uri getSummariesUri(String address) {
+        return DEVICES_URI.buildUpon().appendPath(address).appendPath("summaries").build();
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    /**
+     * Reads through a separate, read-only connection, so that other apps never wait for
+     * Gadgetbridge's database lock, nor hold it up.
+     * @throws IllegalArgumentException for unknown URIs and invalid query parameters
+     */
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        int match = uriMatcher.match(uri);
+        if (match == UriMatcher.NO_MATCH) {
+            throw new IllegalArgumentException("Unknown URI: " + uri);
+        }
+        if (selection != null || sortOrder != null) {
+            throw new IllegalArgumentException("Selection and sort order are not supported, use the query parameters");
+        }
+        long after = getLongParameter(uri, PARAM_AFTER, -1);
+        long to = getLongParameter(uri, PARAM_TO, Integer.MAX_VALUE);
+        long limit = getLongParameter(uri, PARAM_LIMIT, DEFAULT_PAGE_SIZE);
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Invalid " + PARAM_LIMIT + ": " + limit);
+        }
+        int pageSize = (int) Math.min(limit, MAX_PAGE_SIZE);
+
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(getContext().getDatabasePath(GBApplication.DATABASE_NAME).getPath(),
+                null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            DaoSession session = new DaoMaster(db).newSession(IdentityScopeType.None);
+            switch (match) {
+                case DEVICES:
+                    return queryDevices(session);
+                case SAMPLES:
+                    return querySamples(session, uri.getPathSegments().get(1), after, (int) Math.min(to, Integer.MAX_VALUE), pageSize);
+                default:
+                    return querySummaries(session, uri.getPathSegments().get(1), after, to, pageSize);
+            }
+        } finally {
+            db.close();
+        }
+    }
+
+    private Cursor queryDevices(DaoSession session) {
+        MatrixCursor cursor = new MatrixCursor(DEVICE_COLUMNS);
+        for (Device dbDevice : session.getDeviceDao().loadAll()) {
+            SampleWatermark watermark = null;
+            AbstractSampleProvider<?> sampleProvider = getSampleProvider(session, dbDevice);
+            if (sampleProvider != null) {
+                watermark = sampleProvider.getWatermark();
+            }
+            cursor.addRow(new Object[]{
+                    dbDevice.getId(),
+                    dbDevice.getIdentifier(),
+                    dbDevice.getName(),
+                    dbDevice.getType(),
+                    watermark != null ? watermark.getEarliestTimestamp() : null,
+                    watermark != null ? watermark.getLatestTimestamp() : null,
+                    watermark != null ? watermark.getRowCount() : 0,
+            });
+        }
+        return cursor;
+    }
+
+    private Cursor querySamples(DaoSession session, String address, long after, int to, int limit) {
+        MatrixCursor cursor = new MatrixCursor(SAMPLE_COLUMNS);
+        AbstractSampleProvider<?> sampleProvider = getSampleProvider(session, findDevice(session, address));
+        if (sampleProvider == null) {
+            return cursor;
+        }
+        List<Long> rowids = new ArrayList<>();
+        List<? extends AbstractActivitySample> samples = sampleProvider.getActivitySamplesPage(after, to, limit, rowids);
+        for (int i = 0; i < samples.size(); i++) {
+            AbstractActivitySample sample = samples.get(i);
+            int heartRate = sample.getHeartRate();
+            boolean validHeartRate = heartRate >= HeartRateUtils.MIN_HEART_RATE_VALUE && heartRate <= HeartRateUtils.MAX_HEART_RATE_VALUE;
+            cursor.addRow(new Object[]{
+                    rowids.get(i),
+                    sample.getTimestamp(),
+                    sample.getKind(),
+                    sample.getSteps() >= 0 ? sample.getSteps() : null,
+                    sample.getIntensity(),
+                    validHeartRate ? heartRate : null,
+            });
+        }
+        return cursor;
+    }
+
+    private Cursor querySummaries(DaoSession session, String address, long after, long to, int limit) {
+        MatrixCursor cursor = new MatrixCursor(SUMMARY_COLUMNS);
+        Device dbDevice = findDevice(session, address);
+        if (dbDevice == null) {
+            return cursor;
+        }
+        BaseActivitySummaryDao summaryDao = session.getBaseActivitySummaryDao();
+        List<BaseActivitySummary> summaries = summaryDao.queryBuilder()
+                .where(BaseActivitySummaryDao.Properties.DeviceId.eq(dbDevice.getId()),
+                        BaseActivitySummaryDao.Properties.Id.gt(after),
+                        BaseActivitySummaryDao.Properties.StartTime.le(new Date(to * 1000L)))
+                .orderAsc(BaseActivitySummaryDao.Properties.Id)
+                .limit(limit).list();
+        for (BaseActivitySummary summary : summaries) {
+            cursor.addRow(new Object[]{
+                    summary.getId(),
+                    summary.getName(),
+                    summary.getStartTime().getTime() / 1000,
+                    summary.getEndTime().getTime() / 1000,
+                    summary.getActivityKind(),
+            });
+        }
+        summaryDao.detachAll();
+        return cursor;
+    }
+
+    @Nullable
+    private Device findDevice(DaoSession session, String address) {
+        return session.getDeviceDao().queryBuilder()
+                .where(DeviceDao.Properties.Identifier.eq(address)).unique();
+    }
+
+    @Nullable
+    private AbstractSampleProvider<?> getSampleProvider(DaoSession session, @Nullable Device dbDevice) {
+        if (dbDevice == null) {
+            return null;
+        }
+        GBDevice device = DeviceHelper.getInstance().toGBDevice(dbDevice);
+        DeviceCoordinator coordinator = DeviceHelper.getInstance().getCoordinator(device);
+        if (!coordinator.supportsActivityTracking()) {
+            return null;
+        }
+        SampleProvider<?> sampleProvider = coordinator.getSampleProvider(device, session);
+        return sampleProvider instanceof AbstractSampleProvider ? (AbstractSampleProvider<?>) sampleProvider : null;
+    }
+
+    private static long getLongParameter(Uri uri, String name, long defaultValue) {
+        String value = uri.getQueryParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull Uri uri) {
+        switch (uriMatcher.match(uri)) {
+            case DEVICES:
+                return "vnd.android.cursor.dir/vnd." + AUTHORITY + ".device";
+            case SAMPLES:
+                return "vnd.android.cursor.dir/vnd." + AUTHORITY + ".sample";
+            case SUMMARIES:
+                return "vnd.android.cursor.dir/vnd." + AUTHORITY + ".summary";
+        }
+        return null;
+    }
+
+    @Override
+    public Uri insert(@NonNull Uri uri, ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(@NonNull Uri uri, String selection, String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        return 0;
+    }
+}
@@ -0,0 +1,50 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.database;
+
+/**
+ * The data-heavy part of a schema update, like a backfill, an index build or a table
+ * rewrite, which would block opening the database for too long when there are years of
+ * samples. A {@link DBUpdateScript} implementing this interface only performs the cheap
+ * DDL in {@link DBUpdateScript#upgradeSchema}; the rest is done by
+ * {@link BackgroundMigrator} after the database has been opened.
+ * <p/>
+ * The migration runs in batches, each in its own transaction. Every batch returns the
+ * position at which the next one continues, which is persisted, so that a migration that
+ * was interrupted, e.g. because the app was killed, resumes where it stopped. Batches must
+ * therefore be idempotent. Features that depend on the migration should check
+ * {@link BackgroundMigrator#isPending(Class)}.
+ */
+public interface BackgroundMigration {
+    /**
+     * The position returned by the last batch.
+     */
+    long DONE = -1;
+
+    /**
+     * Migrates the next batch.
+     * @param position the position returned by the previous batch, 0 for the first one
+     * @return the position of the next batch, or {@link #DONE}
+     */
+    long migrateBatch(DBHandler db, long position) throws Exception;
+
+    /**
+     * Returns the number of batches that remain after the given position, for showing
+     * the progress. An estimate is fine.
+     */
+    long getRemainingBatches(DBHandler db, long position);
+}
@@ -0,0 +1,184 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.database;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.R;
+import nodomain.freeyourgadget.gadgetbridge.util.GBScheduler;
+import nodomain.freeyourgadget.gadgetbridge.util.ProgressReporter;
+
+/**
+ * Runs the pending {@link BackgroundMigration}s, in the order of their schema versions, on
+ * a background thread. The database is only locked for one batch at a time, so the app and
+ * the devices can use it in between. The progress is shown in the transfer notification.
+ * <p/>
+ * The pending migrations and their positions are stored in the preferences, so they
+ * survive restarts of the app.
+ */
+public class BackgroundMigrator {
+    private static final Logger LOG = LoggerFactory.getLogger(BackgroundMigrator.class);
+
+    private static final String PREF_PENDING = "db_background_migrations";
+    private static final String PREF_POSITION_PREFIX = "db_background_migration_position_";
+    // lets other threads waiting for the database in between two batches
+    private static final long BATCH_PAUSE_MILLIS = 50;
+
+    private static final ExecutorService executor = GBScheduler.newSerialExecutor("DB Migration");
+
+    /**
+     * Marks the migration as pending. Called by SchemaMigration while upgrading, the
+     * migration runs after the database has been opened, see #start(Context).
+     */
+    public static synchronized void add(Class<? extends BackgroundMigration> migration) {
+        List<String> pending = getPending();
+        if (!pending.contains(migration.getName())) {
+            pending.add(migration.getName());
+            getPreferences().edit()
+                    .putString(PREF_PENDING, TextUtils.join(",", pending))
+                    .putLong(PREF_POSITION_PREFIX + migration.getName(), 0)
+                    .apply();
+        }
+    }
+
+    /**
+     * Returns true if the migration has not completed yet.
+     */
+    public static synchronized boolean isPending(Class<? extends BackgroundMigration> migration) {
+        return getPending().contains(migration.getName());
+    }
+
+    /**
+     * Forgets all pending migrations, e.g. because the database was deleted.
+     */
+    public static synchronized void clear() {
+        SharedPreferences.Editor editor = getPreferences().edit();
+        for (String name : getPending()) {
+            editor.remove(PREF_POSITION_PREFIX + name);
+        }
+        editor.remove(PREF_PENDING).apply();
+    }
+
+    /**
+     * Starts running the pending migrations, if any.
+     */
+    public static void start(final Context context) {
+        if (getPending().isEmpty()) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                runPending(context);
+            }
+        });
+    }
+
+    private static void runPending(Context context) {
+        ProgressReporter progressReporter = new ProgressReporter(context, ProgressReporter.Type.TRANSFER,
+                context.getString(R.string.db_migration_title), context.getString(R.string.db_migration_text));
+        try {
+            String name;
+            while ((name = getNextPending()) != null) {
+                BackgroundMigration migration = (BackgroundMigration) Class.forName(name).newInstance();
+                runMigration(name, migration, progressReporter);
+            }
+        } catch (Exception ex) {
+            // the migration resumes on the next start of the app
+            LOG.error("Error running background migration", ex);
+        } finally {
+            progressReporter.finish("");
+        }
+    }
+
+    private static void runMigration(String name, BackgroundMigration migration, ProgressReporter progressReporter) throws Exception {
+        long position = getPreferences().getLong(PREF_POSITION_PREFIX + name, 0);
+        LOG.info("Running background migration " + name + " from position " + position);
+        try (DBHandler db = GBApplication.acquireDB()) {
+            progressReporter.setTotal(migration.getRemainingBatches(db, position));
+        }
+        long start = System.currentTimeMillis();
+        while (position != BackgroundMigration.DONE) {
+            try (DBHandler db = GBApplication.acquireDB()) {
+                SQLiteDatabase database = db.getDatabase();
+                database.beginTransaction();
+                try {
+                    position = migration.migrateBatch(db, position);
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+            }
+            if (!setPosition(name, position)) {
+                LOG.info("Background migration " + name + " was cleared");
+                return;
+            }
+            progressReporter.tick(1);
+            Thread.sleep(BATCH_PAUSE_MILLIS);
+        }
+        LOG.info("Background migration " + name + " completed in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * @return false if the migration is not pending anymore, because it was cleared
+     */
+    private static synchronized boolean setPosition(String name, long position) {
+        List<String> pending = getPending();
+        if (!pending.contains(name)) {
+            return false;
+        }
+        SharedPreferences.Editor editor = getPreferences().edit();
+        if (position == BackgroundMigration.DONE) {
+            pending.remove(name);
+            editor.putString(PREF_PENDING, TextUtils.join(",", pending));
+            editor.remove(PREF_POSITION_PREFIX + name);
+        } else {
+            editor.putLong(PREF_POSITION_PREFIX + name, position);
+        }
+        editor.apply();
+        return true;
+    }
+
+    private static synchronized String getNextPending() {
+        List<String> pending = getPending();
+        return pending.isEmpty() ? null : pending.get(0);
+    }
+
+    private static List<String> getPending() {
+        String pending = getPreferences().getString(PREF_PENDING, "");
+        if (TextUtils.isEmpty(pending)) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(Arrays.asList(pending.split(",")));
+    }
+
+    private static SharedPreferences getPreferences() {
+        return GBApplication.getPrefs().getPreferences();
+    }
+}
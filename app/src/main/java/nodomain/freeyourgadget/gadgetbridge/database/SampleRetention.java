@@ -0,0 +1,189 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.database;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.PowerManager;
+import android.os.SystemClock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.devices.AbstractSampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.devices.DeviceCoordinator;
+import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.entities.Device;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.util.DeviceHelper;
+import nodomain.freeyourgadget.gadgetbridge.util.GBPrefs;
+import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
+
+/**
+ * Rolls up activity samples older than the configured retention period into aggregates,
+ * see {@link AbstractSampleProvider#rollUp(int, int, int)}. Runs twice a day, but only
+ * while the phone is charging and the screen is off, and only for a limited time per run,
+ * so it never competes with the user or with a device sync.
+ */
+public class SampleRetention extends BroadcastReceiver {
+    private static final Logger LOG = LoggerFactory.getLogger(SampleRetention.class);
+
+    private static final int WINDOW_SECONDS = 24 * 60 * 60;
+    private static final long MAX_RUN_MILLIS = 20 * 1000;
+    private static final String USE_GLOBAL_SETTING = "global";
+
+    public static void scheduleAlarm(Context context) {
+        Intent i = new Intent(context, SampleRetention.class);
+        if (PendingIntent.getBroadcast(context, 0, i, PendingIntent.FLAG_NO_CREATE) != null) {
+            // already scheduled, rescheduling would postpone it
+            return;
+        }
+        PendingIntent pi = PendingIntent.getBroadcast(context, 0, i, 0);
+        AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (am != null) {
+            am.setInexactRepeating(
+                    AlarmManager.ELAPSED_REALTIME,
+                    SystemClock.elapsedRealtime() + AlarmManager.INTERVAL_HALF_DAY,
+                    AlarmManager.INTERVAL_HALF_DAY,
+                    pi
+            );
+        }
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (!isIdle(context.getApplicationContext())) {
+            LOG.info("Not rolling up old activity samples, phone is in use or not charging");
+            return;
+        }
+        final PendingResult result = goAsync();
+        new Thread("Sample Retention") {
+            @Override
+            public void run() {
+                try {
+                    rollUpAll();
+                } catch (Exception ex) {
+                    LOG.warn("Error rolling up old activity samples", ex);
+                } finally {
+                    result.finish();
+                }
+            }
+        }.start();
+    }
+
+    private static boolean isIdle(Context context) {
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        if (powerManager != null && powerManager.isScreenOn()) {
+            return false;
+        }
+        Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return battery != null && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+
+    private void rollUpAll() throws Exception {
+        List<GBDevice> devices = new ArrayList<>();
+        try (DBHandler dbHandler = GBApplication.acquireDB()) {
+            for (Device dbDevice : dbHandler.getDaoSession().getDeviceDao().loadAll()) {
+                GBDevice gbDevice = DeviceHelper.getInstance().toGBDevice(dbDevice);
+                if (gbDevice != null) {
+                    devices.add(gbDevice);
+                }
+            }
+        }
+
+        long deadline = SystemClock.elapsedRealtime() + MAX_RUN_MILLIS;
+        for (GBDevice device : devices) {
+            Prefs devicePrefs = new Prefs(GBApplication.getDeviceSpecificSharedPrefs(device.getAddress()));
+            int bucketMinutes = getInt(devicePrefs, GBPrefs.ACTIVITY_RETENTION_BUCKET, 0);
+            int retentionDays = getInt(devicePrefs, GBPrefs.ACTIVITY_RETENTION_DAYS, 365);
+            if (bucketMinutes <= 0 || retentionDays <= 0) {
+                continue;
+            }
+            int bucketSeconds = bucketMinutes * 60;
+            long cutoff = System.currentTimeMillis() / 1000 - retentionDays * (long) WINDOW_SECONDS;
+            int end = (int) (cutoff - cutoff % bucketSeconds);
+            if (!rollUp(device, bucketSeconds, end, deadline)) {
+                LOG.info("Time for rolling up old activity samples is up, continuing next time");
+                return;
+            }
+        }
+    }
+
+    /**
+     * Rolls up the samples of the device until the given end, one window per transaction.
+     * @return false if the deadline was hit before finishing
+     */
+    private boolean rollUp(GBDevice device, int bucketSeconds, int end, long deadline) throws Exception {
+        DeviceCoordinator coordinator = DeviceHelper.getInstance().getCoordinator(device);
+        if (!coordinator.supportsActivityTracking()) {
+            return true;
+        }
+        int total = 0;
+        try {
+            while (SystemClock.elapsedRealtime() < deadline) {
+                try (DBHandler dbHandler = GBApplication.acquireDB()) {
+                    SampleProvider<?> provider = coordinator.getSampleProvider(device, dbHandler.getDaoSession());
+                    if (!(provider instanceof AbstractSampleProvider) || !((AbstractSampleProvider<?>) provider).supportsRollUp()) {
+                        return true;
+                    }
+                    AbstractSampleProvider<?> sampleProvider = (AbstractSampleProvider<?>) provider;
+                    // samples that were synced after their time had been rolled up are kept,
+                    // as well as those in a partial bucket after changing the bucket length
+                    int rolledUpUntil = sampleProvider.getRolledUpUntil();
+                    int oldest = sampleProvider.getOldestSampleTimestamp(rolledUpUntil + (bucketSeconds - rolledUpUntil % bucketSeconds) % bucketSeconds);
+                    if (oldest < 0) {
+                        return true;
+                    }
+                    int start = oldest - oldest % bucketSeconds;
+                    if (start >= end) {
+                        return true;
+                    }
+                    total += sampleProvider.rollUp(start, Math.min(end, start - start % WINDOW_SECONDS + WINDOW_SECONDS), bucketSeconds);
+                }
+            }
+            return false;
+        } finally {
+            if (total > 0) {
+                LOG.info("Rolled up " + total + " activity samples of " + device.getName());
+            }
+        }
+    }
+
+    /**
+     * Returns the device specific value of the given preference, falling back to the global one.
+     */
+    private static int getInt(Prefs devicePrefs, String key, int defaultValue) {
+        String value = devicePrefs.getString(key, USE_GLOBAL_SETTING);
+        if (USE_GLOBAL_SETTING.equals(value)) {
+            return GBApplication.getPrefs().getInt(key, defaultValue);
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            return defaultValue;
+        }
+    }
+}
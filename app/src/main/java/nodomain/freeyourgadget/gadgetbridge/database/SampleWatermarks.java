@@ -0,0 +1,223 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.Nullable;
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.GBEnvironment;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
+import nodomain.freeyourgadget.gadgetbridge.entities.SampleWatermark;
+import nodomain.freeyourgadget.gadgetbridge.util.GBScheduler;
+
+/**
+ * Keeps the {@link SampleWatermark}s of a database in memory, so that writing samples does
+ * not need to query or update them. The changes are written back shortly after the last
+ * write, together with the sleep nights of the changed range, see
+ * {@link #flush(DaoSession)}.
+ * <p/>
+ * The first change after loading or flushing a watermark stores it with a negative row
+ * count, which marks it as outdated, so it is computed again from the samples should the
+ * changes get lost.
+ * <p/>
+ * Until when the samples of each device have been rolled up is kept as well, so queries can
+ * skip the aggregates when the range has not been rolled up.
+ */
+public class SampleWatermarks {
+    private static final Logger LOG = LoggerFactory.getLogger(SampleWatermarks.class);
+
+    private static final long FLUSH_DELAY_SECONDS = 5;
+    private static final Map<SQLiteDatabase, SampleWatermarks> instances = new WeakHashMap<>();
+
+    private final WeakReference<SQLiteDatabase> database;
+    private final Map<String, SampleWatermark> watermarks = new HashMap<>();
+    /** the watermarks that are marked as outdated in the database */
+    private final Set<String> changed = new HashSet<>();
+    /** the changed ranges by device id, from and to (inclusive) */
+    private final Map<Long, int[]> changedRanges = new HashMap<>();
+    private final Map<Long, Integer> rolledUpUntil = new HashMap<>();
+    private ScheduledFuture<?> flushFuture;
+
+    private SampleWatermarks(SQLiteDatabase database) {
+        this.database = new WeakReference<>(database);
+    }
+
+    /**
+     * Returns the watermarks of the database of the given session.
+     */
+    public static synchronized SampleWatermarks get(DaoSession session) {
+        SQLiteDatabase db = session.getDatabase();
+        SampleWatermarks watermarks = instances.get(db);
+        if (watermarks == null) {
+            watermarks = new SampleWatermarks(db);
+            instances.put(db, watermarks);
+        }
+        return watermarks;
+    }
+
+    /**
+     * Returns a copy of the watermark of the device in the given sample table, or null
+     * if it has not been loaded yet.
+     */
+    @Nullable
+    public synchronized SampleWatermark get(long deviceId, String sampleTable) {
+        SampleWatermark watermark = watermarks.get(getKey(deviceId, sampleTable));
+        return watermark != null ? copy(watermark) : null;
+    }
+
+    /**
+     * Adds a watermark that was loaded from the database, unless there already is one for
+     * the device and table, and returns a copy of the one in use.
+     */
+    public synchronized SampleWatermark add(SampleWatermark loaded) {
+        String key = getKey(loaded.getDeviceId(), loaded.getSampleTable());
+        SampleWatermark watermark = watermarks.get(key);
+        if (watermark == null) {
+            watermark = copy(loaded);
+            watermarks.put(key, watermark);
+        }
+        return copy(watermark);
+    }
+
+    /**
+     * Returns the end of the last aggregate of the device in seconds, or null if it has not
+     * been set yet.
+     */
+    @Nullable
+    public synchronized Integer getRolledUpUntil(long deviceId) {
+        return rolledUpUntil.get(deviceId);
+    }
+
+    public synchronized void setRolledUpUntil(long deviceId, int timestamp) {
+        rolledUpUntil.put(deviceId, timestamp);
+    }
+
+    /**
+     * Replaces the watermark with the given, changed one. Has to be called within the
+     * transaction that changed the samples from timestamp_from to timestamp_to (inclusive).
+     */
+    public synchronized void update(DaoSession session, SampleWatermark watermark, int timestamp_from, int timestamp_to) {
+        String key = getKey(watermark.getDeviceId(), watermark.getSampleTable());
+        if (changed.add(key)) {
+            SampleWatermark outdated = copy(watermark);
+            outdated.setRowCount(-1);
+            session.getSampleWatermarkDao().update(outdated);
+            session.getSampleWatermarkDao().detach(outdated);
+        }
+        watermarks.put(key, copy(watermark));
+
+        int[] range = changedRanges.get(watermark.getDeviceId());
+        if (range == null) {
+            changedRanges.put(watermark.getDeviceId(), new int[]{timestamp_from, timestamp_to});
+        } else {
+            range[0] = Math.min(range[0], timestamp_from);
+            range[1] = Math.max(range[1], timestamp_to);
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Whether samples of the device from timestamp_from to timestamp_to (inclusive) have
+     * changed since the last flush.
+     */
+    public synchronized boolean isChanged(long deviceId, int timestamp_from, int timestamp_to) {
+        int[] range = changedRanges.get(deviceId);
+        return range != null && range[0] <= timestamp_to && range[1] >= timestamp_from;
+    }
+
+    /**
+     * Writes the changed watermarks to the database and updates the sleep nights of the
+     * changed ranges, see {@link SleepNightCache#update(DaoSession, long, int, int)}.
+     */
+    public synchronized void flush(final DaoSession session) {
+        if (flushFuture != null) {
+            flushFuture.cancel(false);
+            flushFuture = null;
+        }
+        if (changed.isEmpty() && changedRanges.isEmpty()) {
+            return;
+        }
+        final List<SampleWatermark> toStore = new ArrayList<>(changed.size());
+        for (String key : changed) {
+            toStore.add(copy(watermarks.get(key)));
+        }
+        session.runInTx(new Runnable() {
+            @Override
+            public void run() {
+                session.getSampleWatermarkDao().updateInTx(toStore);
+                for (Map.Entry<Long, int[]> entry : changedRanges.entrySet()) {
+                    SleepNightCache.update(session, entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+                }
+            }
+        });
+        session.getSampleWatermarkDao().detachAll();
+        changed.clear();
+        changedRanges.clear();
+    }
+
+    private void scheduleFlush() {
+        if (GBEnvironment.env().isLocalTest()) {
+            // tests flush explicitly, they hold the database lock the whole time
+            return;
+        }
+        if (flushFuture != null) {
+            flushFuture.cancel(false);
+        }
+        flushFuture = GBScheduler.getInstance().schedule("flush sample watermarks", new Runnable() {
+            @Override
+            public void run() {
+                try (DBHandler handler = GBApplication.acquireDB()) {
+                    if (handler.getDatabase() == database.get()) {
+                        flush(handler.getDaoSession());
+                    }
+                } catch (Exception ex) {
+                    LOG.warn("Unable to flush sample watermarks", ex);
+                }
+            }
+        }, FLUSH_DELAY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static String getKey(long deviceId, String sampleTable) {
+        return sampleTable + ":" + deviceId;
+    }
+
+    private static SampleWatermark copy(SampleWatermark watermark) {
+        SampleWatermark copy = new SampleWatermark();
+        copy.setId(watermark.getId());
+        copy.setDeviceId(watermark.getDeviceId());
+        copy.setSampleTable(watermark.getSampleTable());
+        copy.setEarliestTimestamp(watermark.getEarliestTimestamp());
+        copy.setLatestTimestamp(watermark.getLatestTimestamp());
+        copy.setRowCount(watermark.getRowCount());
+        return copy;
+    }
+}
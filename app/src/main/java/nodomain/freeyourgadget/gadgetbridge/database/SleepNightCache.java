@@ -0,0 +1,278 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import nodomain.freeyourgadget.gadgetbridge.devices.DeviceCoordinator;
+import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
+import nodomain.freeyourgadget.gadgetbridge.entities.Device;
+import nodomain.freeyourgadget.gadgetbridge.entities.SleepNight;
+import nodomain.freeyourgadget.gadgetbridge.entities.SleepNightDao;
+import nodomain.freeyourgadget.gadgetbridge.entities.SleepNightSession;
+import nodomain.freeyourgadget.gadgetbridge.entities.SleepNightSessionDao;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityStatistics;
+import nodomain.freeyourgadget.gadgetbridge.model.SleepSession;
+import nodomain.freeyourgadget.gadgetbridge.model.SleepSessionDetector;
+import nodomain.freeyourgadget.gadgetbridge.util.DeviceHelper;
+
+/**
+ * Provides the sleep of single nights. The light and deep sleep totals are the durations of
+ * all sleep samples of the night, as calculated by {@link ActivityStatistics}, the sessions
+ * come from the {@link SleepSessionDetector}. Complete nights, that is, nights with samples
+ * after their end, are stored together with their sessions when samples are written, see
+ * {@link #update(DaoSession, long, int, int)}, which happens when the
+ * {@link SampleWatermarks} are flushed. Nights that are not stored yet are analyzed when
+ * they are read, and stored if they are complete by then.
+ */
+public class SleepNightCache {
+    private static final Logger LOG = LoggerFactory.getLogger(SleepNightCache.class);
+
+    public static final int NIGHT_LENGTH = 24 * 60 * 60;
+    /**
+     * Nights start at noon of the previous day.
+     */
+    private static final int NIGHT_OFFSET_HOURS = -12;
+
+    private final DaoSession session;
+    private final GBDevice gbDevice;
+    private final SampleProvider<? extends ActivitySample> provider;
+    private Device device;
+    private int latestSampleTimestamp = -1;
+
+    public SleepNightCache(DaoSession session, GBDevice gbDevice, SampleProvider<? extends ActivitySample> provider) {
+        this.session = session;
+        this.gbDevice = gbDevice;
+        this.provider = provider;
+    }
+
+    /**
+     * Returns the start in seconds of the night that ends on the given day.
+     */
+    public static int getNightStart(Calendar day) {
+        day = (Calendar) day.clone(); // do not modify the caller's argument
+        day.set(Calendar.HOUR_OF_DAY, 0);
+        day.set(Calendar.MINUTE, 0);
+        day.set(Calendar.SECOND, 0);
+        day.add(Calendar.HOUR, NIGHT_OFFSET_HOURS);
+        return (int) (day.getTimeInMillis() / 1000);
+    }
+
+    /**
+     * Returns the sleep of the night whose 24h window starts at the given timestamp.
+     * The returned entity is not necessarily persisted, incomplete nights are analyzed
+     * every time.
+     * @param nightStart the start of the night in seconds
+     */
+    public SleepNight getNight(int nightStart) {
+        SleepNight night = loadNight(nightStart);
+        if (night != null) {
+            return night;
+        }
+        List<SleepSession> sessions = new ArrayList<>();
+        night = analyze(provider, nightStart, sessions);
+        Device device = getDevice();
+        if (device != null && getLatestTimestamp() >= nightStart + NIGHT_LENGTH) {
+            try {
+                store(session, device.getId(), night, sessions);
+            } catch (Exception ex) {
+                LOG.warn("Unable to store sleep night " + nightStart, ex);
+            }
+        }
+        return night;
+    }
+
+    /**
+     * Returns the sleep sessions of the night whose 24h window starts at the given timestamp,
+     * in chronological order.
+     * @param nightStart the start of the night in seconds
+     */
+    public List<SleepSession> getSessions(int nightStart) {
+        List<SleepSession> sessions = new ArrayList<>();
+        SleepNight night = loadNight(nightStart);
+        if (night == null) {
+            analyze(provider, nightStart, sessions);
+            return sessions;
+        }
+        SleepNightSessionDao sessionDao = session.getSleepNightSessionDao();
+        List<SleepNightSession> stored = sessionDao.queryBuilder().where(
+                SleepNightSessionDao.Properties.DeviceId.eq(night.getDeviceId()),
+                SleepNightSessionDao.Properties.NightStart.eq(nightStart))
+                .orderAsc(SleepNightSessionDao.Properties.SleepStart).build().list();
+        sessionDao.detachAll();
+        for (SleepNightSession storedSession : stored) {
+            sessions.add(new SleepSession(storedSession.getSleepStart(), storedSession.getSleepEnd(),
+                    storedSession.getLightSleepSeconds(), storedSession.getDeepSleepSeconds()));
+        }
+        return sessions;
+    }
+
+    /**
+     * Analyzes the nights of the device that overlap the given range again and stores the
+     * complete ones, the others are deleted. Has to be called whenever samples in that
+     * range are added or replaced.
+     * @param timestamp_from the start of the changed range in seconds (inclusive)
+     * @param timestamp_to the end of the changed range in seconds (inclusive)
+     */
+    public static void update(DaoSession session, long deviceId, int timestamp_from, int timestamp_to) {
+        invalidate(session, deviceId, timestamp_from, timestamp_to);
+        Device dbDevice = session.getDeviceDao().load(deviceId);
+        if (dbDevice == null) {
+            return;
+        }
+        GBDevice gbDevice = DeviceHelper.getInstance().toGBDevice(dbDevice);
+        DeviceCoordinator coordinator = DeviceHelper.getInstance().getCoordinator(gbDevice);
+        if (!coordinator.supportsActivityTracking()) {
+            return;
+        }
+        SampleProvider<? extends ActivitySample> provider = coordinator.getSampleProvider(gbDevice, session);
+
+        int latestTimestamp = getLatestTimestamp(provider);
+        Calendar day = Calendar.getInstance();
+        day.setTimeInMillis(timestamp_from * 1000L);
+        // the night of the previous day may still overlap
+        day.add(Calendar.DAY_OF_MONTH, -1);
+        for (int nightStart = getNightStart(day); nightStart <= timestamp_to; nightStart = getNightStart(day)) {
+            if (nightStart + NIGHT_LENGTH > timestamp_from) {
+                if (latestTimestamp < nightStart + NIGHT_LENGTH) {
+                    // incomplete, and so are the following nights
+                    break;
+                }
+                List<SleepSession> sessions = new ArrayList<>();
+                SleepNight night = analyze(provider, nightStart, sessions);
+                store(session, deviceId, night, sessions);
+            }
+            day.add(Calendar.DAY_OF_MONTH, 1);
+        }
+    }
+
+    /**
+     * Deletes the stored nights of the device that overlap the given range, together with
+     * their sessions.
+     * @param timestamp_from the start of the range in seconds (inclusive)
+     * @param timestamp_to the end of the range in seconds (inclusive)
+     */
+    public static void invalidate(DaoSession session, long deviceId, int timestamp_from, int timestamp_to) {
+        // the earliest night start that overlaps, without overflowing
+        long nightStartFrom = (long) timestamp_from - NIGHT_LENGTH;
+        session.getSleepNightDao().queryBuilder().where(
+                SleepNightDao.Properties.DeviceId.eq(deviceId),
+                SleepNightDao.Properties.NightStart.gt(nightStartFrom),
+                SleepNightDao.Properties.NightStart.le(timestamp_to))
+                .buildDelete().executeDeleteWithoutDetachingEntities();
+        session.getSleepNightSessionDao().queryBuilder().where(
+                SleepNightSessionDao.Properties.DeviceId.eq(deviceId),
+                SleepNightSessionDao.Properties.NightStart.gt(nightStartFrom),
+                SleepNightSessionDao.Properties.NightStart.le(timestamp_to))
+                .buildDelete().executeDeleteWithoutDetachingEntities();
+        session.getSleepNightDao().detachAll();
+        session.getSleepNightSessionDao().detachAll();
+    }
+
+    /**
+     * Returns the stored night, or null if it is not stored.
+     */
+    private SleepNight loadNight(int nightStart) {
+        Device device = getDevice();
+        if (device == null) {
+            return null;
+        }
+        SampleWatermarks watermarks = SampleWatermarks.get(session);
+        if (watermarks.isChanged(device.getId(), nightStart, nightStart + NIGHT_LENGTH - 1)) {
+            // the stored night may be outdated
+            watermarks.flush(session);
+        }
+        SleepNight night = session.getSleepNightDao().queryBuilder().where(
+                SleepNightDao.Properties.DeviceId.eq(device.getId()),
+                SleepNightDao.Properties.NightStart.eq(nightStart)).unique();
+        session.getSleepNightDao().detachAll();
+        return night;
+    }
+
+    private static SleepNight analyze(SampleProvider<? extends ActivitySample> provider, int nightStart, List<SleepSession> sessions) {
+        List<? extends ActivitySample> samples = provider.getAllActivitySamples(nightStart, nightStart + NIGHT_LENGTH - 1);
+        ActivityStatistics statistics = new ActivityStatistics();
+        SleepSessionDetector detector = new SleepSessionDetector();
+        for (ActivitySample sample : samples) {
+            statistics.add(sample);
+            detector.consume(sample);
+        }
+        sessions.addAll(detector.finish());
+
+        SleepNight night = new SleepNight();
+        night.setNightStart(nightStart);
+        night.setLightSleepSeconds(statistics.getSeconds(ActivityKind.TYPE_LIGHT_SLEEP));
+        night.setDeepSleepSeconds(statistics.getSeconds(ActivityKind.TYPE_DEEP_SLEEP));
+        night.setSessionCount(sessions.size());
+        return night;
+    }
+
+    private static void store(DaoSession session, long deviceId, SleepNight night, List<SleepSession> sessions) {
+        night.setDeviceId(deviceId);
+        List<SleepNightSession> storedSessions = new ArrayList<>(sessions.size());
+        for (SleepSession sleepSession : sessions) {
+            SleepNightSession storedSession = new SleepNightSession();
+            storedSession.setDeviceId(deviceId);
+            storedSession.setNightStart(night.getNightStart());
+            storedSession.setSleepStart(sleepSession.getSleepStartTimestamp());
+            storedSession.setSleepEnd(sleepSession.getSleepEndTimestamp());
+            storedSession.setLightSleepSeconds(sleepSession.getLightSleepDuration());
+            storedSession.setDeepSleepSeconds(sleepSession.getDeepSleepDuration());
+            storedSessions.add(storedSession);
+        }
+        session.getSleepNightSessionDao().queryBuilder().where(
+                SleepNightSessionDao.Properties.DeviceId.eq(deviceId),
+                SleepNightSessionDao.Properties.NightStart.eq(night.getNightStart()))
+                .buildDelete().executeDeleteWithoutDetachingEntities();
+        session.getSleepNightDao().insertOrReplace(night);
+        session.getSleepNightSessionDao().insertInTx(storedSessions);
+        session.getSleepNightDao().detachAll();
+        session.getSleepNightSessionDao().detachAll();
+    }
+
+    private int getLatestTimestamp() {
+        if (latestSampleTimestamp < 0) {
+            latestSampleTimestamp = getLatestTimestamp(provider);
+        }
+        return latestSampleTimestamp;
+    }
+
+    /**
+     * Returns the timestamp of the latest sample, or 0 if there is none. Nights that end
+     * before it are complete.
+     */
+    private static int getLatestTimestamp(SampleProvider<? extends ActivitySample> provider) {
+        ActivitySample latestSample = provider.getLatestActivitySample();
+        return latestSample != null ? latestSample.getTimestamp() : 0;
+    }
+
+    private Device getDevice() {
+        if (device == null) {
+            device = DBHelper.findDevice(gbDevice, session);
+        }
+        return device;
+    }
+}
@@ -0,0 +1,75 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.database.schema;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.List;
+
+import nodomain.freeyourgadget.gadgetbridge.database.BackgroundMigration;
+import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
+import nodomain.freeyourgadget.gadgetbridge.database.DBUpdateScript;
+import nodomain.freeyourgadget.gadgetbridge.devices.AbstractSampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.devices.DeviceCoordinator;
+import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.entities.Device;
+import nodomain.freeyourgadget.gadgetbridge.entities.DeviceDao;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.util.DeviceHelper;
+
+/*
+ * adds sample watermarks, the SampleWatermark table itself is created by DaoMaster.createAllTables().
+ * The watermarks of existing samples are computed in the background, one device per batch,
+ * the position is the id of the last device.
+ */
+
+public class GadgetbridgeUpdate_25 implements DBUpdateScript, BackgroundMigration {
+    @Override
+    public void upgradeSchema(SQLiteDatabase db) {
+    }
+
+    @Override
+    public void downgradeSchema(SQLiteDatabase db) {
+    }
+
+    @Override
+    public long migrateBatch(DBHandler db, long position) {
+        List<Device> devices = db.getDaoSession().getDeviceDao().queryBuilder()
+                .where(DeviceDao.Properties.Id.gt(position))
+                .orderAsc(DeviceDao.Properties.Id)
+                .limit(1).list();
+        if (devices.isEmpty()) {
+            return DONE;
+        }
+        Device dbDevice = devices.get(0);
+        GBDevice device = DeviceHelper.getInstance().toGBDevice(dbDevice);
+        DeviceCoordinator coordinator = DeviceHelper.getInstance().getCoordinator(device);
+        if (coordinator.supportsActivityTracking()) {
+            SampleProvider<?> provider = coordinator.getSampleProvider(device, db.getDaoSession());
+            if (provider instanceof AbstractSampleProvider) {
+                ((AbstractSampleProvider<?>) provider).getWatermark();
+            }
+        }
+        return dbDevice.getId();
+    }
+
+    @Override
+    public long getRemainingBatches(DBHandler db, long position) {
+        return db.getDaoSession().getDeviceDao().queryBuilder()
+                .where(DeviceDao.Properties.Id.gt(position)).count();
+    }
+}
@@ -0,0 +1,39 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.database.schema;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import nodomain.freeyourgadget.gadgetbridge.database.DBUpdateScript;
+import nodomain.freeyourgadget.gadgetbridge.entities.SleepNightDao;
+
+/*
+ * adds the sessions of stored sleep nights, the SleepNightSession table itself is created by
+ * DaoMaster.createAllTables(). The nights stored so far have no sessions, so they are deleted
+ * and analyzed again.
+ */
+
+public class GadgetbridgeUpdate_26 implements DBUpdateScript {
+    @Override
+    public void upgradeSchema(SQLiteDatabase db) {
+        db.execSQL("DELETE FROM " + SleepNightDao.TABLENAME);
+    }
+
+    @Override
+    public void downgradeSchema(SQLiteDatabase db) {
+    }
+}
@@ -22,6 +22,8 @@ import android.widget.Toast;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import nodomain.freeyourgadget.gadgetbridge.database.BackgroundMigration;
+import nodomain.freeyourgadget.gadgetbridge.database.BackgroundMigrator;
 import nodomain.freeyourgadget.gadgetbridge.database.DBUpdateScript;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
 
@@ -41,6 +43,10 @@ public class SchemaMigration {
                 if (updater != null) {
                     LOG.info("upgrading activity database to version " + i);
                     updater.upgradeSchema(db);
+                    if (updater instanceof BackgroundMigration) {
+                        // the data-heavy part runs after the database has been opened
+                        BackgroundMigrator.add(((BackgroundMigration) updater).getClass());
+                    }
                 }
             }
             LOG.info("activity database is now at version " + newVersion);
@@ -17,9 +17,22 @@
     along with this program.  If not, see <http://www.gnu.org/licenses/>. */
 package nodomain.freeyourgadget.gadgetbridge.devices;
 
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -27,20 +40,35 @@ import de.greenrobot.dao.AbstractDao;
 import de.greenrobot.dao.Property;
 import de.greenrobot.dao.query.QueryBuilder;
 import de.greenrobot.dao.query.WhereCondition;
+import nodomain.freeyourgadget.gadgetbridge.database.SleepNightCache;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
+import nodomain.freeyourgadget.gadgetbridge.database.SampleWatermarks;
 import nodomain.freeyourgadget.gadgetbridge.entities.AbstractActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.entities.ActivitySampleAggregate;
+import nodomain.freeyourgadget.gadgetbridge.entities.ActivitySampleAggregateDao;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
 import nodomain.freeyourgadget.gadgetbridge.entities.Device;
+import nodomain.freeyourgadget.gadgetbridge.entities.SampleWatermark;
+import nodomain.freeyourgadget.gadgetbridge.entities.SampleWatermarkDao;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
 
 /**
  * Base class for all sample providers. A Sample provider is device specific and provides
  * access to the device specific samples. There are both read and write operations.
+ * <p/>
+ * Old samples may have been rolled up into {@link ActivitySampleAggregate}s, see
+ * {@link #rollUp(int, int, int)}. Queries return one sample per aggregate then, at the start
+ * of its bucket, so rolled up data keeps its real resolution.
  * @param <T> the sample type
  */
 public abstract class AbstractSampleProvider<T extends AbstractActivitySample> implements SampleProvider<T> {
+    private static final Logger LOG = LoggerFactory.getLogger(AbstractSampleProvider.class);
+
     private static final WhereCondition[] NO_CONDITIONS = new WhereCondition[0];
+    private static final List<String> BULK_COLUMNS = Arrays.asList("timestamp", "deviceId", "userId", "rawKind", "rawIntensity", "steps", "heartRate");
+    private static final Map<String, SQLiteStatement> statements = new HashMap<>();
+    private static SQLiteDatabase statementsDatabase;
     private final DaoSession mSession;
     private final GBDevice mDevice;
 
@@ -81,13 +109,273 @@ public abstract class AbstractSampleProvider<T extends AbstractActivitySample> i
     }
 
     @Override
-    public void addGBActivitySample(T activitySample) {
-        getSampleDao().insertOrReplace(activitySample);
+    public void addGBActivitySample(final T activitySample) {
+        writeSamples(activitySample.getDeviceId(), activitySample.getTimestamp(), activitySample.getTimestamp(), new SampleWrite() {
+            @Override
+            public long write() {
+                return insertOrReplace(activitySample) ? 1 : 0;
+            }
+        });
     }
 
     @Override
-    public void addGBActivitySamples(T[] activitySamples) {
-        getSampleDao().insertOrReplaceInTx(activitySamples);
+    public void addGBActivitySamples(final T[] activitySamples) {
+        if (activitySamples.length == 0) {
+            return;
+        }
+        int minTimestamp = Integer.MAX_VALUE;
+        int maxTimestamp = Integer.MIN_VALUE;
+        for (T sample : activitySamples) {
+            minTimestamp = Math.min(minTimestamp, sample.getTimestamp());
+            maxTimestamp = Math.max(maxTimestamp, sample.getTimestamp());
+        }
+        writeSamples(activitySamples[0].getDeviceId(), minTimestamp, maxTimestamp, new SampleWrite() {
+            @Override
+            public long write() {
+                long added = 0;
+                for (T sample : activitySamples) {
+                    if (insertOrReplace(sample)) {
+                        added++;
+                    }
+                }
+                return added;
+            }
+        });
+    }
+
+    /**
+     * Binds the samples directly to compiled INSERT statements, which are reused for further
+     * batches, bypassing the session's identity scope. Falls back to adding entities if the sample table has columns that
+     * the batch does not provide.
+     */
+    @Override
+    public void addGBActivitySamples(final SampleBatch batch) {
+        if (batch.size() == 0) {
+            return;
+        }
+        final long deviceId = DBHelper.getDevice(getDevice(), getSession()).getId();
+        final long userId = DBHelper.getUser(getSession()).getId();
+
+        Property[] properties = getSampleDao().getProperties();
+        StringBuilder columns = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+        boolean entitiesNeeded = false;
+        final int[] sources = new int[properties.length];
+        for (int i = 0; i < properties.length; i++) {
+            sources[i] = BULK_COLUMNS.indexOf(properties[i].name);
+            entitiesNeeded |= sources[i] < 0;
+            columns.append(i == 0 ? "\"" : ",\"").append(properties[i].columnName).append('"');
+            values.append(i == 0 ? "?" : ",?");
+        }
+        final String into = " INTO " + getSampleDao().getTablename() + " (" + columns + ") VALUES (" + values + ")";
+        final boolean useEntities = entitiesNeeded;
+
+        int minTimestamp = Integer.MAX_VALUE;
+        int maxTimestamp = Integer.MIN_VALUE;
+        for (int row = 0; row < batch.size(); row++) {
+            minTimestamp = Math.min(minTimestamp, batch.getTimestamp(row));
+            maxTimestamp = Math.max(maxTimestamp, batch.getTimestamp(row));
+        }
+        writeSamples(deviceId, minTimestamp, maxTimestamp, new SampleWrite() {
+            @Override
+            public long write() {
+                if (useEntities) {
+                    return addSampleEntities(batch, deviceId, userId);
+                }
+                long added = 0;
+                SQLiteStatement insert = getStatement("INSERT OR IGNORE" + into);
+                SQLiteStatement replace = getStatement("INSERT OR REPLACE" + into);
+                for (int row = 0; row < batch.size(); row++) {
+                    for (int i = 0; i < sources.length; i++) {
+                        insert.bindLong(i + 1, getBulkValue(batch, row, sources[i], deviceId, userId));
+                    }
+                    if (insert.executeInsert() != -1) {
+                        added++;
+                        continue;
+                    }
+                    // the sample exists already
+                    for (int i = 0; i < sources.length; i++) {
+                        replace.bindLong(i + 1, getBulkValue(batch, row, sources[i], deviceId, userId));
+                    }
+                    replace.executeInsert();
+                }
+                // entities in the identity scope may be outdated now
+                getSampleDao().detachAll();
+                return added;
+            }
+        });
+    }
+
+    /**
+     * Returns the compiled statement for the given SQL, which is kept for all providers as
+     * long as the database is not replaced. Compiled statements must not be used by several
+     * threads at once, but samples are only written while holding the database lock.
+     */
+    private SQLiteStatement getStatement(String sql) {
+        SQLiteDatabase db = getSession().getDatabase();
+        synchronized (statements) {
+            if (statementsDatabase != db) {
+                // the previous database has been closed
+                for (SQLiteStatement statement : statements.values()) {
+                    statement.close();
+                }
+                statements.clear();
+                statementsDatabase = db;
+            }
+            SQLiteStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = db.compileStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+    }
+
+    private static long getBulkValue(SampleBatch batch, int row, int column, long deviceId, long userId) {
+        switch (column) {
+            case 0:
+                return batch.getTimestamp(row);
+            case 1:
+                return deviceId;
+            case 2:
+                return userId;
+            case 3:
+                return batch.getRawKind(row);
+            case 4:
+                return batch.getRawIntensity(row);
+            case 5:
+                return batch.getSteps(row);
+            default:
+                return batch.getHeartRate(row);
+        }
+    }
+
+    private long addSampleEntities(SampleBatch batch, long deviceId, long userId) {
+        long added = 0;
+        for (int row = 0; row < batch.size(); row++) {
+            T sample = createActivitySample();
+            sample.setTimestamp(batch.getTimestamp(row));
+            sample.setDeviceId(deviceId);
+            sample.setUserId(userId);
+            sample.setRawKind(batch.getRawKind(row));
+            sample.setRawIntensity(batch.getRawIntensity(row));
+            sample.setSteps(batch.getSteps(row));
+            sample.setHeartRate(batch.getHeartRate(row));
+            if (insertOrReplace(sample)) {
+                added++;
+            }
+        }
+        getSampleDao().detachAll();
+        return added;
+    }
+
+    /**
+     * Inserts the sample, or replaces the existing one with the same timestamp.
+     * @return whether the sample was added rather than replaced
+     */
+    private boolean insertOrReplace(T sample) {
+        try {
+            getSampleDao().insert(sample);
+            return true;
+        } catch (SQLiteConstraintException ex) {
+            getSampleDao().insertOrReplace(sample);
+            return false;
+        }
+    }
+
+    /**
+     * Returns the range and number of the samples of this provider's device, or null if
+     * there are none. It is computed from the samples once and then maintained in memory
+     * whenever samples are added or rolled up, see {@link SampleWatermarks}, so samples must
+     * only be written through this class.
+     */
+    @Nullable
+    public SampleWatermark getWatermark() {
+        Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
+        if (dbDevice == null) {
+            return null;
+        }
+        SampleWatermark watermark = loadWatermark(dbDevice.getId());
+        return watermark.getRowCount() > 0 ? watermark : null;
+    }
+
+    /**
+     * Returns a copy of the watermark of the device, which is loaded or computed first if
+     * it is not in memory yet.
+     */
+    private SampleWatermark loadWatermark(long deviceId) {
+        String table = getSampleDao().getTablename();
+        SampleWatermarks watermarks = SampleWatermarks.get(getSession());
+        SampleWatermark watermark = watermarks.get(deviceId, table);
+        if (watermark != null) {
+            return watermark;
+        }
+
+        SampleWatermarkDao watermarkDao = getSession().getSampleWatermarkDao();
+        watermark = watermarkDao.queryBuilder()
+                .where(SampleWatermarkDao.Properties.DeviceId.eq(deviceId), SampleWatermarkDao.Properties.SampleTable.eq(table))
+                .build().unique();
+        if (watermark == null || watermark.getRowCount() < 0) {
+            boolean readOnly = getSession().getDatabase().isReadOnly();
+            if (watermark == null) {
+                watermark = new SampleWatermark();
+                watermark.setDeviceId(deviceId);
+                watermark.setSampleTable(table);
+            } else if (!readOnly) {
+                // changes got lost, the stored nights may be outdated as well
+                LOG.info("Recomputing outdated watermark of " + table + " for device " + deviceId);
+                SleepNightCache.invalidate(getSession(), deviceId, 0, Integer.MAX_VALUE);
+            }
+            String where = " FROM " + table + " WHERE " + getDeviceIdentifierSampleProperty().columnName + " = " + deviceId;
+            String timestampColumn = getTimestampSampleProperty().columnName;
+            SQLiteDatabase db = getSession().getDatabase();
+            watermark.setRowCount(DatabaseUtils.longForQuery(db, "SELECT COUNT(*)" + where, null));
+            if (watermark.getRowCount() > 0) {
+                watermark.setEarliestTimestamp((int) DatabaseUtils.longForQuery(db, "SELECT MIN(" + timestampColumn + ")" + where, null));
+                watermark.setLatestTimestamp((int) DatabaseUtils.longForQuery(db, "SELECT MAX(" + timestampColumn + ")" + where, null));
+            }
+            if (readOnly) {
+                // the watermark is only stored by the writer, which may have pending changes
+                watermarkDao.detachAll();
+                return watermark;
+            }
+            watermarkDao.insertOrReplace(watermark);
+        }
+        watermarkDao.detach(watermark);
+        return watermarks.add(watermark);
+    }
+
+    /**
+     * Writes samples.
+     */
+    private interface SampleWrite {
+        /**
+         * @return the number of samples that were added rather than replaced
+         */
+        long write();
+    }
+
+    /**
+     * Runs the given write of samples from minTimestamp to maxTimestamp in a transaction
+     * and updates the watermark in memory accordingly.
+     */
+    private void writeSamples(final long deviceId, final int minTimestamp, final int maxTimestamp, final SampleWrite write) {
+        final SampleWatermark watermark = loadWatermark(deviceId);
+        getSession().runInTx(new Runnable() {
+            @Override
+            public void run() {
+                long added = write.write();
+                if (watermark.getRowCount() == 0) {
+                    watermark.setEarliestTimestamp(minTimestamp);
+                    watermark.setLatestTimestamp(maxTimestamp);
+                } else {
+                    watermark.setEarliestTimestamp(Math.min(watermark.getEarliestTimestamp(), minTimestamp));
+                    watermark.setLatestTimestamp(Math.max(watermark.getLatestTimestamp(), maxTimestamp));
+                }
+                watermark.setRowCount(watermark.getRowCount() + added);
+                SampleWatermarks.get(getSession()).update(getSession(), watermark, minTimestamp, maxTimestamp);
+            }
+        });
     }
 
     @Nullable
@@ -99,8 +387,12 @@ public abstract class AbstractSampleProvider<T extends AbstractActivitySample> i
             // no device, no sample
             return null;
         }
+        SampleWatermark watermark = loadWatermark(dbDevice.getId());
+        if (watermark.getRowCount() == 0) {
+            return null;
+        }
         Property deviceProperty = getDeviceIdentifierSampleProperty();
-        qb.where(deviceProperty.eq(dbDevice.getId())).orderDesc(getTimestampSampleProperty()).limit(1);
+        qb.where(deviceProperty.eq(dbDevice.getId()), getTimestampSampleProperty().eq(watermark.getLatestTimestamp()));
         List<T> samples = qb.build().list();
         if (samples.isEmpty()) {
             return null;
@@ -122,10 +414,78 @@ public abstract class AbstractSampleProvider<T extends AbstractActivitySample> i
             // no device, no samples
             return Collections.emptyList();
         }
-        Property deviceProperty = getDeviceIdentifierSampleProperty();
-        qb.where(deviceProperty.eq(dbDevice.getId()), timestampProperty.ge(timestamp_from))
-            .where(timestampProperty.le(timestamp_to), getClauseForActivityType(qb, activityType));
-        List<T> samples = qb.build().list();
+        List<T> samples;
+        SampleWatermark watermark = loadWatermark(dbDevice.getId());
+        if (watermark.getRowCount() > 0 && timestamp_from <= watermark.getLatestTimestamp() && timestamp_to >= watermark.getEarliestTimestamp()) {
+            Property deviceProperty = getDeviceIdentifierSampleProperty();
+            qb.where(deviceProperty.eq(dbDevice.getId()), timestampProperty.ge(timestamp_from))
+                .where(timestampProperty.le(timestamp_to), getClauseForActivityType(qb, activityType));
+            samples = qb.build().list();
+            for (T sample : samples) {
+                sample.setProvider(this);
+            }
+            detachFromSession();
+        } else {
+            // nothing stored in that range
+            samples = new ArrayList<>();
+        }
+        if (supportsRollUp() && timestamp_from < getRolledUpUntil(dbDevice.getId())) {
+            samples = addAggregatedSamples(samples, dbDevice, timestamp_from, timestamp_to, activityType);
+        }
+        return samples;
+    }
+
+    /**
+     * Returns up to limit samples until timestamp_to (inclusive) that were written after the
+     * sample with the given rowid, in the order in which they were written. Samples are
+     * replaced by writing them again, so the samples can be read page by page with the rowid
+     * of the last sample as the next rowid_after, and later on only what was added or
+     * replaced since then is returned, whatever its timestamp. Deleted samples, i.e. rolled
+     * up ones, are not reported and aggregates are not included.
+     * @param rowids receives the rowid of every returned sample, in the same order
+     */
+    public List<T> getActivitySamplesPage(long rowid_after, int timestamp_to, int limit, List<Long> rowids) {
+        Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
+        if (dbDevice == null) {
+            return Collections.emptyList();
+        }
+        String device = "T.\"" + getDeviceIdentifierSampleProperty().columnName + "\" = ?";
+        String timestamp = "T.\"" + getTimestampSampleProperty().columnName + "\"";
+        String table = getSampleDao().getTablename();
+        String deviceId = String.valueOf(dbDevice.getId());
+        // no transaction, so this works with read-only databases too
+        List<Long> pageRowids = new ArrayList<>();
+        List<Integer> pageTimestamps = new ArrayList<>();
+        Cursor cursor = getSession().getDatabase().rawQuery("SELECT T.rowid, " + timestamp + " FROM " + table + " T WHERE " + device
+                + " AND T.rowid > ? AND " + timestamp + " <= ? ORDER BY T.rowid LIMIT " + limit,
+                new String[]{deviceId, String.valueOf(rowid_after), String.valueOf(timestamp_to)});
+        try {
+            while (cursor.moveToNext()) {
+                pageRowids.add(cursor.getLong(0));
+                pageTimestamps.add(cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        if (pageRowids.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // samples that were replaced in the meantime got a new rowid and come with a later page
+        List<T> pageSamples = getSampleDao().queryRaw("WHERE " + device + " AND T.rowid > ? AND T.rowid <= ? AND " + timestamp + " <= ? ORDER BY T.rowid",
+                deviceId, String.valueOf(rowid_after), String.valueOf(pageRowids.get(pageRowids.size() - 1)), String.valueOf(timestamp_to));
+        List<T> samples = new ArrayList<>(pageSamples.size());
+        int row = 0;
+        for (T sample : pageSamples) {
+            while (row < pageTimestamps.size() && pageTimestamps.get(row) != sample.getTimestamp()) {
+                row++;
+            }
+            if (row == pageTimestamps.size()) {
+                break;
+            }
+            samples.add(sample);
+            rowids.add(pageRowids.get(row++));
+        }
         for (T sample : samples) {
             sample.setProvider(this);
         }
@@ -133,6 +493,177 @@ public abstract class AbstractSampleProvider<T extends AbstractActivitySample> i
         return samples;
     }
 
+    /**
+     * Whether old samples may be rolled up into aggregates. This needs a raw kind column,
+     * so that the aggregates can be queried by activity type like the samples.
+     */
+    public boolean supportsRollUp() {
+        return getRawKindSampleProperty() != null;
+    }
+
+    /**
+     * Returns the end of the last aggregate in seconds, or 0 if nothing has been rolled up yet.
+     */
+    public int getRolledUpUntil() {
+        Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
+        if (dbDevice == null) {
+            return 0;
+        }
+        return getRolledUpUntil(dbDevice.getId());
+    }
+
+    /**
+     * Returns the end of the last aggregate of the device, which is queried only once and
+     * then kept with the {@link SampleWatermarks}.
+     */
+    private int getRolledUpUntil(long deviceId) {
+        SampleWatermarks watermarks = SampleWatermarks.get(getSession());
+        Integer rolledUpUntil = watermarks.getRolledUpUntil(deviceId);
+        if (rolledUpUntil != null) {
+            return rolledUpUntil;
+        }
+        ActivitySampleAggregateDao aggregateDao = getSession().getActivitySampleAggregateDao();
+        List<ActivitySampleAggregate> latest = aggregateDao.queryBuilder()
+                .where(ActivitySampleAggregateDao.Properties.DeviceId.eq(deviceId))
+                .orderDesc(ActivitySampleAggregateDao.Properties.Timestamp).limit(1).build().list();
+        aggregateDao.detachAll();
+        int result = latest.isEmpty() ? 0 : latest.get(0).getTimestamp() + latest.get(0).getDuration();
+        watermarks.setRolledUpUntil(deviceId, result);
+        return result;
+    }
+
+    /**
+     * Returns the timestamp of the oldest sample at or after the given timestamp, or -1 if
+     * there is none.
+     */
+    public int getOldestSampleTimestamp(int timestamp_from) {
+        Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
+        if (dbDevice == null) {
+            return -1;
+        }
+        QueryBuilder<T> qb = getSampleDao().queryBuilder();
+        qb.where(getDeviceIdentifierSampleProperty().eq(dbDevice.getId()), getTimestampSampleProperty().ge(timestamp_from))
+                .orderAsc(getTimestampSampleProperty()).limit(1);
+        List<T> samples = qb.build().list();
+        detachFromSession();
+        return samples.isEmpty() ? -1 : samples.get(0).getTimestamp();
+    }
+
+    /**
+     * Replaces the samples from timestamp_from (inclusive) to timestamp_to (exclusive) with
+     * aggregates of the given length. Both timestamps must be multiples of the bucket length,
+     * and timestamp_from must not be before {@link #getRolledUpUntil()}.
+     * @return the number of samples that were rolled up
+     */
+    public int rollUp(int timestamp_from, int timestamp_to, int bucketSeconds) {
+        Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
+        if (dbDevice == null || !supportsRollUp()) {
+            return 0;
+        }
+        if (timestamp_from % bucketSeconds != 0 || timestamp_to % bucketSeconds != 0) {
+            throw new IllegalArgumentException("timestamps must be multiples of " + bucketSeconds);
+        }
+        int rolledUpUntil = getRolledUpUntil(dbDevice.getId());
+        if (timestamp_from < rolledUpUntil) {
+            throw new IllegalArgumentException("already rolled up until " + rolledUpUntil);
+        }
+
+        // read through getAllActivitySamples() so that device specific post processing applies
+        List<T> samples = getAllActivitySamples(timestamp_from, timestamp_to - 1);
+        if (samples.isEmpty()) {
+            return 0;
+        }
+        ActivitySampleAggregator aggregator = new ActivitySampleAggregator(bucketSeconds);
+        for (T sample : samples) {
+            aggregator.add(sample);
+        }
+        final List<ActivitySampleAggregate> aggregates = aggregator.finish();
+        ActivitySampleAggregate last = aggregates.get(aggregates.size() - 1);
+
+        final ActivitySampleAggregateDao aggregateDao = getSession().getActivitySampleAggregateDao();
+        final QueryBuilder<T> qb = getSampleDao().queryBuilder();
+        Property timestampProperty = getTimestampSampleProperty();
+        qb.where(getDeviceIdentifierSampleProperty().eq(dbDevice.getId()), timestampProperty.ge(timestamp_from), timestampProperty.lt(timestamp_to));
+        final SampleWatermark watermark = loadWatermark(dbDevice.getId());
+        final int deleted = samples.size();
+        getSession().runInTx(new Runnable() {
+            @Override
+            public void run() {
+                aggregateDao.insertOrReplaceInTx(aggregates);
+                qb.buildDelete().executeDeleteWithoutDetachingEntities();
+                watermark.setRowCount(Math.max(0, watermark.getRowCount() - deleted));
+                if (watermark.getRowCount() > 0) {
+                    watermark.setEarliestTimestamp(getOldestSampleTimestamp(watermark.getEarliestTimestamp()));
+                }
+                SampleWatermarks.get(getSession()).update(getSession(), watermark, timestamp_from, timestamp_to - 1);
+            }
+        });
+        SampleWatermarks.get(getSession()).setRolledUpUntil(dbDevice.getId(), last.getTimestamp() + last.getDuration());
+        aggregateDao.detachAll();
+        detachFromSession();
+        return samples.size();
+    }
+
+    private List<T> addAggregatedSamples(List<T> samples, Device dbDevice, int timestamp_from, int timestamp_to, int activityType) {
+        ActivitySampleAggregateDao aggregateDao = getSession().getActivitySampleAggregateDao();
+        List<ActivitySampleAggregate> aggregates = aggregateDao.queryBuilder()
+                .where(ActivitySampleAggregateDao.Properties.DeviceId.eq(dbDevice.getId()),
+                        ActivitySampleAggregateDao.Properties.Timestamp.ge(timestamp_from),
+                        ActivitySampleAggregateDao.Properties.Timestamp.le(timestamp_to))
+                .orderAsc(ActivitySampleAggregateDao.Properties.Timestamp).build().list();
+        aggregateDao.detachAll();
+        if (aggregates.isEmpty()) {
+            return samples;
+        }
+
+        int[] dbActivityTypes = activityType != ActivityKind.TYPE_ALL ? ActivityKind.mapToDBActivityTypes(activityType, this) : null;
+        List<T> merged = new ArrayList<>(aggregates.size() + samples.size());
+        for (ActivitySampleAggregate aggregate : aggregates) {
+            if (dbActivityTypes == null || contains(dbActivityTypes, aggregate.getRawKind())) {
+                merged.add(createAggregateSample(aggregate));
+            }
+        }
+        merged.addAll(samples);
+        if (!samples.isEmpty()) {
+            // samples synced after their time span had been rolled up
+            Collections.sort(merged, new Comparator<T>() {
+                @Override
+                public int compare(T s1, T s2) {
+                    return s1.getTimestamp() - s2.getTimestamp();
+                }
+            });
+        }
+        return merged;
+    }
+
+    /**
+     * Creates a sample for the whole bucket of the given aggregate, at its start. It has the
+     * most frequent kind, the average intensity and heart rate and the steps of the bucket.
+     * The durations of the other kinds and the heart rate range are only available from the
+     * aggregate itself.
+     */
+    private T createAggregateSample(ActivitySampleAggregate aggregate) {
+        T sample = createActivitySample();
+        sample.setProvider(this);
+        sample.setTimestamp(aggregate.getTimestamp());
+        sample.setDeviceId(aggregate.getDeviceId());
+        sample.setUserId(aggregate.getUserId());
+        sample.setRawKind(aggregate.getRawKind());
+        sample.setRawIntensity(aggregate.getRawIntensity());
+        sample.setSteps(aggregate.getSteps());
+        sample.setHeartRate(aggregate.getHeartRateAvg());
+        return sample;
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int v : values) {
+            if (v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Detaches all samples of this type from the session. Changes to them may not be
      * written back to the database.
@@ -0,0 +1,123 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.devices;
+
+import android.util.SparseIntArray;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nodomain.freeyourgadget.gadgetbridge.activities.HeartRateUtils;
+import nodomain.freeyourgadget.gadgetbridge.entities.AbstractActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.entities.ActivitySampleAggregate;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
+
+/**
+ * Combines consecutive samples into {@link ActivitySampleAggregate}s of a fixed length.
+ * Samples must be added in ascending order of their timestamps.
+ */
+class ActivitySampleAggregator {
+    static final int SECONDS_PER_SAMPLE = 60;
+
+    private final int bucketSeconds;
+    private final HeartRateUtils heartRateUtils = HeartRateUtils.getInstance();
+    private final List<ActivitySampleAggregate> aggregates = new ArrayList<>();
+    private final SparseIntArray kindCounts = new SparseIntArray();
+
+    private ActivitySampleAggregate current;
+    private long intensitySum;
+    private int heartRateSum;
+    private int heartRateCount;
+
+    ActivitySampleAggregator(int bucketSeconds) {
+        this.bucketSeconds = bucketSeconds;
+    }
+
+    void add(AbstractActivitySample sample) {
+        int bucketStart = sample.getTimestamp() - sample.getTimestamp() % bucketSeconds;
+        if (current == null || current.getTimestamp() != bucketStart) {
+            flush();
+            current = new ActivitySampleAggregate();
+            current.setDeviceId(sample.getDeviceId());
+            current.setUserId(sample.getUserId());
+            current.setTimestamp(bucketStart);
+            current.setDuration(bucketSeconds);
+            current.setHeartRateMin(-1);
+            current.setHeartRateMax(-1);
+        }
+
+        current.setSampleCount(current.getSampleCount() + 1);
+        current.setSteps(current.getSteps() + Math.max(0, sample.getSteps()));
+        intensitySum += Math.max(0, sample.getRawIntensity());
+        kindCounts.put(sample.getRawKind(), kindCounts.get(sample.getRawKind()) + 1);
+
+        int heartRate = sample.getHeartRate();
+        if (heartRateUtils.isValidHeartRateValue(heartRate)) {
+            heartRateSum += heartRate;
+            heartRateCount++;
+            if (current.getHeartRateMin() < 0 || heartRate < current.getHeartRateMin()) {
+                current.setHeartRateMin(heartRate);
+            }
+            current.setHeartRateMax(Math.max(current.getHeartRateMax(), heartRate));
+        }
+
+        switch (sample.getKind()) {
+            case ActivityKind.TYPE_LIGHT_SLEEP:
+                current.setLightSleepSeconds(current.getLightSleepSeconds() + SECONDS_PER_SAMPLE);
+                break;
+            case ActivityKind.TYPE_DEEP_SLEEP:
+                current.setDeepSleepSeconds(current.getDeepSleepSeconds() + SECONDS_PER_SAMPLE);
+                break;
+            case ActivityKind.TYPE_NOT_WORN:
+                current.setNotWornSeconds(current.getNotWornSeconds() + SECONDS_PER_SAMPLE);
+                break;
+            default:
+                current.setActivitySeconds(current.getActivitySeconds() + SECONDS_PER_SAMPLE);
+                break;
+        }
+    }
+
+    /**
+     * Returns the aggregates of all added samples.
+     */
+    List<ActivitySampleAggregate> finish() {
+        flush();
+        return aggregates;
+    }
+
+    private void flush() {
+        if (current == null) {
+            return;
+        }
+        current.setRawIntensity((int) (intensitySum / current.getSampleCount()));
+        current.setHeartRateAvg(heartRateCount > 0 ? heartRateSum / heartRateCount : -1);
+        int mostFrequentKind = kindCounts.keyAt(0);
+        for (int i = 1; i < kindCounts.size(); i++) {
+            if (kindCounts.valueAt(i) > kindCounts.get(mostFrequentKind)) {
+                mostFrequentKind = kindCounts.keyAt(i);
+            }
+        }
+        current.setRawKind(mostFrequentKind);
+        aggregates.add(current);
+
+        current = null;
+        intensitySum = 0;
+        heartRateSum = 0;
+        heartRateCount = 0;
+        kindCounts.clear();
+    }
+}
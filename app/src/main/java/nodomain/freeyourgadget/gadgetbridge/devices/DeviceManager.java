@@ -184,6 +184,20 @@ public class DeviceManager {
         return Collections.unmodifiableList(deviceList);
     }
 
+    /**
+     * Returns the devices that are currently initialized, e.g. to send them a changed
+     * preference that applies to all of them.
+     */
+    public List<GBDevice> getInitializedDevices() {
+        List<GBDevice> devices = new ArrayList<>();
+        for (GBDevice device : deviceList) {
+            if (device.isInitialized()) {
+                devices.add(device);
+            }
+        }
+        return devices;
+    }
+
     @Nullable
     public GBDevice getSelectedDevice() {
         return selectedDevice;
@@ -0,0 +1,87 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.devices;
+
+import java.util.Arrays;
+
+/**
+ * Collects the columns of many activity samples in primitive arrays, for adding them to the
+ * database in bulk through {@link SampleProvider#addGBActivitySamples(SampleBatch)}, without
+ * creating an entity per sample.
+ */
+public class SampleBatch {
+    private int size;
+    private int[] timestamps;
+    private int[] rawKinds;
+    private int[] rawIntensities;
+    private int[] steps;
+    private int[] heartRates;
+
+    public SampleBatch(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        timestamps = new int[capacity];
+        rawKinds = new int[capacity];
+        rawIntensities = new int[capacity];
+        steps = new int[capacity];
+        heartRates = new int[capacity];
+    }
+
+    public void add(int timestamp, int rawKind, int rawIntensity, int steps, int heartRate) {
+        if (size == timestamps.length) {
+            int capacity = size * 2;
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            rawKinds = Arrays.copyOf(rawKinds, capacity);
+            rawIntensities = Arrays.copyOf(rawIntensities, capacity);
+            this.steps = Arrays.copyOf(this.steps, capacity);
+            heartRates = Arrays.copyOf(heartRates, capacity);
+        }
+        timestamps[size] = timestamp;
+        rawKinds[size] = rawKind;
+        rawIntensities[size] = rawIntensity;
+        this.steps[size] = steps;
+        heartRates[size] = heartRate;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    public int getRawKind(int index) {
+        return rawKinds[index];
+    }
+
+    public int getRawIntensity(int index) {
+        return rawIntensities[index];
+    }
+
+    public int getSteps(int index) {
+        return steps[index];
+    }
+
+    public int getHeartRate(int index) {
+        return heartRates[index];
+    }
+}
@@ -87,6 +87,14 @@ public interface SampleProvider<T extends AbstractActivitySample> {
      */
     void addGBActivitySamples(T[] activitySamples);
 
+    /**
+     * Adds the given samples of this provider's device and the current user to the
+     * database. Existing samples with the same timestamp will be overwritten. Meant for
+     * large imports, as no sample entities are created.
+     * @param batch the samples to add
+     */
+    void addGBActivitySamples(SampleBatch batch);
+
     /**
      * Factory method to creates an empty sample of the correct type for this sample provider
      * @return the newly created "empty" sample
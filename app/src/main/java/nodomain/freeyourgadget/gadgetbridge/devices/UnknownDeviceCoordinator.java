@@ -77,6 +77,10 @@ public class UnknownDeviceCoordinator extends AbstractDeviceCoordinator {
         public void addGBActivitySamples(AbstractActivitySample[] activitySamples) {
         }
 
+        @Override
+        public void addGBActivitySamples(SampleBatch batch) {
+        }
+
         @Override
         public AbstractActivitySample createActivitySample() {
             return null;
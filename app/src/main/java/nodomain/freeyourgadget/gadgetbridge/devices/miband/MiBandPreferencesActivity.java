@@ -30,6 +30,7 @@ import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.activities.AbstractSettingsActivity;
 import nodomain.freeyourgadget.gadgetbridge.devices.DeviceManager;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityUser;
 import nodomain.freeyourgadget.gadgetbridge.model.NotificationSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.NotificationType;
@@ -74,7 +75,9 @@ public class MiBandPreferencesActivity extends AbstractSettingsActivity {
         enableHeartrateSleepSupport.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
             @Override
             public boolean onPreferenceChange(Preference preference, Object newVal) {
-                GBApplication.deviceService().onEnableHeartRateSleepSupport(Boolean.TRUE.equals(newVal));
+                for (GBDevice device : GBApplication.app().getDeviceManager().getInitializedDevices()) {
+                    GBApplication.deviceService(device).onEnableHeartRateSleepSupport(Boolean.TRUE.equals(newVal));
+                }
                 return true;
             }
         });
@@ -83,7 +86,9 @@ public class MiBandPreferencesActivity extends AbstractSettingsActivity {
         heartrateMeasurementInterval.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
             @Override
             public boolean onPreferenceChange(Preference preference, Object newVal) {
-                GBApplication.deviceService().onSetHeartRateMeasurementInterval(Integer.parseInt((String) newVal));
+                for (GBDevice device : GBApplication.app().getDeviceManager().getInitializedDevices()) {
+                    GBApplication.deviceService(device).onSetHeartRateMeasurementInterval(Integer.parseInt((String) newVal));
+                }
                 return true;
             }
         });
@@ -95,7 +100,7 @@ public class MiBandPreferencesActivity extends AbstractSettingsActivity {
                 invokeLater(new Runnable() {
                     @Override
                     public void run() {
-                        GBApplication.deviceService().onSendConfiguration(PREF_MI2_GOAL_NOTIFICATION);
+                        sendConfiguration(PREF_MI2_GOAL_NOTIFICATION);
                     }
                 });
                 return true;
@@ -110,7 +115,7 @@ public class MiBandPreferencesActivity extends AbstractSettingsActivity {
                 invokeLater(new Runnable() {
                     @Override
                     public void run() {
-                        GBApplication.deviceService().onSendConfiguration(PREF_MI2_INACTIVITY_WARNINGS);
+                        sendConfiguration(PREF_MI2_INACTIVITY_WARNINGS);
                     }
                 });
                 return true;
@@ -124,7 +129,7 @@ public class MiBandPreferencesActivity extends AbstractSettingsActivity {
                 invokeLater(new Runnable() {
                     @Override
                     public void run() {
-                        GBApplication.deviceService().onSendConfiguration(PREF_MI2_INACTIVITY_WARNINGS_THRESHOLD);
+                        sendConfiguration(PREF_MI2_INACTIVITY_WARNINGS_THRESHOLD);
                     }
                 });
                 return true;
@@ -138,7 +143,7 @@ public class MiBandPreferencesActivity extends AbstractSettingsActivity {
                 invokeLater(new Runnable() {
                     @Override
                     public void run() {
-                        GBApplication.deviceService().onSendConfiguration(PREF_MI2_INACTIVITY_WARNINGS_START);
+                        sendConfiguration(PREF_MI2_INACTIVITY_WARNINGS_START);
                     }
                 });
                 return true;
@@ -152,7 +157,7 @@ public class MiBandPreferencesActivity extends AbstractSettingsActivity {
                 invokeLater(new Runnable() {
                     @Override
                     public void run() {
-                        GBApplication.deviceService().onSendConfiguration(PREF_MI2_INACTIVITY_WARNINGS_END);
+                        sendConfiguration(PREF_MI2_INACTIVITY_WARNINGS_END);
                     }
                 });
                 return true;
@@ -166,7 +171,7 @@ public class MiBandPreferencesActivity extends AbstractSettingsActivity {
                 invokeLater(new Runnable() {
                     @Override
                     public void run() {
-                        GBApplication.deviceService().onSendConfiguration(PREF_MI2_INACTIVITY_WARNINGS_DND);
+                        sendConfiguration(PREF_MI2_INACTIVITY_WARNINGS_DND);
                     }
                 });
                 return true;
@@ -180,7 +185,7 @@ public class MiBandPreferencesActivity extends AbstractSettingsActivity {
                 invokeLater(new Runnable() {
                     @Override
                     public void run() {
-                        GBApplication.deviceService().onSendConfiguration(PREF_MI2_INACTIVITY_WARNINGS_DND_START);
+                        sendConfiguration(PREF_MI2_INACTIVITY_WARNINGS_DND_START);
                     }
                 });
                 return true;
@@ -194,7 +199,7 @@ public class MiBandPreferencesActivity extends AbstractSettingsActivity {
                 invokeLater(new Runnable() {
                     @Override
                     public void run() {
-                        GBApplication.deviceService().onSendConfiguration(PREF_MI2_INACTIVITY_WARNINGS_DND_END);
+                        sendConfiguration(PREF_MI2_INACTIVITY_WARNINGS_DND_END);
                     }
                 });
                 return true;
@@ -209,7 +214,7 @@ public class MiBandPreferencesActivity extends AbstractSettingsActivity {
                 invokeLater(new Runnable() {
                     @Override
                     public void run() {
-                        GBApplication.deviceService().onSendConfiguration(ActivityUser.PREF_USER_STEPS_GOAL);
+                        sendConfiguration(ActivityUser.PREF_USER_STEPS_GOAL);
                     }
                 });
                 return true;
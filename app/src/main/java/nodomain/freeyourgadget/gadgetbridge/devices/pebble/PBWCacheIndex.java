@@ -0,0 +1,196 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.devices.pebble;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import androidx.annotation.Nullable;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDeviceApp;
+import nodomain.freeyourgadget.gadgetbridge.util.FileUtils;
+import nodomain.freeyourgadget.gadgetbridge.util.PebbleUtils;
+
+/**
+ * An index of all apps in the pbw cache, stored in a single file in the cache directory.
+ * It is updated when apps are installed or removed, so that the app manager does not have
+ * to list the cache directory and parse the metadata file of every app on each refresh.
+ * <p/>
+ * The per-app metadata files (including the app keys) are still written and remain the
+ * primary source, the index is rebuilt from them if it is missing or unreadable.
+ */
+public class PBWCacheIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(PBWCacheIndex.class);
+
+    private static final String INDEX_FILENAME = "index.json";
+    private static final String KEY_CONFIGURABLE = "configurable";
+    private static final String KEY_METADATA = "metadata";
+
+    /**
+     * base name of the .pbw file to app, or null if there is no metadata for that file
+     */
+    private static Map<String, GBDeviceApp> apps;
+
+    /**
+     * Returns all cached apps, keyed by the base name of their .pbw file (usually the UUID).
+     * The value is null for .pbw files without metadata.
+     */
+    public static synchronized Map<String, GBDeviceApp> getApps() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(getAppsInternal()));
+    }
+
+    @Nullable
+    public static synchronized GBDeviceApp getApp(UUID uuid) {
+        return getAppsInternal().get(uuid.toString());
+    }
+
+    public static synchronized void put(GBDeviceApp app) {
+        getAppsInternal().put(app.getUUID().toString(), app);
+        save();
+    }
+
+    public static synchronized void remove(UUID uuid) {
+        if (getAppsInternal().remove(uuid.toString()) != null) {
+            save();
+        }
+    }
+
+    /**
+     * Forgets the loaded index, so that it is read from the cache directory again.
+     */
+    static synchronized void invalidate() {
+        apps = null;
+    }
+
+    private static Map<String, GBDeviceApp> getAppsInternal() {
+        if (apps == null) {
+            apps = load();
+        }
+        return apps;
+    }
+
+    private static Map<String, GBDeviceApp> load() {
+        File cacheDir;
+        try {
+            cacheDir = PebbleUtils.getPbwCacheDir();
+        } catch (IOException e) {
+            LOG.warn("could not get external dir while reading pbw cache index.");
+            return new LinkedHashMap<>();
+        }
+
+        File indexFile = new File(cacheDir, INDEX_FILENAME);
+        if (indexFile.exists()) {
+            try {
+                return parse(new JSONArray(FileUtils.getStringFromFile(indexFile)));
+            } catch (IOException | JSONException e) {
+                LOG.warn("could not read pbw cache index, rebuilding it", e);
+            }
+        }
+        Map<String, GBDeviceApp> result = rebuild(cacheDir);
+        apps = result;
+        save();
+        return result;
+    }
+
+    private static Map<String, GBDeviceApp> parse(JSONArray index) throws JSONException {
+        Map<String, GBDeviceApp> result = new LinkedHashMap<>();
+        for (int i = 0; i < index.length(); i++) {
+            JSONObject entry = index.getJSONObject(i);
+            String baseName = entry.getString("uuid");
+            if (entry.optBoolean(KEY_METADATA, true)) {
+                result.put(baseName, new GBDeviceApp(entry, entry.optBoolean(KEY_CONFIGURABLE)));
+            } else {
+                result.put(baseName, null);
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, GBDeviceApp> rebuild(File cacheDir) {
+        Map<String, GBDeviceApp> result = new LinkedHashMap<>();
+        File[] files = cacheDir.listFiles();
+        if (files == null) {
+            return result;
+        }
+        for (File file : files) {
+            if (file.getName().endsWith(".pbw")) {
+                String baseName = file.getName().substring(0, file.getName().length() - 4);
+                //metadata
+                File jsonFile = new File(cacheDir, baseName + ".json");
+                //configuration
+                File configFile = new File(cacheDir, baseName + "_config.js");
+                try {
+                    JSONObject json = new JSONObject(FileUtils.getStringFromFile(jsonFile));
+                    result.put(baseName, new GBDeviceApp(json, configFile.exists()));
+                } catch (Exception e) {
+                    LOG.info("could not read json file for " + baseName);
+                    result.put(baseName, null);
+                }
+            }
+        }
+        LOG.info("rebuilt pbw cache index with " + result.size() + " entries");
+        return result;
+    }
+
+    private static void save() {
+        JSONArray index = new JSONArray();
+        try {
+            for (Map.Entry<String, GBDeviceApp> entry : apps.entrySet()) {
+                GBDeviceApp app = entry.getValue();
+                JSONObject json;
+                if (app != null) {
+                    json = app.getJSON();
+                    json.put(KEY_CONFIGURABLE, app.isConfigurable());
+                } else {
+                    json = new JSONObject();
+                    json.put("uuid", entry.getKey());
+                    json.put(KEY_METADATA, false);
+                }
+                index.put(json);
+            }
+        } catch (JSONException e) {
+            LOG.error("could not create pbw cache index", e);
+            return;
+        }
+
+        try {
+            File cacheDir = PebbleUtils.getPbwCacheDir();
+            cacheDir.mkdirs();
+            File tmpFile = new File(cacheDir, INDEX_FILENAME + ".tmp");
+            try (Writer writer = new BufferedWriter(new FileWriter(tmpFile))) {
+                writer.write(index.toString());
+            }
+            if (!tmpFile.renameTo(new File(cacheDir, INDEX_FILENAME))) {
+                LOG.warn("could not replace pbw cache index");
+            }
+        } catch (IOException e) {
+            LOG.warn("could not write pbw cache index", e);
+        }
+    }
+}
@@ -202,6 +202,9 @@ public class PBWInstallHandler implements InstallHandler {
                 }
             }
         }
+
+        boolean configurable = new File(destDir, app.getUUID().toString() + "_config.js").exists();
+        PBWCacheIndex.put(new GBDeviceApp(app.getJSON(), configurable));
     }
 
     @Override
@@ -78,15 +78,7 @@ public class PBWReader {
         uriHelper = UriHelper.get(uri, context);
 
         if (uriHelper.getFileName().endsWith(".pbl")) {
-            STM32CRC stm32crc = new STM32CRC();
-            try (InputStream fin = uriHelper.openInputStream()) {
-                byte[] buf = new byte[2000];
-                while (fin.available() > 0) {
-                    int count = fin.read(buf);
-                    stm32crc.addData(buf, count);
-                }
-            }
-            int crc = stm32crc.getResult();
+            int crc = getLanguageFileCRC(uriHelper);
             // language file
             app = new GBDeviceApp(UUID.randomUUID(), "Language File", "unknown", "unknown", GBDeviceApp.Type.UNKNOWN);
             pebbleInstallables = new ArrayList<>();
@@ -231,6 +223,22 @@ public class PBWReader {
         }
     }
 
+    /**
+     * Returns the CRC of a language file. Unlike for apps and firmwares, it is not part of
+     * the file and has to be computed over the whole file.
+     */
+    private static int getLanguageFileCRC(UriHelper uriHelper) throws IOException {
+        STM32CRC stm32crc = new STM32CRC();
+        try (InputStream fin = uriHelper.openInputStream()) {
+            byte[] buf = new byte[8192];
+            int count;
+            while ((count = fin.read(buf)) != -1) {
+                stm32crc.addData(buf, count);
+            }
+        }
+        return stm32crc.getResult();
+    }
+
     /**
      * Determines the platform dir to use for the given uri and platform.
      * @param uriHelper
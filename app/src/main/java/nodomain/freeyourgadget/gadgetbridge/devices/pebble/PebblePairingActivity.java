@@ -208,7 +208,7 @@ public class PebblePairingActivity extends AbstractGBActivity {
         }
 
         GB.toast(this, getString(R.string.pairing_creating_bond_with, mBtDevice.getName(), macAddress), Toast.LENGTH_LONG, GB.INFO);
-        GBApplication.deviceService().disconnect(); // just to make sure...
+        GBApplication.deviceService(getPebbleDevice(gbDevice)).disconnect(); // just to make sure...
 
         if (isLEPebble) {
             performConnect(gbDevice);
@@ -218,10 +218,14 @@ public class PebblePairingActivity extends AbstractGBActivity {
     }
 
     private void performConnect(GBDevice gbDevice) {
+        GBApplication.deviceService().connect(getPebbleDevice(gbDevice));
+    }
+
+    private GBDevice getPebbleDevice(GBDevice gbDevice) {
         if (gbDevice == null) {
             gbDevice = new GBDevice(mBtDevice.getAddress(), mBtDevice.getName(), DeviceType.PEBBLE);
         }
-        GBApplication.deviceService().connect(gbDevice);
+        return gbDevice;
     }
 
     private void returnToPairingActivity() {
@@ -19,10 +19,15 @@ package nodomain.freeyourgadget.gadgetbridge.devices.zetime;
 import android.os.Bundle;
 import android.preference.Preference;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.activities.AbstractSettingsActivity;
 import nodomain.freeyourgadget.gadgetbridge.activities.devicesettings.DeviceSettingsPreferenceConst;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.model.DeviceType;
 
 public class ZeTimePreferenceActivity extends AbstractSettingsActivity {
     @Override
@@ -31,13 +36,17 @@ public class ZeTimePreferenceActivity extends AbstractSettingsActivity {
 
         addPreferencesFromResource(R.xml.zetime_preferences);
 
-        GBApplication.deviceService().onReadConfiguration("do_it");
+        for (GBDevice device : getZeTimeDevices()) {
+            GBApplication.deviceService(device).onReadConfiguration("do_it");
+        }
 
         final Preference heartrateMeasurementInterval = findPreference(ZeTimeConstants.PREF_ZETIME_HEARTRATE_INTERVAL);
         heartrateMeasurementInterval.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
             @Override
             public boolean onPreferenceChange(Preference preference, Object newVal) {
-                GBApplication.deviceService().onSetHeartRateMeasurementInterval(Integer.parseInt((String) newVal));
+                for (GBDevice device : getZeTimeDevices()) {
+                    GBApplication.deviceService(device).onSetHeartRateMeasurementInterval(Integer.parseInt((String) newVal));
+                }
                 return true;
             }
         });
@@ -97,12 +106,24 @@ public class ZeTimePreferenceActivity extends AbstractSettingsActivity {
         Preference pref = findPreference(preferenceKey);
         pref.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
             @Override public boolean onPreferenceChange(Preference preference, Object newVal) {
-                    GBApplication.deviceService().onSendConfiguration(preferenceKey);
+                for (GBDevice device : getZeTimeDevices()) {
+                    GBApplication.deviceService(device).onSendConfiguration(preferenceKey);
+                }
                 return true;
             }
         });
     }
 
+    private List<GBDevice> getZeTimeDevices() {
+        List<GBDevice> devices = new ArrayList<>();
+        for (GBDevice device : GBApplication.app().getDeviceManager().getInitializedDevices()) {
+            if (device.getType() == DeviceType.ZETIME) {
+                devices.add(device);
+            }
+        }
+        return devices;
+    }
+
     /**
      * delayed execution so that the preferences are applied first
      */
@@ -0,0 +1,54 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.export;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Forward-only view on the points of an activity track. The values returned by the getters
+ * refer to the current point and are only valid until the next call to #moveToNext().
+ * This allows exporters to stream large tracks without materializing them as
+ * ActivityPoint objects.
+ */
+public interface ActivityPointCursor extends Closeable {
+    /**
+     * Advances to the next point.
+     * @return true if there is a current point, false if the end of the track has been reached
+     */
+    boolean moveToNext() throws IOException;
+
+    /**
+     * @return the time of the current point in milliseconds since the epoch
+     */
+    long getTime();
+
+    boolean hasLocation();
+
+    double getLongitude();
+
+    double getLatitude();
+
+    double getAltitude();
+
+    int getHeartRate();
+
+    @Nullable
+    String getDescription();
+}
@@ -0,0 +1,90 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.export;
+
+import java.util.List;
+
+import androidx.annotation.Nullable;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityPoint;
+import nodomain.freeyourgadget.gadgetbridge.model.GPSCoordinate;
+
+/**
+ * An ActivityPointCursor over an in-memory list of ActivityPoints, e.g. the points of an ActivityTrack.
+ */
+public class ActivityPointListCursor implements ActivityPointCursor {
+    private final List<ActivityPoint> points;
+    private int position = -1;
+    private ActivityPoint current;
+
+    public ActivityPointListCursor(List<ActivityPoint> points) {
+        this.points = points;
+    }
+
+    @Override
+    public boolean moveToNext() {
+        if (position + 1 >= points.size()) {
+            current = null;
+            return false;
+        }
+        current = points.get(++position);
+        return true;
+    }
+
+    @Override
+    public long getTime() {
+        return current.getTime().getTime();
+    }
+
+    @Override
+    public boolean hasLocation() {
+        return current.getLocation() != null;
+    }
+
+    @Override
+    public double getLongitude() {
+        GPSCoordinate location = current.getLocation();
+        return location != null ? location.getLongitude() : 0;
+    }
+
+    @Override
+    public double getLatitude() {
+        GPSCoordinate location = current.getLocation();
+        return location != null ? location.getLatitude() : 0;
+    }
+
+    @Override
+    public double getAltitude() {
+        GPSCoordinate location = current.getLocation();
+        return location != null ? location.getAltitude() : 0;
+    }
+
+    @Override
+    public int getHeartRate() {
+        return current.getHeartRate();
+    }
+
+    @Nullable
+    @Override
+    public String getDescription() {
+        return current.getDescription();
+    }
+
+    @Override
+    public void close() {
+        current = null;
+    }
+}
@@ -28,6 +28,12 @@ public interface ActivityTrackExporter {
 
     void performExport(ActivityTrack track, File targetFile) throws IOException, GPXTrackEmptyException;
 
+    /**
+     * Exports the points provided by the given cursor, using only the metadata (name, user, device)
+     * of the given track. The cursor is consumed, but not closed.
+     */
+    void performExport(ActivityTrack track, ActivityPointCursor points, File targetFile) throws IOException, GPXTrackEmptyException;
+
     class GPXTrackEmptyException extends Exception {
     }
 }
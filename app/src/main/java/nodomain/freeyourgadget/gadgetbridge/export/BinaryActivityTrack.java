@@ -0,0 +1,84 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.export;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Constants and helpers for the compact, delta-encoded binary track format that is written by
+ * BinaryActivityTrackWriter and read by BinaryActivityTrackReader.
+ * <p/>
+ * Layout: a header consisting of the 4 magic bytes "GBTK", one version byte and the base time
+ * (8 bytes, big endian, milliseconds since the epoch), followed by one record per point:
+ * <ul>
+ *     <li>1 byte flags (FLAG_*)</li>
+ *     <li>zigzag varint: time difference to the previous point (or the base time) in milliseconds</li>
+ *     <li>if FLAG_LOCATION: zigzag varints: longitude and latitude difference in micro degrees,
+ *     altitude difference in centimeters, all relative to the previous location</li>
+ *     <li>if FLAG_HEART_RATE: varint heart rate</li>
+ *     <li>if FLAG_DESCRIPTION: modified UTF-8 string as written by DataOutput#writeUTF()</li>
+ * </ul>
+ */
+final class BinaryActivityTrack {
+    static final byte[] MAGIC = new byte[] { 'G', 'B', 'T', 'K' };
+    static final int VERSION = 1;
+
+    static final int FLAG_LOCATION = 1;
+    static final int FLAG_HEART_RATE = 1 << 1;
+    static final int FLAG_DESCRIPTION = 1 << 2;
+
+    static final double DEGREES_MULTIPLIER = 1000000d;
+    static final double ALTITUDE_MULTIPLIER = 100d;
+
+    private BinaryActivityTrack() {
+    }
+
+    static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static void writeSignedVarLong(OutputStream out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    static long readVarLong(InputStream in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Unexpected end of track data");
+            }
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varint in track data");
+    }
+
+    static long readSignedVarLong(InputStream in) throws IOException {
+        long raw = readVarLong(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+}
@@ -0,0 +1,141 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.export;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Streams the points of a track in the compact binary track format, see BinaryActivityTrack.
+ * Only the current point is decoded and held in memory.
+ */
+public class BinaryActivityTrackReader implements ActivityPointCursor {
+    private final DataInputStream in;
+    private final long baseTime;
+
+    private long time;
+    private long longitude;
+    private long latitude;
+    private long altitude;
+    private boolean hasLocation;
+    private int heartRate;
+    private String description;
+
+    public BinaryActivityTrackReader(File trackFile) throws IOException {
+        this(new FileInputStream(trackFile));
+    }
+
+    public BinaryActivityTrackReader(InputStream inputStream) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(inputStream));
+        try {
+            byte[] magic = new byte[BinaryActivityTrack.MAGIC.length];
+            in.readFully(magic);
+            for (int i = 0; i < magic.length; i++) {
+                if (magic[i] != BinaryActivityTrack.MAGIC[i]) {
+                    throw new IOException("Not a binary activity track");
+                }
+            }
+            int version = in.readUnsignedByte();
+            if (version != BinaryActivityTrack.VERSION) {
+                throw new IOException("Unsupported binary activity track version: " + version);
+            }
+            baseTime = in.readLong();
+            time = baseTime;
+        } catch (IOException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    public long getBaseTime() {
+        return baseTime;
+    }
+
+    @Override
+    public boolean moveToNext() throws IOException {
+        int flags = in.read();
+        if (flags < 0) {
+            return false;
+        }
+        time += BinaryActivityTrack.readSignedVarLong(in);
+
+        hasLocation = (flags & BinaryActivityTrack.FLAG_LOCATION) != 0;
+        if (hasLocation) {
+            longitude += BinaryActivityTrack.readSignedVarLong(in);
+            latitude += BinaryActivityTrack.readSignedVarLong(in);
+            altitude += BinaryActivityTrack.readSignedVarLong(in);
+        }
+        if ((flags & BinaryActivityTrack.FLAG_HEART_RATE) != 0) {
+            heartRate = (int) BinaryActivityTrack.readVarLong(in);
+        } else {
+            heartRate = 0;
+        }
+        if ((flags & BinaryActivityTrack.FLAG_DESCRIPTION) != 0) {
+            description = in.readUTF();
+        } else {
+            description = null;
+        }
+        return true;
+    }
+
+    @Override
+    public long getTime() {
+        return time;
+    }
+
+    @Override
+    public boolean hasLocation() {
+        return hasLocation;
+    }
+
+    @Override
+    public double getLongitude() {
+        return longitude / BinaryActivityTrack.DEGREES_MULTIPLIER;
+    }
+
+    @Override
+    public double getLatitude() {
+        return latitude / BinaryActivityTrack.DEGREES_MULTIPLIER;
+    }
+
+    @Override
+    public double getAltitude() {
+        return altitude / BinaryActivityTrack.ALTITUDE_MULTIPLIER;
+    }
+
+    @Override
+    public int getHeartRate() {
+        return heartRate;
+    }
+
+    @Nullable
+    @Override
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
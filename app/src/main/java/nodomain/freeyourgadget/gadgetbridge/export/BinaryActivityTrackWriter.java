@@ -0,0 +1,108 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.export;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import androidx.annotation.Nullable;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityPoint;
+import nodomain.freeyourgadget.gadgetbridge.model.GPSCoordinate;
+
+/**
+ * Appends activity points to a file in the compact binary track format, see BinaryActivityTrack.
+ * Points are written as they are added, so the track never has to be held in memory completely.
+ */
+public class BinaryActivityTrackWriter implements Closeable {
+    private final DataOutputStream out;
+
+    private long lastTime;
+    private long lastLongitude;
+    private long lastLatitude;
+    private long lastAltitude;
+    private int pointCount;
+
+    public BinaryActivityTrackWriter(File targetFile, long baseTime) throws IOException {
+        this(new FileOutputStream(targetFile), baseTime);
+    }
+
+    public BinaryActivityTrackWriter(OutputStream outputStream, long baseTime) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        out.write(BinaryActivityTrack.MAGIC);
+        out.writeByte(BinaryActivityTrack.VERSION);
+        out.writeLong(baseTime);
+        lastTime = baseTime;
+    }
+
+    public void write(ActivityPoint point) throws IOException {
+        GPSCoordinate location = point.getLocation();
+        if (location != null) {
+            write(point.getTime().getTime(), true, location.getLongitude(), location.getLatitude(), location.getAltitude(), point.getHeartRate(), point.getDescription());
+        } else {
+            write(point.getTime().getTime(), false, 0, 0, 0, point.getHeartRate(), point.getDescription());
+        }
+    }
+
+    public void write(long time, boolean hasLocation, double longitude, double latitude, double altitude, int heartRate, @Nullable String description) throws IOException {
+        int flags = 0;
+        if (hasLocation) {
+            flags |= BinaryActivityTrack.FLAG_LOCATION;
+        }
+        if (heartRate != 0) {
+            flags |= BinaryActivityTrack.FLAG_HEART_RATE;
+        }
+        if (description != null) {
+            flags |= BinaryActivityTrack.FLAG_DESCRIPTION;
+        }
+        out.writeByte(flags);
+        BinaryActivityTrack.writeSignedVarLong(out, time - lastTime);
+        lastTime = time;
+
+        if (hasLocation) {
+            long lon = Math.round(longitude * BinaryActivityTrack.DEGREES_MULTIPLIER);
+            long lat = Math.round(latitude * BinaryActivityTrack.DEGREES_MULTIPLIER);
+            long alt = Math.round(altitude * BinaryActivityTrack.ALTITUDE_MULTIPLIER);
+            BinaryActivityTrack.writeSignedVarLong(out, lon - lastLongitude);
+            BinaryActivityTrack.writeSignedVarLong(out, lat - lastLatitude);
+            BinaryActivityTrack.writeSignedVarLong(out, alt - lastAltitude);
+            lastLongitude = lon;
+            lastLatitude = lat;
+            lastAltitude = alt;
+        }
+        if (heartRate != 0) {
+            BinaryActivityTrack.writeVarLong(out, heartRate & 0xFFFFFFFFL);
+        }
+        if (description != null) {
+            out.writeUTF(description);
+        }
+        pointCount++;
+    }
+
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -28,12 +28,9 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.nio.charset.StandardCharsets;
 import java.util.Date;
-import java.util.List;
 
 import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
 import nodomain.freeyourgadget.gadgetbridge.activities.HeartRateUtils;
-import nodomain.freeyourgadget.gadgetbridge.model.ActivityPoint;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityTrack;
 import nodomain.freeyourgadget.gadgetbridge.model.GPSCoordinate;
 import nodomain.freeyourgadget.gadgetbridge.util.DateTimeUtils;
@@ -45,6 +42,7 @@ public class GPXExporter implements ActivityTrackExporter {
     private static final String NS_TRACKPOINT_EXTENSION = "gpxtpx";
     private static final String NS_TRACKPOINT_EXTENSION_URI = "http://www.garmin.com/xmlschemas/TrackPointExtension/v1";
     private static final String NS_XSI_URI = "http://www.w3.org/2001/XMLSchema-instance";
+    private static final long NEAREST_HEART_RATE_MAX_DISTANCE_MILLIS = 60 * 2 * 1000; // minimum distance is 2min
 
     private String creator;
     private boolean includeHeartRate = true;
@@ -58,6 +56,11 @@ public class GPXExporter implements ActivityTrackExporter {
 
     @Override
     public void performExport(ActivityTrack track, File targetFile) throws IOException, GPXTrackEmptyException {
+        performExport(track, new ActivityPointListCursor(track.getTrackPoints()), targetFile);
+    }
+
+    @Override
+    public void performExport(ActivityTrack track, ActivityPointCursor points, File targetFile) throws IOException, GPXTrackEmptyException {
         String encoding = StandardCharsets.UTF_8.name();
         XmlSerializer ser = Xml.newSerializer();
         try (FileOutputStream outputStream = new FileOutputStream(targetFile)) {
@@ -73,7 +76,7 @@ public class GPXExporter implements ActivityTrackExporter {
             ser.attribute(NS_XSI_URI, "schemaLocation", NS_GPX_URI + " " + "http://www.topografix.com/GPX/1/1/gpx.xsd");
 
             exportMetadata(ser, track);
-            exportTrack(ser, track);
+            exportTrack(ser, points);
 
             ser.endTag(NS_GPX_URI, "gpx");
             ser.endDocument();
@@ -98,15 +101,36 @@ public class GPXExporter implements ActivityTrackExporter {
         return DateTimeUtils.formatIso8601(date);
     }
 
-    private void exportTrack(XmlSerializer ser, ActivityTrack track) throws IOException, GPXTrackEmptyException {
+    private void exportTrack(XmlSerializer ser, ActivityPointCursor points) throws IOException, GPXTrackEmptyException {
         ser.startTag(NS_GPX_URI, "trk");
         ser.startTag(NS_GPX_URI, "trkseg");
 
-        List<ActivityPoint> trackPoints = track.getTrackPoints();
-        String source = getSource(track);
+        HeartRateUtils heartRateUtils = HeartRateUtils.getInstance();
+        Date time = new Date();
+        // the last valid heart rate seen so far, used for points without heart rate,
+        // assuming that the points are sorted in time ascending order (oldest first)
+        int lastValidHeartRate = 0;
+        long lastValidHeartRateTime = 0;
         boolean atLeastOnePointExported = false;
-        for (ActivityPoint point : trackPoints) {
-            atLeastOnePointExported |= exportTrackPoint(ser, point, source, trackPoints);
+        while (points.moveToNext()) {
+            long pointTime = points.getTime();
+            int hr = points.getHeartRate();
+            boolean validHeartRate = heartRateUtils.isValidHeartRateValue(hr);
+            if (points.hasLocation()) {
+                if (!validHeartRate && includeHeartRateOfNearestSample && lastValidHeartRateTime < pointTime
+                        && pointTime - lastValidHeartRateTime < NEAREST_HEART_RATE_MAX_DISTANCE_MILLIS) {
+                    hr = lastValidHeartRate;
+                } else if (!validHeartRate) {
+                    hr = 0;
+                }
+                time.setTime(pointTime);
+                exportTrackPoint(ser, points, time, hr);
+                atLeastOnePointExported = true;
+            }
+            if (validHeartRate) {
+                lastValidHeartRate = hr;
+                lastValidHeartRateTime = pointTime;
+            }
         }
 
         if(!atLeastOnePointExported) {
@@ -117,56 +141,28 @@ public class GPXExporter implements ActivityTrackExporter {
         ser.endTag(NS_GPX_URI, "trk");
     }
 
-    private String getSource(ActivityTrack track) {
-        return track.getDevice().getName();
-    }
-
-    private boolean exportTrackPoint(XmlSerializer ser, ActivityPoint point, String source, List<ActivityPoint> trackPoints) throws IOException {
-        GPSCoordinate location = point.getLocation();
-        if (location == null) {
-            return false; // skip invalid points, that just contain hr data, for example
-        }
+    private void exportTrackPoint(XmlSerializer ser, ActivityPointCursor point, Date time, int hr) throws IOException {
         ser.startTag(NS_GPX_URI, "trkpt");
         // lon and lat attributes do not have an explicit namespace
-        ser.attribute(null, "lon", formatLocation(location.getLongitude()));
-        ser.attribute(null, "lat", formatLocation(location.getLatitude()));
-        ser.startTag(NS_GPX_URI, "ele").text(formatLocation(location.getAltitude())).endTag(NS_GPX_URI, "ele");
-        ser.startTag(NS_GPX_URI, "time").text(DateTimeUtils.formatIso8601UTC(point.getTime())).endTag(NS_GPX_URI, "time");
+        ser.attribute(null, "lon", formatLocation(point.getLongitude()));
+        ser.attribute(null, "lat", formatLocation(point.getLatitude()));
+        ser.startTag(NS_GPX_URI, "ele").text(formatLocation(point.getAltitude())).endTag(NS_GPX_URI, "ele");
+        ser.startTag(NS_GPX_URI, "time").text(DateTimeUtils.formatIso8601UTC(time)).endTag(NS_GPX_URI, "time");
         String description = point.getDescription();
         if (description != null) {
             ser.startTag(NS_GPX_URI, "desc").text(description).endTag(NS_GPX_URI, "desc");
         }
-        //ser.startTag(NS_GPX_URI, "src").text(source).endTag(NS_GPX_URI, "src");
 
-        exportTrackpointExtensions(ser, point, trackPoints);
+        exportTrackpointExtensions(ser, hr);
 
         ser.endTag(NS_GPX_URI, "trkpt");
-
-        return true;
     }
 
-    private void exportTrackpointExtensions(XmlSerializer ser, ActivityPoint point, List<ActivityPoint> trackPoints) throws IOException {
-        if (!includeHeartRate) {
+    private void exportTrackpointExtensions(XmlSerializer ser, int hr) throws IOException {
+        if (!includeHeartRate || hr == 0) {
             return;
         }
 
-        int hr = point.getHeartRate();
-        if (!HeartRateUtils.getInstance().isValidHeartRateValue(hr)) {
-            if (!includeHeartRateOfNearestSample) {
-                return;
-            }
-
-            ActivityPoint closestPointItem = findClosestSensibleActivityPoint(point.getTime(), trackPoints);
-            if(closestPointItem == null) {
-                return;
-            }
-
-            hr = closestPointItem.getHeartRate();
-            if (!HeartRateUtils.getInstance().isValidHeartRateValue(hr)) {
-                return;
-            }
-        }
-
         ser.startTag(NS_GPX_URI, "extensions");
         ser.setPrefix(NS_TRACKPOINT_EXTENSION, NS_TRACKPOINT_EXTENSION_URI);
         ser.startTag(NS_TRACKPOINT_EXTENSION_URI, "TrackPointExtension");
@@ -175,28 +171,6 @@ public class GPXExporter implements ActivityTrackExporter {
         ser.endTag(NS_GPX_URI, "extensions");
     }
 
-    private @Nullable ActivityPoint findClosestSensibleActivityPoint(Date time, List<ActivityPoint> trackPoints) {
-        ActivityPoint closestPointItem = null;
-        HeartRateUtils heartRateUtilsInstance = HeartRateUtils.getInstance();
-
-        long lowestDifference = 60 * 2 * 1000; // minimum distance is 2min
-        for (ActivityPoint pointItem : trackPoints) {
-            int hrItem = pointItem.getHeartRate();
-            if (heartRateUtilsInstance.isValidHeartRateValue(hrItem)) {
-                Date timeItem = pointItem.getTime();
-                if (timeItem.after(time) || timeItem.equals(time)) {
-                    break; // we assume that the given trackPoints are sorted in time ascending order (oldest first)
-                }
-                long difference = time.getTime() - timeItem.getTime();
-                if (difference < lowestDifference) {
-                    lowestDifference = difference;
-                    closestPointItem = pointItem;
-                }
-            }
-        }
-        return closestPointItem;
-    }
-
     private String formatLocation(double value) {
         return new BigDecimal(value).setScale(GPSCoordinate.GPS_DECIMAL_DEGREES_SCALE, RoundingMode.HALF_UP).toPlainString();
     }
@@ -0,0 +1,211 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.export;
+
+import android.util.Xml;
+
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import androidx.annotation.NonNull;
+import nodomain.freeyourgadget.gadgetbridge.activities.HeartRateUtils;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityTrack;
+import nodomain.freeyourgadget.gadgetbridge.model.GPSCoordinate;
+import nodomain.freeyourgadget.gadgetbridge.util.DateTimeUtils;
+import nodomain.freeyourgadget.gadgetbridge.util.FileUtils;
+
+/**
+ * Exports a track in the Garmin Training Center (TCX) format. Unlike GPX, TCX also contains
+ * points without location, so heart rate samples are exported as they are.
+ */
+public class TCXExporter implements ActivityTrackExporter {
+    private static final String NS_TCX_URI = "http://www.garmin.com/xmlschemas/TrainingCenterDatabase/v2";
+    private static final String NS_XSI_URI = "http://www.w3.org/2001/XMLSchema-instance";
+
+    public static final String SPORT_RUNNING = "Running";
+    public static final String SPORT_BIKING = "Biking";
+    public static final String SPORT_OTHER = "Other";
+
+    private String creator;
+    private String sport = SPORT_OTHER;
+
+    public static String sportForActivityKind(int activityKind) {
+        switch (activityKind) {
+            case ActivityKind.TYPE_RUNNING:
+            case ActivityKind.TYPE_TREADMILL:
+                return SPORT_RUNNING;
+            case ActivityKind.TYPE_CYCLING:
+                return SPORT_BIKING;
+            default:
+                return SPORT_OTHER;
+        }
+    }
+
+    @NonNull
+    @Override
+    public String getDefaultFileName(@NonNull ActivityTrack track) {
+        return FileUtils.makeValidFileName(track.getName());
+    }
+
+    @Override
+    public void performExport(ActivityTrack track, File targetFile) throws IOException, GPXTrackEmptyException {
+        performExport(track, new ActivityPointListCursor(track.getTrackPoints()), targetFile);
+    }
+
+    @Override
+    public void performExport(ActivityTrack track, ActivityPointCursor points, File targetFile) throws IOException, GPXTrackEmptyException {
+        String encoding = StandardCharsets.UTF_8.name();
+        XmlSerializer ser = Xml.newSerializer();
+        try (FileOutputStream outputStream = new FileOutputStream(targetFile)) {
+            ser.setOutput(outputStream, encoding);
+            ser.startDocument(encoding, Boolean.TRUE);
+            ser.setPrefix("xsi", NS_XSI_URI);
+            ser.setPrefix("", NS_TCX_URI);
+
+            ser.startTag(NS_TCX_URI, "TrainingCenterDatabase");
+            ser.attribute(NS_XSI_URI, "schemaLocation", NS_TCX_URI + " " + "http://www.garmin.com/xmlschemas/TrainingCenterDatabasev2.xsd");
+            ser.startTag(NS_TCX_URI, "Activities");
+            ser.startTag(NS_TCX_URI, "Activity");
+            ser.attribute(null, "Sport", sport);
+
+            Date startTime = track.getBaseTime();
+            if (startTime == null) {
+                startTime = new Date();
+            }
+            String formattedStartTime = DateTimeUtils.formatIso8601UTC(startTime);
+            ser.startTag(NS_TCX_URI, "Id").text(formattedStartTime).endTag(NS_TCX_URI, "Id");
+
+            ser.startTag(NS_TCX_URI, "Lap");
+            ser.attribute(null, "StartTime", formattedStartTime);
+            ser.startTag(NS_TCX_URI, "TotalTimeSeconds").text(String.valueOf(getTotalTimeSeconds(track))).endTag(NS_TCX_URI, "TotalTimeSeconds");
+            ser.startTag(NS_TCX_URI, "DistanceMeters").text("0").endTag(NS_TCX_URI, "DistanceMeters");
+            ser.startTag(NS_TCX_URI, "Calories").text("0").endTag(NS_TCX_URI, "Calories");
+            ser.startTag(NS_TCX_URI, "Intensity").text("Active").endTag(NS_TCX_URI, "Intensity");
+            ser.startTag(NS_TCX_URI, "TriggerMethod").text("Manual").endTag(NS_TCX_URI, "TriggerMethod");
+
+            exportTrack(ser, points);
+
+            ser.endTag(NS_TCX_URI, "Lap");
+
+            ser.startTag(NS_TCX_URI, "Creator");
+            ser.attribute(NS_XSI_URI, "type", "Device_t");
+            ser.startTag(NS_TCX_URI, "Name").text(track.getDevice().getName()).endTag(NS_TCX_URI, "Name");
+            ser.startTag(NS_TCX_URI, "UnitId").text("0").endTag(NS_TCX_URI, "UnitId");
+            ser.startTag(NS_TCX_URI, "ProductID").text("0").endTag(NS_TCX_URI, "ProductID");
+            ser.startTag(NS_TCX_URI, "Version");
+            ser.startTag(NS_TCX_URI, "VersionMajor").text("0").endTag(NS_TCX_URI, "VersionMajor");
+            ser.startTag(NS_TCX_URI, "VersionMinor").text("0").endTag(NS_TCX_URI, "VersionMinor");
+            ser.endTag(NS_TCX_URI, "Version");
+            ser.endTag(NS_TCX_URI, "Creator");
+
+            ser.endTag(NS_TCX_URI, "Activity");
+            ser.endTag(NS_TCX_URI, "Activities");
+
+            if (creator != null) {
+                ser.startTag(NS_TCX_URI, "Author");
+                ser.attribute(NS_XSI_URI, "type", "Application_t");
+                ser.startTag(NS_TCX_URI, "Name").text(creator).endTag(NS_TCX_URI, "Name");
+                ser.startTag(NS_TCX_URI, "Build");
+                ser.startTag(NS_TCX_URI, "Version");
+                ser.startTag(NS_TCX_URI, "VersionMajor").text("0").endTag(NS_TCX_URI, "VersionMajor");
+                ser.startTag(NS_TCX_URI, "VersionMinor").text("0").endTag(NS_TCX_URI, "VersionMinor");
+                ser.endTag(NS_TCX_URI, "Version");
+                ser.endTag(NS_TCX_URI, "Build");
+                ser.startTag(NS_TCX_URI, "LangID").text("en").endTag(NS_TCX_URI, "LangID");
+                ser.startTag(NS_TCX_URI, "PartNumber").text("000-00000-00").endTag(NS_TCX_URI, "PartNumber");
+                ser.endTag(NS_TCX_URI, "Author");
+            }
+
+            ser.endTag(NS_TCX_URI, "TrainingCenterDatabase");
+            ser.endDocument();
+            ser.flush();
+        }
+    }
+
+    private long getTotalTimeSeconds(ActivityTrack track) {
+        if (track.getBaseTime() == null || track.getEndTime() == null) {
+            return 0;
+        }
+        return Math.max(0, (track.getEndTime().getTime() - track.getBaseTime().getTime()) / 1000);
+    }
+
+    private void exportTrack(XmlSerializer ser, ActivityPointCursor points) throws IOException, GPXTrackEmptyException {
+        HeartRateUtils heartRateUtils = HeartRateUtils.getInstance();
+        Date time = new Date();
+        boolean atLeastOnePointExported = false;
+
+        ser.startTag(NS_TCX_URI, "Track");
+        while (points.moveToNext()) {
+            int hr = points.getHeartRate();
+            boolean validHeartRate = heartRateUtils.isValidHeartRateValue(hr);
+            if (!points.hasLocation() && !validHeartRate) {
+                continue;
+            }
+            time.setTime(points.getTime());
+
+            ser.startTag(NS_TCX_URI, "Trackpoint");
+            ser.startTag(NS_TCX_URI, "Time").text(DateTimeUtils.formatIso8601UTC(time)).endTag(NS_TCX_URI, "Time");
+            if (points.hasLocation()) {
+                ser.startTag(NS_TCX_URI, "Position");
+                ser.startTag(NS_TCX_URI, "LatitudeDegrees").text(formatLocation(points.getLatitude())).endTag(NS_TCX_URI, "LatitudeDegrees");
+                ser.startTag(NS_TCX_URI, "LongitudeDegrees").text(formatLocation(points.getLongitude())).endTag(NS_TCX_URI, "LongitudeDegrees");
+                ser.endTag(NS_TCX_URI, "Position");
+                ser.startTag(NS_TCX_URI, "AltitudeMeters").text(formatLocation(points.getAltitude())).endTag(NS_TCX_URI, "AltitudeMeters");
+            }
+            if (validHeartRate) {
+                ser.startTag(NS_TCX_URI, "HeartRateBpm");
+                ser.startTag(NS_TCX_URI, "Value").text(String.valueOf(hr)).endTag(NS_TCX_URI, "Value");
+                ser.endTag(NS_TCX_URI, "HeartRateBpm");
+            }
+            ser.endTag(NS_TCX_URI, "Trackpoint");
+            atLeastOnePointExported = true;
+        }
+        ser.endTag(NS_TCX_URI, "Track");
+
+        if (!atLeastOnePointExported) {
+            throw new GPXTrackEmptyException();
+        }
+    }
+
+    private String formatLocation(double value) {
+        return new BigDecimal(value).setScale(GPSCoordinate.GPS_DECIMAL_DEGREES_SCALE, RoundingMode.HALF_UP).toPlainString();
+    }
+
+    public String getCreator() {
+        return creator;
+    }
+
+    public void setCreator(String creator) {
+        this.creator = creator;
+    }
+
+    public String getSport() {
+        return sport;
+    }
+
+    public void setSport(String sport) {
+        this.sport = sport;
+    }
+}
@@ -28,6 +28,7 @@ import org.slf4j.LoggerFactory;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.devices.DeviceManager;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
 
 public class BluetoothStateChangeReceiver extends BroadcastReceiver {
@@ -52,7 +53,12 @@ public class BluetoothStateChangeReceiver extends BroadcastReceiver {
                 GBApplication.deviceService().connect();
             } else if (intent.getIntExtra(BluetoothAdapter.EXTRA_STATE, -1) == BluetoothAdapter.STATE_OFF) {
                 LOG.info("Bluetooth turned off => disconnecting...");
-                GBApplication.deviceService().disconnect();
+                for (GBDevice device : GBApplication.app().getDeviceManager().getDevices()) {
+                    // devices that are not connected through Bluetooth, like the Pebble emulator, stay connected
+                    if ((device.isConnected() || device.isConnecting()) && BluetoothAdapter.checkBluetoothAddress(device.getAddress())) {
+                        GBApplication.deviceService(device).disconnect();
+                    }
+                }
             }
         }
     }
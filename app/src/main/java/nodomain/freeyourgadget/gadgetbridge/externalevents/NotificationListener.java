@@ -76,8 +76,9 @@ import nodomain.freeyourgadget.gadgetbridge.model.NotificationType;
 import nodomain.freeyourgadget.gadgetbridge.service.DeviceCommunicationService;
 import nodomain.freeyourgadget.gadgetbridge.util.BitmapUtil;
 import nodomain.freeyourgadget.gadgetbridge.util.LimitedQueue;
+import nodomain.freeyourgadget.gadgetbridge.util.NotificationLatencyTracer;
 import nodomain.freeyourgadget.gadgetbridge.util.PebbleUtils;
-import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
+import nodomain.freeyourgadget.gadgetbridge.util.PrefsSnapshot;
 
 import static androidx.media.app.NotificationCompat.MediaStyle.getMediaSession;
 import static nodomain.freeyourgadget.gadgetbridge.activities.NotificationFilterActivity.NOTIFICATION_FILTER_MODE_BLACKLIST;
@@ -239,10 +240,11 @@ public class NotificationListener extends NotificationListenerService {
 
     @Override
     public void onNotificationPosted(StatusBarNotification sbn) {
-        Prefs prefs = GBApplication.getPrefs();
+        long traceStart = NotificationLatencyTracer.start();
+        PrefsSnapshot prefs = GBApplication.getPrefsSnapshot();
 
         if (GBApplication.isRunningLollipopOrLater()) {
-            if ("call".equals(sbn.getNotification().category) && prefs.getBoolean("notification_support_voip_calls", false)) {
+            if ("call".equals(sbn.getNotification().category) && prefs.notificationSupportVoipCalls) {
                 handleCallNotification(sbn);
                 return;
             }
@@ -273,7 +275,7 @@ public class NotificationListener extends NotificationListenerService {
         }
 
         // Ignore too frequent notifications, according to user preference
-        long min_timeout = (long)prefs.getInt("notifications_timeout", 0) * 1000L;
+        long min_timeout = prefs.notificationsTimeoutMillis;
         long cur_time = System.currentTimeMillis();
         if (notificationBurstPrevention.containsKey(source)) {
             long last_time = notificationBurstPrevention.get(source);
@@ -385,6 +387,8 @@ public class NotificationListener extends NotificationListenerService {
             LOG.info("This app might show old/duplicate notifications. notification.when is 0 for " + source);
         }
 
+        notificationSpec.traceStart = traceStart;
+        NotificationLatencyTracer.record(NotificationLatencyTracer.Stage.FILTERED, null, traceStart);
         GBApplication.deviceService().onNotification(notificationSpec);
     }
 
@@ -643,8 +647,7 @@ public class NotificationListener extends NotificationListenerService {
         if (shouldIgnore(sbn))
             return;
 
-        Prefs prefs = GBApplication.getPrefs();
-        if (prefs.getBoolean("autoremove_notifications", false)) {
+        if (GBApplication.getPrefsSnapshot().autoremoveNotifications) {
             LOG.info("notification removed, will ask device to delete it");
             GBApplication.deviceService().onDeleteNotification((int) sbn.getPostTime());
         }
@@ -681,8 +684,6 @@ public class NotificationListener extends NotificationListenerService {
     }
 
     private boolean shouldIgnoreSource(String source) {
-        Prefs prefs = GBApplication.getPrefs();
-
         /* do not display messages from "android"
          * This includes keyboard selection message, usb connection messages, etc
          * Hope it does not filter out too much, we will see...
@@ -701,7 +702,7 @@ public class NotificationListener extends NotificationListenerService {
                 source.equals("com.sonyericsson.conversations") ||
                 source.equals("com.android.messaging") ||
                 source.equals("org.smssecure.smssecure")) {
-            if (!"never".equals(prefs.getString("notification_mode_sms", "when_screen_off"))) {
+            if (!PrefsSnapshot.NOTIFICATION_MODE_NEVER.equals(GBApplication.getPrefsSnapshot().notificationModeSms)) {
                 return true;
             }
         }
@@ -732,8 +733,7 @@ public class NotificationListener extends NotificationListenerService {
             return true;
         }
 
-        Prefs prefs = GBApplication.getPrefs();
-        if (!prefs.getBoolean("notifications_generic_whenscreenon", false)) {
+        if (!GBApplication.getPrefsSnapshot().notificationsGenericWhenScreenOn) {
             PowerManager powermanager = (PowerManager) getSystemService(POWER_SERVICE);
             if (powermanager != null && powermanager.isScreenOn()) {
 //                LOG.info("Not forwarding notification, screen seems to be on and settings do not allow this");
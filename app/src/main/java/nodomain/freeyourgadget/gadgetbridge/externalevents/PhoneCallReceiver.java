@@ -28,7 +28,7 @@ import android.telephony.TelephonyManager;
 
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.model.CallSpec;
-import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
+import nodomain.freeyourgadget.gadgetbridge.util.PrefsSnapshot;
 
 
 public class PhoneCallReceiver extends BroadcastReceiver {
@@ -95,8 +95,7 @@ public class PhoneCallReceiver extends BroadcastReceiver {
                 break;
         }
         if (callCommand != CallSpec.CALL_UNDEFINED) {
-            Prefs prefs = GBApplication.getPrefs();
-            if ("never".equals(prefs.getString("notification_mode_calls", "always"))) {
+            if (PrefsSnapshot.NOTIFICATION_MODE_NEVER.equals(GBApplication.getPrefsSnapshot().notificationModeCalls)) {
                 return;
             }
             switch (GBApplication.getGrantedInterruptionFilter()) {
@@ -33,17 +33,17 @@ import java.util.Map;
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.model.NotificationSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.NotificationType;
-import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
+import nodomain.freeyourgadget.gadgetbridge.util.PrefsSnapshot;
 
 public class SMSReceiver extends BroadcastReceiver {
 
     @Override
     public void onReceive(Context context, Intent intent) {
-        Prefs prefs = GBApplication.getPrefs();
-        if ("never".equals(prefs.getString("notification_mode_sms", "when_screen_off"))) {
+        String notificationMode = GBApplication.getPrefsSnapshot().notificationModeSms;
+        if (PrefsSnapshot.NOTIFICATION_MODE_NEVER.equals(notificationMode)) {
             return;
         }
-        if ("when_screen_off".equals(prefs.getString("notification_mode_sms", "when_screen_off"))) {
+        if (PrefsSnapshot.NOTIFICATION_MODE_WHEN_SCREEN_OFF.equals(notificationMode)) {
             PowerManager powermanager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
             if (powermanager != null && powermanager.isScreenOn()) {
                 return;
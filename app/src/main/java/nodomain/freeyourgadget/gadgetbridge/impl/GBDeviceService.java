@@ -19,13 +19,19 @@
 package nodomain.freeyourgadget.gadgetbridge.impl;
 
 import android.app.Service;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
+import android.os.IBinder;
 import android.provider.ContactsContract;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.util.ArrayList;
 import java.util.UUID;
 
@@ -41,6 +47,7 @@ import nodomain.freeyourgadget.gadgetbridge.model.MusicSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.MusicStateSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.NotificationSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.WeatherSpec;
+import nodomain.freeyourgadget.gadgetbridge.service.DeviceCommand;
 import nodomain.freeyourgadget.gadgetbridge.service.DeviceCommunicationService;
 import nodomain.freeyourgadget.gadgetbridge.util.LanguageUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.RtlUtils;
@@ -49,8 +56,36 @@ import static nodomain.freeyourgadget.gadgetbridge.util.JavaExtensions.coalesce;
 
 
 public class GBDeviceService implements DeviceService {
+    private static final Logger LOG = LoggerFactory.getLogger(GBDeviceService.class);
+
     protected final Context mContext;
     private final Class<? extends Service> mServiceClass;
+    /**
+     * The service the commands of a device specific instance are passed to, see #forDevice().
+     */
+    @Nullable
+    private final GBDeviceService mParent;
+    @Nullable
+    private final GBDevice mDevice;
+    /**
+     * The service while it is running in our process, used to pass the commands directly
+     * instead of going through #startService(), see #invokeService() and #enqueueCommand().
+     */
+    private volatile DeviceCommunicationService mLocalService;
+    private final ServiceConnection mServiceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            if (binder instanceof DeviceCommunicationService.LocalBinder) {
+                mLocalService = ((DeviceCommunicationService.LocalBinder) binder).getService();
+                LOG.debug("Using in-process connection to " + name);
+            }
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            mLocalService = null;
+        }
+    };
     private final String[] transliterationExtras = new String[]{
             EXTRA_NOTIFICATION_PHONENUMBER,
             EXTRA_NOTIFICATION_SENDER,
@@ -70,13 +105,86 @@ public class GBDeviceService implements DeviceService {
     public GBDeviceService(Context context) {
         mContext = context;
         mServiceClass = DeviceCommunicationService.class;
+        mParent = null;
+        mDevice = null;
+        bindLocalService();
+    }
+
+    private GBDeviceService(GBDeviceService parent, @Nullable GBDevice device) {
+        mContext = parent.mContext;
+        mServiceClass = parent.mServiceClass;
+        mParent = parent;
+        mDevice = device;
+    }
+
+    @Override
+    public DeviceService forDevice(@Nullable GBDevice device) {
+        return new GBDeviceService(mParent != null ? mParent : this, device);
+    }
+
+    /**
+     * Binds to the service without creating it, so that its lifecycle is still entirely
+     * controlled by #start() and #quit(). The connection is established whenever the service
+     * is (re)started.
+     */
+    private void bindLocalService() {
+        try {
+            mContext.bindService(new Intent(mContext, mServiceClass), mServiceConnection, 0);
+        } catch (Exception ex) {
+            LOG.warn("Unable to bind to " + mServiceClass.getSimpleName() + ", using intents only", ex);
+        }
+    }
+
+    /**
+     * Passes the typed command to the in-process service, if available. It is executed in
+     * order with the Intents passed by #invokeService().
+     * @return false if the command was not handled and the Intent path must be used instead
+     */
+    protected boolean enqueueCommand(DeviceCommand command) {
+        if (mParent != null) {
+            return mParent.enqueueCommand(command, mDevice);
+        }
+        return enqueueCommand(command, null);
+    }
+
+    private boolean enqueueCommand(DeviceCommand command, @Nullable GBDevice device) {
+        DeviceCommunicationService service = mLocalService;
+        return service != null && service.handleCommand(command, device);
+    }
+
+    /**
+     * Applies the same transliteration and RTL handling to the string as #invokeService()
+     * applies to the transliterationExtras.
+     */
+    private String transform(String text) {
+        if (text == null) {
+            return null;
+        }
+        if (LanguageUtils.transliterate()) {
+            text = LanguageUtils.transliterate(text);
+        }
+        if (RtlUtils.rtlSupport()) {
+            text = RtlUtils.fixRtl(text);
+        }
+        return text;
     }
 
     protected Intent createIntent() {
+        if (mParent != null) {
+            Intent intent = mParent.createIntent();
+            if (mDevice != null) {
+                intent.putExtra(GBDevice.EXTRA_DEVICE, mDevice);
+            }
+            return intent;
+        }
         return new Intent(mContext, mServiceClass);
     }
 
     protected void invokeService(Intent intent) {
+        if (mParent != null) {
+            mParent.invokeService(intent);
+            return;
+        }
         if (LanguageUtils.transliterate()) {
             for (String extra : transliterationExtras) {
                 if (intent.hasExtra(extra)) {
@@ -93,10 +201,19 @@ public class GBDeviceService implements DeviceService {
             }
         }
 
+        // the in-process service executes the Intents in order with the typed commands
+        DeviceCommunicationService service = mLocalService;
+        if (service != null && service.handleCommand(intent)) {
+            return;
+        }
         mContext.startService(intent);
     }
 
     protected void stopService(Intent intent) {
+        if (mParent != null) {
+            mParent.stopService(intent);
+            return;
+        }
         mContext.stopService(intent);
     }
 
@@ -119,8 +236,10 @@ public class GBDeviceService implements DeviceService {
     @Override
     public void connect(@Nullable GBDevice device, boolean firstTime) {
         Intent intent = createIntent().setAction(ACTION_CONNECT)
-                .putExtra(GBDevice.EXTRA_DEVICE, device)
                 .putExtra(EXTRA_CONNECT_FIRST_TIME, firstTime);
+        if (device != null) {
+            intent.putExtra(GBDevice.EXTRA_DEVICE, device);
+        }
         invokeService(intent);
     }
 
@@ -130,6 +249,13 @@ public class GBDeviceService implements DeviceService {
         invokeService(intent);
     }
 
+    @Override
+    public void disconnect(GBDevice device) {
+        Intent intent = createIntent().setAction(ACTION_DISCONNECT)
+                .putExtra(GBDevice.EXTRA_DEVICE, device);
+        invokeService(intent);
+    }
+
     @Override
     public void quit() {
         Intent intent = createIntent();
@@ -144,10 +270,28 @@ public class GBDeviceService implements DeviceService {
 
     @Override
     public void onNotification(NotificationSpec notificationSpec) {
+        String sender = coalesce(notificationSpec.sender, getContactDisplayNameByNumber(notificationSpec.phoneNumber));
+        NotificationSpec copy = new NotificationSpec(notificationSpec.getId());
+        copy.flags = notificationSpec.flags;
+        copy.phoneNumber = transform(notificationSpec.phoneNumber);
+        copy.sender = transform(sender);
+        copy.subject = transform(notificationSpec.subject);
+        copy.title = transform(notificationSpec.title);
+        copy.body = transform(notificationSpec.body);
+        copy.type = notificationSpec.type;
+        copy.attachedActions = notificationSpec.attachedActions;
+        copy.sourceName = transform(notificationSpec.sourceName);
+        copy.pebbleColor = notificationSpec.pebbleColor;
+        copy.sourceAppId = notificationSpec.sourceAppId;
+        copy.traceStart = notificationSpec.traceStart;
+        if (enqueueCommand(DeviceCommand.notification(copy))) {
+            return;
+        }
+
         Intent intent = createIntent().setAction(ACTION_NOTIFICATION)
                 .putExtra(EXTRA_NOTIFICATION_FLAGS, notificationSpec.flags)
                 .putExtra(EXTRA_NOTIFICATION_PHONENUMBER, notificationSpec.phoneNumber)
-                .putExtra(EXTRA_NOTIFICATION_SENDER, coalesce(notificationSpec.sender, getContactDisplayNameByNumber(notificationSpec.phoneNumber)))
+                .putExtra(EXTRA_NOTIFICATION_SENDER, sender)
                 .putExtra(EXTRA_NOTIFICATION_SUBJECT, notificationSpec.subject)
                 .putExtra(EXTRA_NOTIFICATION_TITLE, notificationSpec.title)
                 .putExtra(EXTRA_NOTIFICATION_BODY, notificationSpec.body)
@@ -156,12 +300,16 @@ public class GBDeviceService implements DeviceService {
                 .putExtra(EXTRA_NOTIFICATION_ACTIONS, notificationSpec.attachedActions)
                 .putExtra(EXTRA_NOTIFICATION_SOURCENAME, notificationSpec.sourceName)
                 .putExtra(EXTRA_NOTIFICATION_PEBBLE_COLOR, notificationSpec.pebbleColor)
-                .putExtra(EXTRA_NOTIFICATION_SOURCEAPPID, notificationSpec.sourceAppId);
+                .putExtra(EXTRA_NOTIFICATION_SOURCEAPPID, notificationSpec.sourceAppId)
+                .putExtra(EXTRA_NOTIFICATION_TRACE_START, notificationSpec.traceStart);
         invokeService(intent);
     }
 
     @Override
     public void onDeleteNotification(int id) {
+        if (enqueueCommand(DeviceCommand.deleteNotification(id))) {
+            return;
+        }
         Intent intent = createIntent().setAction(ACTION_DELETE_NOTIFICATION)
                 .putExtra(EXTRA_NOTIFICATION_ID, id);
         invokeService(intent);
@@ -199,6 +347,14 @@ public class GBDeviceService implements DeviceService {
             callSpec.name = coalesce(callSpec.name, getContactDisplayNameByNumber(callSpec.number));
         }
 
+        CallSpec copy = new CallSpec();
+        copy.number = transform(callSpec.number);
+        copy.name = transform(callSpec.name);
+        copy.command = callSpec.command;
+        if (enqueueCommand(DeviceCommand.callState(copy))) {
+            return;
+        }
+
         Intent intent = createIntent().setAction(ACTION_CALLSTATE)
                 .putExtra(EXTRA_CALL_PHONENUMBER, callSpec.number)
                 .putExtra(EXTRA_CALL_DISPLAYNAME, callSpec.name)
@@ -216,6 +372,9 @@ public class GBDeviceService implements DeviceService {
 
     @Override
     public void onSetMusicState(MusicStateSpec stateSpec) {
+        if (enqueueCommand(DeviceCommand.musicState(new MusicStateSpec(stateSpec)))) {
+            return;
+        }
         Intent intent = createIntent().setAction(ACTION_SETMUSICSTATE)
                 .putExtra(EXTRA_MUSIC_REPEAT, stateSpec.repeat)
                 .putExtra(EXTRA_MUSIC_RATE, stateSpec.playRate)
@@ -227,6 +386,13 @@ public class GBDeviceService implements DeviceService {
 
     @Override
     public void onSetMusicInfo(MusicSpec musicSpec) {
+        MusicSpec copy = new MusicSpec(musicSpec);
+        copy.artist = transform(musicSpec.artist);
+        copy.album = transform(musicSpec.album);
+        copy.track = transform(musicSpec.track);
+        if (enqueueCommand(DeviceCommand.musicInfo(copy))) {
+            return;
+        }
         Intent intent = createIntent().setAction(ACTION_SETMUSICINFO)
                 .putExtra(EXTRA_MUSIC_ARTIST, musicSpec.artist)
                 .putExtra(EXTRA_MUSIC_ALBUM, musicSpec.album)
@@ -267,6 +433,9 @@ public class GBDeviceService implements DeviceService {
 
     @Override
     public void onAppConfiguration(UUID uuid, String config, Integer id) {
+        if (enqueueCommand(DeviceCommand.appConfiguration(uuid, config, id))) {
+            return;
+        }
         Intent intent = createIntent().setAction(ACTION_APP_CONFIGURE)
                 .putExtra(EXTRA_APP_UUID, uuid)
                 .putExtra(EXTRA_APP_CONFIG, config);
@@ -354,6 +523,12 @@ public class GBDeviceService implements DeviceService {
 
     @Override
     public void onAddCalendarEvent(CalendarEventSpec calendarEventSpec) {
+        CalendarEventSpec copy = new CalendarEventSpec(calendarEventSpec);
+        copy.title = transform(calendarEventSpec.title);
+        copy.description = transform(calendarEventSpec.description);
+        if (enqueueCommand(DeviceCommand.addCalendarEvent(copy))) {
+            return;
+        }
         Intent intent = createIntent().setAction(ACTION_ADD_CALENDAREVENT)
                 .putExtra(EXTRA_CALENDAREVENT_ID, calendarEventSpec.id)
                 .putExtra(EXTRA_CALENDAREVENT_TYPE, calendarEventSpec.type)
@@ -367,6 +542,9 @@ public class GBDeviceService implements DeviceService {
 
     @Override
     public void onDeleteCalendarEvent(byte type, long id) {
+        if (enqueueCommand(DeviceCommand.deleteCalendarEvent(type, id))) {
+            return;
+        }
         Intent intent = createIntent().setAction(ACTION_DELETE_CALENDAREVENT)
                 .putExtra(EXTRA_CALENDAREVENT_TYPE, type)
                 .putExtra(EXTRA_CALENDAREVENT_ID, id);
@@ -395,8 +573,12 @@ public class GBDeviceService implements DeviceService {
 
     @Override
     public void onSendWeather(WeatherSpec weatherSpec) {
+        if (enqueueCommand(DeviceCommand.sendWeather(new WeatherSpec(weatherSpec)))) {
+            return;
+        }
+        // the in-process service gets the Parcelable itself, which the caller may modify later
         Intent intent = createIntent().setAction(ACTION_SEND_WEATHER)
-                .putExtra(EXTRA_WEATHER, weatherSpec);
+                .putExtra(EXTRA_WEATHER, new WeatherSpec(weatherSpec));
         invokeService(intent);
     }
 
@@ -0,0 +1,271 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.model;
+
+import java.util.Arrays;
+
+import nodomain.freeyourgadget.gadgetbridge.activities.HeartRateUtils;
+
+/**
+ * Statistics over a stream of samples: the duration and steps per activity kind, the time
+ * spent at each number of steps per minute (the speed zones) and at each heart rate, and the
+ * minimum, maximum and mean heart rate.
+ * <p/>
+ * Everything is kept in primitive arrays, so adding samples does not allocate, and an
+ * instance can be reused after {@link #reset()}. Statistics of separate ranges, e.g. single
+ * days, can be combined with {@link #merge(ActivityStatistics)}, so that they can be cached
+ * and reused for longer ranges. The time between the last sample of one range and the first
+ * sample of the next one is not counted then.
+ */
+public class ActivityStatistics {
+    /**
+     * Higher values are counted as this one.
+     */
+    public static final int MAX_STEPS_PER_MINUTE = 255;
+
+    private static final int KIND_DEEP_SLEEP = 0;
+    private static final int KIND_LIGHT_SLEEP = 1;
+    private static final int KIND_NOT_WORN = 2;
+    private static final int KIND_ACTIVITY = 3;
+    private static final int KINDS = 4;
+
+    private final long[] secondsAtSteps = new long[MAX_STEPS_PER_MINUTE + 1];
+    private final long[] secondsAtHeartRate = new long[HeartRateUtils.MAX_HEART_RATE_VALUE + 1];
+    private final long[] kindSeconds = new long[KINDS];
+    private final long[] kindSteps = new long[KINDS];
+    // timestamps of the first and last sample of each kind, 0 if there is none
+    private final int[] kindFirstTimestamp = new int[KINDS];
+    private final int[] kindLastTimestamp = new int[KINDS];
+
+    private long totalSteps;
+    private int maxStepsPerMinute;
+    private int minHeartRate;
+    private int maxHeartRate;
+    private long heartRateSum;
+    private int heartRateCount;
+
+    // the previous sample of the stream
+    private boolean hasPrevious;
+    private int previousTimestamp;
+    private int previousRawKind;
+    private int previousKind;
+
+    public ActivityStatistics() {
+        reset();
+    }
+
+    public void reset() {
+        Arrays.fill(secondsAtSteps, 0);
+        Arrays.fill(secondsAtHeartRate, 0);
+        Arrays.fill(kindSeconds, 0);
+        Arrays.fill(kindSteps, 0);
+        Arrays.fill(kindFirstTimestamp, 0);
+        Arrays.fill(kindLastTimestamp, 0);
+        totalSteps = 0;
+        maxStepsPerMinute = 0;
+        minHeartRate = Integer.MAX_VALUE;
+        maxHeartRate = 0;
+        heartRateSum = 0;
+        heartRateCount = 0;
+        hasPrevious = false;
+    }
+
+    /**
+     * Adds the next sample, the samples have to be added in ascending order of time.
+     */
+    public void add(ActivitySample sample) {
+        int timestamp = sample.getTimestamp();
+        int rawKind = sample.getRawKind();
+        int activityKind = sample.getKind();
+        int kind = getKindIndex(activityKind);
+
+        int steps = sample.getSteps();
+        if (steps > 0) {
+            kindSteps[kind] += steps;
+            totalSteps += steps;
+        }
+
+        int heartRate = sample.getHeartRate();
+        boolean validHeartRate = heartRate >= HeartRateUtils.MIN_HEART_RATE_VALUE && heartRate <= HeartRateUtils.MAX_HEART_RATE_VALUE;
+        if (validHeartRate) {
+            minHeartRate = Math.min(minHeartRate, heartRate);
+            maxHeartRate = Math.max(maxHeartRate, heartRate);
+            heartRateSum += heartRate;
+            heartRateCount++;
+        }
+
+        if (hasPrevious) {
+            long timeDifference = timestamp - previousTimestamp;
+            if (previousRawKind == rawKind) {
+                kindSeconds[kind] += timeDifference;
+            } else {
+                long sharedTimeDifference = (long) (timeDifference / 2.0f);
+                kindSeconds[previousKind] += sharedTimeDifference;
+                kindSeconds[kind] += sharedTimeDifference;
+            }
+
+            if (steps > 0 && activityKind == ActivityKind.TYPE_ACTIVITY) {
+                maxStepsPerMinute = Math.max(maxStepsPerMinute, steps);
+                secondsAtSteps[Math.min(steps, MAX_STEPS_PER_MINUTE)] += timeDifference;
+            }
+            if (validHeartRate) {
+                secondsAtHeartRate[heartRate] += timeDifference;
+            }
+        }
+
+        if (kindFirstTimestamp[kind] == 0) {
+            kindFirstTimestamp[kind] = timestamp;
+        }
+        kindLastTimestamp[kind] = timestamp;
+
+        hasPrevious = true;
+        previousTimestamp = timestamp;
+        previousRawKind = rawKind;
+        previousKind = kind;
+    }
+
+    /**
+     * Adds the statistics of another range, which must not overlap with this one.
+     */
+    public void merge(ActivityStatistics other) {
+        for (int i = 0; i < secondsAtSteps.length; i++) {
+            secondsAtSteps[i] += other.secondsAtSteps[i];
+        }
+        for (int i = 0; i < secondsAtHeartRate.length; i++) {
+            secondsAtHeartRate[i] += other.secondsAtHeartRate[i];
+        }
+        for (int i = 0; i < KINDS; i++) {
+            kindSeconds[i] += other.kindSeconds[i];
+            kindSteps[i] += other.kindSteps[i];
+            if (kindFirstTimestamp[i] == 0 || (other.kindFirstTimestamp[i] != 0 && other.kindFirstTimestamp[i] < kindFirstTimestamp[i])) {
+                kindFirstTimestamp[i] = other.kindFirstTimestamp[i];
+            }
+            kindLastTimestamp[i] = Math.max(kindLastTimestamp[i], other.kindLastTimestamp[i]);
+        }
+        totalSteps += other.totalSteps;
+        maxStepsPerMinute = Math.max(maxStepsPerMinute, other.maxStepsPerMinute);
+        minHeartRate = Math.min(minHeartRate, other.minHeartRate);
+        maxHeartRate = Math.max(maxHeartRate, other.maxHeartRate);
+        heartRateSum += other.heartRateSum;
+        heartRateCount += other.heartRateCount;
+    }
+
+    /**
+     * Returns the amounts of sleep and activity, with their percentages of the total time.
+     */
+    public ActivityAmounts getActivityAmounts() {
+        ActivityAmounts result = new ActivityAmounts();
+        addAmount(result, KIND_DEEP_SLEEP, ActivityKind.TYPE_DEEP_SLEEP);
+        addAmount(result, KIND_LIGHT_SLEEP, ActivityKind.TYPE_LIGHT_SLEEP);
+        addAmount(result, KIND_ACTIVITY, ActivityKind.TYPE_ACTIVITY);
+        result.calculatePercentages();
+        return result;
+    }
+
+    private void addAmount(ActivityAmounts amounts, int kind, int activityKind) {
+        if (kindSeconds[kind] <= 0) {
+            return;
+        }
+        ActivityAmount amount = new ActivityAmount(activityKind);
+        amount.addSeconds(kindSeconds[kind]);
+        amount.addSteps(kindSteps[kind]);
+        amount.setStartDate(kindFirstTimestamp[kind]);
+        amount.setEndDate(kindLastTimestamp[kind]);
+        amounts.addAmount(amount);
+    }
+
+    /**
+     * Returns the seconds of the given kind, one of the sleep kinds, not worn or activity.
+     */
+    public long getSeconds(int activityKind) {
+        return kindSeconds[getKindIndex(activityKind)];
+    }
+
+    public long getTotalSteps() {
+        return totalSteps;
+    }
+
+    /**
+     * Returns the seconds of activity at the given number of steps per minute.
+     */
+    public long getSecondsAtStepsPerMinute(int steps) {
+        if (steps < 0 || steps > MAX_STEPS_PER_MINUTE) {
+            return 0;
+        }
+        return secondsAtSteps[steps];
+    }
+
+    public int getMaxStepsPerMinute() {
+        return maxStepsPerMinute;
+    }
+
+    /**
+     * Returns the mean steps per minute while walking or running, or 0 if there was no
+     * activity with steps.
+     */
+    public float getMeanStepsPerMinute() {
+        long seconds = 0;
+        long weightedSum = 0;
+        for (int steps = 1; steps < secondsAtSteps.length; steps++) {
+            seconds += secondsAtSteps[steps];
+            weightedSum += steps * secondsAtSteps[steps];
+        }
+        return seconds > 0 ? weightedSum / (float) seconds : 0;
+    }
+
+    /**
+     * Returns the seconds spent at the given heart rate.
+     */
+    public long getSecondsAtHeartRate(int heartRate) {
+        if (heartRate < 0 || heartRate >= secondsAtHeartRate.length) {
+            return 0;
+        }
+        return secondsAtHeartRate[heartRate];
+    }
+
+    /**
+     * Returns the lowest valid heart rate, or 0 if there was none.
+     */
+    public int getMinHeartRate() {
+        return heartRateCount > 0 ? minHeartRate : 0;
+    }
+
+    public int getMaxHeartRate() {
+        return maxHeartRate;
+    }
+
+    /**
+     * Returns the mean of the valid heart rate measurements, or 0 if there was none.
+     */
+    public float getMeanHeartRate() {
+        return heartRateCount > 0 ? heartRateSum / (float) heartRateCount : 0;
+    }
+
+    private static int getKindIndex(int activityKind) {
+        switch (activityKind) {
+            case ActivityKind.TYPE_DEEP_SLEEP:
+                return KIND_DEEP_SLEEP;
+            case ActivityKind.TYPE_LIGHT_SLEEP:
+                return KIND_LIGHT_SLEEP;
+            case ActivityKind.TYPE_NOT_WORN:
+                return KIND_NOT_WORN;
+            case ActivityKind.TYPE_ACTIVITY:
+            default:
+                return KIND_ACTIVITY;
+        }
+    }
+}
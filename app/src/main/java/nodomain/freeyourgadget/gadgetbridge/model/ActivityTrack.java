@@ -25,6 +25,7 @@ import nodomain.freeyourgadget.gadgetbridge.entities.User;
 
 public class ActivityTrack {
     private Date baseTime;
+    private Date endTime;
     private Device device;
     private User user;
     private String name;
@@ -68,6 +69,14 @@ public class ActivityTrack {
         return baseTime;
     }
 
+    public Date getEndTime() {
+        return endTime;
+    }
+
+    public void setEndTime(Date endTime) {
+        this.endTime = endTime;
+    }
+
     public String getName() {
         return name;
     }
@@ -29,4 +29,19 @@ public class CalendarEventSpec {
     public String description;
     public String location;
     public boolean allDay;
+
+    public CalendarEventSpec() {
+
+    }
+
+    public CalendarEventSpec(CalendarEventSpec old) {
+        this.type = old.type;
+        this.id = old.id;
+        this.timestamp = old.timestamp;
+        this.durationInSeconds = old.durationInSeconds;
+        this.title = old.title;
+        this.description = old.description;
+        this.location = old.location;
+        this.allDay = old.allDay;
+    }
 }
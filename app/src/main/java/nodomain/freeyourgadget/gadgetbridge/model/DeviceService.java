@@ -78,6 +78,7 @@ public interface DeviceService extends EventHandler {
     String EXTRA_NOTIFICATION_TYPE = "notification_type";
     String EXTRA_NOTIFICATION_ACTIONS = "notification_actions";
     String EXTRA_NOTIFICATION_PEBBLE_COLOR = "notification_pebble_color";
+    String EXTRA_NOTIFICATION_TRACE_START = "notification_trace_start";
     String EXTRA_FIND_START = "find_start";
     String EXTRA_VIBRATION_INTENSITY = "vibration_intensity";
     String EXTRA_CALL_COMMAND = "call_command";
@@ -134,14 +135,28 @@ public interface DeviceService extends EventHandler {
 
     void start();
 
+    /**
+     * Returns a DeviceService whose commands only go to the given device. Commands that
+     * concern a single device, like fetching data, installing or sending the configuration,
+     * have to be sent through it, the unbound service only passes them on if there is just
+     * one device. Phone events like notifications go to all devices unless sent through it.
+     * Without a device, the returned DeviceService behaves like the unbound one.
+     */
+    DeviceService forDevice(@Nullable GBDevice device);
+
     void connect();
 
     void connect(@Nullable GBDevice device);
 
     void connect(@Nullable GBDevice device, boolean performPair);
 
+    /**
+     * Disconnects all devices.
+     */
     void disconnect();
 
+    void disconnect(GBDevice device);
+
     void quit();
 
     /**
@@ -46,6 +46,12 @@ public class NotificationSpec {
      */
     public byte pebbleColor;
 
+    /**
+     * When the notification was posted, for latency tracing, or 0 if it is not traced.
+     * See NotificationLatencyTracer.
+     */
+    public long traceStart;
+
     public NotificationSpec() {
         this.id = c.incrementAndGet();
     }
@@ -57,6 +63,23 @@ public class NotificationSpec {
             this.id = c.incrementAndGet();
     }
 
+    public NotificationSpec(NotificationSpec old) {
+        this.id = old.id;
+        this.flags = old.flags;
+        this.sender = old.sender;
+        this.phoneNumber = old.phoneNumber;
+        this.title = old.title;
+        this.subject = old.subject;
+        this.body = old.body;
+        this.type = old.type;
+        this.sourceName = old.sourceName;
+        this.cannedReplies = old.cannedReplies;
+        this.attachedActions = old.attachedActions;
+        this.sourceAppId = old.sourceAppId;
+        this.pebbleColor = old.pebbleColor;
+        this.traceStart = old.traceStart;
+    }
+
     public int getId() {
         return id;
     }
@@ -0,0 +1,69 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.model;
+
+import java.util.Date;
+
+/**
+ * A sleep session, see {@link SleepSessionDetector}.
+ */
+public class SleepSession {
+    private final int sleepStart;
+    private final int sleepEnd;
+    private final long lightSleepDuration;
+    private final long deepSleepDuration;
+
+    public SleepSession(int sleepStart,
+                        int sleepEnd,
+                        long lightSleepDuration,
+                        long deepSleepDuration) {
+        this.sleepStart = sleepStart;
+        this.sleepEnd = sleepEnd;
+        this.lightSleepDuration = lightSleepDuration;
+        this.deepSleepDuration = deepSleepDuration;
+    }
+
+    public Date getSleepStart() {
+        return new Date(sleepStart * 1000L);
+    }
+
+    public Date getSleepEnd() {
+        return new Date(sleepEnd * 1000L);
+    }
+
+    /**
+     * Returns the timestamp of the first sleep sample in seconds.
+     */
+    public int getSleepStartTimestamp() {
+        return sleepStart;
+    }
+
+    /**
+     * Returns the timestamp of the last sleep sample in seconds.
+     */
+    public int getSleepEndTimestamp() {
+        return sleepEnd;
+    }
+
+    public long getLightSleepDuration() {
+        return lightSleepDuration;
+    }
+
+    public long getDeepSleepDuration() {
+        return deepSleepDuration;
+    }
+}
@@ -0,0 +1,128 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Detects sleep sessions from samples that are fed one by one in timestamp order, so that
+ * callers never need to have all samples in memory. Only primitive state is kept between
+ * samples.
+ */
+public class SleepSessionDetector {
+    /**
+     * Sessions with less sleep in seconds are ignored.
+     */
+    public static final long MIN_SESSION_LENGTH = 5 * 60;
+    /**
+     * A session ends after being awake for longer than this, in seconds.
+     */
+    public static final long MAX_WAKE_PHASE_LENGTH = 2 * 60 * 60;
+
+    private final List<SleepSession> sessions = new ArrayList<>();
+
+    private boolean hasPreviousSample;
+    private int previousTimestamp;
+    private int sleepStart = -1;
+    private int sleepEnd = -1;
+    private long lightSleepDuration;
+    private long deepSleepDuration;
+    private long durationSinceLastSleep;
+
+    private long totalLightSleepDuration;
+    private long totalDeepSleepDuration;
+
+    public void consume(ActivitySample sample) {
+        consume(sample.getTimestamp(), sample.getKind());
+    }
+
+    /**
+     * Consumes the next sample, which must not be older than the previous one.
+     * @param timestamp the sample timestamp in seconds
+     * @param kind the normalized ActivityKind of the sample
+     */
+    public void consume(int timestamp, int kind) {
+        boolean isSleep = kind == ActivityKind.TYPE_DEEP_SLEEP || kind == ActivityKind.TYPE_LIGHT_SLEEP;
+        if (isSleep) {
+            if (sleepStart < 0) {
+                sleepStart = timestamp;
+            }
+            sleepEnd = timestamp;
+            durationSinceLastSleep = 0;
+        }
+
+        if (hasPreviousSample) {
+            long durationSinceLastSample = timestamp - previousTimestamp;
+            if (kind == ActivityKind.TYPE_LIGHT_SLEEP) {
+                lightSleepDuration += durationSinceLastSample;
+            } else if (kind == ActivityKind.TYPE_DEEP_SLEEP) {
+                deepSleepDuration += durationSinceLastSample;
+            } else {
+                durationSinceLastSleep += durationSinceLastSample;
+                if (sleepStart >= 0 && durationSinceLastSleep > MAX_WAKE_PHASE_LENGTH) {
+                    closeSession();
+                }
+            }
+        }
+
+        previousTimestamp = timestamp;
+        hasPreviousSample = true;
+    }
+
+    /**
+     * Closes the currently open session, if any, after the last sample has been consumed.
+     * @return all detected sessions, in chronological order
+     */
+    public List<SleepSession> finish() {
+        closeSession();
+        return sessions;
+    }
+
+    /**
+     * Returns the sessions that have been completed so far.
+     */
+    public List<SleepSession> getSessions() {
+        return sessions;
+    }
+
+    /**
+     * Returns the light sleep in seconds of all completed sessions.
+     */
+    public long getTotalLightSleepDuration() {
+        return totalLightSleepDuration;
+    }
+
+    /**
+     * Returns the deep sleep in seconds of all completed sessions.
+     */
+    public long getTotalDeepSleepDuration() {
+        return totalDeepSleepDuration;
+    }
+
+    private void closeSession() {
+        if (lightSleepDuration + deepSleepDuration > MIN_SESSION_LENGTH) {
+            sessions.add(new SleepSession(sleepStart, sleepEnd, lightSleepDuration, deepSleepDuration));
+            totalLightSleepDuration += lightSleepDuration;
+            totalDeepSleepDuration += deepSleepDuration;
+        }
+        sleepStart = -1;
+        sleepEnd = -1;
+        lightSleepDuration = 0;
+        deepSleepDuration = 0;
+    }
+}
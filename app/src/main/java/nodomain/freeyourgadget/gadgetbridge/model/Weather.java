@@ -38,6 +38,22 @@ public class Weather {
         this.weatherSpec = weatherSpec;
     }
 
+    /**
+     * Returns a copy of the given weather with all strings set and trimmed, so that the
+     * weather from different providers can be compared and device supports need not check
+     * for null.
+     */
+    public static WeatherSpec normalize(WeatherSpec weatherSpec) {
+        WeatherSpec normalized = new WeatherSpec(weatherSpec);
+        normalized.location = normalized.location != null ? normalized.location.trim() : "";
+        if (normalized.currentCondition == null || normalized.currentCondition.trim().isEmpty()) {
+            normalized.currentCondition = getConditionString(normalized.currentConditionCode);
+        } else {
+            normalized.currentCondition = normalized.currentCondition.trim();
+        }
+        return normalized;
+    }
+
     public JSONObject createReconstructedOWMWeatherReply() {
         if (weatherSpec == null) {
             return null;
@@ -21,6 +21,7 @@ import android.os.Parcel;
 import android.os.Parcelable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 // FIXME: document me and my fields, including units
 public class WeatherSpec implements Parcelable {
@@ -52,6 +53,45 @@ public class WeatherSpec implements Parcelable {
 
     }
 
+    public WeatherSpec(WeatherSpec spec) {
+        timestamp = spec.timestamp;
+        location = spec.location;
+        currentTemp = spec.currentTemp;
+        currentConditionCode = spec.currentConditionCode;
+        currentCondition = spec.currentCondition;
+        currentHumidity = spec.currentHumidity;
+        todayMaxTemp = spec.todayMaxTemp;
+        todayMinTemp = spec.todayMinTemp;
+        windSpeed = spec.windSpeed;
+        windDirection = spec.windDirection;
+        for (Forecast forecast : spec.forecasts) {
+            forecasts.add(new Forecast(forecast.minTemp, forecast.maxTemp, forecast.conditionCode, forecast.humidity));
+        }
+    }
+
+    /**
+     * Returns a hash of the current conditions, to detect whether they changed. The
+     * timestamp is not included, since providers update it on every fetch.
+     */
+    public int getCurrentFingerprint() {
+        return Arrays.hashCode(new Object[]{currentTemp, currentConditionCode, currentCondition, currentHumidity, Math.round(windSpeed), windDirection});
+    }
+
+    /**
+     * Returns a hash of today's temperatures and the forecast of the following days.
+     */
+    public int getForecastFingerprint() {
+        int hash = 31 * todayMaxTemp + todayMinTemp;
+        for (Forecast forecast : forecasts) {
+            hash = 31 * hash + Arrays.hashCode(new int[]{forecast.minTemp, forecast.maxTemp, forecast.conditionCode, forecast.humidity});
+        }
+        return hash;
+    }
+
+    public int getLocationFingerprint() {
+        return location != null ? location.hashCode() : 0;
+    }
+
     protected WeatherSpec(Parcel in) {
         timestamp = in.readInt();
         location = in.readString();
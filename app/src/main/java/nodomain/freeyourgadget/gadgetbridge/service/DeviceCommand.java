@@ -0,0 +1,138 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service;
+
+import java.util.UUID;
+
+import nodomain.freeyourgadget.gadgetbridge.model.CalendarEventSpec;
+import nodomain.freeyourgadget.gadgetbridge.model.CallSpec;
+import nodomain.freeyourgadget.gadgetbridge.model.DeviceService;
+import nodomain.freeyourgadget.gadgetbridge.model.MusicSpec;
+import nodomain.freeyourgadget.gadgetbridge.model.MusicStateSpec;
+import nodomain.freeyourgadget.gadgetbridge.model.NotificationSpec;
+import nodomain.freeyourgadget.gadgetbridge.model.WeatherSpec;
+import nodomain.freeyourgadget.gadgetbridge.util.NotificationLatencyTracer;
+
+/**
+ * A typed command for the DeviceCommunicationService. In-process callers pass these directly
+ * to DeviceCommunicationService#handleCommand(DeviceCommand, GBDevice) instead of marshalling
+ * everything into an Intent and unpacking it again.
+ * <p/>
+ * The specs passed to the factory methods are handed over as they are, so callers must not
+ * modify them afterwards. The service copies them before sanitizing them for a device.
+ */
+public abstract class DeviceCommand {
+    private final String action;
+
+    private DeviceCommand(String action) {
+        this.action = action;
+    }
+
+    /**
+     * The DeviceService action corresponding to this command, used for targeting and logging.
+     */
+    public String getAction() {
+        return action;
+    }
+
+    /**
+     * Executes this command for a single device. Called on the pipeline of that device.
+     */
+    abstract void execute(DeviceCommunicationService service, DeviceCommunicationService.DeviceStruct device);
+
+    public static DeviceCommand notification(final NotificationSpec notificationSpec) {
+        return new DeviceCommand(DeviceService.ACTION_NOTIFICATION) {
+            @Override
+            void execute(DeviceCommunicationService service, DeviceCommunicationService.DeviceStruct device) {
+                NotificationLatencyTracer.record(NotificationLatencyTracer.Stage.DISPATCHED, device.getDevice().getAddress(), notificationSpec.traceStart);
+                service.handleNotification(device, notificationSpec);
+            }
+        };
+    }
+
+    public static DeviceCommand deleteNotification(final int id) {
+        return new DeviceCommand(DeviceService.ACTION_DELETE_NOTIFICATION) {
+            @Override
+            void execute(DeviceCommunicationService service, DeviceCommunicationService.DeviceStruct device) {
+                device.getDeviceSupport().onDeleteNotification(id);
+            }
+        };
+    }
+
+    public static DeviceCommand callState(final CallSpec callSpec) {
+        return new DeviceCommand(DeviceService.ACTION_CALLSTATE) {
+            @Override
+            void execute(DeviceCommunicationService service, DeviceCommunicationService.DeviceStruct device) {
+                service.handleCallState(device, callSpec);
+            }
+        };
+    }
+
+    public static DeviceCommand musicInfo(final MusicSpec musicSpec) {
+        return new DeviceCommand(DeviceService.ACTION_SETMUSICINFO) {
+            @Override
+            void execute(DeviceCommunicationService service, DeviceCommunicationService.DeviceStruct device) {
+                service.handleMusicInfo(device, musicSpec);
+            }
+        };
+    }
+
+    public static DeviceCommand musicState(final MusicStateSpec stateSpec) {
+        return new DeviceCommand(DeviceService.ACTION_SETMUSICSTATE) {
+            @Override
+            void execute(DeviceCommunicationService service, DeviceCommunicationService.DeviceStruct device) {
+                service.handleMusicState(device, stateSpec);
+            }
+        };
+    }
+
+    public static DeviceCommand appConfiguration(final UUID uuid, final String config, final Integer id) {
+        return new DeviceCommand(DeviceService.ACTION_APP_CONFIGURE) {
+            @Override
+            void execute(DeviceCommunicationService service, DeviceCommunicationService.DeviceStruct device) {
+                device.getDeviceSupport().onAppConfiguration(uuid, config, id);
+            }
+        };
+    }
+
+    public static DeviceCommand addCalendarEvent(final CalendarEventSpec calendarEventSpec) {
+        return new DeviceCommand(DeviceService.ACTION_ADD_CALENDAREVENT) {
+            @Override
+            void execute(DeviceCommunicationService service, DeviceCommunicationService.DeviceStruct device) {
+                service.handleAddCalendarEvent(device, calendarEventSpec);
+            }
+        };
+    }
+
+    public static DeviceCommand deleteCalendarEvent(final byte type, final long id) {
+        return new DeviceCommand(DeviceService.ACTION_DELETE_CALENDAREVENT) {
+            @Override
+            void execute(DeviceCommunicationService service, DeviceCommunicationService.DeviceStruct device) {
+                device.getDeviceSupport().onDeleteCalendarEvent(type, id);
+            }
+        };
+    }
+
+    public static DeviceCommand sendWeather(final WeatherSpec weatherSpec) {
+        return new DeviceCommand(DeviceService.ACTION_SEND_WEATHER) {
+            @Override
+            void execute(DeviceCommunicationService service, DeviceCommunicationService.DeviceStruct device) {
+                service.handleWeather(device, weatherSpec);
+            }
+        };
+    }
+}
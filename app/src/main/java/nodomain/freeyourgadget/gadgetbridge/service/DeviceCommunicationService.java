@@ -32,8 +32,12 @@ import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.net.Uri;
+import android.os.Binder;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.LruCache;
 import android.widget.Toast;
 
 import androidx.annotation.Nullable;
@@ -44,8 +48,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
@@ -74,12 +86,15 @@ import nodomain.freeyourgadget.gadgetbridge.model.MusicSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.MusicStateSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.NotificationSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.NotificationType;
+import nodomain.freeyourgadget.gadgetbridge.model.Weather;
 import nodomain.freeyourgadget.gadgetbridge.model.WeatherSpec;
 import nodomain.freeyourgadget.gadgetbridge.service.receivers.GBAutoFetchReceiver;
 import nodomain.freeyourgadget.gadgetbridge.util.DeviceHelper;
 import nodomain.freeyourgadget.gadgetbridge.util.EmojiConverter;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
 import nodomain.freeyourgadget.gadgetbridge.util.GBPrefs;
+import nodomain.freeyourgadget.gadgetbridge.util.GBScheduler;
+import nodomain.freeyourgadget.gadgetbridge.util.NotificationLatencyTracer;
 import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
 import nodomain.freeyourgadget.gadgetbridge.util.StringUtils;
 
@@ -162,6 +177,7 @@ import static nodomain.freeyourgadget.gadgetbridge.model.DeviceService.EXTRA_NOT
 import static nodomain.freeyourgadget.gadgetbridge.model.DeviceService.EXTRA_NOTIFICATION_PHONENUMBER;
 import static nodomain.freeyourgadget.gadgetbridge.model.DeviceService.EXTRA_NOTIFICATION_SENDER;
 import static nodomain.freeyourgadget.gadgetbridge.model.DeviceService.EXTRA_NOTIFICATION_SOURCEAPPID;
+import static nodomain.freeyourgadget.gadgetbridge.model.DeviceService.EXTRA_NOTIFICATION_TRACE_START;
 import static nodomain.freeyourgadget.gadgetbridge.model.DeviceService.EXTRA_NOTIFICATION_SOURCENAME;
 import static nodomain.freeyourgadget.gadgetbridge.model.DeviceService.EXTRA_NOTIFICATION_SUBJECT;
 import static nodomain.freeyourgadget.gadgetbridge.model.DeviceService.EXTRA_NOTIFICATION_TITLE;
@@ -177,12 +193,48 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
     @SuppressLint("StaticFieldLeak") // only used for test cases
     private static DeviceSupportFactory DEVICE_SUPPORT_FACTORY = null;
 
-    private boolean mStarted = false;
+    // the number of distinct texts whose emoji conversion is cached
+    private static final int EMOJI_CACHE_SIZE = 64;
+    // collects the weather of several providers updating at about the same time
+    private static final long WEATHER_BATCH_DELAY_MILLIS = 5000;
+    // phone events that go to all devices unless the Intent names one
+    private static final List<String> ALL_DEVICES_ACTIONS = Arrays.asList(
+            ACTION_REQUEST_DEVICEINFO,
+            ACTION_DISCONNECT,
+            ACTION_NOTIFICATION,
+            ACTION_DELETE_NOTIFICATION,
+            ACTION_CALLSTATE,
+            ACTION_SETCANNEDMESSAGES,
+            ACTION_SETTIME,
+            ACTION_SETMUSICINFO,
+            ACTION_SETMUSICSTATE,
+            ACTION_ADD_CALENDAREVENT,
+            ACTION_DELETE_CALENDAREVENT,
+            ACTION_SEND_WEATHER);
+
+    private volatile boolean mStarted = false;
+    private volatile boolean mDestroyed = false;
 
     private DeviceSupportFactory mFactory;
-    private GBDevice mGBDevice = null;
-    private DeviceSupport mDeviceSupport;
-    private DeviceCoordinator mCoordinator = null;
+    private final IBinder mBinder = new LocalBinder();
+    /**
+     * Runs the commands of in-process clients on the main thread, in the order they were
+     * issued, like #onStartCommand() does for the Intents of external callers. Connecting
+     * creates Handlers and registers receivers, which needs a Looper, and the actual device
+     * communication happens on the pipelines of the devices anyway.
+     */
+    private final Handler mCommandHandler = new Handler(Looper.getMainLooper());
+    /**
+     * All devices that are connected, connecting or waiting for reconnect, in the order they
+     * were connected. Copy-on-write, so that commands can be dispatched without holding the
+     * service lock.
+     */
+    private final List<DeviceStruct> mDevices = new CopyOnWriteArrayList<>();
+    /**
+     * Emoji conversions shared by all devices, so that a text that is sent to several
+     * devices without emoji support is only converted once.
+     */
+    private final LruCache<String, String> mEmojiConversions = new LruCache<>(EMOJI_CACHE_SIZE);
 
     private PhoneCallReceiver mPhoneCallReceiver = null;
     private SMSReceiver mSMSReceiver = null;
@@ -213,6 +265,131 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
             "com.spotify.music.playbackstatechanged"
     };
 
+    /**
+     * A device together with its DeviceSupport. Every device has its own pipeline on which
+     * all commands for it are executed, in order, so that a device that is slow to process a
+     * command never delays the others. The pipeline thread only exists while there are
+     * commands to execute.
+     */
+    static class DeviceStruct {
+        private final DeviceSupport deviceSupport;
+        private final ExecutorService pipeline;
+        private final MusicStateTracker musicStateTracker = new MusicStateTracker();
+        private final WeatherTracker weatherTracker = new WeatherTracker();
+        private volatile GBDevice device;
+        private volatile DeviceCoordinator coordinator;
+        private volatile boolean disposed;
+        private boolean wasInitialized;
+
+        DeviceStruct(DeviceSupport deviceSupport) {
+            this.deviceSupport = deviceSupport;
+            device = deviceSupport.getDevice();
+            wasInitialized = device.isInitialized();
+            coordinator = DeviceHelper.getInstance().getCoordinator(device);
+            pipeline = GBScheduler.newSerialExecutor("Device Pipeline " + device.getName());
+        }
+
+        GBDevice getDevice() {
+            return device;
+        }
+
+        DeviceSupport getDeviceSupport() {
+            return deviceSupport;
+        }
+
+        DeviceCoordinator getCoordinator() {
+            return coordinator;
+        }
+
+        MusicStateTracker getMusicStateTracker() {
+            return musicStateTracker;
+        }
+
+        WeatherTracker getWeatherTracker() {
+            return weatherTracker;
+        }
+
+        /**
+         * @return true if the device has just been initialized, i.e. it has lost the music
+         * and weather that were sent before
+         */
+        boolean setDevice(GBDevice device) {
+            // the changed device is usually the same instance, so its previous state is lost
+            boolean initialized = device.isInitialized();
+            boolean reinitialized = initialized && !wasInitialized;
+            if (reinitialized) {
+                // the device does not remember the music state and weather across connections
+                musicStateTracker.reset();
+                weatherTracker.reset();
+            }
+            wasInitialized = initialized;
+            this.device = device;
+            coordinator = DeviceHelper.getInstance().getCoordinator(device);
+            return reinitialized;
+        }
+
+        /**
+         * Whether commands may be sent to the device, i.e. it is initialized or will queue
+         * them until it is reconnected.
+         */
+        boolean isUsable() {
+            return !disposed && (device.isInitialized() || deviceSupport.useAutoConnect());
+        }
+
+        /**
+         * Queues the command on the pipeline of this device. Commands that are still queued
+         * when the device is disposed are dropped.
+         */
+        void execute(final String action, final Runnable command) {
+            try {
+                pipeline.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (disposed) {
+                            return;
+                        }
+                        try {
+                            command.run();
+                        } catch (Exception ex) {
+                            LOG.error("Error executing " + action + " for " + device.getName(), ex);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                LOG.info("Device " + device.getName() + " is gone, dropping " + action);
+            }
+        }
+
+        /**
+         * Drops the queued commands and disposes the DeviceSupport on the pipeline, after the
+         * command that may currently be running, then shuts the pipeline down.
+         */
+        void dispose() {
+            disposed = true;
+            Runnable disposeSupport = new Runnable() {
+                @Override
+                public void run() {
+                    deviceSupport.dispose();
+                }
+            };
+            try {
+                pipeline.execute(disposeSupport);
+            } catch (RejectedExecutionException ex) {
+                disposeSupport.run();
+            }
+            pipeline.shutdown();
+        }
+    }
+
+    /**
+     * Binder for in-process clients, see #handleCommand(Intent).
+     */
+    public class LocalBinder extends Binder {
+        public DeviceCommunicationService getService() {
+            return DeviceCommunicationService.this;
+        }
+    }
+
     /**
      * For testing!
      *
@@ -232,18 +409,29 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
             String action = intent.getAction();
             if (GBDevice.ACTION_DEVICE_CHANGED.equals(action)) {
                 GBDevice device = intent.getParcelableExtra(GBDevice.EXTRA_DEVICE);
-                if (mGBDevice != null && mGBDevice.equals(device)) {
-                    mGBDevice = device;
-                    mCoordinator = DeviceHelper.getInstance().getCoordinator(device);
-                    boolean enableReceivers = mDeviceSupport != null && (mDeviceSupport.useAutoConnect() || mGBDevice.isInitialized());
-                    setReceiversEnableState(enableReceivers, mGBDevice.isInitialized(), mCoordinator);
-                } else {
-                    LOG.error("Got ACTION_DEVICE_CHANGED from unexpected device: " + device);
-                }
+                handleDeviceChanged(device);
             }
         }
     };
 
+    /**
+     * Synchronized with the commands, since both change the state of the receivers.
+     */
+    private synchronized void handleDeviceChanged(GBDevice device) {
+        DeviceStruct struct = getDeviceStruct(device);
+        if (struct != null) {
+            if (struct.setDevice(device)) {
+                WeatherSpec weatherSpec = Weather.getInstance().getWeatherSpec();
+                if (weatherSpec != null) {
+                    handleWeather(struct, weatherSpec);
+                }
+            }
+            updateReceiversEnableState();
+        } else {
+            LOG.error("Got ACTION_DEVICE_CHANGED from unexpected device: " + device);
+        }
+    }
+
     @Override
     public void onCreate() {
         LOG.debug("DeviceCommunicationService is being created");
@@ -264,8 +452,75 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
     }
 
     @Override
-    public synchronized int onStartCommand(Intent intent, int flags, int startId) {
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        return onCommand(intent);
+    }
+
+    /**
+     * Handles the command of an in-process client like #onStartCommand() would, without
+     * the round-trip through the binder. The command is executed on the main thread, after
+     * the commands passed before, see #handleCommand(DeviceCommand, GBDevice).
+     * @return false if the command was not handled because the service is being destroyed
+     */
+    public boolean handleCommand(final Intent intent) {
+        if (mDestroyed) {
+            return false;
+        }
+        mCommandHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mDestroyed) {
+                    LOG.info("Service destroyed, dropping " + intent.getAction());
+                    return;
+                }
+                onCommand(intent);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Handles a typed command of an in-process client, in order with the commands passed
+     * to #handleCommand(Intent).
+     * @param device the device to send the command to, or null for the default targets,
+     *               see #getTargetDevices(GBDevice, String)
+     * @return false if the command was not handled because the service is being destroyed
+     */
+    public boolean handleCommand(final DeviceCommand command, @Nullable final GBDevice device) {
+        if (mDestroyed) {
+            return false;
+        }
+        mCommandHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mDestroyed) {
+                    LOG.info("Service destroyed, dropping " + command.getAction());
+                    return;
+                }
+                dispatchCommand(command, device);
+            }
+        });
+        return true;
+    }
+
+    private synchronized void dispatchCommand(final DeviceCommand command, @Nullable GBDevice device) {
+        String action = command.getAction();
+        LOG.debug("Service command: " + action);
+        if (!mStarted) {
+            LOG.info("Must start service with " + ACTION_START + " or " + ACTION_CONNECT + " before using it: " + action);
+            return;
+        }
+        for (final DeviceStruct struct : getUsableDevices(getTargetDevices(device, action))) {
+            struct.execute(action, new Runnable() {
+                @Override
+                public void run() {
+                    command.execute(DeviceCommunicationService.this, struct);
+                }
+            });
+        }
+    }
 
+    private synchronized int onCommand(Intent intent) {
         if (intent == null) {
             LOG.info("no intent");
             return START_NOT_STICKY;
@@ -287,19 +542,8 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
                 LOG.info("Must start service with " + ACTION_START + " or " + ACTION_CONNECT + " before using it: " + action);
                 return START_NOT_STICKY;
             }
-
-            if (mDeviceSupport == null || (!isInitialized() && !mDeviceSupport.useAutoConnect())) {
-                // trying to send notification without valid Bluetooth connection
-                if (mGBDevice != null) {
-                    // at least send back the current device state
-                    mGBDevice.sendDeviceUpdateIntent(this);
-                }
-                return START_STICKY;
-            }
         }
 
-        // when we get past this, we should have valid mDeviceSupport and mGBDevice instances
-
         Prefs prefs = getPrefs();
         switch (action) {
             case ACTION_START:
@@ -326,12 +570,17 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
                     autoReconnect = getGBPrefs().getAutoReconnect();
                 }
 
-                if (gbDevice != null && !isConnecting() && !isConnected()) {
-                    setDeviceSupport(null);
+                DeviceStruct existing = getDeviceStruct(gbDevice);
+                if (gbDevice != null && (existing == null || (!existing.getDevice().isConnecting() && !existing.getDevice().isConnected()))) {
+                    if (existing != null) {
+                        removeDevice(existing);
+                    }
+                    DeviceStruct struct = null;
                     try {
                         DeviceSupport deviceSupport = mFactory.createDeviceSupport(gbDevice);
                         if (deviceSupport != null) {
-                            setDeviceSupport(deviceSupport);
+                            struct = new DeviceStruct(deviceSupport);
+                            mDevices.add(struct);
                             if (firstTime) {
                                 deviceSupport.connectFirstTime();
                             } else {
@@ -343,86 +592,266 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
                         }
                     } catch (Exception e) {
                         GB.toast(this, getString(R.string.cannot_connect, e.getMessage()), Toast.LENGTH_SHORT, GB.ERROR, e);
-                        setDeviceSupport(null);
+                        if (struct != null) {
+                            removeDevice(struct);
+                        }
                     }
-                } else if (mGBDevice != null) {
+                } else if (existing != null) {
                     // send an update at least
-                    mGBDevice.sendDeviceUpdateIntent(this);
+                    existing.getDevice().sendDeviceUpdateIntent(this);
                 }
                 break;
-            default:
-                if (mDeviceSupport == null || mGBDevice == null) {
-                    LOG.warn("device support:" + mDeviceSupport + ", device: " + mGBDevice + ", aborting");
-                } else {
-                    handleAction(intent, action, prefs);
+            case ACTION_REQUEST_DEVICEINFO:
+                for (DeviceStruct struct : getTargetDevices(intent, action)) {
+                    struct.getDevice().sendDeviceUpdateIntent(this);
+                }
+                break;
+            case ACTION_DISCONNECT:
+                for (DeviceStruct struct : getTargetDevices(intent, action)) {
+                    removeDevice(struct);
                 }
                 break;
+            default:
+                dispatchAction(intent, action);
+                break;
         }
         return START_STICKY;
     }
 
+    /**
+     * Returns the device given in the Intent, see #getTargetDevices(GBDevice, String).
+     */
+    private List<DeviceStruct> getTargetDevices(Intent intent, String action) {
+        // also unparcels the extras here, before the pipelines read them concurrently
+        GBDevice device = intent.getParcelableExtra(GBDevice.EXTRA_DEVICE);
+        return getTargetDevices(device, action);
+    }
+
+    /**
+     * Returns the given device. Without one, phone events go to all devices, while commands
+     * for a single device only go to the only device, if there is just one.
+     */
+    private List<DeviceStruct> getTargetDevices(@Nullable GBDevice device, String action) {
+        if (device == null) {
+            if (ALL_DEVICES_ACTIONS.contains(action) || mDevices.size() <= 1) {
+                return mDevices;
+            }
+            LOG.warn("Not sending " + action + " to " + mDevices.size() + " devices, it does not name one");
+            return Collections.emptyList();
+        }
+        DeviceStruct struct = getDeviceStruct(device);
+        if (struct == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(struct);
+    }
+
+    @Nullable
+    private DeviceStruct getDeviceStruct(@Nullable GBDevice device) {
+        if (device == null) {
+            return null;
+        }
+        for (DeviceStruct struct : mDevices) {
+            if (struct.getDevice().equals(device)) {
+                return struct;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the devices of the given ones that commands can be sent to. If there are none,
+     * the current state of the devices is sent back instead.
+     */
+    private List<DeviceStruct> getUsableDevices(List<DeviceStruct> devices) {
+        List<DeviceStruct> usable = new ArrayList<>(devices.size());
+        for (DeviceStruct struct : devices) {
+            if (struct.isUsable()) {
+                usable.add(struct);
+            }
+        }
+        if (usable.isEmpty()) {
+            // trying to send notification without valid Bluetooth connection
+            for (DeviceStruct struct : devices) {
+                // at least send back the current device state
+                struct.getDevice().sendDeviceUpdateIntent(this);
+            }
+        }
+        return usable;
+    }
+
+    /**
+     * Executes the action on the pipelines of all target devices.
+     */
+    private void dispatchAction(final Intent intent, final String action) {
+        for (final DeviceStruct struct : getUsableDevices(getTargetDevices(intent, action))) {
+            struct.execute(action, new Runnable() {
+                @Override
+                public void run() {
+                    handleAction(intent, action, struct);
+                }
+            });
+        }
+    }
+
     /**
      * @param text original text
      * @return 'text' or a new String without non supported chars like emoticons, etc.
      */
-    private String sanitizeNotifText(String text) {
+    private String sanitizeNotifText(DeviceStruct device, String text) {
         if (text == null || text.length() == 0)
             return text;
 
-        text = mDeviceSupport.customStringFilter(text);
+        text = device.getDeviceSupport().customStringFilter(text);
 
-        if (!mCoordinator.supportsUnicodeEmojis()) {
-            return EmojiConverter.convertUnicodeEmojiToAscii(text, getApplicationContext());
+        if (!device.getCoordinator().supportsUnicodeEmojis()) {
+            String converted = mEmojiConversions.get(text);
+            if (converted == null) {
+                converted = EmojiConverter.convertUnicodeEmojiToAscii(text, getApplicationContext());
+                mEmojiConversions.put(text, converted);
+            }
+            return converted;
         }
 
         return text;
     }
 
-    private void handleAction(Intent intent, String action, Prefs prefs) {
+    /**
+     * The handle* methods sanitize a copy of the spec for the given device, since the same
+     * spec may be passed to the pipelines of several devices.
+     */
+    void handleNotification(DeviceStruct device, NotificationSpec spec) {
+        NotificationSpec notificationSpec = new NotificationSpec(spec);
+        notificationSpec.sender = sanitizeNotifText(device, notificationSpec.sender);
+        notificationSpec.subject = sanitizeNotifText(device, notificationSpec.subject);
+        notificationSpec.title = sanitizeNotifText(device, notificationSpec.title);
+        notificationSpec.body = sanitizeNotifText(device, notificationSpec.body);
+        NotificationLatencyTracer.record(NotificationLatencyTracer.Stage.SANITIZED, device.getDevice().getAddress(), notificationSpec.traceStart);
+
+        if (notificationSpec.type == NotificationType.GENERIC_SMS && notificationSpec.phoneNumber != null) {
+            GBApplication.getIDSenderLookup().add(notificationSpec.getId(), notificationSpec.phoneNumber);
+        }
+
+        //TODO: check if at least one of the attached actions is a reply action instead?
+        if ((notificationSpec.attachedActions != null && notificationSpec.attachedActions.size() > 0)
+                || (notificationSpec.type == NotificationType.GENERIC_SMS && notificationSpec.phoneNumber != null)) {
+            // NOTE: maybe not where it belongs
+            // I would rather like to save that as an array in SharedPreferences
+            // this would work but I dont know how to do the same in the Settings Activity's xml
+            notificationSpec.cannedReplies = GBApplication.getPrefsSnapshot().cannedReplies;
+        }
+
+        device.getDeviceSupport().onNotification(notificationSpec);
+    }
+
+    void handleAddCalendarEvent(DeviceStruct device, CalendarEventSpec spec) {
+        CalendarEventSpec calendarEventSpec = new CalendarEventSpec(spec);
+        calendarEventSpec.title = sanitizeNotifText(device, calendarEventSpec.title);
+        calendarEventSpec.description = sanitizeNotifText(device, calendarEventSpec.description);
+        calendarEventSpec.location = sanitizeNotifText(device, calendarEventSpec.location);
+        device.getDeviceSupport().onAddCalendarEvent(calendarEventSpec);
+    }
+
+    void handleCallState(DeviceStruct device, CallSpec spec) {
+        CallSpec callSpec = new CallSpec(spec);
+        callSpec.name = sanitizeNotifText(device, callSpec.name);
+        device.getDeviceSupport().onSetCallState(callSpec);
+    }
+
+    void handleMusicInfo(DeviceStruct device, MusicSpec spec) {
+        MusicSpec musicSpec = new MusicSpec(spec);
+        musicSpec.artist = sanitizeNotifText(device, musicSpec.artist);
+        musicSpec.album = sanitizeNotifText(device, musicSpec.album);
+        musicSpec.track = sanitizeNotifText(device, musicSpec.track);
+        if (device.getMusicStateTracker().updateInfo(musicSpec) == 0) {
+            return;
+        }
+        device.getDeviceSupport().onSetMusicInfo(musicSpec);
+    }
+
+    /**
+     * Sends the music state to the device, unless the device can extrapolate it from the
+     * state it got before, see MusicStateTracker.
+     */
+    void handleMusicState(DeviceStruct device, MusicStateSpec stateSpec) {
+        if (device.getMusicStateTracker().updateState(stateSpec, SystemClock.elapsedRealtime()) == 0) {
+            return;
+        }
+        device.getDeviceSupport().onSetMusicState(new MusicStateSpec(stateSpec));
+    }
+
+    /**
+     * Sends the weather to the device after WEATHER_BATCH_DELAY_MILLIS, unless it did not
+     * change, see WeatherTracker. Weather arriving in the meantime replaces it.
+     */
+    void handleWeather(final DeviceStruct device, WeatherSpec weatherSpec) {
+        if (!device.getWeatherTracker().offer(Weather.normalize(weatherSpec))) {
+            return;
+        }
+        GBScheduler.getInstance().schedule("Send weather", new Runnable() {
+            @Override
+            public void run() {
+                device.execute(ACTION_SEND_WEATHER, new Runnable() {
+                    @Override
+                    public void run() {
+                        WeatherTracker tracker = device.getWeatherTracker();
+                        WeatherSpec pending = tracker.takePending();
+                        if (pending != null && tracker.update(pending) != 0) {
+                            device.getDeviceSupport().onSendWeather(pending);
+                        }
+                    }
+                });
+            }
+        }, WEATHER_BATCH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Waits until the pipelines of all devices have executed the commands queued so far.
+     * For testing!
+     */
+    boolean awaitPipelines(long timeoutMillis) throws InterruptedException {
+        List<DeviceStruct> devices = new ArrayList<>(mDevices);
+        final CountDownLatch latch = new CountDownLatch(devices.size());
+        Runnable countDown = new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        };
+        for (DeviceStruct struct : devices) {
+            try {
+                struct.pipeline.execute(countDown);
+            } catch (RejectedExecutionException ex) {
+                latch.countDown();
+            }
+        }
+        return latch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void handleAction(Intent intent, String action, DeviceStruct device) {
+        DeviceSupport deviceSupport = device.getDeviceSupport();
         switch (action) {
-            case ACTION_REQUEST_DEVICEINFO:
-                mGBDevice.sendDeviceUpdateIntent(this);
-                break;
             case ACTION_NOTIFICATION: {
                 int desiredId = intent.getIntExtra(EXTRA_NOTIFICATION_ID, -1);
                 NotificationSpec notificationSpec = new NotificationSpec(desiredId);
                 notificationSpec.phoneNumber = intent.getStringExtra(EXTRA_NOTIFICATION_PHONENUMBER);
-                notificationSpec.sender = sanitizeNotifText(intent.getStringExtra(EXTRA_NOTIFICATION_SENDER));
-                notificationSpec.subject = sanitizeNotifText(intent.getStringExtra(EXTRA_NOTIFICATION_SUBJECT));
-                notificationSpec.title = sanitizeNotifText(intent.getStringExtra(EXTRA_NOTIFICATION_TITLE));
-                notificationSpec.body = sanitizeNotifText(intent.getStringExtra(EXTRA_NOTIFICATION_BODY));
+                notificationSpec.sender = intent.getStringExtra(EXTRA_NOTIFICATION_SENDER);
+                notificationSpec.subject = intent.getStringExtra(EXTRA_NOTIFICATION_SUBJECT);
+                notificationSpec.title = intent.getStringExtra(EXTRA_NOTIFICATION_TITLE);
+                notificationSpec.body = intent.getStringExtra(EXTRA_NOTIFICATION_BODY);
                 notificationSpec.sourceName = intent.getStringExtra(EXTRA_NOTIFICATION_SOURCENAME);
                 notificationSpec.type = (NotificationType) intent.getSerializableExtra(EXTRA_NOTIFICATION_TYPE);
                 notificationSpec.attachedActions = (ArrayList<NotificationSpec.Action>) intent.getSerializableExtra(EXTRA_NOTIFICATION_ACTIONS);
                 notificationSpec.pebbleColor = (byte) intent.getSerializableExtra(EXTRA_NOTIFICATION_PEBBLE_COLOR);
                 notificationSpec.flags = intent.getIntExtra(EXTRA_NOTIFICATION_FLAGS, 0);
                 notificationSpec.sourceAppId = intent.getStringExtra(EXTRA_NOTIFICATION_SOURCEAPPID);
-
-                if (notificationSpec.type == NotificationType.GENERIC_SMS && notificationSpec.phoneNumber != null) {
-                    GBApplication.getIDSenderLookup().add(notificationSpec.getId(), notificationSpec.phoneNumber);
-                }
-
-                //TODO: check if at least one of the attached actions is a reply action instead?
-                if ((notificationSpec.attachedActions != null && notificationSpec.attachedActions.size() > 0)
-                        || (notificationSpec.type == NotificationType.GENERIC_SMS && notificationSpec.phoneNumber != null)) {
-                    // NOTE: maybe not where it belongs
-                    // I would rather like to save that as an array in SharedPreferences
-                    // this would work but I dont know how to do the same in the Settings Activity's xml
-                    ArrayList<String> replies = new ArrayList<>();
-                    for (int i = 1; i <= 16; i++) {
-                        String reply = prefs.getString("canned_reply_" + i, null);
-                        if (reply != null && !reply.equals("")) {
-                            replies.add(reply);
-                        }
-                    }
-                    notificationSpec.cannedReplies = replies.toArray(new String[replies.size()]);
-                }
-
-                mDeviceSupport.onNotification(notificationSpec);
+                notificationSpec.traceStart = intent.getLongExtra(EXTRA_NOTIFICATION_TRACE_START, 0);
+                NotificationLatencyTracer.record(NotificationLatencyTracer.Stage.DISPATCHED, device.getDevice().getAddress(), notificationSpec.traceStart);
+                handleNotification(device, notificationSpec);
                 break;
             }
             case ACTION_DELETE_NOTIFICATION: {
-                mDeviceSupport.onDeleteNotification(intent.getIntExtra(EXTRA_NOTIFICATION_ID, -1));
+                deviceSupport.onDeleteNotification(intent.getIntExtra(EXTRA_NOTIFICATION_ID, -1));
                 break;
             }
             case ACTION_ADD_CALENDAREVENT: {
@@ -431,60 +860,48 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
                 calendarEventSpec.type = intent.getByteExtra(EXTRA_CALENDAREVENT_TYPE, (byte) -1);
                 calendarEventSpec.timestamp = intent.getIntExtra(EXTRA_CALENDAREVENT_TIMESTAMP, -1);
                 calendarEventSpec.durationInSeconds = intent.getIntExtra(EXTRA_CALENDAREVENT_DURATION, -1);
-                calendarEventSpec.title = sanitizeNotifText(intent.getStringExtra(EXTRA_CALENDAREVENT_TITLE));
-                calendarEventSpec.description = sanitizeNotifText(intent.getStringExtra(EXTRA_CALENDAREVENT_DESCRIPTION));
-                calendarEventSpec.location = sanitizeNotifText(intent.getStringExtra(EXTRA_CALENDAREVENT_LOCATION));
-                mDeviceSupport.onAddCalendarEvent(calendarEventSpec);
+                calendarEventSpec.title = intent.getStringExtra(EXTRA_CALENDAREVENT_TITLE);
+                calendarEventSpec.description = intent.getStringExtra(EXTRA_CALENDAREVENT_DESCRIPTION);
+                calendarEventSpec.location = intent.getStringExtra(EXTRA_CALENDAREVENT_LOCATION);
+                handleAddCalendarEvent(device, calendarEventSpec);
                 break;
             }
             case ACTION_DELETE_CALENDAREVENT: {
                 long id = intent.getLongExtra(EXTRA_CALENDAREVENT_ID, -1);
                 byte type = intent.getByteExtra(EXTRA_CALENDAREVENT_TYPE, (byte) -1);
-                mDeviceSupport.onDeleteCalendarEvent(type, id);
+                deviceSupport.onDeleteCalendarEvent(type, id);
                 break;
             }
             case ACTION_RESET: {
                 int flags = intent.getIntExtra(EXTRA_RESET_FLAGS, 0);
-                mDeviceSupport.onReset(flags);
+                deviceSupport.onReset(flags);
                 break;
             }
             case ACTION_HEARTRATE_TEST: {
-                mDeviceSupport.onHeartRateTest();
+                deviceSupport.onHeartRateTest();
                 break;
             }
             case ACTION_FETCH_RECORDED_DATA: {
                 int dataTypes = intent.getIntExtra(EXTRA_RECORDED_DATA_TYPES, 0);
-                mDeviceSupport.onFetchRecordedData(dataTypes);
-                break;
-            }
-            case ACTION_DISCONNECT: {
-                mDeviceSupport.dispose();
-                if (mGBDevice != null) {
-                    mGBDevice.setState(GBDevice.State.NOT_CONNECTED);
-                    mGBDevice.sendDeviceUpdateIntent(this);
-                }
-                setReceiversEnableState(false, false, null);
-                mGBDevice = null;
-                mDeviceSupport = null;
-                mCoordinator = null;
+                deviceSupport.onFetchRecordedData(dataTypes);
                 break;
             }
             case ACTION_FIND_DEVICE: {
                 boolean start = intent.getBooleanExtra(EXTRA_FIND_START, false);
-                mDeviceSupport.onFindDevice(start);
+                deviceSupport.onFindDevice(start);
                 break;
             }
             case ACTION_SET_CONSTANT_VIBRATION: {
                 int intensity = intent.getIntExtra(EXTRA_VIBRATION_INTENSITY, 0);
-                mDeviceSupport.onSetConstantVibration(intensity);
+                deviceSupport.onSetConstantVibration(intensity);
                 break;
             }
             case ACTION_CALLSTATE:
                 CallSpec callSpec = new CallSpec();
                 callSpec.command = intent.getIntExtra(EXTRA_CALL_COMMAND, CallSpec.CALL_UNDEFINED);
                 callSpec.number = intent.getStringExtra(EXTRA_CALL_PHONENUMBER);
-                callSpec.name = sanitizeNotifText(intent.getStringExtra(EXTRA_CALL_DISPLAYNAME));
-                mDeviceSupport.onSetCallState(callSpec);
+                callSpec.name = intent.getStringExtra(EXTRA_CALL_DISPLAYNAME);
+                handleCallState(device, callSpec);
                 break;
             case ACTION_SETCANNEDMESSAGES:
                 int type = intent.getIntExtra(EXTRA_CANNEDMESSAGES_TYPE, -1);
@@ -493,20 +910,20 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
                 CannedMessagesSpec cannedMessagesSpec = new CannedMessagesSpec();
                 cannedMessagesSpec.type = type;
                 cannedMessagesSpec.cannedMessages = cannedMessages;
-                mDeviceSupport.onSetCannedMessages(cannedMessagesSpec);
+                deviceSupport.onSetCannedMessages(cannedMessagesSpec);
                 break;
             case ACTION_SETTIME:
-                mDeviceSupport.onSetTime();
+                deviceSupport.onSetTime();
                 break;
             case ACTION_SETMUSICINFO:
                 MusicSpec musicSpec = new MusicSpec();
-                musicSpec.artist = sanitizeNotifText(intent.getStringExtra(EXTRA_MUSIC_ARTIST));
-                musicSpec.album = sanitizeNotifText(intent.getStringExtra(EXTRA_MUSIC_ALBUM));
-                musicSpec.track = sanitizeNotifText(intent.getStringExtra(EXTRA_MUSIC_TRACK));
+                musicSpec.artist = intent.getStringExtra(EXTRA_MUSIC_ARTIST);
+                musicSpec.album = intent.getStringExtra(EXTRA_MUSIC_ALBUM);
+                musicSpec.track = intent.getStringExtra(EXTRA_MUSIC_TRACK);
                 musicSpec.duration = intent.getIntExtra(EXTRA_MUSIC_DURATION, 0);
                 musicSpec.trackCount = intent.getIntExtra(EXTRA_MUSIC_TRACKCOUNT, 0);
                 musicSpec.trackNr = intent.getIntExtra(EXTRA_MUSIC_TRACKNR, 0);
-                mDeviceSupport.onSetMusicInfo(musicSpec);
+                handleMusicInfo(device, musicSpec);
                 break;
             case ACTION_SETMUSICSTATE:
                 MusicStateSpec stateSpec = new MusicStateSpec();
@@ -515,23 +932,23 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
                 stateSpec.position = intent.getIntExtra(EXTRA_MUSIC_POSITION, 0);
                 stateSpec.playRate = intent.getIntExtra(EXTRA_MUSIC_RATE, 0);
                 stateSpec.state = intent.getByteExtra(EXTRA_MUSIC_STATE, (byte) 0);
-                mDeviceSupport.onSetMusicState(stateSpec);
+                handleMusicState(device, stateSpec);
                 break;
             case ACTION_REQUEST_APPINFO:
-                mDeviceSupport.onAppInfoReq();
+                deviceSupport.onAppInfoReq();
                 break;
             case ACTION_REQUEST_SCREENSHOT:
-                mDeviceSupport.onScreenshotReq();
+                deviceSupport.onScreenshotReq();
                 break;
             case ACTION_STARTAPP: {
                 UUID uuid = (UUID) intent.getSerializableExtra(EXTRA_APP_UUID);
                 boolean start = intent.getBooleanExtra(EXTRA_APP_START, true);
-                mDeviceSupport.onAppStart(uuid, start);
+                deviceSupport.onAppStart(uuid, start);
                 break;
             }
             case ACTION_DELETEAPP: {
                 UUID uuid = (UUID) intent.getSerializableExtra(EXTRA_APP_UUID);
-                mDeviceSupport.onAppDelete(uuid);
+                deviceSupport.onAppDelete(uuid);
                 break;
             }
             case ACTION_APP_CONFIGURE: {
@@ -541,97 +958,91 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
                 if (intent.hasExtra(EXTRA_APP_CONFIG_ID)) {
                     id = intent.getIntExtra(EXTRA_APP_CONFIG_ID, 0);
                 }
-                mDeviceSupport.onAppConfiguration(uuid, config, id);
+                deviceSupport.onAppConfiguration(uuid, config, id);
                 break;
             }
             case ACTION_APP_REORDER: {
                 UUID[] uuids = (UUID[]) intent.getSerializableExtra(EXTRA_APP_UUID);
-                mDeviceSupport.onAppReorder(uuids);
+                deviceSupport.onAppReorder(uuids);
                 break;
             }
             case ACTION_INSTALL:
                 Uri uri = intent.getParcelableExtra(EXTRA_URI);
                 if (uri != null) {
                     LOG.info("will try to install app/fw");
-                    mDeviceSupport.onInstallApp(uri);
+                    deviceSupport.onInstallApp(uri);
                 }
                 break;
             case ACTION_SET_ALARMS:
                 ArrayList<? extends Alarm> alarms = (ArrayList<? extends Alarm>) intent.getSerializableExtra(EXTRA_ALARMS);
-                mDeviceSupport.onSetAlarms(alarms);
+                deviceSupport.onSetAlarms(alarms);
                 break;
             case ACTION_ENABLE_REALTIME_STEPS: {
                 boolean enable = intent.getBooleanExtra(EXTRA_BOOLEAN_ENABLE, false);
-                mDeviceSupport.onEnableRealtimeSteps(enable);
+                deviceSupport.onEnableRealtimeSteps(enable);
                 break;
             }
             case ACTION_ENABLE_HEARTRATE_SLEEP_SUPPORT: {
                 boolean enable = intent.getBooleanExtra(EXTRA_BOOLEAN_ENABLE, false);
-                mDeviceSupport.onEnableHeartRateSleepSupport(enable);
+                deviceSupport.onEnableHeartRateSleepSupport(enable);
                 break;
             }
             case ACTION_SET_HEARTRATE_MEASUREMENT_INTERVAL: {
                 int seconds = intent.getIntExtra(EXTRA_INTERVAL_SECONDS, 0);
-                mDeviceSupport.onSetHeartRateMeasurementInterval(seconds);
+                deviceSupport.onSetHeartRateMeasurementInterval(seconds);
                 break;
             }
             case ACTION_ENABLE_REALTIME_HEARTRATE_MEASUREMENT: {
                 boolean enable = intent.getBooleanExtra(EXTRA_BOOLEAN_ENABLE, false);
-                mDeviceSupport.onEnableRealtimeHeartRateMeasurement(enable);
+                deviceSupport.onEnableRealtimeHeartRateMeasurement(enable);
                 break;
             }
             case ACTION_SEND_CONFIGURATION: {
                 String config = intent.getStringExtra(EXTRA_CONFIG);
-                mDeviceSupport.onSendConfiguration(config);
+                deviceSupport.onSendConfiguration(config);
                 break;
             }
             case ACTION_READ_CONFIGURATION: {
                 String config = intent.getStringExtra(EXTRA_CONFIG);
-                mDeviceSupport.onReadConfiguration(config);
+                deviceSupport.onReadConfiguration(config);
                 break;
             }
             case ACTION_TEST_NEW_FUNCTION: {
-                mDeviceSupport.onTestNewFunction();
+                deviceSupport.onTestNewFunction();
                 break;
             }
             case ACTION_SEND_WEATHER: {
                 WeatherSpec weatherSpec = intent.getParcelableExtra(EXTRA_WEATHER);
                 if (weatherSpec != null) {
-                    mDeviceSupport.onSendWeather(weatherSpec);
+                    handleWeather(device, weatherSpec);
                 }
                 break;
             }
             case ACTION_SET_LED_COLOR:
                 int color = intent.getIntExtra(EXTRA_LED_COLOR, 0);
                 if (color != 0) {
-                    mDeviceSupport.onSetLedColor(color);
+                    deviceSupport.onSetLedColor(color);
                 }
                 break;
             case ACTION_SET_FM_FREQUENCY:
                 float frequency = intent.getFloatExtra(EXTRA_FM_FREQUENCY, -1);
                 if (frequency != -1) {
-                    mDeviceSupport.onSetFmFrequency(frequency);
+                    deviceSupport.onSetFmFrequency(frequency);
                 }
                 break;
         }
     }
 
     /**
-     * Disposes the current DeviceSupport instance (if any) and sets a new device support instance
-     * (if not null).
-     *
-     * @param deviceSupport
+     * Disposes the DeviceSupport of the device and forgets about the device.
      */
-    private void setDeviceSupport(@Nullable DeviceSupport deviceSupport) {
-        if (deviceSupport != mDeviceSupport && mDeviceSupport != null) {
-            mDeviceSupport.dispose();
-            mDeviceSupport = null;
-            mGBDevice = null;
-            mCoordinator = null;
-        }
-        mDeviceSupport = deviceSupport;
-        mGBDevice = mDeviceSupport != null ? mDeviceSupport.getDevice() : null;
-        mCoordinator = mGBDevice != null ? DeviceHelper.getInstance().getCoordinator(mGBDevice) : null;
+    private void removeDevice(DeviceStruct struct) {
+        mDevices.remove(struct);
+        struct.dispose();
+        GBDevice device = struct.getDevice();
+        device.setState(GBDevice.State.NOT_CONNECTED);
+        device.sendDeviceUpdateIntent(this);
+        updateReceiversEnableState();
     }
 
     private void start() {
@@ -645,30 +1056,48 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
         return mStarted;
     }
 
-    private boolean isConnected() {
-        return mGBDevice != null && mGBDevice.isConnected();
-    }
-
-    private boolean isConnecting() {
-        return mGBDevice != null && mGBDevice.isConnecting();
-    }
-
-    private boolean isInitialized() {
-        return mGBDevice != null && mGBDevice.isInitialized();
+    /**
+     * Enables the broadcast receivers while at least one device is usable, and those for
+     * optional features if at least one of the devices supports them.
+     */
+    private void updateReceiversEnableState() {
+        boolean enable = false;
+        GBDevice calendarDevice = null;
+        boolean musicInfo = false;
+        boolean weather = false;
+        boolean activityDataFetching = false;
+        for (DeviceStruct struct : mDevices) {
+            if (!struct.isUsable()) {
+                continue;
+            }
+            enable = true;
+            GBDevice device = struct.getDevice();
+            DeviceCoordinator coordinator = struct.getCoordinator();
+            if (calendarDevice == null && device.isInitialized() && coordinator.supportsCalendarEvents()) {
+                calendarDevice = device;
+            }
+            musicInfo |= coordinator.supportsMusicInfo();
+            weather |= coordinator.supportsWeather();
+            activityDataFetching |= coordinator.supportsActivityDataFetching();
+        }
+        setReceiversEnableState(enable, calendarDevice, musicInfo, weather, activityDataFetching);
     }
 
-
-    private void setReceiversEnableState(boolean enable, boolean initialized, DeviceCoordinator coordinator) {
+    /**
+     * @param calendarDevice the device whose calendar sync state is tracked, or null to disable
+     *                       calendar sync. The events are sent to all devices.
+     */
+    private void setReceiversEnableState(boolean enable, @Nullable GBDevice calendarDevice, boolean musicInfo, boolean weather, boolean activityDataFetching) {
         LOG.info("Setting broadcast receivers to: " + enable);
 
-        if (enable && initialized && coordinator != null && coordinator.supportsCalendarEvents()) {
+        if (enable && calendarDevice != null) {
             if (mCalendarReceiver == null && getPrefs().getBoolean("enable_calendar_sync", true)) {
                 if (!(GBApplication.isRunningMarshmallowOrLater() && ContextCompat.checkSelfPermission(this, Manifest.permission.READ_CALENDAR) == PackageManager.PERMISSION_DENIED)) {
                     IntentFilter calendarIntentFilter = new IntentFilter();
                     calendarIntentFilter.addAction("android.intent.action.PROVIDER_CHANGED");
                     calendarIntentFilter.addDataScheme("content");
                     calendarIntentFilter.addDataAuthority("com.android.calendar", null);
-                    mCalendarReceiver = new CalendarReceiver(mGBDevice);
+                    mCalendarReceiver = new CalendarReceiver(calendarDevice);
                     registerReceiver(mCalendarReceiver, calendarIntentFilter);
                 }
             }
@@ -704,7 +1133,7 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
                 mPebbleReceiver = new PebbleReceiver();
                 registerReceiver(mPebbleReceiver, new IntentFilter("com.getpebble.action.SEND_NOTIFICATION"));
             }
-            if (mMusicPlaybackReceiver == null && coordinator != null && coordinator.supportsMusicInfo()) {
+            if (mMusicPlaybackReceiver == null && musicInfo) {
                 mMusicPlaybackReceiver = new MusicPlaybackReceiver();
                 IntentFilter filter = new IntentFilter();
                 for (String action : mMusicActions) {
@@ -736,18 +1165,18 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
                 filter.addAction(AlarmClockReceiver.GOOGLE_CLOCK_ALARM_DONE_ACTION);
                 registerReceiver(mAlarmClockReceiver, filter);
             }
-            if (mCMWeatherReceiver == null && coordinator != null && coordinator.supportsWeather()) {
+            if (mCMWeatherReceiver == null && weather) {
                 mCMWeatherReceiver = new CMWeatherReceiver();
                 registerReceiver(mCMWeatherReceiver, new IntentFilter("GB_UPDATE_WEATHER"));
             }
             if (GBApplication.isRunningOreoOrLater()) {
-                if (mLineageOsWeatherReceiver == null && coordinator != null && coordinator.supportsWeather()) {
+                if (mLineageOsWeatherReceiver == null && weather) {
 
                     mLineageOsWeatherReceiver = new LineageOsWeatherReceiver();
                     registerReceiver(mLineageOsWeatherReceiver, new IntentFilter("GB_UPDATE_WEATHER"));
                 }
             }
-            if (mOmniJawsObserver == null && coordinator != null && coordinator.supportsWeather()) {
+            if (mOmniJawsObserver == null && weather) {
                 try {
                     mOmniJawsObserver = new OmniJawsObserver(new Handler());
                     getContentResolver().registerContentObserver(OmniJawsObserver.WEATHER_URI, true, mOmniJawsObserver);
@@ -756,7 +1185,7 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
                 }
             }
             if (GBApplication.getPrefs().getBoolean("auto_fetch_enabled", false) &&
-                    coordinator != null && coordinator.supportsActivityDataFetching() && mGBAutoFetchReceiver == null) {
+                    activityDataFetching && mGBAutoFetchReceiver == null) {
                 mGBAutoFetchReceiver = new GBAutoFetchReceiver();
                 registerReceiver(mGBAutoFetchReceiver, new IntentFilter("android.intent.action.USER_PRESENT"));
             }
@@ -821,10 +1250,18 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
         LOG.debug("DeviceCommunicationService is being destroyed");
         super.onDestroy();
 
+        mDestroyed = true;
+        mCommandHandler.removeCallbacksAndMessages(null);
+
         LocalBroadcastManager.getInstance(this).unregisterReceiver(mReceiver);
-        setReceiversEnableState(false, false, null); // disable BroadcastReceivers
+        synchronized (this) {
+            for (DeviceStruct struct : mDevices) {
+                struct.dispose();
+            }
+            mDevices.clear();
+            setReceiversEnableState(false, null, false, false, false); // disable BroadcastReceivers
+        }
 
-        setDeviceSupport(null);
         NotificationManager nm = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
         if (nm != null) {
             nm.cancel(GB.NOTIFICATION_ID); // need to do this because the updated notification won't be cancelled when service stops
@@ -833,15 +1270,15 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
 
     @Override
     public IBinder onBind(Intent intent) {
-        return null;
+        return mBinder;
     }
 
     @Override
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
         if (GBPrefs.AUTO_RECONNECT.equals(key)) {
             boolean autoReconnect = getGBPrefs().getAutoReconnect();
-            if (mDeviceSupport != null) {
-                mDeviceSupport.setAutoReconnect(autoReconnect);
+            for (DeviceStruct struct : mDevices) {
+                struct.getDeviceSupport().setAutoReconnect(autoReconnect);
             }
         }
         if (GBPrefs.CHART_MAX_HEART_RATE.equals(key) || GBPrefs.CHART_MIN_HEART_RATE.equals(key)) {
@@ -861,7 +1298,24 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
         return GBApplication.getGBPrefs();
     }
 
-    public GBDevice getGBDevice() {
-        return mGBDevice;
+    /**
+     * Returns all devices that are connected, connecting or waiting for reconnect.
+     */
+    public List<GBDevice> getGBDevices() {
+        List<GBDevice> devices = new ArrayList<>(mDevices.size());
+        for (DeviceStruct struct : mDevices) {
+            devices.add(struct.getDevice());
+        }
+        return devices;
+    }
+
+    @Nullable
+    public GBDevice getGBDevice(String address) {
+        for (DeviceStruct struct : mDevices) {
+            if (struct.getDevice().getAddress().equals(address)) {
+                return struct.getDevice();
+            }
+        }
+        return null;
     }
 }
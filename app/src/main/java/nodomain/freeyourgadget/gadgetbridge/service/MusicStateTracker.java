@@ -0,0 +1,159 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service;
+
+import java.util.Objects;
+
+import androidx.annotation.Nullable;
+import nodomain.freeyourgadget.gadgetbridge.model.MusicSpec;
+import nodomain.freeyourgadget.gadgetbridge.model.MusicStateSpec;
+
+/**
+ * Tracks the music info and playback state that was last sent to one device, so that only
+ * actual changes are sent to it.
+ * <p/>
+ * Players broadcast their state for every position tick. While playing, the device can
+ * extrapolate the position from the last state it got and the play rate, so a new state
+ * is only sent if it differs in more than the position, or if the position deviates from
+ * the extrapolated one by more than {@link #POSITION_TOLERANCE_SECONDS}, e.g. after seeking.
+ */
+class MusicStateTracker {
+    static final int POSITION_TOLERANCE_SECONDS = 2;
+
+    static final int FIELD_ARTIST = 1;
+    static final int FIELD_ALBUM = 1 << 1;
+    static final int FIELD_TRACK = 1 << 2;
+    static final int FIELD_DURATION = 1 << 3;
+    static final int FIELD_TRACK_COUNT = 1 << 4;
+    static final int FIELD_TRACK_NR = 1 << 5;
+    static final int FIELD_STATE = 1 << 6;
+    static final int FIELD_POSITION = 1 << 7;
+    static final int FIELD_PLAY_RATE = 1 << 8;
+    static final int FIELD_SHUFFLE = 1 << 9;
+    static final int FIELD_REPEAT = 1 << 10;
+
+    private MusicSpec sentInfo;
+    private MusicStateSpec sentState;
+    private long sentStateTime;
+
+    /**
+     * Records the music info as sent if it differs from the last one.
+     * @return the changed fields, 0 if the info need not be sent
+     */
+    synchronized int updateInfo(MusicSpec musicSpec) {
+        int changed = getChangedFields(sentInfo, musicSpec);
+        if (changed != 0) {
+            if ((changed & (FIELD_ARTIST | FIELD_ALBUM | FIELD_TRACK)) != 0) {
+                // the position of the new track cannot be extrapolated
+                sentState = null;
+            }
+            sentInfo = new MusicSpec(musicSpec);
+        }
+        return changed;
+    }
+
+    /**
+     * Records the playback state as sent if it differs from the last one, taking the
+     * position the device extrapolates into account.
+     * @param now the current time in milliseconds, from a monotonic clock
+     * @return the changed fields, 0 if the state need not be sent
+     */
+    synchronized int updateState(MusicStateSpec stateSpec, long now) {
+        int changed = getChangedFields(sentState, stateSpec);
+        if (sentState != null && Math.abs(stateSpec.position - getExtrapolatedPosition(now)) <= POSITION_TOLERANCE_SECONDS) {
+            changed &= ~FIELD_POSITION;
+        }
+        if (changed != 0) {
+            sentState = new MusicStateSpec(stateSpec);
+            sentStateTime = now;
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the position in seconds the device should currently show, based on the last
+     * state sent to it, or -1 if no state was sent yet.
+     */
+    synchronized int getExtrapolatedPosition(long now) {
+        if (sentState == null) {
+            return -1;
+        }
+        if (sentState.state != MusicStateSpec.STATE_PLAYING) {
+            return sentState.position;
+        }
+        // players that do not know the rate report 0 while playing
+        int playRate = sentState.playRate > 0 ? sentState.playRate : 100;
+        return sentState.position + (int) ((now - sentStateTime) * playRate / 100000);
+    }
+
+    /**
+     * Forgets what was sent, e.g. because the device reconnected and lost its state.
+     */
+    synchronized void reset() {
+        sentInfo = null;
+        sentState = null;
+    }
+
+    static int getChangedFields(@Nullable MusicSpec old, MusicSpec spec) {
+        if (old == null) {
+            return FIELD_ARTIST | FIELD_ALBUM | FIELD_TRACK | FIELD_DURATION | FIELD_TRACK_COUNT | FIELD_TRACK_NR;
+        }
+        int changed = 0;
+        if (!Objects.equals(old.artist, spec.artist)) {
+            changed |= FIELD_ARTIST;
+        }
+        if (!Objects.equals(old.album, spec.album)) {
+            changed |= FIELD_ALBUM;
+        }
+        if (!Objects.equals(old.track, spec.track)) {
+            changed |= FIELD_TRACK;
+        }
+        if (old.duration != spec.duration) {
+            changed |= FIELD_DURATION;
+        }
+        if (old.trackCount != spec.trackCount) {
+            changed |= FIELD_TRACK_COUNT;
+        }
+        if (old.trackNr != spec.trackNr) {
+            changed |= FIELD_TRACK_NR;
+        }
+        return changed;
+    }
+
+    static int getChangedFields(@Nullable MusicStateSpec old, MusicStateSpec spec) {
+        if (old == null) {
+            return FIELD_STATE | FIELD_POSITION | FIELD_PLAY_RATE | FIELD_SHUFFLE | FIELD_REPEAT;
+        }
+        int changed = 0;
+        if (old.state != spec.state) {
+            changed |= FIELD_STATE;
+        }
+        if (old.position != spec.position) {
+            changed |= FIELD_POSITION;
+        }
+        if (old.playRate != spec.playRate) {
+            changed |= FIELD_PLAY_RATE;
+        }
+        if (old.shuffle != spec.shuffle) {
+            changed |= FIELD_SHUFFLE;
+        }
+        if (old.repeat != spec.repeat) {
+            changed |= FIELD_REPEAT;
+        }
+        return changed;
+    }
+}
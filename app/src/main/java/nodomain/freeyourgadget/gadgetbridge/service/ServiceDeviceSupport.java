@@ -38,6 +38,7 @@ import nodomain.freeyourgadget.gadgetbridge.model.MusicSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.MusicStateSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.NotificationSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.WeatherSpec;
+import nodomain.freeyourgadget.gadgetbridge.util.NotificationLatencyTracer;
 
 /**
  * Wraps another device support instance and supports busy-checking and throttling of events.
@@ -155,7 +156,15 @@ public class ServiceDeviceSupport implements DeviceSupport {
         if (checkBusy("generic notification") || checkThrottle("generic notification")) {
             return;
         }
-        delegate.onNotification(notificationSpec);
+        String address = getDevice().getAddress();
+        NotificationLatencyTracer.record(NotificationLatencyTracer.Stage.THROTTLED, address, notificationSpec.traceStart);
+        NotificationLatencyTracer.enterTrace(notificationSpec.traceStart, address);
+        try {
+            delegate.onNotification(notificationSpec);
+        } finally {
+            NotificationLatencyTracer.exitTrace();
+        }
+        NotificationLatencyTracer.record(NotificationLatencyTracer.Stage.ENCODED, address, notificationSpec.traceStart);
     }
 
     @Override
@@ -0,0 +1,91 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service;
+
+import nodomain.freeyourgadget.gadgetbridge.model.WeatherSpec;
+
+/**
+ * Tracks the weather that was last sent to one device, so that weather is only sent when it
+ * actually changed. Weather that arrives in a burst, e.g. from several providers, is
+ * collected and only the latest one is sent.
+ */
+class WeatherTracker {
+    static final int SECTION_CURRENT = 1;
+    static final int SECTION_FORECAST = 1 << 1;
+    static final int SECTION_LOCATION = 1 << 2;
+    static final int ALL_SECTIONS = SECTION_CURRENT | SECTION_FORECAST | SECTION_LOCATION;
+
+    private WeatherSpec pending;
+    private boolean sent;
+    private int currentFingerprint;
+    private int forecastFingerprint;
+    private int locationFingerprint;
+
+    /**
+     * Replaces the pending weather with the given one.
+     * @return true if there was no pending weather, i.e. sending it needs to be scheduled
+     */
+    synchronized boolean offer(WeatherSpec weatherSpec) {
+        boolean scheduled = pending != null;
+        pending = weatherSpec;
+        return !scheduled;
+    }
+
+    /**
+     * Returns and clears the pending weather, or null if there is none.
+     */
+    synchronized WeatherSpec takePending() {
+        WeatherSpec weatherSpec = pending;
+        pending = null;
+        return weatherSpec;
+    }
+
+    /**
+     * Records the weather as sent if it differs from the last one.
+     * @return the changed sections, 0 if the weather need not be sent
+     */
+    synchronized int update(WeatherSpec weatherSpec) {
+        int current = weatherSpec.getCurrentFingerprint();
+        int forecast = weatherSpec.getForecastFingerprint();
+        int location = weatherSpec.getLocationFingerprint();
+        int changed = ALL_SECTIONS;
+        if (sent) {
+            changed = 0;
+            if (current != currentFingerprint) {
+                changed |= SECTION_CURRENT;
+            }
+            if (forecast != forecastFingerprint) {
+                changed |= SECTION_FORECAST;
+            }
+            if (location != locationFingerprint) {
+                changed |= SECTION_LOCATION;
+            }
+        }
+        sent = true;
+        currentFingerprint = current;
+        forecastFingerprint = forecast;
+        locationFingerprint = location;
+        return changed;
+    }
+
+    /**
+     * Forgets what was sent, e.g. because the device reconnected and lost its state.
+     */
+    synchronized void reset() {
+        sent = false;
+    }
+}
@@ -104,6 +104,14 @@ public abstract class AbstractBTLEDeviceSupport extends AbstractDeviceSupport im
         }
     }
 
+    /**
+     * Returns the ATT MTU negotiated for the connection, see TransactionBuilder#requestMtu(int).
+     */
+    public int getMtu() {
+        BtLEQueue queue = mQueue;
+        return queue != null ? queue.getMtu() : BtLEQueue.DEFAULT_MTU;
+    }
+
     public TransactionBuilder createTransactionBuilder(String taskName) {
         return new TransactionBuilder(taskName);
     }
@@ -49,6 +49,14 @@ public abstract class BtLEAction {
      */
     public abstract boolean expectsResult();
 
+    /**
+     * Returns how long to wait for the result, if #expectsResult(), before continuing without
+     * it, or 0 to wait until it arrives or the connection is lost.
+     */
+    public long getResultTimeoutMillis() {
+        return 0;
+    }
+
     /**
      * Executes this action, e.g. reads or write a GATT characteristic.
      *
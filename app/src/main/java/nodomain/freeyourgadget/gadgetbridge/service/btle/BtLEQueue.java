@@ -42,13 +42,15 @@ import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import androidx.annotation.Nullable;
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
-import nodomain.freeyourgadget.gadgetbridge.Logging;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice.State;
 import nodomain.freeyourgadget.gadgetbridge.service.DeviceSupport;
+import nodomain.freeyourgadget.gadgetbridge.util.NotificationLatencyTracer;
+import nodomain.freeyourgadget.gadgetbridge.util.PacketCapture;
 
 /**
  * One queue/thread per connectable device.
@@ -56,6 +58,11 @@ import nodomain.freeyourgadget.gadgetbridge.service.DeviceSupport;
 public final class BtLEQueue {
     private static final Logger LOG = LoggerFactory.getLogger(BtLEQueue.class);
 
+    /**
+     * The ATT MTU of every connection until a larger one has been negotiated.
+     */
+    public static final int DEFAULT_MTU = 23;
+
     private final Object mGattMonitor = new Object();
     private final GBDevice mGbDevice;
     private final BluetoothAdapter mBluetoothAdapter;
@@ -68,6 +75,7 @@ public final class BtLEQueue {
     private volatile boolean mCrashed;
     private volatile boolean mAbortTransaction;
     private volatile boolean mAbortServerTransaction;
+    private volatile boolean mDispatching;
 
     private final Context mContext;
     private CountDownLatch mWaitForActionResultLatch;
@@ -77,6 +85,7 @@ public final class BtLEQueue {
     private final InternalGattCallback internalGattCallback;
     private final InternalGattServerCallback internalGattServerCallback;
     private boolean mAutoReconnect;
+    private volatile int mMtu = DEFAULT_MTU;
 
     private Thread dispatchThread = new Thread("Gadgetbridge GATT Dispatcher") {
 
@@ -87,6 +96,7 @@ public final class BtLEQueue {
             while (!mDisposed && !mCrashed) {
                 try {
                     AbstractTransaction qTransaction = mTransactions.take();
+                    mDispatching = true;
 
                     if (!isConnected()) {
                         LOG.debug("not connected, waiting for connection...");
@@ -113,8 +123,9 @@ public final class BtLEQueue {
                                 LOG.info("Aborting running transaction");
                                 break;
                             }
-                            if (LOG.isDebugEnabled()) {
-                                LOG.debug("About to run action: " + action);
+                            // the written data is in the packet capture, if needed
+                            if (LOG.isTraceEnabled()) {
+                                LOG.trace("About to run action: " + action);
                             }
                             if (action.run(mBluetoothGattServer)) {
                                 // check again, maybe due to some condition, action did not need to write, so we can't wait
@@ -137,16 +148,19 @@ public final class BtLEQueue {
                         Transaction transaction = (Transaction)qTransaction;
                         internalGattCallback.setTransactionGattCallback(transaction.getGattCallback());
                         mAbortTransaction = false;
+                        boolean completed = true;
                         // Run all actions of the transaction until one doesn't succeed
                         for (BtLEAction action : transaction.getActions()) {
                             if (mAbortTransaction) { // got disconnected
                                 LOG.info("Aborting running transaction");
+                                completed = false;
                                 break;
                             }
                             mWaitCharacteristic = action.getCharacteristic();
                             mWaitForActionResultLatch = new CountDownLatch(1);
-                            if (LOG.isDebugEnabled()) {
-                                LOG.debug("About to run action: " + action);
+                            // the written data is in the packet capture, if needed
+                            if (LOG.isTraceEnabled()) {
+                                LOG.trace("About to run action: " + action);
                             }
                             if (action instanceof GattListenerAction) {
                                 // this special action overwrites the transaction gatt listener (if any), it must
@@ -157,17 +171,27 @@ public final class BtLEQueue {
                                 // check again, maybe due to some condition, action did not need to write, so we can't wait
                                 boolean waitForResult = action.expectsResult();
                                 if (waitForResult) {
-                                    mWaitForActionResultLatch.await();
+                                    long timeout = action.getResultTimeoutMillis();
+                                    if (timeout <= 0) {
+                                        mWaitForActionResultLatch.await();
+                                    } else if (!mWaitForActionResultLatch.await(timeout, TimeUnit.MILLISECONDS)) {
+                                        LOG.warn("No result after " + timeout + "ms, continuing: " + action);
+                                    }
                                     mWaitForActionResultLatch = null;
                                     if (mAbortTransaction) {
+                                        completed = false;
                                         break;
                                     }
                                 }
                             } else {
                                 LOG.error("Action returned false: " + action);
+                                completed = false;
                                 break; // abort the transaction
                             }
                         }
+                        if (completed) {
+                            NotificationLatencyTracer.writeCompleted(transaction.getNotificationTrace());
+                        }
                     }
                 } catch (InterruptedException ignored) {
                     mConnectionLatch = null;
@@ -179,6 +203,7 @@ public final class BtLEQueue {
                 } finally {
                     mWaitForActionResultLatch = null;
                     mWaitCharacteristic = null;
+                    mDispatching = false;
                 }
             }
             LOG.info("Queue Dispatch Thread terminated.");
@@ -204,6 +229,20 @@ public final class BtLEQueue {
         return mGbDevice.isConnected();
     }
 
+    /**
+     * Returns the ATT MTU of the current connection, see RequestMtuAction.
+     */
+    public int getMtu() {
+        return mMtu;
+    }
+
+    /**
+     * Returns true if no transaction is running or waiting to be run.
+     */
+    public boolean isIdle() {
+        return !mDispatching && mTransactions.isEmpty();
+    }
+
     /**
      * Connects to the given remote device. Note that this does not perform any device
      * specific initialization. This should be done in the specific {@link DeviceSupport}
@@ -225,6 +264,7 @@ public final class BtLEQueue {
             }
         }
         LOG.info("Attempting to connect to " + mGbDevice.getName());
+        mMtu = DEFAULT_MTU;
         mBluetoothAdapter.cancelDiscovery();
         BluetoothDevice remoteDevice = mBluetoothAdapter.getRemoteDevice(mGbDevice.getAddress());
         if(!mSupportedServerServices.isEmpty()) {
@@ -294,6 +334,7 @@ public final class BtLEQueue {
         mTransactions.clear();
         mAbortTransaction = true;
         mAbortServerTransaction = true;
+        mMtu = DEFAULT_MTU;
         if (mWaitForActionResultLatch != null) {
             mWaitForActionResultLatch.countDown();
         }
@@ -357,7 +398,11 @@ public final class BtLEQueue {
      */
     public void add(Transaction transaction) {
         LOG.debug("about to add: " + transaction);
+        if (transaction.getNotificationTrace() == null) {
+            transaction.setNotificationTrace(NotificationLatencyTracer.getCurrentTrace());
+        }
         if (!transaction.isEmpty()) {
+            NotificationLatencyTracer.writeQueued(transaction.getNotificationTrace());
             mTransactions.add(transaction);
         }
     }
@@ -541,6 +586,9 @@ public final class BtLEQueue {
             if (!checkCorrectGattInstance(gatt, "characteristic read")) {
                 return;
             }
+            if (status == BluetoothGatt.GATT_SUCCESS) {
+                PacketCapture.captureGatt(mGbDevice.getAddress(), characteristic.getUuid(), PacketCapture.DIRECTION_IN, characteristic.getValue());
+            }
             if (getCallbackToUse() != null) {
                 try {
                     getCallbackToUse().onCharacteristicRead(gatt, characteristic, status);
@@ -586,13 +634,10 @@ public final class BtLEQueue {
         @Override
         public void onCharacteristicChanged(BluetoothGatt gatt,
                                             BluetoothGattCharacteristic characteristic) {
-            if (LOG.isDebugEnabled()) {
-                String content = Logging.formatBytes(characteristic.getValue());
-                LOG.debug("characteristic changed: " + characteristic.getUuid() + " value: " + content);
-            }
             if (!checkCorrectGattInstance(gatt, "characteristic changed")) {
                 return;
             }
+            PacketCapture.captureGatt(mGbDevice.getAddress(), characteristic.getUuid(), PacketCapture.DIRECTION_IN, characteristic.getValue());
             if (getCallbackToUse() != null) {
                 try {
                     getCallbackToUse().onCharacteristicChanged(gatt, characteristic);
@@ -619,6 +664,21 @@ public final class BtLEQueue {
             }
         }
 
+        @Override
+        public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
+            LOG.debug("mtu changed: " + mtu + getStatusString(status));
+            if (!checkCorrectGattInstance(gatt, "mtu changed")) {
+                return;
+            }
+            if (status == BluetoothGatt.GATT_SUCCESS) {
+                mMtu = mtu;
+            }
+            // a refused request just keeps the old MTU, so the transaction is not aborted
+            if (BtLEQueue.this.mWaitCharacteristic == null && mWaitForActionResultLatch != null) {
+                mWaitForActionResultLatch.countDown();
+            }
+        }
+
         private void checkWaitingCharacteristic(BluetoothGattCharacteristic characteristic, int status) {
             if (status != BluetoothGatt.GATT_SUCCESS) {
                 if (characteristic != null) {
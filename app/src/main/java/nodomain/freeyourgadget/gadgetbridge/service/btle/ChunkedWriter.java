@@ -0,0 +1,87 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service.btle;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a payload that is too large for a single write into chunks, each starting with a
+ * header of a fixed length, for devices that reassemble the payload themselves. This is
+ * the outgoing counterpart of {@link PacketReassembler}.
+ * <p/>
+ * The chunks are sized to the MTU negotiated for the connection, see
+ * {@link AbstractBTLEDeviceSupport#getMtu()}, so a larger MTU means fewer writes. Every
+ * chunk is allocated with its final size and the payload is copied into it directly.
+ */
+public abstract class ChunkedWriter {
+    /**
+     * The length of the ATT write request header, which takes up part of the MTU.
+     */
+    public static final int ATT_HEADER_LENGTH = 3;
+
+    private final int headerLength;
+
+    protected ChunkedWriter(int headerLength) {
+        this.headerLength = headerLength;
+    }
+
+    /**
+     * Returns the number of payload bytes that fit into one chunk.
+     */
+    public int getMaxChunkLength(int mtu) {
+        return mtu - ATT_HEADER_LENGTH - headerLength;
+    }
+
+    public int getChunkCount(int length, int mtu) {
+        int maxChunkLength = getMaxChunkLength(mtu);
+        return (length + maxChunkLength - 1) / maxChunkLength;
+    }
+
+    public List<byte[]> split(byte[] data, int mtu) {
+        int maxChunkLength = getMaxChunkLength(mtu);
+        int count = getChunkCount(data.length, mtu);
+        List<byte[]> chunks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int offset = i * maxChunkLength;
+            int length = Math.min(maxChunkLength, data.length - offset);
+            byte[] chunk = new byte[headerLength + length];
+            writeHeader(chunk, i, count);
+            System.arraycopy(data, offset, chunk, headerLength, length);
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * Adds a write of every chunk of the given payload to the transaction.
+     */
+    public void write(TransactionBuilder builder, BluetoothGattCharacteristic characteristic, byte[] data, int mtu) {
+        for (byte[] chunk : split(data, mtu)) {
+            builder.write(characteristic, chunk);
+        }
+    }
+
+    /**
+     * Writes the header of a chunk to its first bytes.
+     * @param index the index of the chunk, starting at 0
+     * @param count the total number of chunks of the payload
+     */
+    protected abstract void writeHeader(byte[] chunk, int index, int count);
+}
@@ -0,0 +1,303 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service.btle;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Reassembles the payload of a bulk transfer that is sent as a sequence of notifications,
+ * like the activity data of most fitness bands.
+ * <p/>
+ * Every packet starts with a header of a fixed length, which is stripped. If the header
+ * contains a counter byte, the counter is checked, so that lost packets are detected.
+ * The payload is then split into records of a fixed length, which are passed to the
+ * {@link RecordHandler} through a {@link Cursor} that points directly into the packet,
+ * so that nothing is copied or allocated per packet. Only records that span two packets
+ * are assembled in an internal segment buffer, which is taken from a small pool and
+ * returned with {@link #release()}.
+ * <p/>
+ * Without a RecordHandler, all payload is kept, see {@link #getBufferedData()}.
+ */
+public class PacketReassembler {
+    /**
+     * Record length for passing the whole payload of every packet as a single record.
+     */
+    public static final int UNFRAMED = 0;
+    /**
+     * Counter offset for packets without a counter.
+     */
+    public static final int NO_COUNTER = -1;
+
+    private static final int SEGMENT_SIZE = 512;
+    private static final int MAX_POOLED_SEGMENTS = 4;
+    private static final ArrayDeque<byte[]> segmentPool = new ArrayDeque<>();
+
+    public interface RecordHandler {
+        /**
+         * Called for every complete record. The cursor is only valid during the call.
+         */
+        void onRecord(Cursor record) throws IOException;
+    }
+
+    private final int headerLength;
+    private final int counterOffset;
+    private final int recordLength;
+    private final RecordHandler handler;
+    private final Cursor cursor = new Cursor();
+
+    private int expectedCounter;
+    private byte[] segment;
+    private int segmentLength;
+    private int packetCount;
+    private long payloadLength;
+
+    /**
+     * @param headerLength the number of bytes to strip from the beginning of every packet
+     * @param counterOffset the offset of the counter byte in the header, or {@link #NO_COUNTER}
+     * @param recordLength the length of a record, or {@link #UNFRAMED}
+     * @param handler the handler for the records, or null to keep all payload
+     */
+    public PacketReassembler(int headerLength, int counterOffset, int recordLength, RecordHandler handler) {
+        if (counterOffset >= headerLength) {
+            throw new IllegalArgumentException("counter must be part of the header");
+        }
+        this.headerLength = headerLength;
+        this.counterOffset = counterOffset;
+        this.recordLength = recordLength;
+        this.handler = handler;
+    }
+
+    /**
+     * Prepares for a new transfer, whose first packet has the given counter value.
+     */
+    public void reset(int firstCounter) {
+        expectedCounter = firstCounter & 0xff;
+        segmentLength = 0;
+        packetCount = 0;
+        payloadLength = 0;
+    }
+
+    /**
+     * Consumes the given packet.
+     * @return false if the packet is too short or has an unexpected counter. Its payload is
+     * ignored then, the transfer should usually be aborted.
+     * @throws IOException if the RecordHandler fails
+     */
+    public boolean consume(byte[] packet) throws IOException {
+        if (packet.length < headerLength) {
+            return false;
+        }
+        if (counterOffset != NO_COUNTER) {
+            if ((packet[counterOffset] & 0xff) != expectedCounter) {
+                return false;
+            }
+            expectedCounter = (expectedCounter + 1) & 0xff;
+        }
+        packetCount++;
+
+        int offset = headerLength;
+        int end = packet.length;
+        payloadLength += end - offset;
+
+        if (handler == null) {
+            append(packet, offset, end - offset);
+            return true;
+        }
+        if (recordLength == UNFRAMED) {
+            deliver(packet, offset, end - offset);
+            return true;
+        }
+
+        if (segmentLength > 0) {
+            int count = Math.min(recordLength - segmentLength, end - offset);
+            append(packet, offset, count);
+            offset += count;
+            if (segmentLength < recordLength) {
+                return true;
+            }
+            segmentLength = 0;
+            deliver(segment, 0, recordLength);
+        }
+        while (end - offset >= recordLength) {
+            deliver(packet, offset, recordLength);
+            offset += recordLength;
+        }
+        if (offset < end) {
+            append(packet, offset, end - offset);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the counter value that the next packet must have.
+     */
+    public int getExpectedCounter() {
+        return expectedCounter;
+    }
+
+    /**
+     * Returns the counter value of the last consumed packet, or the one before the first
+     * counter if no packet has been consumed yet.
+     */
+    public int getLastCounter() {
+        return (expectedCounter - 1) & 0xff;
+    }
+
+    public int getPacketCount() {
+        return packetCount;
+    }
+
+    /**
+     * Returns the number of payload bytes consumed since the last reset.
+     */
+    public long getPayloadLength() {
+        return payloadLength;
+    }
+
+    /**
+     * Returns the number of bytes of an incomplete record, should be 0 at the end of a transfer.
+     */
+    public int getPendingLength() {
+        return handler != null ? segmentLength : 0;
+    }
+
+    /**
+     * Without a RecordHandler, returns all payload consumed since the last reset as a little
+     * endian buffer, without copying it. The buffer is only valid until the next call
+     * to {@link #consume(byte[])}, {@link #reset(int)} or {@link #release()}.
+     */
+    public ByteBuffer getBufferedData() {
+        byte[] data = segment != null ? segment : new byte[0];
+        return ByteBuffer.wrap(data, 0, segmentLength).slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Returns the segment buffer to the pool. The reassembler may still be used afterwards,
+     * after calling {@link #reset(int)}.
+     */
+    public void release() {
+        if (segment != null && segment.length == SEGMENT_SIZE) {
+            synchronized (segmentPool) {
+                if (segmentPool.size() < MAX_POOLED_SEGMENTS) {
+                    segmentPool.push(segment);
+                }
+            }
+        }
+        segment = null;
+        segmentLength = 0;
+    }
+
+    private void append(byte[] data, int offset, int length) {
+        if (segment == null) {
+            segment = acquireSegment(length);
+        } else if (segmentLength + length > segment.length) {
+            segment = Arrays.copyOf(segment, Math.max(segment.length * 2, segmentLength + length));
+        }
+        System.arraycopy(data, offset, segment, segmentLength, length);
+        segmentLength += length;
+    }
+
+    private static byte[] acquireSegment(int minLength) {
+        if (minLength <= SEGMENT_SIZE) {
+            synchronized (segmentPool) {
+                byte[] pooled = segmentPool.poll();
+                if (pooled != null) {
+                    return pooled;
+                }
+            }
+        }
+        return new byte[Math.max(SEGMENT_SIZE, minLength)];
+    }
+
+    private void deliver(byte[] data, int offset, int length) throws IOException {
+        cursor.set(data, offset, length);
+        handler.onRecord(cursor);
+    }
+
+    /**
+     * A read-only view of a single record. Multi-byte values are little endian.
+     */
+    public static class Cursor {
+        private byte[] data;
+        private int offset;
+        private int length;
+
+        void set(byte[] data, int offset, int length) {
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public byte getByte(int index) {
+            return data[offset + checkIndex(index, 1)];
+        }
+
+        public int getUint8(int index) {
+            return getByte(index) & 0xff;
+        }
+
+        public int getUint16(int index) {
+            int start = offset + checkIndex(index, 2);
+            return (data[start] & 0xff) | ((data[start + 1] & 0xff) << 8);
+        }
+
+        public int getInt32(int index) {
+            int start = offset + checkIndex(index, 4);
+            return (data[start] & 0xff) | ((data[start + 1] & 0xff) << 8)
+                    | ((data[start + 2] & 0xff) << 16) | ((data[start + 3] & 0xff) << 24);
+        }
+
+        /**
+         * Returns the array backing this record, to be used together with
+         * {@link #getOffset()} and {@link #getLength()} for bulk access.
+         */
+        public byte[] getArray() {
+            return data;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(data, offset, length);
+        }
+
+        /**
+         * Returns a copy of the record, only meant for logging or error handling.
+         */
+        public byte[] toByteArray() {
+            return Arrays.copyOfRange(data, offset, offset + length);
+        }
+
+        private int checkIndex(int index, int size) {
+            if (index < 0 || index + size > length) {
+                throw new IndexOutOfBoundsException("index " + index + " out of record length " + length);
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service.btle;
+
+import android.bluetooth.BluetoothGatt;
+import android.content.SharedPreferences;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.NotifyAction;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.PlainAction;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.WriteAction;
+import nodomain.freeyourgadget.gadgetbridge.util.GBScheduler;
+
+/**
+ * Keeps the settings on a device in sync with the preferences, without sending every
+ * setting on every connection.
+ * <p/>
+ * Each setting renders the commands for its current preference values. The commands are
+ * fingerprinted and compared with the fingerprint of the commands last applied to the
+ * device, which is stored in the device specific preferences. Only the settings that
+ * differ are sent, together in a single transaction. Preference changes are debounced and
+ * deferred until the queue is idle, so that changing several settings in a row, or while
+ * activity data is being fetched, does not interleave lots of small transactions.
+ */
+public class SettingsReconciler {
+    private static final Logger LOG = LoggerFactory.getLogger(SettingsReconciler.class);
+
+    private static final String PREF_APPLIED_PREFIX = "applied_setting_";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static final long FLUSH_DELAY_MILLIS = 1000;
+    private static final long BUSY_RETRY_MILLIS = 500;
+    // don't hold back changed settings forever, e.g. during a long activity fetch
+    private static final long MAX_DEFER_MILLIS = 60000;
+
+    public interface Setting {
+        /**
+         * Adds the commands for the current preference values to the builder.
+         */
+        void apply(TransactionBuilder builder);
+    }
+
+    private final AbstractBTLEDeviceSupport support;
+    private final Map<String, Setting> settings = new LinkedHashMap<>();
+    private final Set<String> prefKeys = new HashSet<>();
+
+    private ScheduledFuture<?> pendingFlush;
+    private long deferredSince;
+
+    public SettingsReconciler(AbstractBTLEDeviceSupport support) {
+        this.support = support;
+    }
+
+    /**
+     * Adds a setting. Settings are applied in the order they were added.
+     *
+     * @param name     a unique and stable name, used to store the applied state
+     * @param prefKeys the preference keys the setting depends on
+     */
+    public synchronized void addSetting(String name, Setting setting, String... prefKeys) {
+        settings.put(name, setting);
+        Collections.addAll(this.prefKeys, prefKeys);
+    }
+
+    /**
+     * Returns true if changes of the given preference are applied by this reconciler.
+     */
+    public synchronized boolean handles(String prefKey) {
+        return prefKeys.contains(prefKey);
+    }
+
+    /**
+     * Adds the commands of all settings that differ from the state last applied to the
+     * device to the builder. The new state is recorded once the builder's transaction
+     * has run up to that point.
+     *
+     * @return the number of changed settings
+     */
+    public int applyChanged(TransactionBuilder builder) {
+        final SharedPreferences prefs = getPrefs();
+        final Map<String, Long> changed = new LinkedHashMap<>();
+        for (Map.Entry<String, Setting> entry : getSettings()) {
+            TransactionBuilder settingBuilder = new TransactionBuilder(entry.getKey());
+            entry.getValue().apply(settingBuilder);
+            List<BtLEAction> actions = settingBuilder.getTransaction().getActions();
+            if (actions.isEmpty()) {
+                continue;
+            }
+            String key = PREF_APPLIED_PREFIX + entry.getKey();
+            long fingerprint = getFingerprint(actions);
+            if (prefs.contains(key) && prefs.getLong(key, 0) == fingerprint) {
+                continue;
+            }
+            for (BtLEAction action : actions) {
+                builder.add(action);
+            }
+            changed.put(key, fingerprint);
+        }
+
+        if (!changed.isEmpty()) {
+            LOG.info("Applying changed settings: " + changed.keySet());
+            builder.add(new PlainAction() {
+                @Override
+                public boolean run(BluetoothGatt gatt) {
+                    SharedPreferences.Editor editor = prefs.edit();
+                    for (Map.Entry<String, Long> entry : changed.entrySet()) {
+                        editor.putLong(entry.getKey(), entry.getValue());
+                    }
+                    editor.apply();
+                    return true;
+                }
+            });
+        }
+        return changed.size();
+    }
+
+    /**
+     * Forgets the state applied to the device, so that all settings are sent again, e.g.
+     * after pairing, when the device may have been reset.
+     */
+    public void invalidate() {
+        SharedPreferences prefs = getPrefs();
+        SharedPreferences.Editor editor = prefs.edit();
+        for (String key : prefs.getAll().keySet()) {
+            if (key.startsWith(PREF_APPLIED_PREFIX)) {
+                editor.remove(key);
+            }
+        }
+        editor.apply();
+    }
+
+    /**
+     * Sends the changed settings shortly, once the queue is idle. Further calls until then
+     * are coalesced into the same transaction.
+     */
+    public synchronized void scheduleFlush() {
+        if (pendingFlush == null) {
+            deferredSince = System.currentTimeMillis();
+            schedule(FLUSH_DELAY_MILLIS);
+        }
+    }
+
+    /**
+     * Cancels a scheduled flush, e.g. when the device support is disposed.
+     */
+    public synchronized void cancel() {
+        if (pendingFlush != null) {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+    }
+
+    private void schedule(long delayMillis) {
+        pendingFlush = GBScheduler.getInstance().schedule("Apply changed settings", new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        BtLEQueue queue = support.getQueue();
+        synchronized (this) {
+            if (pendingFlush == null) {
+                return; // cancelled
+            }
+            boolean busy = queue != null && !queue.isIdle();
+            if (busy && System.currentTimeMillis() - deferredSince < MAX_DEFER_MILLIS) {
+                schedule(BUSY_RETRY_MILLIS);
+                return;
+            }
+            pendingFlush = null;
+        }
+
+        if (queue == null || !support.getDevice().isInitialized()) {
+            // the changed settings will be applied during the next initialization
+            return;
+        }
+        try {
+            TransactionBuilder builder = support.performInitialized("Applying changed settings");
+            if (applyChanged(builder) > 0) {
+                builder.queue(queue);
+            }
+        } catch (IOException e) {
+            LOG.error("Unable to apply changed settings", e);
+        }
+    }
+
+    private synchronized List<Map.Entry<String, Setting>> getSettings() {
+        return new ArrayList<>(settings.entrySet());
+    }
+
+    SharedPreferences getPrefs() {
+        return GBApplication.getDeviceSpecificSharedPrefs(support.getDevice().getAddress());
+    }
+
+    static long getFingerprint(List<BtLEAction> actions) {
+        CRC32 crc = new CRC32();
+        for (BtLEAction action : actions) {
+            crc.update(action.getClass().getName().getBytes(UTF_8));
+            if (action.getCharacteristic() != null) {
+                crc.update(action.getCharacteristic().getUuid().toString().getBytes(UTF_8));
+            }
+            if (action instanceof WriteAction) {
+                byte[] value = ((WriteAction) action).getValue();
+                if (value != null) {
+                    crc.update(value);
+                }
+            } else if (action instanceof NotifyAction) {
+                crc.update(((NotifyAction) action).isEnableFlag() ? 1 : 0);
+            }
+        }
+        return crc.getValue();
+    }
+}
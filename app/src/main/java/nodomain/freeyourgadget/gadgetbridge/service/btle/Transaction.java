@@ -22,6 +22,7 @@ import java.util.Collections;
 import java.util.List;
 
 import androidx.annotation.Nullable;
+import nodomain.freeyourgadget.gadgetbridge.util.NotificationLatencyTracer;
 
 /**
  * Groups a bunch of {@link BtLEAction actions} together, making sure
@@ -34,6 +35,8 @@ public class Transaction extends AbstractTransaction {
     private
     @Nullable
     GattCallback gattCallback;
+    @Nullable
+    private NotificationLatencyTracer.Trace notificationTrace;
 
     public Transaction(String taskName) {
         super(taskName);
@@ -64,6 +67,18 @@ public class Transaction extends AbstractTransaction {
         return gattCallback;
     }
 
+    /**
+     * Sets the trace of the notification this transaction sends, if any.
+     */
+    public void setNotificationTrace(@Nullable NotificationLatencyTracer.Trace trace) {
+        notificationTrace = trace;
+    }
+
+    @Nullable
+    public NotificationLatencyTracer.Trace getNotificationTrace() {
+        return notificationTrace;
+    }
+
     @Override
     public int getActionCount() {
         return mActions.size();
@@ -23,8 +23,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import androidx.annotation.Nullable;
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.NotifyAction;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.ReadAction;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.RequestMtuAction;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.WaitAction;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.WriteAction;
 
@@ -80,6 +82,19 @@ public class TransactionBuilder {
         return add(action);
     }
 
+    /**
+     * Requests a larger MTU for the connection. Does nothing before Android 5, where
+     * the MTU cannot be negotiated.
+     * @param mtu the MTU to request, the device may agree to a smaller one
+     */
+    public TransactionBuilder requestMtu(int mtu) {
+        if (!GBApplication.isRunningLollipopOrLater()) {
+            return this;
+        }
+        RequestMtuAction action = new RequestMtuAction(mtu);
+        return add(action);
+    }
+
     public TransactionBuilder add(BtLEAction action) {
         mTransaction.add(action);
         return this;
@@ -45,6 +45,10 @@ public class NotifyAction extends BtLEAction {
         enableFlag = enable;
     }
 
+    public boolean isEnableFlag() {
+        return enableFlag;
+    }
+
     @Override
     public boolean run(BluetoothGatt gatt) {
         boolean result = gatt.setCharacteristicNotification(getCharacteristic(), enableFlag);
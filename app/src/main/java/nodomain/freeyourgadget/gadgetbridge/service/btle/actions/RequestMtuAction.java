@@ -0,0 +1,75 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service.btle.actions;
+
+import android.bluetooth.BluetoothGatt;
+import android.os.Build;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import androidx.annotation.RequiresApi;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.BtLEAction;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.BtLEQueue;
+
+/**
+ * Requests a larger ATT MTU for the connection, so that more data fits into a single write.
+ * The device may agree to a smaller MTU than requested, the result is available from
+ * {@link BtLEQueue#getMtu()}.
+ */
+@RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+public class RequestMtuAction extends BtLEAction {
+    private static final Logger LOG = LoggerFactory.getLogger(RequestMtuAction.class);
+    // some devices never answer, the connection then just keeps the default MTU
+    private static final long RESULT_TIMEOUT_MILLIS = 5000;
+
+    private final int mtu;
+    private boolean requested;
+
+    public RequestMtuAction(int mtu) {
+        super(null);
+        this.mtu = mtu;
+    }
+
+    /**
+     * Never fails, a larger MTU is optional. If the request cannot be made, the rest of the
+     * transaction runs without waiting for a result.
+     */
+    @Override
+    public boolean run(BluetoothGatt gatt) {
+        requested = gatt.requestMtu(mtu);
+        if (!requested) {
+            LOG.warn("Unable to request MTU " + mtu + ", keeping the current one");
+        }
+        return true;
+    }
+
+    @Override
+    public boolean expectsResult() {
+        return requested;
+    }
+
+    @Override
+    public long getResultTimeoutMillis() {
+        return RESULT_TIMEOUT_MILLIS;
+    }
+
+    @Override
+    public String toString() {
+        return getCreationTime() + ": " + getClass().getSimpleName() + " " + mtu;
+    }
+}
@@ -24,6 +24,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
+import nodomain.freeyourgadget.gadgetbridge.util.ProgressReporter;
 
 public class SetProgressAction extends PlainAction {
     private static final Logger LOG = LoggerFactory.getLogger(SetProgressAction.class);
@@ -32,6 +33,7 @@ public class SetProgressAction extends PlainAction {
     private final boolean ongoing;
     private final int percentage;
     private final Context context;
+    private final ProgressReporter reporter;
 
     /**
      * When run, will update the progress notification.
@@ -47,10 +49,30 @@ public class SetProgressAction extends PlainAction {
         this.ongoing = ongoing;
         this.percentage = percentage;
         this.context = context;
+        this.reporter = null;
+    }
+
+    /**
+     * When run, will report the progress to the given reporter, which decides whether the
+     * notification needs to be updated.
+     *
+     * @param reporter
+     * @param percentage
+     */
+    public SetProgressAction(ProgressReporter reporter, int percentage) {
+        this.text = null;
+        this.ongoing = true;
+        this.percentage = percentage;
+        this.context = null;
+        this.reporter = reporter;
     }
 
     @Override
     public boolean run(BluetoothGatt gatt) {
+        if (reporter != null) {
+            reporter.setPercentage(percentage);
+            return true;
+        }
         LOG.info(toString());
         GB.updateInstallNotification(this.text, this.ongoing, this.percentage, this.context);
         return true;
@@ -33,6 +33,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import nodomain.freeyourgadget.gadgetbridge.deviceevents.GBDeviceEventCallControl;
@@ -55,13 +56,16 @@ import nodomain.freeyourgadget.gadgetbridge.service.btle.ServerTransactionBuilde
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.casiogb6900.operations.InitOperation;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
+import nodomain.freeyourgadget.gadgetbridge.util.GBScheduler;
 import nodomain.freeyourgadget.gadgetbridge.util.StringUtils;
 
 public class CasioGB6900DeviceSupport extends AbstractBTLEDeviceSupport {
     private static final Logger LOG = LoggerFactory.getLogger(CasioGB6900DeviceSupport.class);
 
     private ArrayList<BluetoothGattCharacteristic> mCasioCharacteristics = new ArrayList<BluetoothGattCharacteristic>();
-    private CasioHandlerThread mHandlerThread = null;
+    private static final int TX_POWER_PERIOD_SECONDS = 60;
+
+    private ScheduledFuture<?> mTxPowerTask = null;
     private MusicSpec mBufferMusicSpec = null;
     private MusicStateSpec mBufferMusicStateSpec = null;
     private BluetoothGatt mBtGatt = null;
@@ -118,14 +122,32 @@ public class CasioGB6900DeviceSupport extends AbstractBTLEDeviceSupport {
         super.dispose();
     }
 
-    private void close() {
-        if (mHandlerThread != null) {
-            mHandlerThread.quit();
-            mHandlerThread.interrupt();
-            mHandlerThread = null;
+    private synchronized void close() {
+        if (mTxPowerTask != null) {
+            mTxPowerTask.cancel(false);
+            mTxPowerTask = null;
         }
     }
 
+    /**
+     * Periodically reads the TX power level while the device is connected.
+     */
+    private synchronized void startTxPowerTask() {
+        close();
+        mTxPowerTask = GBScheduler.getInstance().scheduleAtFixedRate("Casio TX Power", new Runnable() {
+            @Override
+            public void run() {
+                GBDevice.State state = gbDevice.getState();
+                if (state == GBDevice.State.NOT_CONNECTED || state == GBDevice.State.WAITING_FOR_RECONNECT) {
+                    LOG.debug("Stopping TX power task, state not connected or waiting for reconnect.");
+                    close();
+                    return;
+                }
+                readTxPowerLevel();
+            }
+        }, TX_POWER_PERIOD_SECONDS, TX_POWER_PERIOD_SECONDS, TimeUnit.SECONDS);
+    }
+
     @Override
     public void onServicesDiscovered(BluetoothGatt gatt) {
         mBtGatt = gatt;
@@ -290,14 +312,7 @@ public class CasioGB6900DeviceSupport extends AbstractBTLEDeviceSupport {
         {
             case (byte) 1:
                 LOG.info("Initialization done, setting state to INITIALIZED");
-                if(mHandlerThread != null) {
-                    if(mHandlerThread.isAlive()) {
-                        mHandlerThread.quit();
-                        mHandlerThread.interrupt();
-                    }
-                }
-                mHandlerThread = new CasioHandlerThread(getDevice(), getContext(), this);
-                mHandlerThread.start();
+                startTxPowerTask();
                 gbDevice.setState(GBDevice.State.INITIALIZED);
                 gbDevice.sendDeviceUpdateIntent(getContext());
                 handled = true;
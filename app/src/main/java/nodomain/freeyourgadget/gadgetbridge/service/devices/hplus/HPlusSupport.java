@@ -71,7 +71,7 @@ public class HPlusSupport extends AbstractBTLEDeviceSupport {
 
     private final GBDeviceEventBatteryInfo batteryCmd = new GBDeviceEventBatteryInfo();
 
-    private HPlusHandlerThread syncHelper;
+    private HPlusSyncHelper syncHelper;
     private DeviceType deviceType = DeviceType.UNKNOWN;
 
     public HPlusSupport(DeviceType type) {
@@ -111,8 +111,7 @@ public class HPlusSupport extends AbstractBTLEDeviceSupport {
         gbDevice.sendDeviceUpdateIntent(getContext());
 
         if(syncHelper == null) {
-            syncHelper = new HPlusHandlerThread(getDevice(), getContext(), this);
-            syncHelper.start();
+            syncHelper = new HPlusSyncHelper(getDevice(), getContext(), this);
         }
         syncHelper.sync();
 
@@ -519,8 +518,7 @@ public class HPlusSupport extends AbstractBTLEDeviceSupport {
     public void onFetchRecordedData(int dataTypes) {
 
         if (syncHelper == null){
-            syncHelper = new HPlusHandlerThread(gbDevice, getContext(), this);
-            syncHelper.start();
+            syncHelper = new HPlusSyncHelper(gbDevice, getContext(), this);
         }
 
         syncHelper.sync();
@@ -790,7 +788,6 @@ public class HPlusSupport extends AbstractBTLEDeviceSupport {
     private void close() {
         if (syncHelper != null) {
             syncHelper.quit();
-            syncHelper.interrupt();
             syncHelper = null;
         }
     }
@@ -33,6 +33,8 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
@@ -51,11 +53,16 @@ import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.model.DeviceService;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
-import nodomain.freeyourgadget.gadgetbridge.service.serial.GBDeviceIoThread;
+import nodomain.freeyourgadget.gadgetbridge.util.GBScheduler;
 
 
-class HPlusHandlerThread extends GBDeviceIoThread {
-    private static final Logger LOG = LoggerFactory.getLogger(HPlusHandlerThread.class);
+/**
+ * Periodically polls the device for day slots, sleep data and day summaries and keeps the
+ * connection alive. The polling runs on the shared GBScheduler and is rescheduled for the
+ * earliest of the next due times, or immediately when a response asks for more data.
+ */
+class HPlusSyncHelper {
+    private static final Logger LOG = LoggerFactory.getLogger(HPlusSyncHelper.class);
 
     private int CURRENT_DAY_SYNC_PERIOD = 24 * 60 * 60 * 365; //Never
     private int CURRENT_DAY_SYNC_RETRY_PERIOD = 10;
@@ -68,8 +75,14 @@ class HPlusHandlerThread extends GBDeviceIoThread {
 
     private int HELLO_PERIOD = 60 * 2;
 
-    private boolean mQuit = false;
+    private final GBDevice gbDevice;
+    private final Context context;
+    private volatile boolean mQuit = false;
     private HPlusSupport mHPlusSupport;
+    private ScheduledFuture<?> mPollTask;
+    // guarded by this
+    private boolean mPolling;
+    private boolean mPollAgain;
 
     private int mLastSlotReceived = -1;
     private int mLastSlotRequested = 0;
@@ -85,79 +98,127 @@ class HPlusHandlerThread extends GBDeviceIoThread {
 
     private HPlusDataRecordRealtime prevRealTimeRecord = null;
 
-    private final Object waitObject = new Object();
-
     List<HPlusDataRecordDaySlot> mDaySlotRecords = new ArrayList<>();
 
     private HPlusDataRecordDaySlot mCurrentDaySlot = null;
 
-    public HPlusHandlerThread(GBDevice gbDevice, Context context, HPlusSupport hplusSupport) {
-        super(gbDevice, context);
-        LOG.info("Initializing HPlus Handler Thread");
+    public HPlusSyncHelper(GBDevice gbDevice, Context context, HPlusSupport hplusSupport) {
+        LOG.info("Initializing HPlus Sync Helper");
+        this.gbDevice = gbDevice;
+        this.context = context;
         mQuit = false;
 
         mHPlusSupport = hplusSupport;
     }
 
+    public Context getContext() {
+        return context;
+    }
 
-    @Override
-    public void run() {
-        mQuit = false;
+    public GBDevice getDevice() {
+        return gbDevice;
+    }
+
+    private final Runnable mPollRunnable = new Runnable() {
+        @Override
+        public void run() {
+            poll();
+        }
+    };
 
-        sync();
+    /**
+     * Runs the due requests. The requests and the responses may ask for another poll while
+     * this one is still running, which is then done right after it instead of concurrently.
+     */
+    private void poll() {
+        synchronized (this) {
+            if (mPolling) {
+                mPollAgain = true;
+                return;
+            }
+            mPolling = true;
+        }
 
         long waitTime = 0;
-        while (!mQuit) {
-
-            if (waitTime > 0) {
-                synchronized (waitObject) {
-                    try {
-                        waitObject.wait(waitTime);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
+        boolean pollAgain = true;
+        try {
+            while (pollAgain) {
+                synchronized (this) {
+                    mPollAgain = false;
+                }
+                waitTime = pollOnce();
+                synchronized (this) {
+                    pollAgain = mPollAgain && !mQuit;
                 }
             }
-
-            if (mQuit) {
-                break;
+        } finally {
+            synchronized (this) {
+                mPolling = false;
+                schedulePoll(mPollAgain ? 0 : waitTime);
             }
+        }
+    }
 
-            if (gbDevice.getState() == GBDevice.State.NOT_CONNECTED) {
-                quit();
-            }
+    /**
+     * @return the milliseconds until the next request is due
+     */
+    private long pollOnce() {
+        if (mQuit) {
+            return 0;
+        }
 
-            Calendar now = GregorianCalendar.getInstance();
+        if (gbDevice.getState() == GBDevice.State.NOT_CONNECTED) {
+            quit();
+            return 0;
+        }
 
-            if (now.compareTo(mGetDaySlotsTime) > 0) {
-                requestNextDaySlots();
-            }
+        Calendar now = GregorianCalendar.getInstance();
 
-            if (now.compareTo(mGetSleepTime) > 0) {
-                requestNextSleepData();
-            }
+        if (now.compareTo(mGetDaySlotsTime) > 0) {
+            requestNextDaySlots();
+        }
 
-            if (now.compareTo(mGetDaySummaryTime) > 0) {
-                requestDaySummaryData();
-            }
+        if (now.compareTo(mGetSleepTime) > 0) {
+            requestNextSleepData();
+        }
 
-            if (now.compareTo(mHelloTime) > 0) {
-                sendHello();
-            }
+        if (now.compareTo(mGetDaySummaryTime) > 0) {
+            requestDaySummaryData();
+        }
 
-            now = GregorianCalendar.getInstance();
-            waitTime = Math.min(mGetDaySummaryTime.getTimeInMillis(), Math.min(mGetDaySlotsTime.getTimeInMillis(), Math.min(mHelloTime.getTimeInMillis(), mGetSleepTime.getTimeInMillis()))) - now.getTimeInMillis();
+        if (now.compareTo(mHelloTime) > 0) {
+            sendHello();
         }
 
+        now = GregorianCalendar.getInstance();
+        long waitTime = Math.min(mGetDaySummaryTime.getTimeInMillis(), Math.min(mGetDaySlotsTime.getTimeInMillis(), Math.min(mHelloTime.getTimeInMillis(), mGetSleepTime.getTimeInMillis()))) - now.getTimeInMillis();
+        return Math.max(0, waitTime);
+    }
+
+    /**
+     * Replaces the pending poll, if any, with one after the given delay. While a poll is
+     * running, it is only marked to poll again, if the delay is 0.
+     */
+    private synchronized void schedulePoll(long delayMillis) {
+        if (mPolling) {
+            if (delayMillis == 0) {
+                mPollAgain = true;
+            }
+            return;
+        }
+        if (mPollTask != null) {
+            mPollTask.cancel(false);
+            mPollTask = null;
+        }
+        if (!mQuit) {
+            mPollTask = GBScheduler.getInstance().schedule("HPlus Sync", mPollRunnable, delayMillis, TimeUnit.MILLISECONDS);
+        }
     }
 
-    @Override
     public void quit() {
-        LOG.info("HPlus: Quit Handler Thread");
+        LOG.info("HPlus: Quit Sync Helper");
         mQuit = true;
-        synchronized (waitObject) {
-            waitObject.notify();
-        }
+        schedulePoll(0);
     }
 
 
@@ -192,9 +253,7 @@ class HPlusHandlerThread extends GBDeviceIoThread {
             LOG.warn("HPlus: Synchronization exception: " + e);
         }
 
-        synchronized (waitObject) {
-            waitObject.notify();
-        }
+        schedulePoll(0);
     }
 
     public void sendHello() {
@@ -209,9 +268,7 @@ class HPlusHandlerThread extends GBDeviceIoThread {
         mHelloTime = GregorianCalendar.getInstance();
         mHelloTime.add(Calendar.SECOND, HELLO_PERIOD);
 
-        synchronized (waitObject) {
-            waitObject.notify();
-        }
+        schedulePoll(0);
     }
     /**
      * Process a message containing information regarding a day slot
@@ -264,9 +321,7 @@ class HPlusHandlerThread extends GBDeviceIoThread {
             //Still fetching ring buffer. Request the next slots
             if (record.slot == mLastSlotRequested) {
                 mGetDaySlotsTime.clear();
-                synchronized (waitObject) {
-                    waitObject.notify();
-                }
+                schedulePoll(0);
             }
 
             //Keep buffering
@@ -315,7 +370,7 @@ class HPlusHandlerThread extends GBDeviceIoThread {
                     }
                 }
 
-                provider.getSampleDao().insertOrReplaceInTx(samples);
+                provider.addGBActivitySamples(samples.toArray(new HPlusHealthActivitySample[0]));
                 mDaySlotRecords.clear();
 
                 //Create an overlay with unused slots
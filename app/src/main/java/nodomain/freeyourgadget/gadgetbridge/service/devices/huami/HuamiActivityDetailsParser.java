@@ -20,6 +20,7 @@ package nodomain.freeyourgadget.gadgetbridge.service.devices.huami;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.ArrayList;
@@ -27,8 +28,10 @@ import java.util.Date;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+import androidx.annotation.Nullable;
 import nodomain.freeyourgadget.gadgetbridge.GBException;
 import nodomain.freeyourgadget.gadgetbridge.entities.BaseActivitySummary;
+import nodomain.freeyourgadget.gadgetbridge.export.BinaryActivityTrackWriter;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityPoint;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityTrack;
 import nodomain.freeyourgadget.gadgetbridge.model.GPSCoordinate;
@@ -48,6 +51,11 @@ public class HuamiActivityDetailsParser {
     private static final byte TYPE_SWIMMING = 8;
 
     private static final BigDecimal HUAMI_TO_DECIMAL_DEGREES_DIVISOR = new BigDecimal(3000000.0);
+    private static final int RECORD_LENGTH = 8;
+    private static final int PACKET_LENGTH_WITH_COUNTER = 17;
+    /** roughly ten minutes of GPS points */
+    private static final int MAX_LEADING_POINTS = 600;
+
     private final ActivityTrack activityTrack;
     private final Date baseDate;
     private long baseLongitude;
@@ -55,6 +63,20 @@ public class HuamiActivityDetailsParser {
     private int baseAltitude;
     private ActivityPoint lastActivityPoint;
 
+    @Nullable
+    private BinaryActivityTrackWriter trackWriter;
+    private final byte[] record = new byte[RECORD_LENGTH];
+    private int recordLength;
+    private long streamPosition;
+    private long totalTimeOffset;
+    private int lastTimeOffset;
+    /**
+     * The first points of a track may all share the same timestamp, until the watch has a proper
+     * GPS fix. They are held back here until the first proper timestamp is known, see #fixupMissingTimestamps(),
+     * but at most MAX_LEADING_POINTS of them.
+     */
+    private List<ActivityPoint> leadingPoints = new ArrayList<>();
+
     public void setSkipCounterByte(boolean skipCounterByte) {
         this.skipCounterByte = skipCounterByte;
     }
@@ -71,107 +93,174 @@ public class HuamiActivityDetailsParser {
         activityTrack.setUser(summary.getUser());
         activityTrack.setDevice(summary.getDevice());
         activityTrack.setName(summary.getName() + "-" + summary.getId());
+        activityTrack.setBaseTime(summary.getStartTime());
+        activityTrack.setEndTime(summary.getEndTime());
+    }
+
+    /**
+     * Makes #consume() write the parsed points to the given writer instead of collecting them
+     * in the ActivityTrack returned by #finish(). The writer is not closed by the parser.
+     */
+    public void setTrackWriter(@Nullable BinaryActivityTrackWriter trackWriter) {
+        this.trackWriter = trackWriter;
     }
 
     public ActivityTrack parse(byte[] bytes) throws GBException {
-        int i = 0;
         try {
-            long totalTimeOffset = 0;
-            int lastTimeOffset = 0;
-            while (i < bytes.length) {
-                if (skipCounterByte && (i % 17) == 0) {
-                    i++;
-                }
-
-                byte type = bytes[i++]; // lgtm [java/index-out-of-bounds]]
-                int timeOffset = BLETypeConversions.toUnsigned(bytes[i++]); // lgtm [java/index-out-of-bounds]
-                // handle timeOffset overflows (1 byte, always increasing, relative to base)
-                if (lastTimeOffset <= timeOffset) {
-                    timeOffset = timeOffset - lastTimeOffset;
-                    lastTimeOffset += timeOffset;
-                } else {
-                    lastTimeOffset = timeOffset;
-                }
-                totalTimeOffset += timeOffset;
-
-                switch (type) {
-                    case TYPE_GPS:
-                        i += consumeGPSAndUpdateBaseLocation(bytes, i, totalTimeOffset);
-                        break;
-                    case TYPE_HR:
-                        i += consumeHeartRate(bytes, i, totalTimeOffset);
-                        break;
-                    case TYPE_PAUSE:
-                        i += consumePause(bytes, i);
-                        break;
-                    case TYPE_RESUME:
-                        i += consumeResume(bytes, i);
-                        break;
-                    case TYPE_SPEED4:
-                        i += consumeSpeed4(bytes, i);
-                        break;
-                    case TYPE_SPEED5:
-                        i += consumeSpeed5(bytes, i);
-                        break;
-                    case TYPE_SPEED6:
-                        i += consumeSpeed6(bytes, i);
-                        break;
-                    case TYPE_SWIMMING:
-                        i += consumeSwimming(bytes, i);
-                        break;
-                    default:
-                        LOG.warn("unknown packet type" + type);
-                        i+=6;
-                }
-            }
-        } catch (IndexOutOfBoundsException ex) {
+            consume(bytes, 0, bytes.length);
+            return finish();
+        } catch (IOException ex) {
             throw new GBException("Error parsing activity details: " + ex.getMessage(), ex);
         }
+    }
 
-        fixupMissingTimestamps(activityTrack);
+    /**
+     * Incrementally parses the given chunk of activity details, e.g. the payload of a single
+     * notification. Records may span multiple chunks.
+     */
+    public void consume(byte[] bytes, int offset, int length) throws IOException {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            if (skipCounterByte && (streamPosition++ % PACKET_LENGTH_WITH_COUNTER) == 0) {
+                continue;
+            }
+            record[recordLength++] = bytes[i];
+            if (recordLength == RECORD_LENGTH) {
+                consumeRecord(record);
+                recordLength = 0;
+            }
+        }
+    }
 
+    /**
+     * Flushes all pending points. When a track writer is set, the returned track contains only
+     * the metadata, otherwise it also contains all parsed points.
+     */
+    public ActivityTrack finish() throws IOException {
+        if (recordLength > 0) {
+            LOG.warn("ignoring incomplete activity details record of " + recordLength + " bytes");
+            recordLength = 0;
+        }
+        if (lastActivityPoint != null) {
+            emit(lastActivityPoint);
+            lastActivityPoint = null;
+        }
+        if (leadingPoints != null) {
+            // never found a proper timestamp, nothing to fix up
+            emitLeadingPoints();
+        }
         return activityTrack;
     }
 
-    private void fixupMissingTimestamps(ActivityTrack activityTrack) {
-        try {
-            int pointer = 0;
-            List<ActivityPoint> activityPointList = activityTrack.getTrackPoints();
-            Date gpsStartTime = null;
-            List<ActivityPoint> entriesToFixUp = new ArrayList<>();
-            while (pointer < activityPointList.size() - 1) {
-                ActivityPoint activityPoint = activityPointList.get(pointer);
-                if (activityPoint.getLocation() == null) {
-                    pointer++;
-                    continue;
-                }
-                if (activityPoint.getTime().equals(activityPointList.get(pointer + 1).getTime())) {
-                    entriesToFixUp.add(activityPoint);
-                } else {
-                    // found the first activity point with a proper timestamp
-                    entriesToFixUp.add(activityPoint);
-                    gpsStartTime = activityPointList.get(pointer + 1).getTime();
-                    break;
-                }
-                pointer++;
+    private void consumeRecord(byte[] bytes) throws IOException {
+        int i = 0;
+        byte type = bytes[i++];
+        int timeOffset = BLETypeConversions.toUnsigned(bytes[i++]);
+        // handle timeOffset overflows (1 byte, always increasing, relative to base)
+        if (lastTimeOffset <= timeOffset) {
+            timeOffset = timeOffset - lastTimeOffset;
+            lastTimeOffset += timeOffset;
+        } else {
+            lastTimeOffset = timeOffset;
+        }
+        totalTimeOffset += timeOffset;
+
+        switch (type) {
+            case TYPE_GPS:
+                consumeGPSAndUpdateBaseLocation(bytes, i, totalTimeOffset);
+                break;
+            case TYPE_HR:
+                consumeHeartRate(bytes, i, totalTimeOffset);
+                break;
+            case TYPE_PAUSE:
+                consumePause(bytes, i);
+                break;
+            case TYPE_RESUME:
+                consumeResume(bytes, i);
+                break;
+            case TYPE_SPEED4:
+                consumeSpeed4(bytes, i);
+                break;
+            case TYPE_SPEED5:
+                consumeSpeed5(bytes, i);
+                break;
+            case TYPE_SPEED6:
+                consumeSpeed6(bytes, i);
+                break;
+            case TYPE_SWIMMING:
+                consumeSwimming(bytes, i);
+                break;
+            default:
+                LOG.warn("unknown packet type" + type);
+        }
+    }
+
+    /**
+     * Collects the leading points and, as soon as the first point with a proper timestamp
+     * is known, spreads the timestamps of all preceding GPS points evenly between the start
+     * of the activity and that timestamp.
+     * @return true if the given point has been held back
+     */
+    private boolean fixupMissingTimestamps(ActivityPoint point) throws IOException {
+        if (leadingPoints == null) {
+            return false;
+        }
+        if (leadingPoints.isEmpty() && point.getLocation() == null) {
+            // only GPS points are fixed up, no need to hold back anything before the first one
+            return false;
+        }
+        leadingPoints.add(point);
+        int size = leadingPoints.size();
+        if (size < 2) {
+            return true;
+        }
+        // all earlier points have already been checked against their successors
+        ActivityPoint previous = leadingPoints.get(size - 2);
+        if (previous.getLocation() == null || previous.getTime().equals(point.getTime())) {
+            if (size >= MAX_LEADING_POINTS) {
+                LOG.warn("no proper timestamp within the first " + size + " activity points, not fixing them up");
+                emitLeadingPoints();
             }
-            if (gpsStartTime != null) {
-                // now adjust those entries without a timestamp
-                long differenceInSec = TimeUnit.SECONDS.convert(Math.abs(gpsStartTime.getTime() - baseDate.getTime()), TimeUnit.MILLISECONDS);
+            return true;
+        }
 
-                double multiplier = (double) differenceInSec / (double) (entriesToFixUp.size());
+        // found the first activity point with a proper timestamp
+        Date gpsStartTime = point.getTime();
+        List<ActivityPoint> entriesToFixUp = new ArrayList<>();
+        for (int pointer = 0; pointer < size - 1; pointer++) {
+            ActivityPoint activityPoint = leadingPoints.get(pointer);
+            if (activityPoint.getLocation() != null) {
+                entriesToFixUp.add(activityPoint);
+            }
+        }
 
-                for (int j = 0; j < entriesToFixUp.size(); j++) {
-                    long timeOffsetSeconds = Math.round(j * multiplier);
-                    entriesToFixUp.get(j).setTime(makeAbsolute(timeOffsetSeconds));
-                }
+        try {
+            // now adjust those entries without a timestamp
+            long differenceInSec = TimeUnit.SECONDS.convert(Math.abs(gpsStartTime.getTime() - baseDate.getTime()), TimeUnit.MILLISECONDS);
+
+            double multiplier = (double) differenceInSec / (double) (entriesToFixUp.size());
+
+            for (int j = 0; j < entriesToFixUp.size(); j++) {
+                long timeOffsetSeconds = Math.round(j * multiplier);
+                entriesToFixUp.get(j).setTime(makeAbsolute(timeOffsetSeconds));
             }
         } catch (Exception ex) {
             LOG.warn("Error cleaning activity details", ex);
         }
+
+        emitLeadingPoints();
+        return true;
+    }
+
+    private void emitLeadingPoints() throws IOException {
+        List<ActivityPoint> points = leadingPoints;
+        leadingPoints = null;
+        for (ActivityPoint activityPoint : points) {
+            emit(activityPoint);
+        }
     }
 
-    private int consumeGPSAndUpdateBaseLocation(byte[] bytes, int offset, long timeOffset) {
+    private int consumeGPSAndUpdateBaseLocation(byte[] bytes, int offset, long timeOffset) throws IOException {
         int i = 0;
         int longitudeDelta = BLETypeConversions.toInt16(bytes[offset + i++], bytes[offset + i++]);
         int latitudeDelta = BLETypeConversions.toInt16(bytes[offset + i++], bytes[offset + i++]);
@@ -198,7 +287,7 @@ public class HuamiActivityDetailsParser {
         return result.doubleValue();
     }
 
-    private int consumeHeartRate(byte[] bytes, int offset, long timeOffsetSeconds) {
+    private int consumeHeartRate(byte[] bytes, int offset, long timeOffsetSeconds) throws IOException {
         int v1 = BLETypeConversions.toUint16(bytes[offset]);
         int v2 = BLETypeConversions.toUint16(bytes[offset + 1]);
         int v3 = BLETypeConversions.toUint16(bytes[offset + 2]);
@@ -255,15 +344,32 @@ public class HuamiActivityDetailsParser {
         return new Date(baseDate.getTime() + timeOffsetSeconds * 1000);
     }
 
-    private void add(ActivityPoint ap) {
+    /**
+     * Points are only emitted once the next point is started, because heart rate values
+     * may still be merged into the last point.
+     */
+    private void add(ActivityPoint ap) throws IOException {
         if (ap != lastActivityPoint) {
+            if (lastActivityPoint != null) {
+                emit(lastActivityPoint);
+            }
             lastActivityPoint = ap;
-            activityTrack.addTrackPoint(ap);
         } else {
             LOG.info("skipping point!");
         }
     }
 
+    private void emit(ActivityPoint ap) throws IOException {
+        if (fixupMissingTimestamps(ap)) {
+            return;
+        }
+        if (trackWriter != null) {
+            trackWriter.write(ap);
+        } else {
+            activityTrack.addTrackPoint(ap);
+        }
+    }
+
     private int consumePause(byte[] bytes, int offset) {
         LOG.debug("got pause packet: " + GB.hexdump(bytes, offset, 6));
         return 6;
@@ -0,0 +1,54 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service.devices.huami;
+
+import nodomain.freeyourgadget.gadgetbridge.service.btle.ChunkedWriter;
+
+/**
+ * Writes payloads like music info, weather and notifications to the chunked transfer
+ * characteristic of Huami devices.
+ */
+public class HuamiChunkedWriter extends ChunkedWriter {
+    private static final int HEADER_LENGTH = 3;
+
+    private final int type;
+
+    /**
+     * @param type the type of the payload, e.g. 1 for weather or 3 for music
+     */
+    public HuamiChunkedWriter(int type) {
+        super(HEADER_LENGTH);
+        this.type = type;
+    }
+
+    @Override
+    protected void writeHeader(byte[] chunk, int index, int count) {
+        byte flags = 0;
+        if (index == count - 1) {
+            flags |= 0x80; // last chunk
+            if (index == 0) {
+                flags |= 0x40; // weird but true
+            }
+        } else if (index > 0) {
+            flags |= 0x40; // consecutive chunk
+        }
+
+        chunk[0] = 0;
+        chunk[1] = (byte) (flags | type);
+        chunk[2] = (byte) (index & 0xff);
+    }
+}
@@ -43,8 +43,6 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Set;
 import java.util.SimpleTimeZone;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
@@ -106,6 +104,7 @@ import nodomain.freeyourgadget.gadgetbridge.service.btle.BLETypeConversions;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.BtLEAction;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.GattCharacteristic;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.GattService;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.SettingsReconciler;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.AbortTransactionAction;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.ConditionalWriteAction;
@@ -126,6 +125,7 @@ import nodomain.freeyourgadget.gadgetbridge.service.serial.GBDeviceProtocol;
 import nodomain.freeyourgadget.gadgetbridge.util.AlarmUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.DeviceHelper;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
+import nodomain.freeyourgadget.gadgetbridge.util.GBScheduler;
 import nodomain.freeyourgadget.gadgetbridge.util.NotificationUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
 import nodomain.freeyourgadget.gadgetbridge.util.Version;
@@ -146,6 +146,8 @@ public class HuamiSupport extends AbstractBTLEDeviceSupport {
     private static long currentButtonTimerActivationTime = 0;
 
     private static final Logger LOG = LoggerFactory.getLogger(HuamiSupport.class);
+    // the largest MTU that fits into a single link layer packet with data length extension
+    private static final int REQUESTED_MTU = 247;
     private final DeviceInfoProfile<HuamiSupport> deviceInfoProfile;
     private final IntentListener mListener = new IntentListener() {
         @Override
@@ -174,7 +176,9 @@ public class HuamiSupport extends AbstractBTLEDeviceSupport {
     private boolean isMusicAppStarted = false;
     private MusicSpec bufferMusicSpec = null;
     private MusicStateSpec bufferMusicStateSpec = null;
+    private WeatherSpec sentWeatherSpec = null;
     private boolean heartRateNotifyEnabled;
+    private SettingsReconciler settingsReconciler;
 
     public HuamiSupport() {
         this(LOG);
@@ -204,8 +208,14 @@ public class HuamiSupport extends AbstractBTLEDeviceSupport {
             byte authFlags = getAuthFlags();
             byte cryptFlags = getCryptFlags();
             heartRateNotifyEnabled = false;
+            sentWeatherSpec = null;
             boolean authenticate = needsAuth && (cryptFlags == 0x00);
+            if (needsAuth) {
+                // pairing may have reset the band, so send all settings again
+                getSettingsReconciler().invalidate();
+            }
             needsAuth = false;
+            builder.requestMtu(REQUESTED_MTU);
             new InitOperation(authenticate, authFlags, cryptFlags, this, builder).perform();
             characteristicHRControlPoint = getCharacteristic(GattCharacteristic.UUID_CHARACTERISTIC_HEART_RATE_CONTROL_POINT);
             characteristicChunked = getCharacteristic(HuamiService.UUID_CHARACTERISTIC_CHUNKEDTRANSFER);
@@ -311,6 +321,12 @@ public class HuamiSupport extends AbstractBTLEDeviceSupport {
         return super.connect();
     }
 
+    @Override
+    public void dispose() {
+        getSettingsReconciler().cancel();
+        super.dispose();
+    }
+
     private HuamiSupport sendDefaultNotification(TransactionBuilder builder, SimpleNotification simpleNotification, short repeat, BtLEAction extraAction) {
         LOG.info("Sending notification to MiBand: (" + repeat + " times)");
         NotificationStrategy strategy = getNotificationStrategy();
@@ -328,7 +344,7 @@ public class HuamiSupport extends AbstractBTLEDeviceSupport {
                 return new Mi2NotificationStrategy(this);
             }
         }
-        if (GBApplication.getDeviceSpecificSharedPrefs(gbDevice.getAddress()).getBoolean(MiBandConst.PREF_MI2_ENABLE_TEXT_NOTIFICATIONS, true)) {
+        if (GBApplication.getDevicePrefsSnapshot(gbDevice.getAddress()).textNotifications) {
             return new Mi2TextNotificationStrategy(this);
         }
         return new Mi2NotificationStrategy(this);
@@ -465,13 +481,8 @@ public class HuamiSupport extends AbstractBTLEDeviceSupport {
 
     @Override
     public void onEnableHeartRateSleepSupport(boolean enable) {
-        try {
-            TransactionBuilder builder = performInitialized("enable heart rate sleep support: " + enable);
-            setHeartrateSleepSupport(builder);
-            builder.queue(getQueue());
-        } catch (IOException e) {
-            GB.toast(getContext(), "Error toggling heart rate sleep support: " + e.getLocalizedMessage(), Toast.LENGTH_LONG, GB.ERROR);
-        }
+        // the setting is read from the preferences
+        getSettingsReconciler().scheduleFlush();
     }
 
     @Override
@@ -682,7 +693,7 @@ public class HuamiSupport extends AbstractBTLEDeviceSupport {
             return;
         }
 
-        if (bufferMusicStateSpec != stateSpec) {
+        if (!stateSpec.equals(bufferMusicStateSpec)) {
             bufferMusicStateSpec = stateSpec;
             sendMusicStateToDevice();
         }
@@ -696,7 +707,7 @@ public class HuamiSupport extends AbstractBTLEDeviceSupport {
             return;
         }
 
-        if (bufferMusicSpec != musicSpec) {
+        if (!musicSpec.equals(bufferMusicSpec)) {
             bufferMusicSpec = musicSpec;
             if (isMusicAppStarted) {
                 sendMusicStateToDevice();
@@ -1141,14 +1152,12 @@ public class HuamiSupport extends AbstractBTLEDeviceSupport {
                 currentButtonTimerActivationTime = currentButtonPressTime;
                 if (buttonActionDelay > 0) {
                     LOG.info("Activating timer");
-                    final Timer buttonActionTimer = new Timer("Mi Band Button Action Timer");
-                    buttonActionTimer.scheduleAtFixedRate(new TimerTask() {
+                    GBScheduler.getInstance().schedule("Mi Band Button Action", new Runnable() {
                         @Override
                         public void run() {
                             runButtonAction();
-                            buttonActionTimer.cancel();
                         }
-                    }, buttonActionDelay, buttonActionDelay);
+                    }, buttonActionDelay, TimeUnit.MILLISECONDS);
                 }
                 else {
                     LOG.info("Activating button action");
@@ -1453,52 +1462,14 @@ public class HuamiSupport extends AbstractBTLEDeviceSupport {
 
     @Override
     public void onSendConfiguration(String config) {
+        if (getSettingsReconciler().handles(config)) {
+            getSettingsReconciler().scheduleFlush();
+            return;
+        }
         TransactionBuilder builder;
         try {
             builder = performInitialized("Sending configuration for option: " + config);
             switch (config) {
-                case MiBandConst.PREF_MI2_DATEFORMAT:
-                    setDateDisplay(builder);
-                    break;
-                case MiBandConst.PREF_MI2_GOAL_NOTIFICATION:
-                    setGoalNotification(builder);
-                    break;
-                case HuamiConst.PREF_ACTIVATE_DISPLAY_ON_LIFT:
-                case HuamiConst.PREF_DISPLAY_ON_LIFT_START:
-                case HuamiConst.PREF_DISPLAY_ON_LIFT_END:
-                    setActivateDisplayOnLiftWrist(builder);
-                    break;
-                case HuamiConst.PREF_DISCONNECT_NOTIFICATION:
-                case HuamiConst.PREF_DISCONNECT_NOTIFICATION_START:
-                case HuamiConst.PREF_DISCONNECT_NOTIFICATION_END:
-                    setDisconnectNotification(builder);
-                    break;
-                case HuamiConst.PREF_DISPLAY_ITEMS:
-                    setDisplayItems(builder);
-                    break;
-                case MiBandConst.PREF_MI2_ROTATE_WRIST_TO_SWITCH_INFO:
-                    setRotateWristToSwitchInfo(builder);
-                    break;
-                case ActivityUser.PREF_USER_STEPS_GOAL:
-                    setFitnessGoal(builder);
-                    break;
-                case MiBandConst.PREF_DO_NOT_DISTURB:
-                case MiBandConst.PREF_DO_NOT_DISTURB_START:
-                case MiBandConst.PREF_DO_NOT_DISTURB_END:
-                    setDoNotDisturb(builder);
-                    break;
-                case MiBandConst.PREF_MI2_INACTIVITY_WARNINGS:
-                case MiBandConst.PREF_MI2_INACTIVITY_WARNINGS_THRESHOLD:
-                case MiBandConst.PREF_MI2_INACTIVITY_WARNINGS_START:
-                case MiBandConst.PREF_MI2_INACTIVITY_WARNINGS_END:
-                case MiBandConst.PREF_MI2_INACTIVITY_WARNINGS_DND:
-                case MiBandConst.PREF_MI2_INACTIVITY_WARNINGS_DND_START:
-                case MiBandConst.PREF_MI2_INACTIVITY_WARNINGS_DND_END:
-                    setInactivityWarnings(builder);
-                    break;
-                case SettingsActivity.PREF_MEASUREMENT_SYSTEM:
-                    setDistanceUnit(builder);
-                    break;
                 case MiBandConst.PREF_SWIPE_UNLOCK:
                     setBandScreenUnlock(builder);
                     break;
@@ -1508,12 +1479,6 @@ public class HuamiSupport extends AbstractBTLEDeviceSupport {
                 case HuamiConst.PREF_LANGUAGE:
                     setLanguage(builder);
                     break;
-                case HuamiConst.PREF_EXPOSE_HR_THIRDPARTY:
-                    setExposeHRThridParty(builder);
-                    break;
-                case DeviceSettingsPreferenceConst.PREF_WEARLOCATION:
-                    setWearLocation(builder);
-                    break;
             }
             builder.queue(getQueue());
         } catch (IOException e) {
@@ -1542,6 +1507,13 @@ public class HuamiSupport extends AbstractBTLEDeviceSupport {
             LOG.warn("Device not initialized yet, so not sending weather info");
             return;
         }
+        // each section is a separate transaction, only send those that changed
+        boolean initial = sentWeatherSpec == null;
+        boolean currentChanged = initial || weatherSpec.getCurrentFingerprint() != sentWeatherSpec.getCurrentFingerprint();
+        boolean forecastChanged = currentChanged || weatherSpec.getForecastFingerprint() != sentWeatherSpec.getForecastFingerprint();
+        boolean locationChanged = initial || weatherSpec.getLocationFingerprint() != sentWeatherSpec.getLocationFingerprint();
+        sentWeatherSpec = weatherSpec;
+
         boolean supportsConditionString = false;
 
         Version version = new Version(gbDevice.getFirmwareVersion());
@@ -1551,171 +1523,180 @@ public class HuamiSupport extends AbstractBTLEDeviceSupport {
 
         MiBandConst.DistanceUnit unit = HuamiCoordinator.getDistanceUnit();
         int tz_offset_hours = SimpleTimeZone.getDefault().getOffset(weatherSpec.timestamp * 1000L) / (1000 * 60 * 60);
-        try {
-            TransactionBuilder builder;
-            builder = performInitialized("Sending current temp");
+        if (currentChanged) {
+            try {
+                TransactionBuilder builder;
+                builder = performInitialized("Sending current temp");
 
-            byte condition = HuamiWeatherConditions.mapToAmazfitBipWeatherCode(weatherSpec.currentConditionCode);
+                byte condition = HuamiWeatherConditions.mapToAmazfitBipWeatherCode(weatherSpec.currentConditionCode);
 
-            int length = 8;
-            if (supportsConditionString) {
-                length += weatherSpec.currentCondition.getBytes().length + 1;
-            }
-            ByteBuffer buf = ByteBuffer.allocate(length);
-            buf.order(ByteOrder.LITTLE_ENDIAN);
+                int length = 8;
+                if (supportsConditionString) {
+                    length += weatherSpec.currentCondition.getBytes().length + 1;
+                }
+                ByteBuffer buf = ByteBuffer.allocate(length);
+                buf.order(ByteOrder.LITTLE_ENDIAN);
 
-            buf.put((byte) 2);
-            buf.putInt(weatherSpec.timestamp);
-            buf.put((byte) (tz_offset_hours * 4));
-            buf.put(condition);
+                buf.put((byte) 2);
+                buf.putInt(weatherSpec.timestamp);
+                buf.put((byte) (tz_offset_hours * 4));
+                buf.put(condition);
 
-            int currentTemp = weatherSpec.currentTemp - 273;
-            if (unit == MiBandConst.DistanceUnit.IMPERIAL) {
-                currentTemp = (int) WeatherUtils.celsiusToFahrenheit(currentTemp);
-            }
-            buf.put((byte) currentTemp);
+                int currentTemp = weatherSpec.currentTemp - 273;
+                if (unit == MiBandConst.DistanceUnit.IMPERIAL) {
+                    currentTemp = (int) WeatherUtils.celsiusToFahrenheit(currentTemp);
+                }
+                buf.put((byte) currentTemp);
 
-            if (supportsConditionString) {
-                buf.put(weatherSpec.currentCondition.getBytes());
-                buf.put((byte) 0);
-            }
+                if (supportsConditionString) {
+                    buf.put(weatherSpec.currentCondition.getBytes());
+                    buf.put((byte) 0);
+                }
 
-            if (characteristicChunked != null) {
-                writeToChunked(builder, 1, buf.array());
-            } else {
-                builder.write(getCharacteristic(AmazfitBipService.UUID_CHARACTERISTIC_WEATHER), buf.array());
-            }
+                if (characteristicChunked != null) {
+                    writeToChunked(builder, 1, buf.array());
+                } else {
+                    builder.write(getCharacteristic(AmazfitBipService.UUID_CHARACTERISTIC_WEATHER), buf.array());
+                }
 
-            builder.queue(getQueue());
-        } catch (Exception ex) {
-            LOG.error("Error sending current weather", ex);
+                builder.queue(getQueue());
+            } catch (Exception ex) {
+                LOG.error("Error sending current weather", ex);
+            }
         }
 
-        try {
-            TransactionBuilder builder;
-            builder = performInitialized("Sending air quality index");
-            int length = 8;
-            String aqiString = "(n/a)";
-            if (supportsConditionString) {
-                length += aqiString.getBytes().length + 1;
-            }
-            ByteBuffer buf = ByteBuffer.allocate(length);
-            buf.order(ByteOrder.LITTLE_ENDIAN);
-            buf.put((byte) 4);
-            buf.putInt(weatherSpec.timestamp);
-            buf.put((byte) (tz_offset_hours * 4));
-            buf.putShort((short) 0);
-            if (supportsConditionString) {
-                buf.put(aqiString.getBytes());
-                buf.put((byte) 0);
-            }
+        // the air quality index is not known, so it never changes
+        if (initial) {
+            try {
+                TransactionBuilder builder;
+                builder = performInitialized("Sending air quality index");
+                int length = 8;
+                String aqiString = "(n/a)";
+                if (supportsConditionString) {
+                    length += aqiString.getBytes().length + 1;
+                }
+                ByteBuffer buf = ByteBuffer.allocate(length);
+                buf.order(ByteOrder.LITTLE_ENDIAN);
+                buf.put((byte) 4);
+                buf.putInt(weatherSpec.timestamp);
+                buf.put((byte) (tz_offset_hours * 4));
+                buf.putShort((short) 0);
+                if (supportsConditionString) {
+                    buf.put(aqiString.getBytes());
+                    buf.put((byte) 0);
+                }
 
-            if (characteristicChunked != null) {
-                writeToChunked(builder, 1, buf.array());
-            } else {
-                builder.write(getCharacteristic(AmazfitBipService.UUID_CHARACTERISTIC_WEATHER), buf.array());
-            }
+                if (characteristicChunked != null) {
+                    writeToChunked(builder, 1, buf.array());
+                } else {
+                    builder.write(getCharacteristic(AmazfitBipService.UUID_CHARACTERISTIC_WEATHER), buf.array());
+                }
 
-            builder.queue(getQueue());
-        } catch (IOException ex) {
-            LOG.error("Error sending air quality");
+                builder.queue(getQueue());
+            } catch (IOException ex) {
+                LOG.error("Error sending air quality");
+            }
         }
 
-        try {
-            TransactionBuilder builder = performInitialized("Sending weather forecast");
+        if (forecastChanged) {
+            try {
+                TransactionBuilder builder = performInitialized("Sending weather forecast");
 
-            final byte NR_DAYS = (byte) (1 + weatherSpec.forecasts.size());
-            int bytesPerDay = 4;
+                final byte NR_DAYS = (byte) (1 + weatherSpec.forecasts.size());
+                int bytesPerDay = 4;
 
-            int conditionsLength = 0;
-            if (supportsConditionString) {
-                bytesPerDay = 5;
-                conditionsLength = weatherSpec.currentCondition.getBytes().length;
-                for (WeatherSpec.Forecast forecast : weatherSpec.forecasts) {
-                    conditionsLength += Weather.getConditionString(forecast.conditionCode).getBytes().length;
+                int conditionsLength = 0;
+                if (supportsConditionString) {
+                    bytesPerDay = 5;
+                    conditionsLength = weatherSpec.currentCondition.getBytes().length;
+                    for (WeatherSpec.Forecast forecast : weatherSpec.forecasts) {
+                        conditionsLength += Weather.getConditionString(forecast.conditionCode).getBytes().length;
+                    }
                 }
-            }
-
-            int length = 7 + bytesPerDay * NR_DAYS + conditionsLength;
-            ByteBuffer buf = ByteBuffer.allocate(length);
 
-            buf.order(ByteOrder.LITTLE_ENDIAN);
-            buf.put((byte) 1);
-            buf.putInt(weatherSpec.timestamp);
-            buf.put((byte) (tz_offset_hours * 4));
-
-            buf.put(NR_DAYS);
+                int length = 7 + bytesPerDay * NR_DAYS + conditionsLength;
+                ByteBuffer buf = ByteBuffer.allocate(length);
 
-            byte condition = HuamiWeatherConditions.mapToAmazfitBipWeatherCode(weatherSpec.currentConditionCode);
-            buf.put(condition);
-            buf.put(condition);
+                buf.order(ByteOrder.LITTLE_ENDIAN);
+                buf.put((byte) 1);
+                buf.putInt(weatherSpec.timestamp);
+                buf.put((byte) (tz_offset_hours * 4));
 
-            int todayMaxTemp = weatherSpec.todayMaxTemp - 273;
-            int todayMinTemp = weatherSpec.todayMinTemp - 273;
-            if (unit == MiBandConst.DistanceUnit.IMPERIAL) {
-                todayMaxTemp = (int) WeatherUtils.celsiusToFahrenheit(todayMaxTemp);
-                todayMinTemp = (int) WeatherUtils.celsiusToFahrenheit(todayMinTemp);
-            }
-            buf.put((byte) todayMaxTemp);
-            buf.put((byte) todayMinTemp);
+                buf.put(NR_DAYS);
 
-            if (supportsConditionString) {
-                buf.put(weatherSpec.currentCondition.getBytes());
-                buf.put((byte) 0);
-            }
-
-            for (WeatherSpec.Forecast forecast : weatherSpec.forecasts) {
-                condition = HuamiWeatherConditions.mapToAmazfitBipWeatherCode(forecast.conditionCode);
+                byte condition = HuamiWeatherConditions.mapToAmazfitBipWeatherCode(weatherSpec.currentConditionCode);
                 buf.put(condition);
                 buf.put(condition);
 
-                int forecastMaxTemp = forecast.maxTemp - 273;
-                int forecastMinTemp = forecast.minTemp - 273;
+                int todayMaxTemp = weatherSpec.todayMaxTemp - 273;
+                int todayMinTemp = weatherSpec.todayMinTemp - 273;
                 if (unit == MiBandConst.DistanceUnit.IMPERIAL) {
-                    forecastMaxTemp = (int) WeatherUtils.celsiusToFahrenheit(forecastMaxTemp);
-                    forecastMinTemp = (int) WeatherUtils.celsiusToFahrenheit(forecastMinTemp);
+                    todayMaxTemp = (int) WeatherUtils.celsiusToFahrenheit(todayMaxTemp);
+                    todayMinTemp = (int) WeatherUtils.celsiusToFahrenheit(todayMinTemp);
                 }
-                buf.put((byte) forecastMaxTemp);
-                buf.put((byte) forecastMinTemp);
+                buf.put((byte) todayMaxTemp);
+                buf.put((byte) todayMinTemp);
 
                 if (supportsConditionString) {
-                    buf.put(Weather.getConditionString(forecast.conditionCode).getBytes());
+                    buf.put(weatherSpec.currentCondition.getBytes());
                     buf.put((byte) 0);
                 }
-            }
 
-            if (characteristicChunked != null) {
-                writeToChunked(builder, 1, buf.array());
-            } else {
-                builder.write(getCharacteristic(AmazfitBipService.UUID_CHARACTERISTIC_WEATHER), buf.array());
-            }
+                for (WeatherSpec.Forecast forecast : weatherSpec.forecasts) {
+                    condition = HuamiWeatherConditions.mapToAmazfitBipWeatherCode(forecast.conditionCode);
+                    buf.put(condition);
+                    buf.put(condition);
+
+                    int forecastMaxTemp = forecast.maxTemp - 273;
+                    int forecastMinTemp = forecast.minTemp - 273;
+                    if (unit == MiBandConst.DistanceUnit.IMPERIAL) {
+                        forecastMaxTemp = (int) WeatherUtils.celsiusToFahrenheit(forecastMaxTemp);
+                        forecastMinTemp = (int) WeatherUtils.celsiusToFahrenheit(forecastMinTemp);
+                    }
+                    buf.put((byte) forecastMaxTemp);
+                    buf.put((byte) forecastMinTemp);
 
-            builder.queue(getQueue());
-        } catch (Exception ex) {
-            LOG.error("Error sending weather forecast", ex);
+                    if (supportsConditionString) {
+                        buf.put(Weather.getConditionString(forecast.conditionCode).getBytes());
+                        buf.put((byte) 0);
+                    }
+                }
+
+                if (characteristicChunked != null) {
+                    writeToChunked(builder, 1, buf.array());
+                } else {
+                    builder.write(getCharacteristic(AmazfitBipService.UUID_CHARACTERISTIC_WEATHER), buf.array());
+                }
+
+                builder.queue(getQueue());
+            } catch (Exception ex) {
+                LOG.error("Error sending weather forecast", ex);
+            }
         }
 
-        try {
-            TransactionBuilder builder;
-            builder = performInitialized("Sending forecast location");
+        if (locationChanged) {
+            try {
+                TransactionBuilder builder;
+                builder = performInitialized("Sending forecast location");
+
+                int length = 2 + weatherSpec.location.getBytes().length;
+                ByteBuffer buf = ByteBuffer.allocate(length);
+                buf.order(ByteOrder.LITTLE_ENDIAN);
+                buf.put((byte) 8);
+                buf.put(weatherSpec.location.getBytes());
+                buf.put((byte) 0);
 
-            int length = 2 + weatherSpec.location.getBytes().length;
-            ByteBuffer buf = ByteBuffer.allocate(length);
-            buf.order(ByteOrder.LITTLE_ENDIAN);
-            buf.put((byte) 8);
-            buf.put(weatherSpec.location.getBytes());
-            buf.put((byte) 0);
 
+                if (characteristicChunked != null) {
+                    writeToChunked(builder, 1, buf.array());
+                } else {
+                    builder.write(getCharacteristic(AmazfitBipService.UUID_CHARACTERISTIC_WEATHER), buf.array());
+                }
 
-            if (characteristicChunked != null) {
-                writeToChunked(builder, 1, buf.array());
-            } else {
-                builder.write(getCharacteristic(AmazfitBipService.UUID_CHARACTERISTIC_WEATHER), buf.array());
+                builder.queue(getQueue());
+            } catch (Exception ex) {
+                LOG.error("Error sending current forecast location", ex);
             }
-
-            builder.queue(getQueue());
-        } catch (Exception ex) {
-            LOG.error("Error sending current forecast location", ex);
         }
     }
 
@@ -2055,32 +2036,12 @@ public class HuamiSupport extends AbstractBTLEDeviceSupport {
         return this;
     }
 
+    /**
+     * Writes the data to the chunked transfer characteristic, in as few chunks as the
+     * negotiated MTU allows.
+     */
     protected void writeToChunked(TransactionBuilder builder, int type, byte[] data) {
-        final int MAX_CHUNKLENGTH = 17;
-        int remaining = data.length;
-        byte count = 0;
-        while (remaining > 0) {
-            int copybytes = Math.min(remaining, MAX_CHUNKLENGTH);
-            byte[] chunk = new byte[copybytes + 3];
-
-            byte flags = 0;
-            if (remaining <= MAX_CHUNKLENGTH) {
-                flags |= 0x80; // last chunk
-                if (count == 0) {
-                    flags |= 0x40; // weird but true
-                }
-            } else if (count > 0) {
-                flags |= 0x40; // consecutive chunk
-            }
-
-            chunk[0] = 0;
-            chunk[1] = (byte) (flags | type);
-            chunk[2] = (byte) (count & 0xff);
-
-            System.arraycopy(data, count++ * MAX_CHUNKLENGTH, chunk, 3, copybytes);
-            builder.write(characteristicChunked, chunk);
-            remaining -= copybytes;
-        }
+        new HuamiChunkedWriter(type).write(builder, characteristicChunked, data, getMtu());
     }
 
     @Override
@@ -2126,23 +2087,137 @@ public class HuamiSupport extends AbstractBTLEDeviceSupport {
 
     public void phase3Initialize(TransactionBuilder builder) {
         LOG.info("phase3Initialize...");
-        setDateDisplay(builder);
-        setTimeFormat(builder);
-        setUserInfo(builder);
-        setDistanceUnit(builder);
-        setWearLocation(builder);
-        setFitnessGoal(builder);
-        setDisplayItems(builder);
-        setDoNotDisturb(builder);
-        setRotateWristToSwitchInfo(builder);
-        setActivateDisplayOnLiftWrist(builder);
-        setDisplayCaller(builder);
-        setGoalNotification(builder);
-        setInactivityWarnings(builder);
-        setHeartrateSleepSupport(builder);
-        setDisconnectNotification(builder);
-        setExposeHRThridParty(builder);
-        setHeartrateMeasurementInterval(builder, getHeartRateMeasurementInterval());
+        getSettingsReconciler().applyChanged(builder);
+    }
+
+    public synchronized SettingsReconciler getSettingsReconciler() {
+        if (settingsReconciler == null) {
+            settingsReconciler = new SettingsReconciler(this);
+            addSettings(settingsReconciler);
+        }
+        return settingsReconciler;
+    }
+
+    /**
+     * Adds the settings that are sent during initialization and whenever one of their
+     * preferences changes. Subclasses may add further settings.
+     */
+    protected void addSettings(SettingsReconciler reconciler) {
+        reconciler.addSetting("date_display", new SettingsReconciler.Setting() {
+            @Override
+            public void apply(TransactionBuilder builder) {
+                setDateDisplay(builder);
+            }
+        }, MiBandConst.PREF_MI2_DATEFORMAT);
+        // follows the system setting, so only checked on connect
+        reconciler.addSetting("time_format", new SettingsReconciler.Setting() {
+            @Override
+            public void apply(TransactionBuilder builder) {
+                setTimeFormat(builder);
+            }
+        });
+        reconciler.addSetting("user_info", new SettingsReconciler.Setting() {
+            @Override
+            public void apply(TransactionBuilder builder) {
+                setUserInfo(builder);
+            }
+        });
+        reconciler.addSetting("distance_unit", new SettingsReconciler.Setting() {
+            @Override
+            public void apply(TransactionBuilder builder) {
+                setDistanceUnit(builder);
+            }
+        }, SettingsActivity.PREF_MEASUREMENT_SYSTEM);
+        reconciler.addSetting("wear_location", new SettingsReconciler.Setting() {
+            @Override
+            public void apply(TransactionBuilder builder) {
+                setWearLocation(builder);
+            }
+        }, DeviceSettingsPreferenceConst.PREF_WEARLOCATION);
+        reconciler.addSetting("fitness_goal", new SettingsReconciler.Setting() {
+            @Override
+            public void apply(TransactionBuilder builder) {
+                setFitnessGoal(builder);
+            }
+        }, ActivityUser.PREF_USER_STEPS_GOAL);
+        reconciler.addSetting("display_items", new SettingsReconciler.Setting() {
+            @Override
+            public void apply(TransactionBuilder builder) {
+                setDisplayItems(builder);
+            }
+        }, HuamiConst.PREF_DISPLAY_ITEMS);
+        reconciler.addSetting("do_not_disturb", new SettingsReconciler.Setting() {
+            @Override
+            public void apply(TransactionBuilder builder) {
+                setDoNotDisturb(builder);
+            }
+        }, MiBandConst.PREF_DO_NOT_DISTURB,
+                MiBandConst.PREF_DO_NOT_DISTURB_START,
+                MiBandConst.PREF_DO_NOT_DISTURB_END);
+        reconciler.addSetting("rotate_wrist", new SettingsReconciler.Setting() {
+            @Override
+            public void apply(TransactionBuilder builder) {
+                setRotateWristToSwitchInfo(builder);
+            }
+        }, MiBandConst.PREF_MI2_ROTATE_WRIST_TO_SWITCH_INFO);
+        reconciler.addSetting("display_on_lift", new SettingsReconciler.Setting() {
+            @Override
+            public void apply(TransactionBuilder builder) {
+                setActivateDisplayOnLiftWrist(builder);
+            }
+        }, HuamiConst.PREF_ACTIVATE_DISPLAY_ON_LIFT,
+                HuamiConst.PREF_DISPLAY_ON_LIFT_START,
+                HuamiConst.PREF_DISPLAY_ON_LIFT_END);
+        reconciler.addSetting("display_caller", new SettingsReconciler.Setting() {
+            @Override
+            public void apply(TransactionBuilder builder) {
+                setDisplayCaller(builder);
+            }
+        });
+        reconciler.addSetting("goal_notification", new SettingsReconciler.Setting() {
+            @Override
+            public void apply(TransactionBuilder builder) {
+                setGoalNotification(builder);
+            }
+        }, MiBandConst.PREF_MI2_GOAL_NOTIFICATION);
+        reconciler.addSetting("inactivity_warnings", new SettingsReconciler.Setting() {
+            @Override
+            public void apply(TransactionBuilder builder) {
+                setInactivityWarnings(builder);
+            }
+        }, MiBandConst.PREF_MI2_INACTIVITY_WARNINGS,
+                MiBandConst.PREF_MI2_INACTIVITY_WARNINGS_THRESHOLD,
+                MiBandConst.PREF_MI2_INACTIVITY_WARNINGS_START,
+                MiBandConst.PREF_MI2_INACTIVITY_WARNINGS_END,
+                MiBandConst.PREF_MI2_INACTIVITY_WARNINGS_DND,
+                MiBandConst.PREF_MI2_INACTIVITY_WARNINGS_DND_START,
+                MiBandConst.PREF_MI2_INACTIVITY_WARNINGS_DND_END);
+        reconciler.addSetting("heartrate_sleep_support", new SettingsReconciler.Setting() {
+            @Override
+            public void apply(TransactionBuilder builder) {
+                setHeartrateSleepSupport(builder);
+            }
+        });
+        reconciler.addSetting("disconnect_notification", new SettingsReconciler.Setting() {
+            @Override
+            public void apply(TransactionBuilder builder) {
+                setDisconnectNotification(builder);
+            }
+        }, HuamiConst.PREF_DISCONNECT_NOTIFICATION,
+                HuamiConst.PREF_DISCONNECT_NOTIFICATION_START,
+                HuamiConst.PREF_DISCONNECT_NOTIFICATION_END);
+        reconciler.addSetting("expose_hr_thirdparty", new SettingsReconciler.Setting() {
+            @Override
+            public void apply(TransactionBuilder builder) {
+                setExposeHRThridParty(builder);
+            }
+        }, HuamiConst.PREF_EXPOSE_HR_THIRDPARTY);
+        reconciler.addSetting("heartrate_measurement_interval", new SettingsReconciler.Setting() {
+            @Override
+            public void apply(TransactionBuilder builder) {
+                setHeartrateMeasurementInterval(builder, getHeartRateMeasurementInterval());
+            }
+        });
     }
 
     private int getHeartRateMeasurementInterval() {
@@ -31,6 +31,7 @@ import java.io.IOException;
 import java.util.Set;
 import java.util.UUID;
 
+import nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiConst;
 import nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiCoordinator;
 import nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiFWHelper;
 import nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiService;
@@ -41,6 +42,7 @@ import nodomain.freeyourgadget.gadgetbridge.model.DeviceType;
 import nodomain.freeyourgadget.gadgetbridge.model.NotificationSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.NotificationType;
 import nodomain.freeyourgadget.gadgetbridge.model.RecordedDataTypes;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.SettingsReconciler;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.profiles.alertnotification.AlertCategory;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.profiles.alertnotification.AlertNotificationProfile;
@@ -294,10 +296,20 @@ public class AmazfitBipSupport extends HuamiSupport {
     public void phase2Initialize(TransactionBuilder builder) {
         super.phase2Initialize(builder);
         LOG.info("phase2Initialize...");
-        setLanguage(builder);
         requestGPSVersion(builder);
     }
 
+    @Override
+    protected void addSettings(SettingsReconciler reconciler) {
+        super.addSettings(reconciler);
+        reconciler.addSetting("language", new SettingsReconciler.Setting() {
+            @Override
+            public void apply(TransactionBuilder builder) {
+                setLanguage(builder);
+            }
+        }, HuamiConst.PREF_LANGUAGE);
+    }
+
     @Override
     public HuamiFWHelper createFWHelper(Uri uri, Context context) throws IOException {
         return new AmazfitBipFWHelper(uri, context);
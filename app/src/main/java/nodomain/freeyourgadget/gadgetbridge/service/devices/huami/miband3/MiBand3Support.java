@@ -18,7 +18,6 @@ package nodomain.freeyourgadget.gadgetbridge.service.devices.huami.miband3;
 
 import android.content.Context;
 import android.net.Uri;
-import android.widget.Toast;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,6 +28,7 @@ import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.Set;
 
+import nodomain.freeyourgadget.gadgetbridge.activities.devicesettings.DeviceSettingsPreferenceConst;
 import nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiCoordinator;
 import nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiFWHelper;
 import nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiService;
@@ -36,9 +36,9 @@ import nodomain.freeyourgadget.gadgetbridge.devices.huami.miband3.MiBand3Coordin
 import nodomain.freeyourgadget.gadgetbridge.devices.huami.miband3.MiBand3FWHelper;
 import nodomain.freeyourgadget.gadgetbridge.devices.huami.miband3.MiBand3Service;
 import nodomain.freeyourgadget.gadgetbridge.devices.miband.MiBandConst;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.SettingsReconciler;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.amazfitbip.AmazfitBipSupport;
-import nodomain.freeyourgadget.gadgetbridge.util.GB;
 
 public class MiBand3Support extends AmazfitBipSupport {
 
@@ -103,27 +103,6 @@ public class MiBand3Support extends AmazfitBipSupport {
         return this;
     }
 
-    @Override
-    public void onSendConfiguration(String config) {
-        TransactionBuilder builder;
-        try {
-            builder = performInitialized("Sending configuration for option: " + config);
-            switch (config) {
-                case MiBandConst.PREF_NIGHT_MODE:
-                case MiBandConst.PREF_NIGHT_MODE_START:
-                case MiBandConst.PREF_NIGHT_MODE_END:
-                    setNightMode(builder);
-                    break;
-                default:
-                    super.onSendConfiguration(config);
-                    return;
-            }
-            builder.queue(getQueue());
-        } catch (IOException e) {
-            GB.toast("Error setting configuration", Toast.LENGTH_LONG, GB.ERROR, e);
-        }
-    }
-
     private MiBand3Support setNightMode(TransactionBuilder builder) {
         String nightMode = MiBand3Coordinator.getNightMode(gbDevice.getAddress());
         LOG.info("Setting night mode to " + nightMode);
@@ -161,13 +140,28 @@ public class MiBand3Support extends AmazfitBipSupport {
     }
 
     @Override
-    public void phase2Initialize(TransactionBuilder builder) {
-        super.phase2Initialize(builder);
-        LOG.info("phase2Initialize...");
-        setLanguage(builder);
-        setBandScreenUnlock(builder);
-        setNightMode(builder);
-        setDateFormat(builder);
+    protected void addSettings(SettingsReconciler reconciler) {
+        super.addSettings(reconciler);
+        reconciler.addSetting("band_screen_unlock", new SettingsReconciler.Setting() {
+            @Override
+            public void apply(TransactionBuilder builder) {
+                setBandScreenUnlock(builder);
+            }
+        }, MiBandConst.PREF_SWIPE_UNLOCK);
+        reconciler.addSetting("night_mode", new SettingsReconciler.Setting() {
+            @Override
+            public void apply(TransactionBuilder builder) {
+                setNightMode(builder);
+            }
+        }, MiBandConst.PREF_NIGHT_MODE,
+                MiBandConst.PREF_NIGHT_MODE_START,
+                MiBandConst.PREF_NIGHT_MODE_END);
+        reconciler.addSetting("date_format", new SettingsReconciler.Setting() {
+            @Override
+            public void apply(TransactionBuilder builder) {
+                setDateFormat(builder);
+            }
+        }, DeviceSettingsPreferenceConst.PREF_DATEFORMAT);
     }
 
     @Override
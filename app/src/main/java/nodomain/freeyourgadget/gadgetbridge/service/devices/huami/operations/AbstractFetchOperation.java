@@ -41,6 +41,7 @@ import nodomain.freeyourgadget.gadgetbridge.Logging;
 import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiService;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.BLETypeConversions;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.PacketReassembler;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.AbstractGattListenerWriteAction;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.SetDeviceBusyAction;
@@ -57,7 +58,7 @@ import nodomain.freeyourgadget.gadgetbridge.util.StringUtils;
 public abstract class AbstractFetchOperation extends AbstractHuamiOperation {
     private static final Logger LOG = LoggerFactory.getLogger(AbstractFetchOperation.class);
 
-    protected byte lastPacketCounter;
+    private PacketReassembler reassembler;
     int fetchCount;
     protected BluetoothGattCharacteristic characteristicActivityData;
     protected BluetoothGattCharacteristic characteristicFetch;
@@ -82,7 +83,10 @@ public abstract class AbstractFetchOperation extends AbstractHuamiOperation {
     }
 
     protected void startFetching() throws IOException {
-        lastPacketCounter = -1;
+        if (reassembler == null) {
+            reassembler = createReassembler();
+        }
+        reassembler.reset(0);
 
         TransactionBuilder builder = performInitialized(getName());
         getSupport().setLowLatency(builder);
@@ -123,6 +127,12 @@ public abstract class AbstractFetchOperation extends AbstractHuamiOperation {
 
     @CallSuper
     protected void handleActivityFetchFinish(boolean success) {
+        if (reassembler != null) {
+            if (reassembler.getPendingLength() > 0) {
+                LOG.warn(getName() + ": ignoring " + reassembler.getPendingLength() + " bytes of an incomplete record");
+            }
+            reassembler.release();
+        }
         GB.updateTransferNotification(null, "", false, 100, getContext());
         operationFinished();
         unsetBusy();
@@ -134,13 +144,38 @@ public abstract class AbstractFetchOperation extends AbstractHuamiOperation {
      * - the first one is 11 bytes long and contains metadata (how many bytes to expect, when the data starts, etc.)
      * - the second one is 20 bytes long and contains the actual activity data
      * <p/>
-     * The first message type is parsed by this method, for every other length of the value param, bufferActivityData is called.
+     * The first message type is parsed by handleActivityMetadata, the second one is passed to the
+     * reassembler, which checks and strips the counter byte and passes the records to its handler.
      *
      * @param value
      */
-    protected abstract void handleActivityNotif(byte[] value);
+    protected void handleActivityNotif(byte[] value) {
+        if (!isOperationRunning()) {
+            LOG.error("ignoring " + getName() + " notification because operation is not running. Data length: " + value.length);
+            getSupport().logMessageContent(value);
+            return;
+        }
+
+        try {
+            if (!reassembler.consume(value)) {
+                GB.toast("Error " + getName() + ", invalid package: " + Logging.formatBytes(value) + ", last counter was: " + reassembler.getLastCounter(), Toast.LENGTH_LONG, GB.ERROR);
+                handleActivityFetchFinish(false);
+            }
+        } catch (IOException ex) {
+            GB.toast(getContext(), "Error " + getName() + ": " + ex.getMessage(), Toast.LENGTH_LONG, GB.ERROR, ex);
+            handleActivityFetchFinish(false);
+        }
+    }
+
+    /**
+     * Creates the reassembler for the activity data packets, which start with a counter byte.
+     * It is created once and reset for every fetch round.
+     */
+    protected abstract PacketReassembler createReassembler();
 
-    protected abstract void bufferActivityData(byte[] value);
+    protected PacketReassembler getReassembler() {
+        return reassembler;
+    }
 
     protected void startFetching(TransactionBuilder builder, byte fetchType, GregorianCalendar sinceWhen) {
         final String taskName = StringUtils.ensureNotNull(builder.getTaskName());
@@ -24,21 +24,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
-import java.util.List;
 
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.database.BackgroundMigrator;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
-import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
+import nodomain.freeyourgadget.gadgetbridge.database.schema.GadgetbridgeUpdate_25;
+import nodomain.freeyourgadget.gadgetbridge.devices.SampleBatch;
 import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiService;
 import nodomain.freeyourgadget.gadgetbridge.devices.miband.MiBandSampleProvider;
-import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
-import nodomain.freeyourgadget.gadgetbridge.entities.Device;
 import nodomain.freeyourgadget.gadgetbridge.entities.MiBandActivitySample;
-import nodomain.freeyourgadget.gadgetbridge.entities.User;
+import nodomain.freeyourgadget.gadgetbridge.entities.SampleWatermark;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.BLETypeConversions;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.PacketReassembler;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.HuamiSupport;
 import nodomain.freeyourgadget.gadgetbridge.util.DateTimeUtils;
@@ -52,7 +52,7 @@ import nodomain.freeyourgadget.gadgetbridge.util.StringUtils;
 public class FetchActivityOperation extends AbstractFetchOperation {
     private static final Logger LOG = LoggerFactory.getLogger(FetchActivityOperation.class);
 
-    private List<MiBandActivitySample> samples = new ArrayList<>(60*24); // 1day per default
+    private final SampleBatch samples = new SampleBatch(60*24); // 1day per default
 
     public FetchActivityOperation(HuamiSupport support) {
         super(support);
@@ -110,25 +110,11 @@ public class FetchActivityOperation extends AbstractFetchOperation {
         if (samples.size() > 0) {
             // save all the samples that we got
             try (DBHandler handler = GBApplication.acquireDB()) {
-                DaoSession session = handler.getDaoSession();
-                SampleProvider<MiBandActivitySample> sampleProvider = new MiBandSampleProvider(getDevice(), session);
-                Device device = DBHelper.getDevice(getDevice(), session);
-                User user = DBHelper.getUser(session);
+                SampleProvider<MiBandActivitySample> sampleProvider = new MiBandSampleProvider(getDevice(), handler.getDaoSession());
+                sampleProvider.addGBActivitySamples(samples);
 
                 GregorianCalendar timestamp = (GregorianCalendar) startTimestamp.clone();
-                for (MiBandActivitySample sample : samples) {
-                    sample.setDevice(device);
-                    sample.setUser(user);
-                    sample.setTimestamp((int) (timestamp.getTimeInMillis() / 1000));
-                    sample.setProvider(sampleProvider);
-
-                    if (LOG.isDebugEnabled()) {
-//                        LOG.debug("sample: " + sample);
-                    }
-
-                    timestamp.add(Calendar.MINUTE, 1);
-                }
-                sampleProvider.addGBActivitySamples(samples.toArray(new MiBandActivitySample[0]));
+                timestamp.add(Calendar.MINUTE, samples.size());
 
                 saveLastSyncTimestamp(timestamp);
                 LOG.info("Mi2 activity data: last sample timestamp: " + DateTimeUtils.formatDateTime(timestamp.getTime()));
@@ -144,62 +130,46 @@ public class FetchActivityOperation extends AbstractFetchOperation {
     }
 
     /**
-     * Method to handle the incoming activity data.
-     * There are two kind of messages we currently know:
-     * - the first one is 11 bytes long and contains metadata (how many bytes to expect, when the data starts, etc.)
-     * - the second one is 20 bytes long and contains the actual activity data
-     * <p/>
-     * The first message type is parsed by this method, for every other length of the value param, bufferActivityData is called.
-     *
-     * @param value
+     * Creates a sample from every 4 bytes of activity data: category, intensity, steps and heart rate.
      */
-    protected void handleActivityNotif(byte[] value) {
-        if (!isOperationRunning()) {
-            LOG.error("ignoring activity data notification because operation is not running. Data length: " + value.length);
-            getSupport().logMessageContent(value);
-            return;
-        }
-
-        if ((value.length % 4) == 1) {
-            if ((byte) (lastPacketCounter + 1) == value[0] ) {
-                lastPacketCounter++;
-                bufferActivityData(value);
-            } else {
-                GB.toast("Error " + getName() + ", invalid package counter: " + value[0], Toast.LENGTH_LONG, GB.ERROR);
-                handleActivityFetchFinish(false);
-                return;
+    @Override
+    protected PacketReassembler createReassembler() {
+        return new PacketReassembler(1, 0, 4, new PacketReassembler.RecordHandler() {
+            @Override
+            public void onRecord(PacketReassembler.Cursor record) {
+                // one sample per minute
+                int timestamp = (int) (startTimestamp.getTimeInMillis() / 1000) + samples.size() * 60;
+                samples.add(timestamp, record.getUint8(0), record.getUint8(1), record.getUint8(2), record.getUint8(3));
             }
-        } else {
-            GB.toast("Error " + getName() + ", unexpected package length: " + value.length, Toast.LENGTH_LONG, GB.ERROR);
-            handleActivityFetchFinish(false);
-        }
+        });
     }
 
     /**
-     * Creates samples from the given 17-length array
-     * @param value
+     * Resumes from the last sync time in the preferences. Without one, e.g. after restoring
+     * the database, it resumes right after the latest stored sample instead of fetching
+     * everything again. The latest sample alone is not used, realtime samples are stored
+     * with the current time and would skip the history recorded since the last sync.
      */
-    protected void bufferActivityData(byte[] value) {
-        int len = value.length;
-
-        if (len % 4 != 1) {
-            throw new AssertionError("Unexpected activity array size: " + len);
+    @Override
+    protected GregorianCalendar getLastSuccessfulSyncTime() {
+        if (GBApplication.getDeviceSpecificSharedPrefs(getDevice().getAddress()).contains(getLastSyncTimeKey())) {
+            return super.getLastSuccessfulSyncTime();
         }
-
-        for (int i = 1; i < len; i+=4) {
-            MiBandActivitySample sample = createSample(value[i], value[i + 1], value[i + 2], value[i + 3]); // lgtm [java/index-out-of-bounds]
-            samples.add(sample);
+        if (BackgroundMigrator.isPending(GadgetbridgeUpdate_25.class)) {
+            // computing the watermark now would hold up the sync
+            return super.getLastSuccessfulSyncTime();
         }
-    }
-
-    private MiBandActivitySample createSample(byte category, byte intensity, byte steps, byte heartrate) {
-        MiBandActivitySample sample = new MiBandActivitySample();
-        sample.setRawKind(category & 0xff);
-        sample.setRawIntensity(intensity & 0xff);
-        sample.setSteps(steps & 0xff);
-        sample.setHeartRate(heartrate & 0xff);
-
-        return sample;
+        try (DBHandler handler = GBApplication.acquireDB()) {
+            SampleWatermark watermark = new MiBandSampleProvider(getDevice(), handler.getDaoSession()).getWatermark();
+            if (watermark != null) {
+                GregorianCalendar calendar = BLETypeConversions.createCalendar();
+                calendar.setTimeInMillis((watermark.getLatestTimestamp() + 60) * 1000L);
+                return calendar;
+            }
+        } catch (Exception ex) {
+            LOG.warn("Error reading the latest activity sample", ex);
+        }
+        return super.getLastSuccessfulSyncTime();
     }
 
     @Override
@@ -22,8 +22,8 @@ import android.widget.Toast;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.util.GregorianCalendar;
 
 import androidx.annotation.NonNull;
@@ -34,10 +34,13 @@ import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
 import nodomain.freeyourgadget.gadgetbridge.devices.huami.amazfitbip.AmazfitBipService;
 import nodomain.freeyourgadget.gadgetbridge.entities.BaseActivitySummary;
 import nodomain.freeyourgadget.gadgetbridge.export.ActivityTrackExporter;
+import nodomain.freeyourgadget.gadgetbridge.export.BinaryActivityTrackReader;
+import nodomain.freeyourgadget.gadgetbridge.export.BinaryActivityTrackWriter;
 import nodomain.freeyourgadget.gadgetbridge.export.GPXExporter;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityTrack;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.BLETypeConversions;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.PacketReassembler;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.HuamiSupport;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.HuamiActivityDetailsParser;
@@ -54,7 +57,9 @@ public class FetchSportsDetailsOperation extends AbstractFetchOperation {
     private final BaseActivitySummary summary;
     private final String lastSyncTimeKey;
 
-    private ByteArrayOutputStream buffer;
+    private HuamiActivityDetailsParser parser;
+    private BinaryActivityTrackWriter trackWriter;
+    private File trackFile;
 
     FetchSportsDetailsOperation(@NonNull BaseActivitySummary summary, @NonNull HuamiSupport support, @NonNull String lastSyncTimeKey) {
         super(support);
@@ -66,7 +71,17 @@ public class FetchSportsDetailsOperation extends AbstractFetchOperation {
     @Override
     protected void startFetching(TransactionBuilder builder) {
         LOG.info("start " + getName());
-        buffer = new ByteArrayOutputStream(1024);
+        parser = new HuamiActivityDetailsParser(summary);
+        parser.setSkipCounterByte(false); // is already stripped
+        closeTrackWriter();
+        try {
+            trackFile = new File(FileUtils.getExternalFilesDir(), getTrackFileBaseName() + ".gbtrack");
+            trackWriter = new BinaryActivityTrackWriter(trackFile, summary.getStartTime().getTime());
+            parser.setTrackWriter(trackWriter);
+        } catch (IOException ex) {
+            LOG.warn("Unable to create binary track file, keeping the track in memory", ex);
+            trackFile = null;
+        }
         GregorianCalendar sinceWhen = getLastSuccessfulSyncTime();
         startFetching(builder, AmazfitBipService.COMMAND_ACTIVITY_DATA_TYPE_SPORTS_DETAILS, sinceWhen);
     }
@@ -85,35 +100,27 @@ public class FetchSportsDetailsOperation extends AbstractFetchOperation {
 //        }
 
 
-        if (success) {
-            HuamiActivityDetailsParser parser = new HuamiActivityDetailsParser(summary);
-            parser.setSkipCounterByte(false); // is already stripped
+        if (success && parser != null) {
             try {
-                ActivityTrack track = parser.parse(buffer.toByteArray());
+                ActivityTrack track = parser.finish();
+                closeTrackWriter();
                 ActivityTrackExporter exporter = createExporter();
-                String trackType = "track";
-                switch (summary.getActivityKind()) {
-                    case ActivityKind.TYPE_CYCLING:
-                        trackType = getContext().getString(R.string.activity_type_biking);
-                        break;
-                    case ActivityKind.TYPE_RUNNING:
-                        trackType = getContext().getString(R.string.activity_type_running);
-                        break;
-                    case ActivityKind.TYPE_WALKING:
-                        trackType = getContext().getString(R.string.activity_type_walking);
-                        break;
-                    case ActivityKind.TYPE_SWIMMING:
-                        trackType = getContext().getString(R.string.activity_type_swimming);
-                        break;
-                }
-                String fileName = FileUtils.makeValidFileName("gadgetbridge-"+trackType.toLowerCase()+"-" + DateTimeUtils.formatIso8601(summary.getStartTime()) + ".gpx");
-                File targetFile = new File(FileUtils.getExternalFilesDir(), fileName);
+                File targetFile = new File(FileUtils.getExternalFilesDir(), getTrackFileBaseName() + ".gpx");
 
                 try {
-                    exporter.performExport(track, targetFile);
+                    if (trackFile != null) {
+                        try (BinaryActivityTrackReader reader = new BinaryActivityTrackReader(trackFile)) {
+                            exporter.performExport(track, reader, targetFile);
+                        }
+                    } else {
+                        exporter.performExport(track, targetFile);
+                    }
 
                     try (DBHandler dbHandler = GBApplication.acquireDB()) {
                         summary.setGpxTrack(targetFile.getAbsolutePath());
+                        if (trackFile != null) {
+                            summary.setBinaryTrack(trackFile.getAbsolutePath());
+                        }
                         dbHandler.getDaoSession().getBaseActivitySummaryDao().update(summary);
                     }
                 } catch (ActivityTrackExporter.GPXTrackEmptyException ex) {
@@ -126,27 +133,53 @@ public class FetchSportsDetailsOperation extends AbstractFetchOperation {
             } catch (Exception ex) {
                 GB.toast(getContext(), "Error getting activity details: " + ex.getMessage(), Toast.LENGTH_LONG, GB.ERROR, ex);
             }
+        } else {
+            closeTrackWriter();
+            if (trackFile != null && !trackFile.delete()) {
+                LOG.warn("Unable to delete incomplete track file " + trackFile);
+            }
         }
+        parser = null;
 
         super.handleActivityFetchFinish(success);
     }
 
+    private void closeTrackWriter() {
+        if (trackWriter != null) {
+            try {
+                trackWriter.close();
+            } catch (IOException ex) {
+                LOG.warn("Error closing binary track file", ex);
+            }
+            trackWriter = null;
+        }
+    }
+
+    private String getTrackFileBaseName() {
+        String trackType = "track";
+        switch (summary.getActivityKind()) {
+            case ActivityKind.TYPE_CYCLING:
+                trackType = getContext().getString(R.string.activity_type_biking);
+                break;
+            case ActivityKind.TYPE_RUNNING:
+                trackType = getContext().getString(R.string.activity_type_running);
+                break;
+            case ActivityKind.TYPE_WALKING:
+                trackType = getContext().getString(R.string.activity_type_walking);
+                break;
+            case ActivityKind.TYPE_SWIMMING:
+                trackType = getContext().getString(R.string.activity_type_swimming);
+                break;
+        }
+        return FileUtils.makeValidFileName("gadgetbridge-" + trackType.toLowerCase() + "-" + DateTimeUtils.formatIso8601(summary.getStartTime()));
+    }
+
     private ActivityTrackExporter createExporter() {
         GPXExporter exporter = new GPXExporter();
         exporter.setCreator(GBApplication.app().getNameAndVersion());
         return exporter;
     }
 
-    /**
-     * Method to handle the incoming activity data.
-     * There are two kind of messages we currently know:
-     * - the first one is 11 bytes long and contains metadata (how many bytes to expect, when the data starts, etc.)
-     * - the second one is 20 bytes long and contains the actual activity data
-     * <p/>
-     * The first message type is parsed by this method, for every other length of the value param, bufferActivityData is called.
-     *
-     * @param value
-     */
     @Override
     protected void handleActivityNotif(byte[] value) {
         LOG.warn("sports details: " + Logging.formatBytes(value));
@@ -163,23 +196,21 @@ public class FetchSportsDetailsOperation extends AbstractFetchOperation {
             return;
         }
 
-        if ((byte) (lastPacketCounter + 1) == value[0] ) {
-            lastPacketCounter++;
-            bufferActivityData(value);
-        } else {
-            GB.toast("Error " + getName() + ", invalid package counter: " + value[0] + ", last was: " + lastPacketCounter, Toast.LENGTH_LONG, GB.ERROR);
-            handleActivityFetchFinish(false);
-        }
+        super.handleActivityNotif(value);
     }
 
     /**
-     * Buffers the given activity summary data. If the total size is reached,
-     * it is converted to an object and saved in the database.
-     * @param value
+     * Parses the activity details incrementally, straight from the packets, so that the
+     * whole track never needs to be buffered.
      */
     @Override
-    protected void bufferActivityData(byte[] value) {
-        buffer.write(value, 1, value.length - 1); // skip the counter
+    protected PacketReassembler createReassembler() {
+        return new PacketReassembler(1, 0, PacketReassembler.UNFRAMED, new PacketReassembler.RecordHandler() {
+            @Override
+            public void onRecord(PacketReassembler.Cursor record) throws IOException {
+                parser.consume(record.getArray(), record.getOffset(), record.getLength());
+            }
+        });
     }
 
     @Override
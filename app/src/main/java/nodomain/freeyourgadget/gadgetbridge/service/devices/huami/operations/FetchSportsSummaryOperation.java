@@ -24,10 +24,8 @@ import android.widget.Toast;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.Date;
 import java.util.GregorianCalendar;
 
@@ -42,6 +40,7 @@ import nodomain.freeyourgadget.gadgetbridge.entities.Device;
 import nodomain.freeyourgadget.gadgetbridge.entities.User;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.BLETypeConversions;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.PacketReassembler;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.HuamiSportsActivityType;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.HuamiSupport;
@@ -54,8 +53,6 @@ import nodomain.freeyourgadget.gadgetbridge.util.GB;
 public class FetchSportsSummaryOperation extends AbstractFetchOperation {
     private static final Logger LOG = LoggerFactory.getLogger(FetchSportsSummaryOperation.class);
 
-    private ByteArrayOutputStream buffer = new ByteArrayOutputStream(140);
-
     public FetchSportsSummaryOperation(HuamiSupport support) {
         super(support);
         setName("fetching sport summaries");
@@ -84,7 +81,7 @@ public class FetchSportsSummaryOperation extends AbstractFetchOperation {
 
         BaseActivitySummary summary = null;
         if (success) {
-            summary = parseSummary(buffer);
+            summary = parseSummary(getReassembler().getBufferedData());
             try (DBHandler dbHandler = GBApplication.acquireDB()) {
                 DaoSession session = dbHandler.getDaoSession();
                 Device device = DBHelper.getDevice(getDevice(), session);
@@ -115,16 +112,6 @@ public class FetchSportsSummaryOperation extends AbstractFetchOperation {
         return super.onCharacteristicRead(gatt, characteristic, status);
     }
 
-    /**
-     * Method to handle the incoming activity data.
-     * There are two kind of messages we currently know:
-     * - the first one is 11 bytes long and contains metadata (how many bytes to expect, when the data starts, etc.)
-     * - the second one is 20 bytes long and contains the actual activity data
-     * <p/>
-     * The first message type is parsed by this method, for every other length of the value param, bufferActivityData is called.
-     *
-     * @param value
-     */
     @Override
     protected void handleActivityNotif(byte[] value) {
         LOG.warn("sports summary data: " + Logging.formatBytes(value));
@@ -141,30 +128,20 @@ public class FetchSportsSummaryOperation extends AbstractFetchOperation {
             return;
         }
 
-        if ((byte) (lastPacketCounter + 1) == value[0]) {
-            lastPacketCounter++;
-            bufferActivityData(value);
-        } else {
-            GB.toast("Error " + getName() + ", invalid package counter: " + value[0] + ", last was: " + lastPacketCounter, Toast.LENGTH_LONG, GB.ERROR);
-            handleActivityFetchFinish(false);
-            return;
-        }
+        super.handleActivityNotif(value);
     }
 
     /**
-     * Buffers the given activity summary data. If the total size is reached,
-     * it is converted to an object and saved in the database.
-     *
-     * @param value
+     * The summary is parsed as a whole when the transfer has finished, so the reassembler
+     * keeps all data.
      */
     @Override
-    protected void bufferActivityData(byte[] value) {
-        buffer.write(value, 1, value.length - 1); // skip the counter
+    protected PacketReassembler createReassembler() {
+        return new PacketReassembler(1, 0, PacketReassembler.UNFRAMED, null);
     }
 
-    private BaseActivitySummary parseSummary(ByteArrayOutputStream stream) {
+    private BaseActivitySummary parseSummary(ByteBuffer buffer) {
         BaseActivitySummary summary = new BaseActivitySummary();
-        ByteBuffer buffer = ByteBuffer.wrap(stream.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
 //        summary.setVersion(BLETypeConversions.toUnsigned(buffer.getShort()));
         short version = buffer.getShort(); // version
         LOG.debug("Got sport summary version " + version + "total bytes=" + buffer.capacity());
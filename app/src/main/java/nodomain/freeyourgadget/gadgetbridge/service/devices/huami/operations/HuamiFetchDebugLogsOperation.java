@@ -17,8 +17,6 @@
     along with this program.  If not, see <http://www.gnu.org/licenses/>. */
 package nodomain.freeyourgadget.gadgetbridge.service.devices.huami.operations;
 
-import android.widget.Toast;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,13 +29,12 @@ import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.Locale;
 
-import androidx.annotation.NonNull;
 import nodomain.freeyourgadget.gadgetbridge.devices.huami.amazfitbip.AmazfitBipService;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.BLETypeConversions;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.PacketReassembler;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.amazfitbip.AmazfitBipSupport;
 import nodomain.freeyourgadget.gadgetbridge.util.FileUtils;
-import nodomain.freeyourgadget.gadgetbridge.util.GB;
 
 public class HuamiFetchDebugLogsOperation extends AbstractFetchOperation {
     private static final Logger LOG = LoggerFactory.getLogger(HuamiFetchDebugLogsOperation.class);
@@ -93,29 +90,12 @@ public class HuamiFetchDebugLogsOperation extends AbstractFetchOperation {
     }
 
     @Override
-    protected void handleActivityNotif(byte[] value) {
-        if (!isOperationRunning()) {
-            LOG.error("ignoring notification because operation is not running. Data length: " + value.length);
-            getSupport().logMessageContent(value);
-            return;
-        }
-
-        if ((byte) (lastPacketCounter + 1) == value[0]) {
-            lastPacketCounter++;
-            bufferActivityData(value);
-        } else {
-            GB.toast("Error " + getName() + " invalid package counter: " + value[0], Toast.LENGTH_LONG, GB.ERROR);
-            handleActivityFetchFinish(false);
-        }
-    }
-
-    @Override
-    protected void bufferActivityData(@NonNull byte[] value) {
-        try {
-            logOutputStream.write(value, 1, value.length - 1);
-        } catch (IOException e) {
-            LOG.warn("could not write to output stream", e);
-            handleActivityFetchFinish(false);
-        }
+    protected PacketReassembler createReassembler() {
+        return new PacketReassembler(1, 0, PacketReassembler.UNFRAMED, new PacketReassembler.RecordHandler() {
+            @Override
+            public void onRecord(PacketReassembler.Cursor record) throws IOException {
+                record.writeTo(logOutputStream);
+            }
+        });
     }
 }
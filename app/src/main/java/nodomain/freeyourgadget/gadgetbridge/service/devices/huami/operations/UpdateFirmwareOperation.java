@@ -45,6 +45,7 @@ import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.HuamiFirmwareT
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.HuamiSupport;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
 import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
+import nodomain.freeyourgadget.gadgetbridge.util.ProgressReporter;
 
 public class UpdateFirmwareOperation extends AbstractHuamiOperation {
     private static final Logger LOG = LoggerFactory.getLogger(UpdateFirmwareOperation.class);
@@ -88,6 +89,8 @@ public class UpdateFirmwareOperation extends AbstractHuamiOperation {
 
     protected void done() {
         LOG.info("Operation done.");
+        // the firmware update may have reset the band, so send all settings again
+        getSupport().getSettingsReconciler().invalidate();
         operationFinished();
         unsetBusy();
     }
@@ -238,6 +241,8 @@ public class UpdateFirmwareOperation extends AbstractHuamiOperation {
         try {
             // going from 0 to len
             int firmwareProgress = 0;
+            ProgressReporter progressReporter = new ProgressReporter(getContext(), ProgressReporter.Type.INSTALL, null,
+                    getContext().getString(R.string.updatefirmwareoperation_update_in_progress));
 
             TransactionBuilder builder = performInitialized("send firmware packet");
             builder.write(fwCControlChar, getFirmwareStartCommand());
@@ -251,7 +256,7 @@ public class UpdateFirmwareOperation extends AbstractHuamiOperation {
                 int progressPercent = (int) ((((float) firmwareProgress) / len) * 100);
                 if ((i > 0) && (i % 100 == 0)) {
                     builder.write(fwCControlChar, new byte[]{HuamiService.COMMAND_FIRMWARE_UPDATE_SYNC});
-                    builder.add(new SetProgressAction(getContext().getString(R.string.updatefirmwareoperation_update_in_progress), true, progressPercent, getContext()));
+                    builder.add(new SetProgressAction(progressReporter, progressPercent));
                 }
             }
 
@@ -34,17 +34,29 @@ import nodomain.freeyourgadget.gadgetbridge.devices.id115.ID115Constants;
 import nodomain.freeyourgadget.gadgetbridge.devices.id115.ID115SampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.entities.ID115ActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.PacketReassembler;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
 
 public class FetchActivityOperation extends AbstractID115Operation {
     private static final Logger LOG = LoggerFactory.getLogger(FetchActivityOperation.class);
+    private static final int SAMPLE_LENGTH = 5;
+
     private byte expectedCmd;
-    private byte expectedSeq;
-    private ArrayList<byte[]> packets;
+    private final PacketReassembler reassembler;
+    private ArrayList<ID115ActivitySample> samples;
+    private int ts;
+    private int dt;
 
     protected FetchActivityOperation(ID115Support support) {
         super(support);
+        // the sequence number is the third header byte, the samples never span packets
+        reassembler = new PacketReassembler(4, 2, PacketReassembler.UNFRAMED, new PacketReassembler.RecordHandler() {
+            @Override
+            public void onRecord(PacketReassembler.Cursor record) {
+                handlePayload(record);
+            }
+        });
     }
 
     @Override
@@ -63,8 +75,8 @@ public class FetchActivityOperation extends AbstractID115Operation {
         byte cmd[] = outputStream.toByteArray();
 
         expectedCmd = ID115Constants.CMD_KEY_FETCH_ACTIVITY_TODAY;
-        expectedSeq = 1;
-        packets = new ArrayList<>();
+        reassembler.reset(1);
+        samples = new ArrayList<>();
 
         TransactionBuilder builder = performInitialized("send activity fetch request");
         builder.write(controlCharacteristic, cmd);
@@ -87,46 +99,42 @@ public class FetchActivityOperation extends AbstractID115Operation {
         if (data[0] == ID115Constants.CMD_ID_HEALTH_DATA) {
             if (data[1] == (byte)0xEE) {
                 LOG.info("Activity data transfer has finished.");
-                parseAndStore();
+                store();
+                reassembler.release();
                 operationFinished();
             } else {
-                if ((data[1] != expectedCmd) || (data[2] != expectedSeq)) {
+                boolean valid;
+                try {
+                    valid = data[1] == expectedCmd && reassembler.consume(data);
+                } catch (IOException e) {
+                    valid = false; // handlePayload() does not throw
+                }
+                if (!valid) {
                     GB.toast(getContext(), "Error fetching ID115 activity data, you may need to connect and disconnect", Toast.LENGTH_LONG, GB.ERROR);
+                    reassembler.release();
                     operationFinished();
-                    return;
                 }
-                expectedSeq += 1;
-
-                byte payload[] = new byte[data.length - 4];
-                System.arraycopy(data, 4, payload, 0, payload.length);
-                packets.add(payload);
             }
         }
     }
 
-    void parseAndStore() {
-        if (packets.size() <= 1) {
-            return;
-        }
-
-        byte[] header = packets.get(0);
-        int year = ((header[1] & 0xFF) << 8) | (header[0] & 0xFF);
-        int month = header[2] & 0xFF;
-        int day = header[3] & 0xFF;
-        int sampleDurationMinutes = header[6] & 0xFF;
-        Calendar calendar = new GregorianCalendar(year, month - 1, day);
-        int ts = (int)(calendar.getTimeInMillis() / 1000);
-        int dt = sampleDurationMinutes * 60;
-
-        ArrayList<ID115ActivitySample> samples = new ArrayList<>();
-
-        for (int i = 2; i < packets.size(); i++) {
-            byte[] packet = packets.get(i);
-            for (int j = 0; j <= packet.length - 5; j += 5) {
-                byte[] sampleData = new byte[5];
-                System.arraycopy(packet, j, sampleData, 0, sampleData.length);
-
-                ID115ActivitySample sample = parseSample(sampleData);
+    /**
+     * The first packet contains the date and the sample duration, the second one is
+     * unknown, all further ones contain samples.
+     */
+    private void handlePayload(PacketReassembler.Cursor payload) {
+        int packetIndex = reassembler.getPacketCount() - 1;
+        if (packetIndex == 0) {
+            int year = payload.getUint16(0);
+            int month = payload.getUint8(2);
+            int day = payload.getUint8(3);
+            int sampleDurationMinutes = payload.getUint8(6);
+            Calendar calendar = new GregorianCalendar(year, month - 1, day);
+            ts = (int)(calendar.getTimeInMillis() / 1000);
+            dt = sampleDurationMinutes * 60;
+        } else if (packetIndex >= 2) {
+            for (int j = 0; j <= payload.getLength() - SAMPLE_LENGTH; j += SAMPLE_LENGTH) {
+                ID115ActivitySample sample = parseSample(payload, j);
                 if (sample != null) {
                     sample.setTimestamp(ts);
                     sample.setRawKind(ActivityKind.TYPE_ACTIVITY);
@@ -135,6 +143,12 @@ public class FetchActivityOperation extends AbstractID115Operation {
                 ts += dt;
             }
         }
+    }
+
+    void store() {
+        if (samples.isEmpty()) {
+            return;
+        }
 
         try (DBHandler dbHandler = GBApplication.acquireDB()) {
             ID115ActivitySample[] sampleArray = samples.toArray(new ID115ActivitySample[0]);
@@ -152,11 +166,11 @@ public class FetchActivityOperation extends AbstractID115Operation {
         }
     }
 
-    ID115ActivitySample parseSample(byte[] data) {
-        int d01 = ((data[1] & 0xFF) << 8) | (data[0] & 0xFF);
-        int d12 = ((data[2] & 0xFF) << 8) | (data[1] & 0xFF);
-        int d23 = ((data[3] & 0xFF) << 8) | (data[2] & 0xFF);
-        int d34 = ((data[4] & 0xFF) << 8) | (data[3] & 0xFF);
+    ID115ActivitySample parseSample(PacketReassembler.Cursor data, int offset) {
+        int d01 = data.getUint16(offset);
+        int d12 = data.getUint16(offset + 1);
+        int d23 = data.getUint16(offset + 2);
+        int d34 = data.getUint16(offset + 3);
         int stepCount = (d01 >> 2) & 0xFFF;
         int activeTime = (d12 >> 6) & 0xF;
         int calories = (d23 >> 2) & 0x3FF;
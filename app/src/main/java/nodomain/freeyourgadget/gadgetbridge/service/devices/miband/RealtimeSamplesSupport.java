@@ -16,10 +16,12 @@
     along with this program.  If not, see <http://www.gnu.org/licenses/>. */
 package nodomain.freeyourgadget.gadgetbridge.service.devices.miband;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.util.GBScheduler;
 
 /**
  * Basic support for aggregating different sources of realtime data that comes in in a mostly
@@ -41,7 +43,15 @@ public abstract class RealtimeSamplesSupport {
     private int lastSteps;
     // subclasses may add more
 
-    private Timer realtimeStorageTimer;
+    private ScheduledFuture<?> realtimeStorageTask;
+    // the samples are stored here instead of on the shared scheduler, writing may block
+    private final ExecutorService storageExecutor = GBScheduler.newSerialExecutor("Mi Band Realtime Storage");
+    private final Runnable storageRunnable = new Runnable() {
+        @Override
+        public void run() {
+            triggerCurrentSample();
+        }
+    };
 
     public RealtimeSamplesSupport(long delay, long period) {
         this.delay = delay;
@@ -52,25 +62,23 @@ public abstract class RealtimeSamplesSupport {
         if (isRunning()) {
             return; // already running
         }
-        realtimeStorageTimer = new Timer("Mi Band Realtime Storage Timer");
-        realtimeStorageTimer.scheduleAtFixedRate(new TimerTask() {
+        realtimeStorageTask = GBScheduler.getInstance().scheduleAtFixedRate("Mi Band Realtime Storage", new Runnable() {
             @Override
             public void run() {
-                triggerCurrentSample();
+                storageExecutor.execute(storageRunnable);
             }
-        }, delay, period);
+        }, delay, period, TimeUnit.MILLISECONDS);
     }
 
     public synchronized void stop() {
-        if (realtimeStorageTimer != null) {
-            realtimeStorageTimer.cancel();
-            realtimeStorageTimer.purge();
-            realtimeStorageTimer = null;
+        if (realtimeStorageTask != null) {
+            realtimeStorageTask.cancel(false);
+            realtimeStorageTask = null;
         }
     }
 
     public synchronized boolean isRunning() {
-        return realtimeStorageTimer != null;
+        return realtimeStorageTask != null;
     }
 
     public synchronized void setSteps(int stepsPerMinute) {
@@ -42,6 +42,7 @@ import nodomain.freeyourgadget.gadgetbridge.devices.miband.MiBandService;
 import nodomain.freeyourgadget.gadgetbridge.entities.Device;
 import nodomain.freeyourgadget.gadgetbridge.entities.MiBandActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.entities.User;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.PacketReassembler;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.SetDeviceBusyAction;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.miband.MiBandSupport;
@@ -89,23 +90,23 @@ public class FetchActivityOperation extends AbstractMiBand1Operation {
             activityDataHolder = new byte[activityDataHolderSize];
         }
 
-        boolean hasRoomFor(byte[] value) {
-            return activityDataRemainingBytes >= value.length;
+        boolean hasRoomFor(PacketReassembler.Cursor value) {
+            return activityDataRemainingBytes >= value.getLength();
         }
 
-        boolean isValidData(byte[] value) {
+        boolean isValidData(PacketReassembler.Cursor value) {
             //I don't like this clause, but until we figure out why we get different data sometimes this should work
-            return value.length == maxDataPacketLength || value.length == activityDataRemainingBytes;
+            return value.getLength() == maxDataPacketLength || value.getLength() == activityDataRemainingBytes;
         }
 
         boolean isBufferFull() {
             return activityDataHolderSize == activityDataHolderProgress;
         }
 
-        public void buffer(byte[] value) {
-            System.arraycopy(value, 0, activityDataHolder, activityDataHolderProgress, value.length);
-            activityDataHolderProgress += value.length;
-            activityDataRemainingBytes -= value.length;
+        public void buffer(PacketReassembler.Cursor value) {
+            System.arraycopy(value.getArray(), value.getOffset(), activityDataHolder, activityDataHolderProgress, value.getLength());
+            activityDataHolderProgress += value.getLength();
+            activityDataRemainingBytes -= value.getLength();
 
             validate();
         }
@@ -150,6 +151,7 @@ public class FetchActivityOperation extends AbstractMiBand1Operation {
     }
 
     private ActivityStruct activityStruct;
+    private final PacketReassembler reassembler;
 
     public FetchActivityOperation(MiBandSupport support) {
         super(support);
@@ -159,6 +161,13 @@ public class FetchActivityOperation extends AbstractMiBand1Operation {
         int activityDataHolderSize = getBytesPerMinuteOfActivityData() * 60 * 4;
         int maxDataPacketLength = hasPacketCounter ? (hasExtendedActivityData ? 16 : 18) : 20;
         activityStruct = new ActivityStruct(activityDataHolderSize, maxDataPacketLength);
+        // the packet counter is only stripped, not checked
+        reassembler = new PacketReassembler(hasPacketCounter ? 1 : 0, PacketReassembler.NO_COUNTER, PacketReassembler.UNFRAMED, new PacketReassembler.RecordHandler() {
+            @Override
+            public void onRecord(PacketReassembler.Cursor record) {
+                bufferActivityData(record);
+            }
+        });
     }
 
     @Override
@@ -192,6 +201,7 @@ public class FetchActivityOperation extends AbstractMiBand1Operation {
     private void handleActivityFetchFinish() throws IOException {
         LOG.info("Fetching activity data has finished.");
         activityStruct = null;
+        reassembler.release();
         operationFinished();
         unsetBusy();
         GB.signalActivityDataFinish();
@@ -206,7 +216,7 @@ public class FetchActivityOperation extends AbstractMiBand1Operation {
      * The first message type is parsed by this method, for every other length of the value param, bufferActivityData is called.
      *
      * @param value
-     * @see #bufferActivityData(byte[])
+     * @see #bufferActivityData(PacketReassembler.Cursor)
      */
     private void handleActivityNotif(byte[] value) {
         if (!isOperationRunning()) {
@@ -218,12 +228,10 @@ public class FetchActivityOperation extends AbstractMiBand1Operation {
         if (value.length == activityMetadataLength) {
             handleActivityMetadata(value);
         } else {
-            if (hasPacketCounter) {
-                byte[] valueChopped = new byte[value.length - 1];
-                System.arraycopy(value, 1, valueChopped, 0, value.length - 1);
-                bufferActivityData(valueChopped);
-            } else {
-                bufferActivityData(value);
+            try {
+                reassembler.consume(value);
+            } catch (IOException e) {
+                // bufferActivityData() does not throw
             }
         }
         if (LOG.isDebugEnabled()) {
@@ -292,7 +300,7 @@ public class FetchActivityOperation extends AbstractMiBand1Operation {
      *
      * @param value
      */
-    private void bufferActivityData(byte[] value) {
+    private void bufferActivityData(PacketReassembler.Cursor value) {
 /*
         if (scheduledTask != null) {
             scheduledTask.cancel(true);
@@ -316,11 +324,11 @@ public class FetchActivityOperation extends AbstractMiBand1Operation {
                 }
             } else {
                 // the length of the chunk is not what we expect. We need to make sense of this data
-                LOG.warn("GOT UNEXPECTED ACTIVITY DATA WITH LENGTH: " + value.length + ", EXPECTED LENGTH: " + activityStruct.activityDataRemainingBytes);
-                getSupport().logMessageContent(value);
+                LOG.warn("GOT UNEXPECTED ACTIVITY DATA WITH LENGTH: " + value.getLength() + ", EXPECTED LENGTH: " + activityStruct.activityDataRemainingBytes);
+                getSupport().logMessageContent(value.toByteArray());
             }
         } else {
-            GB.toast(getContext(), "error buffering activity data: remaining bytes: " + activityStruct.activityDataRemainingBytes + ", received: " + value.length, Toast.LENGTH_LONG, GB.ERROR);
+            GB.toast(getContext(), "error buffering activity data: remaining bytes: " + activityStruct.activityDataRemainingBytes + ", received: " + value.getLength(), Toast.LENGTH_LONG, GB.ERROR);
             try {
                 TransactionBuilder builder = performInitialized("send stop sync data");
                 builder.write(getCharacteristic(MiBandService.UUID_CHARACTERISTIC_CONTROL_POINT), new byte[]{MiBandService.COMMAND_STOP_SYNC_DATA});
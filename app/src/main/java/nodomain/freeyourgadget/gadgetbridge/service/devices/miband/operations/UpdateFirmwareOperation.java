@@ -46,6 +46,7 @@ import nodomain.freeyourgadget.gadgetbridge.service.serial.GBDeviceProtocol;
 import nodomain.freeyourgadget.gadgetbridge.util.CheckSums;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
 import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
+import nodomain.freeyourgadget.gadgetbridge.util.ProgressReporter;
 
 public class UpdateFirmwareOperation extends AbstractMiBand1Operation {
     private static final Logger LOG = LoggerFactory.getLogger(UpdateFirmwareOperation.class);
@@ -308,6 +309,8 @@ public class UpdateFirmwareOperation extends AbstractMiBand1Operation {
         try {
             // going from 0 to len
             int firmwareProgress = 0;
+            ProgressReporter progressReporter = new ProgressReporter(getContext(), ProgressReporter.Type.INSTALL, null,
+                    getContext().getString(R.string.updatefirmwareoperation_update_in_progress));
 
             TransactionBuilder builder = performInitialized("send firmware packet");
             if (GBApplication.getDeviceSpecificSharedPrefs(getDevice().getAddress()).getBoolean("low_latency_fw_update", true)) {
@@ -322,7 +325,7 @@ public class UpdateFirmwareOperation extends AbstractMiBand1Operation {
                 int progressPercent = (int) ((((float) firmwareProgress) / len) * 100);
                 if ((i > 0) && (i % 50 == 0)) {
                     builder.write(characteristicControlPoint, new byte[]{MiBandService.COMMAND_SYNC});
-                    builder.add(new SetProgressAction(getContext().getString(R.string.updatefirmwareoperation_update_in_progress), true, progressPercent, getContext()));
+                    builder.add(new SetProgressAction(progressReporter, progressPercent));
                 }
             }
 
@@ -60,6 +60,7 @@ import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.SetDeviceBusyAction;
 import nodomain.freeyourgadget.gadgetbridge.util.AlarmUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
+import nodomain.freeyourgadget.gadgetbridge.util.ProgressReporter;
 
 import static org.apache.commons.lang3.math.NumberUtils.min;
 
@@ -72,6 +73,7 @@ public class No1F1Support extends AbstractBTLEDeviceSupport {
     private List<No1F1ActivitySample> samples = new ArrayList<>();
     private byte crc = 0;
     private int firstTimestamp = 0;
+    private ProgressReporter fetchProgress;
 
     public No1F1Support() {
         super(LOG);
@@ -576,6 +578,7 @@ public class No1F1Support extends AbstractBTLEDeviceSupport {
         samples.clear();
         crc = 0;
         firstTimestamp = 0;
+        fetchProgress = new ProgressReporter(getContext(), ProgressReporter.Type.TRANSFER, null, getContext().getString(R.string.busy_task_fetch_activity_data));
         try {
             TransactionBuilder builder = performInitialized("fetchActivityData");
             builder.add(new SetDeviceBusyAction(getDevice(), getContext().getString(R.string.busy_task_fetch_activity_data), getContext()));
@@ -625,7 +628,7 @@ public class No1F1Support extends AbstractBTLEDeviceSupport {
                     } else if (data[0] == No1F1Constants.CMD_FETCH_SLEEP) {
                         sendFetchCommand(No1F1Constants.CMD_FETCH_HEARTRATE);
                     } else {
-                        GB.updateTransferNotification(null,"", false, 100, getContext());
+                        fetchProgress.finish("");
                         if (getDevice().isBusy()) {
                             getDevice().unsetBusyTask();
                             GB.signalActivityDataFinish();
@@ -670,7 +673,7 @@ public class No1F1Support extends AbstractBTLEDeviceSupport {
                 firstTimestamp = sample.getTimestamp();
             int progress = startProgress + 33 * (sample.getTimestamp() - firstTimestamp) /
                     ((int) (Calendar.getInstance().getTimeInMillis() / 1000L) - firstTimestamp);
-            GB.updateTransferNotification(null, getContext().getString(R.string.busy_task_fetch_activity_data), true, progress, getContext());
+            fetchProgress.setPercentage(progress);
         }
     }
 
@@ -27,7 +27,6 @@ import nodomain.freeyourgadget.gadgetbridge.deviceevents.GBDeviceEvent;
 import nodomain.freeyourgadget.gadgetbridge.deviceevents.GBDeviceEventBatteryInfo;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.BatteryState;
-import nodomain.freeyourgadget.gadgetbridge.util.GB;
 
 class DatalogSessionAnalytics extends DatalogSession {
     private static final Logger LOG = LoggerFactory.getLogger(DatalogSessionAnalytics.class);
@@ -43,7 +42,7 @@ class DatalogSessionAnalytics extends DatalogSession {
 
     @Override
     GBDeviceEvent[] handleMessage(ByteBuffer datalogMessage, int length) {
-        LOG.info("DATALOG " + taginfo + GB.hexdump(datalogMessage.array(), datalogMessage.position(), length));
+        LOG.info("DATALOG " + taginfo + " " + length + " bytes");
 
         datalogMessage.position(datalogMessage.position() + 3);
         int messageTS = datalogMessage.getInt();
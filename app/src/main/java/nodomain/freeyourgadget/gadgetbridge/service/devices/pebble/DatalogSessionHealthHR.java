@@ -24,7 +24,6 @@ import java.util.UUID;
 
 import nodomain.freeyourgadget.gadgetbridge.deviceevents.GBDeviceEvent;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
-import nodomain.freeyourgadget.gadgetbridge.util.GB;
 
 class DatalogSessionHealthHR extends DatalogSessionPebbleHealth {
 
@@ -37,7 +36,7 @@ class DatalogSessionHealthHR extends DatalogSessionPebbleHealth {
 
     @Override
     public GBDeviceEvent[] handleMessage(ByteBuffer datalogMessage, int length) {
-        LOG.info("DATALOG " + taginfo + GB.hexdump(datalogMessage.array(), datalogMessage.position(), length));
+        LOG.info("DATALOG " + taginfo + " " + length + " bytes");
 
         return isPebbleHealthEnabled() ? new GBDeviceEvent[]{null} : null;
     }
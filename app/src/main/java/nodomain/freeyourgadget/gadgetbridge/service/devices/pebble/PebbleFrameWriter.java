@@ -0,0 +1,286 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service.devices.pebble;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.Nullable;
+import nodomain.freeyourgadget.gadgetbridge.util.NotificationLatencyTracer;
+
+/**
+ * Writes Pebble protocol frames to the output stream of one connection from a dedicated
+ * thread, so that callers of PebbleIoThread#write() do not block on the stream.
+ * <p/>
+ * Frames are queued by priority: control frames (pings, phone version, AppMessage ACKs)
+ * are sent first, PutBytes transfers last. Consecutive queued frames are coalesced into a
+ * single stream write. Instead of sleeping after every frame, the writer waits for the
+ * ACK or NACK of an AppMessage push before sending further non-control frames, so the
+ * watch is never flooded with AppMessages it cannot buffer.
+ * <p/>
+ * Frames may carry the trace of the notification they belong to, whose write is reported
+ * once the frame has been flushed to the stream.
+ */
+class PebbleFrameWriter extends Thread {
+    private static final Logger LOG = LoggerFactory.getLogger(PebbleFrameWriter.class);
+
+    static final int PRIORITY_CONTROL = 0;
+    static final int PRIORITY_NORMAL = 1;
+    static final int PRIORITY_BULK = 2;
+
+    private static final int QUEUE_CAPACITY = 64;
+    private static final long ENQUEUE_TIMEOUT_MILLIS = 5000;
+    private static final long ACK_TIMEOUT_MILLIS = 1000;
+    private static final int MAX_COALESCED_BYTES = 4096;
+    private static final int TCP_FRAMING_LENGTH = 8;
+
+    private final OutputStream mOutStream;
+    private final boolean mIsTCP;
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<Frame>[] mQueues = new ArrayDeque[]{new ArrayDeque<Frame>(), new ArrayDeque<Frame>(), new ArrayDeque<Frame>()};
+    // the traces of the frames in the buffer
+    private final List<NotificationLatencyTracer.Trace> mTraces = new ArrayList<>();
+
+    private boolean mQuit;
+    private boolean mAwaitingAck;
+    private long mAckDeadline;
+    private byte[] mBuffer = new byte[MAX_COALESCED_BYTES];
+
+    private long mStartTime;
+    private long mFrameCount;
+    private long mWriteCount;
+    private long mByteCount;
+
+    private static class Frame {
+        final byte[] bytes;
+        @Nullable
+        final NotificationLatencyTracer.Trace trace;
+
+        Frame(byte[] bytes, @Nullable NotificationLatencyTracer.Trace trace) {
+            this.bytes = bytes;
+            this.trace = trace;
+        }
+    }
+
+    PebbleFrameWriter(OutputStream outStream, boolean isTCP) {
+        super("Pebble Frame Writer");
+        mOutStream = outStream;
+        mIsTCP = isTCP;
+    }
+
+    /**
+     * Determines the queue priority of a frame by its endpoint.
+     */
+    static int getPriority(byte[] frame) {
+        if (frame.length < 4) {
+            return PRIORITY_NORMAL;
+        }
+        short endpoint = (short) (((frame[2] & 0xff) << 8) | (frame[3] & 0xff));
+        switch (endpoint) {
+            case PebbleProtocol.ENDPOINT_PING:
+            case PebbleProtocol.ENDPOINT_PHONEVERSION:
+                return PRIORITY_CONTROL;
+            case PebbleProtocol.ENDPOINT_PUTBYTES:
+                return PRIORITY_BULK;
+            case PebbleProtocol.ENDPOINT_APPLICATIONMESSAGE:
+                if (frame.length > 4 && (frame[4] == PebbleProtocol.APPLICATIONMESSAGE_ACK || frame[4] == PebbleProtocol.APPLICATIONMESSAGE_NACK)) {
+                    return PRIORITY_CONTROL;
+                }
+                return PRIORITY_NORMAL;
+            default:
+                return PRIORITY_NORMAL;
+        }
+    }
+
+    private static boolean isAppMessagePush(byte[] frame) {
+        return frame.length > 4
+                && (short) (((frame[2] & 0xff) << 8) | (frame[3] & 0xff)) == PebbleProtocol.ENDPOINT_APPLICATIONMESSAGE
+                && frame[4] == PebbleProtocol.APPLICATIONMESSAGE_PUSH;
+    }
+
+    /**
+     * Queues the frame for writing. Blocks while the queue for the given priority is full.
+     * @param trace the trace of the notification the frame belongs to, if any
+     * @return false if the frame was dropped, because the writer was stopped or the queue
+     * stayed full for too long
+     */
+    synchronized boolean enqueue(byte[] frame, int priority, @Nullable NotificationLatencyTracer.Trace trace) {
+        ArrayDeque<Frame> queue = mQueues[priority];
+        long deadline = System.currentTimeMillis() + ENQUEUE_TIMEOUT_MILLIS;
+        while (!mQuit && queue.size() >= QUEUE_CAPACITY) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                LOG.warn("write queue is full, dropping frame");
+                return false;
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        if (mQuit) {
+            return false;
+        }
+        queue.add(new Frame(frame, trace));
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * To be called when the watch acknowledged an AppMessage, allows sending the next one.
+     */
+    synchronized void onAppMessageAck() {
+        if (mAwaitingAck) {
+            mAwaitingAck = false;
+            notifyAll();
+        }
+    }
+
+    synchronized void quit() {
+        mQuit = true;
+        notifyAll();
+    }
+
+    @Override
+    public void run() {
+        mStartTime = System.currentTimeMillis();
+        try {
+            while (true) {
+                int length;
+                synchronized (this) {
+                    Frame frame = pollFrame();
+                    while (frame == null && !mQuit) {
+                        wait(mAwaitingAck ? Math.max(1, mAckDeadline - System.currentTimeMillis()) : 0);
+                        frame = pollFrame();
+                    }
+                    if (mQuit) {
+                        break;
+                    }
+                    length = appendFrame(frame, 0);
+                    while (!mAwaitingAck || peekControlFrame()) {
+                        Frame next = peekFrame();
+                        if (next == null || length + next.bytes.length + TCP_FRAMING_LENGTH > mBuffer.length) {
+                            break;
+                        }
+                        length = appendFrame(pollFrame(), length);
+                    }
+                    notifyAll(); // there is space in the queues again
+                }
+                mOutStream.write(mBuffer, 0, length);
+                mOutStream.flush();
+                mWriteCount++;
+                mByteCount += length;
+                for (int i = 0; i < mTraces.size(); i++) {
+                    NotificationLatencyTracer.writeCompleted(mTraces.get(i));
+                }
+                mTraces.clear();
+            }
+        } catch (IOException e) {
+            LOG.error("Error writing.", e);
+        } catch (InterruptedException e) {
+            LOG.info("frame writer interrupted");
+        }
+        synchronized (this) {
+            mQuit = true;
+            notifyAll();
+        }
+        long duration = Math.max(1, System.currentTimeMillis() - mStartTime);
+        LOG.info("frame writer finished: " + mFrameCount + " frames in " + mWriteCount + " writes, " + mByteCount + " bytes, "
+                + (mFrameCount * 1000 / duration) + " frames/s");
+    }
+
+    private int appendFrame(Frame queuedFrame, int offset) {
+        if (queuedFrame.trace != null) {
+            mTraces.add(queuedFrame.trace);
+        }
+        byte[] frame = queuedFrame.bytes;
+        int framedLength = frame.length + (mIsTCP ? TCP_FRAMING_LENGTH : 0);
+        if (offset + framedLength > mBuffer.length) {
+            // only happens for the first frame, subsequent ones are only coalesced if they fit
+            mBuffer = new byte[framedLength];
+        }
+        if (mIsTCP) {
+            offset = putShort(offset, 0xfeed);
+            offset = putShort(offset, 1);
+            offset = putShort(offset, frame.length);
+        }
+        System.arraycopy(frame, 0, mBuffer, offset, frame.length);
+        offset += frame.length;
+        if (mIsTCP) {
+            offset = putShort(offset, 0xbeef);
+        }
+
+        if (isAppMessagePush(frame)) {
+            mAwaitingAck = true;
+            mAckDeadline = System.currentTimeMillis() + ACK_TIMEOUT_MILLIS;
+        }
+        mFrameCount++;
+        return offset;
+    }
+
+    private int putShort(int offset, int value) {
+        mBuffer[offset] = (byte) (value >> 8);
+        mBuffer[offset + 1] = (byte) value;
+        return offset + 2;
+    }
+
+    private boolean peekControlFrame() {
+        return !mQueues[PRIORITY_CONTROL].isEmpty();
+    }
+
+    private Frame peekFrame() {
+        ArrayDeque<Frame> queue = getNextQueue();
+        return queue != null ? queue.peek() : null;
+    }
+
+    private Frame pollFrame() {
+        ArrayDeque<Frame> queue = getNextQueue();
+        return queue != null ? queue.poll() : null;
+    }
+
+    /**
+     * Returns the queue to take the next frame from, honoring the priorities and the pending
+     * AppMessage ACK.
+     */
+    private ArrayDeque<Frame> getNextQueue() {
+        if (!mQueues[PRIORITY_CONTROL].isEmpty()) {
+            return mQueues[PRIORITY_CONTROL];
+        }
+        if (mAwaitingAck) {
+            if (System.currentTimeMillis() < mAckDeadline) {
+                return null;
+            }
+            LOG.info("no ACK for AppMessage within " + ACK_TIMEOUT_MILLIS + "ms, continuing");
+            mAwaitingAck = false;
+        }
+        if (!mQueues[PRIORITY_NORMAL].isEmpty()) {
+            return mQueues[PRIORITY_NORMAL];
+        }
+        if (!mQueues[PRIORITY_BULK].isEmpty()) {
+            return mQueues[PRIORITY_BULK];
+        }
+        return null;
+    }
+}
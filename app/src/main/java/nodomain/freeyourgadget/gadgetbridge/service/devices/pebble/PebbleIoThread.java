@@ -28,6 +28,7 @@ import android.webkit.ValueCallback;
 import android.webkit.WebView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,8 +37,6 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.nio.ByteBuffer;
@@ -64,12 +63,16 @@ import nodomain.freeyourgadget.gadgetbridge.service.devices.pebble.ble.PebbleLES
 import nodomain.freeyourgadget.gadgetbridge.service.serial.GBDeviceIoThread;
 import nodomain.freeyourgadget.gadgetbridge.service.serial.GBDeviceProtocol;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
+import nodomain.freeyourgadget.gadgetbridge.util.NotificationLatencyTracer;
+import nodomain.freeyourgadget.gadgetbridge.util.PacketCapture;
 import nodomain.freeyourgadget.gadgetbridge.util.PebbleUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
+import nodomain.freeyourgadget.gadgetbridge.util.ProgressReporter;
 import nodomain.freeyourgadget.gadgetbridge.util.WebViewSingleton;
 
 class PebbleIoThread extends GBDeviceIoThread {
     private static final Logger LOG = LoggerFactory.getLogger(PebbleIoThread.class);
+    private static final int MAX_CHUNKS_IN_FLIGHT = 4;
 
     private final Prefs prefs = GBApplication.getPrefs();
 
@@ -85,16 +88,17 @@ class PebbleIoThread extends GBDeviceIoThread {
     private Socket mTCPSocket = null; // for emulator
     private InputStream mInStream = null;
     private OutputStream mOutStream = null;
+    private volatile PebbleFrameWriter mFrameWriter = null;
     private PebbleLESupport mPebbleLESupport;
 
     private boolean mQuit = false;
-    private boolean mIsConnected = false;
+    private volatile boolean mIsConnected = false;
     private boolean mIsInstalling = false;
 
     private PBWReader mPBWReader = null;
     private GBDeviceApp mCurrentlyInstallingApp = null;
     private int mAppInstallToken = -1;
-    private InputStream mFis = null;
+    private PutBytesPrefetcher mPrefetcher = null;
     private PebbleAppInstallState mInstallState = PebbleAppInstallState.UNKNOWN;
     private PebbleInstallable[] mPebbleInstallables = null;
     private int mCurrentInstallableIndex = -1;
@@ -102,6 +106,11 @@ class PebbleIoThread extends GBDeviceIoThread {
     private int mCRC = -1;
     private int mBinarySize = -1;
     private int mBytesWritten = -1;
+    private int mMaxChunksInFlight = 1;
+    private int mChunksInFlight = 0;
+    private boolean mUploadEOF = false;
+    private long mUploadStartTime;
+    private ProgressReporter mInstallProgress;
 
     private void sendAppMessageJS(GBDeviceEventAppMessage appMessage) {
         sendAppMessage(appMessage);
@@ -186,9 +195,9 @@ class PebbleIoThread extends GBDeviceIoThread {
                 BluetoothDevice btDevice = mBtAdapter.getRemoteDevice(deviceAddress);
                 if (btDevice.getType() == BluetoothDevice.DEVICE_TYPE_LE) {
                     LOG.info("This is a Pebble 2 or Pebble-LE/Pebble Time LE, will use BLE");
-                    mInStream = new PipedInputStream();
-                    mOutStream = new PipedOutputStream();
-                    mPebbleLESupport = new PebbleLESupport(this.getContext(), btDevice, (PipedInputStream) mInStream, (PipedOutputStream) mOutStream);
+                    mPebbleLESupport = new PebbleLESupport(this.getContext(), btDevice);
+                    mInStream = mPebbleLESupport.getInputStream();
+                    mOutStream = mPebbleLESupport.getOutputStream();
                 } else {
                     ParcelUuid uuids[] = btDevice.getUuids();
                     if (uuids == null) {
@@ -228,6 +237,10 @@ class PebbleIoThread extends GBDeviceIoThread {
 
         mPebbleProtocol.setForceProtocol(prefs.getBoolean("pebble_force_protocol", false));
 
+        stopFrameWriter();
+        mFrameWriter = new PebbleFrameWriter(mOutStream, mIsTCP);
+        mFrameWriter.start();
+
         mIsConnected = true;
         write(mPebbleProtocol.encodeFirmwareVersionReq());
         gbDevice.setState(GBDevice.State.CONNECTED);
@@ -265,10 +278,21 @@ class PebbleIoThread extends GBDeviceIoThread {
                         case START_INSTALL:
                             LOG.info("start installing app binary");
                             PebbleInstallable pi = mPebbleInstallables[mCurrentInstallableIndex];
-                            mFis = mPBWReader.getInputStreamFile(pi.getFileName());
+                            InputStream fis = mPBWReader.getInputStreamFile(pi.getFileName());
+                            if (fis == null) {
+                                finishInstall(true);
+                                break;
+                            }
+                            mPrefetcher = new PutBytesPrefetcher(fis);
+                            mPrefetcher.start();
                             mCRC = pi.getCRC();
                             mBinarySize = pi.getFileSize();
                             mBytesWritten = 0;
+                            mChunksInFlight = 0;
+                            mUploadEOF = false;
+                            mUploadStartTime = System.currentTimeMillis();
+                            mInstallProgress = new ProgressReporter(getContext(), ProgressReporter.Type.INSTALL, null, getContext().getString(
+                                    R.string.installing_binary_d_d, (mCurrentInstallableIndex + 1), mPebbleInstallables.length));
                             writeInstallApp(mPebbleProtocol.encodeUploadStart(pi.getType(), mInstallSlot, mBinarySize, mPBWReader.isLanguage() ? "lang" : null));
                             mAppInstallToken = -1;
                             mInstallState = PebbleAppInstallState.WAIT_TOKEN;
@@ -281,21 +305,24 @@ class PebbleIoThread extends GBDeviceIoThread {
                             }
                             break;
                         case UPLOAD_CHUNK:
-                            int bytes = 0;
-                            do {
-                                int read = mFis.read(buffer, bytes, 2000 - bytes);
-                                if (read <= 0) break;
-                                bytes += read;
-                            } while (bytes < 2000);
-
-                            if (bytes > 0) {
-                                GB.updateInstallNotification(getContext().getString(
-                                        R.string.installing_binary_d_d, (mCurrentInstallableIndex + 1), mPebbleInstallables.length), true, (int) (((float) mBytesWritten / mBinarySize) * 100), getContext());
-                                writeInstallApp(mPebbleProtocol.encodeUploadChunk(mAppInstallToken, buffer, bytes));
-                                mBytesWritten += bytes;
-                                mAppInstallToken = -1;
-                                mInstallState = PebbleAppInstallState.WAIT_TOKEN;
-                            } else {
+                            // keep up to mMaxChunksInFlight chunks unacknowledged, each ACK
+                            // decrements mChunksInFlight in setToken()
+                            while (!mUploadEOF && mChunksInFlight < mMaxChunksInFlight) {
+                                byte[] chunk = mPrefetcher.nextChunk();
+                                if (chunk.length == 0) {
+                                    mUploadEOF = true;
+                                    break;
+                                }
+                                mInstallProgress.update(mBytesWritten, mBinarySize);
+                                writeInstallApp(mPebbleProtocol.encodeUploadChunk(mAppInstallToken, chunk, chunk.length));
+                                mBytesWritten += chunk.length;
+                                mChunksInFlight++;
+                            }
+                            if (mUploadEOF && mChunksInFlight == 0) {
+                                long duration = Math.max(1, System.currentTimeMillis() - mUploadStartTime);
+                                LOG.info("uploaded " + mBytesWritten + " bytes in " + duration + "ms (" + (mBytesWritten * 1000L / duration) + " bytes/s)");
+                                mPrefetcher.close();
+                                mPrefetcher = null;
                                 mInstallState = PebbleAppInstallState.UPLOAD_COMMIT;
                                 continue;
                             }
@@ -363,6 +390,15 @@ class PebbleIoThread extends GBDeviceIoThread {
                 if (mIsTCP) {
                     mInStream.skip(2);
                 }
+                PacketCapture.captureEndpoint(gbDevice.getAddress(), endpoint, PacketCapture.DIRECTION_IN, buffer, 0, length + 4);
+
+                if (endpoint == PebbleProtocol.ENDPOINT_APPLICATIONMESSAGE && length > 0
+                        && (buffer[4] == PebbleProtocol.APPLICATIONMESSAGE_ACK || buffer[4] == PebbleProtocol.APPLICATIONMESSAGE_NACK)) {
+                    PebbleFrameWriter frameWriter = mFrameWriter;
+                    if (frameWriter != null) {
+                        frameWriter.onAppMessageAck();
+                    }
+                }
 
                 GBDeviceEvent deviceEvents[] = mPebbleProtocol.decodeResponse(buffer);
                 if (deviceEvents == null) {
@@ -377,11 +413,6 @@ class PebbleIoThread extends GBDeviceIoThread {
                         }
                     }
                 }
-                try {
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
             } catch (IOException e) {
                 if (e.getMessage() != null && (e.getMessage().equals("broken pipe") || e.getMessage().contains("socket closed"))) { //FIXME: this does not feel right
                     LOG.info(e.getMessage());
@@ -415,6 +446,7 @@ class PebbleIoThread extends GBDeviceIoThread {
             }
         }
         mIsConnected = false;
+        stopFrameWriter();
         if (mBtSocket != null) {
             try {
                 mBtSocket.close();
@@ -451,33 +483,27 @@ class PebbleIoThread extends GBDeviceIoThread {
     }
 
 
-    private void write_real(byte[] bytes) {
-        try {
-            if (mIsTCP) {
-                ByteBuffer buf = ByteBuffer.allocate(bytes.length + 8);
-                buf.order(ByteOrder.BIG_ENDIAN);
-                buf.putShort((short) 0xfeed);
-                buf.putShort((short) 1);
-                buf.putShort((short) bytes.length);
-                buf.put(bytes);
-                buf.putShort((short) 0xbeef);
-                mOutStream.write(buf.array());
-                mOutStream.flush();
-            } else {
-                mOutStream.write(bytes);
-                mOutStream.flush();
-            }
-        } catch (IOException e) {
-            LOG.error("Error writing.", e);
+    private void stopFrameWriter() {
+        PebbleFrameWriter frameWriter = mFrameWriter;
+        mFrameWriter = null;
+        if (frameWriter != null) {
+            frameWriter.quit();
         }
-        try {
-            Thread.sleep(100);
-        } catch (InterruptedException ignored) {
+    }
+
+    private void enqueueFrame(byte[] bytes, int priority, @Nullable NotificationLatencyTracer.Trace trace) {
+        PebbleFrameWriter frameWriter = mFrameWriter;
+        NotificationLatencyTracer.writeQueued(trace);
+        if (frameWriter == null || !frameWriter.enqueue(bytes, priority, trace)) {
+            LOG.warn("frame writer not running, dropping " + bytes.length + " bytes");
+        } else if (bytes.length >= 4) {
+            int endpoint = ((bytes[2] & 0xff) << 8) | (bytes[3] & 0xff);
+            PacketCapture.captureEndpoint(gbDevice.getAddress(), endpoint, PacketCapture.DIRECTION_OUT, bytes, 0, bytes.length);
         }
     }
 
     @Override
-    synchronized public void write(byte[] bytes) {
+    public void write(byte[] bytes) {
         if (bytes == null) {
             return;
         }
@@ -485,7 +511,7 @@ class PebbleIoThread extends GBDeviceIoThread {
         if (!mIsConnected || (mPebbleProtocol.mFwMajor < 3 && mIsInstalling && mInstallState != PebbleAppInstallState.WAIT_SLOT)) {
             return;
         }
-        write_real(bytes);
+        enqueueFrame(bytes, PebbleFrameWriter.getPriority(bytes), NotificationLatencyTracer.getCurrentTrace());
     }
 
     // FIXME: parts are supporsed to be generic code
@@ -606,6 +632,9 @@ class PebbleIoThread extends GBDeviceIoThread {
 
     private void setToken(int token) {
         mAppInstallToken = token;
+        if (mInstallState == PebbleAppInstallState.UPLOAD_CHUNK && mChunksInFlight > 0) {
+            mChunksInFlight--;
+        }
     }
 
     private void setInstallSlot(int slot) {
@@ -614,12 +643,12 @@ class PebbleIoThread extends GBDeviceIoThread {
         }
     }
 
-    synchronized private void writeInstallApp(byte[] bytes) {
+    private void writeInstallApp(byte[] bytes) {
         if (!mIsInstalling) {
             return;
         }
         LOG.info("got " + bytes.length + "bytes for writeInstallApp()");
-        write_real(bytes);
+        enqueueFrame(bytes, PebbleFrameWriter.PRIORITY_BULK, null);
     }
 
     void installApp(Uri uri, int appId) {
@@ -641,6 +670,7 @@ class PebbleIoThread extends GBDeviceIoThread {
 
         mPebbleInstallables = mPBWReader.getPebbleInstallables();
         mCurrentInstallableIndex = 0;
+        mMaxChunksInFlight = Math.max(1, Math.min(MAX_CHUNKS_IN_FLIGHT, prefs.getInt("pebble_install_chunks_in_flight", 1)));
 
         if (mPBWReader.isFirmware()) {
             LOG.info("starting firmware installation");
@@ -733,14 +763,10 @@ class PebbleIoThread extends GBDeviceIoThread {
         mIsInstalling = false;
         mCurrentlyInstallingApp = null;
 
-        if (mFis != null) {
-            try {
-                mFis.close();
-            } catch (IOException e) {
-                // ignore
-            }
+        if (mPrefetcher != null) {
+            mPrefetcher.close();
         }
-        mFis = null;
+        mPrefetcher = null;
         mAppInstallToken = -1;
         mInstallSlot = -2;
     }
@@ -748,6 +774,7 @@ class PebbleIoThread extends GBDeviceIoThread {
     @Override
     public void quit() {
         mQuit = true;
+        stopFrameWriter();
         if (mBtSocket != null) {
             try {
                 mBtSocket.close();
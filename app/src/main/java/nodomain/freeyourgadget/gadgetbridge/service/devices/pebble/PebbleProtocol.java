@@ -73,7 +73,7 @@ public class PebbleProtocol extends GBDeviceProtocol {
 
     private static final short ENDPOINT_TIME = 11;
     private static final short ENDPOINT_FIRMWAREVERSION = 16;
-    private static final short ENDPOINT_PHONEVERSION = 17;
+    static final short ENDPOINT_PHONEVERSION = 17;
     private static final short ENDPOINT_SYSTEMMESSAGE = 18;
     private static final short ENDPOINT_MUSICCONTROL = 32;
     private static final short ENDPOINT_PHONECONTROL = 33;
@@ -81,7 +81,7 @@ public class PebbleProtocol extends GBDeviceProtocol {
     private static final short ENDPOINT_LAUNCHER = 49;
     private static final short ENDPOINT_APPRUNSTATE = 52; // FW >=3.x
     private static final short ENDPOINT_LOGS = 2000;
-    private static final short ENDPOINT_PING = 2001;
+    static final short ENDPOINT_PING = 2001;
     private static final short ENDPOINT_LOGDUMP = 2002;
     private static final short ENDPOINT_RESET = 2003;
     private static final short ENDPOINT_APP = 2004;
@@ -101,7 +101,7 @@ public class PebbleProtocol extends GBDeviceProtocol {
     private static final short ENDPOINT_NOTIFICATIONACTION = 11440; // FW >=3.x, TODO: find a better name
     private static final short ENDPOINT_APPREORDER = (short) 0xabcd; // FW >=3.x
     private static final short ENDPOINT_BLOBDB = (short) 0xb1db;  // FW >=3.x
-    private static final short ENDPOINT_PUTBYTES = (short) 0xbeef;
+    static final short ENDPOINT_PUTBYTES = (short) 0xbeef;
 
     private static final byte APPRUNSTATE_START = 1;
     private static final byte APPRUNSTATE_STOP = 2;
@@ -181,10 +181,10 @@ public class PebbleProtocol extends GBDeviceProtocol {
 
     private static final int APPMANAGER_RES_SUCCESS = 1;
 
-    private static final byte APPLICATIONMESSAGE_PUSH = 1;
+    static final byte APPLICATIONMESSAGE_PUSH = 1;
     private static final byte APPLICATIONMESSAGE_REQUEST = 2;
-    private static final byte APPLICATIONMESSAGE_ACK = (byte) 0xff;
-    private static final byte APPLICATIONMESSAGE_NACK = (byte) 0x7f;
+    static final byte APPLICATIONMESSAGE_ACK = (byte) 0xff;
+    static final byte APPLICATIONMESSAGE_NACK = (byte) 0x7f;
 
     private static final byte DATALOG_OPENSESSION = 0x01;
     private static final byte DATALOG_SENDDATA = 0x02;
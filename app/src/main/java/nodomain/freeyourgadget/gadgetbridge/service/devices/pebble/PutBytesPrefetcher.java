@@ -0,0 +1,104 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service.devices.pebble;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads the chunks of a PutBytes upload ahead of time on a separate thread, so that
+ * decompressing the next chunks from the PBW overlaps with waiting for the watch.
+ */
+class PutBytesPrefetcher extends Thread {
+    private static final Logger LOG = LoggerFactory.getLogger(PutBytesPrefetcher.class);
+
+    static final int CHUNK_SIZE = 2000;
+    private static final int PREFETCH_CHUNKS = 8;
+    private static final byte[] END_OF_STREAM = new byte[0];
+
+    private final InputStream mInputStream;
+    private final BlockingQueue<byte[]> mChunks = new ArrayBlockingQueue<>(PREFETCH_CHUNKS);
+    private volatile boolean mQuit;
+
+    PutBytesPrefetcher(InputStream inputStream) {
+        super("PutBytes Prefetcher");
+        mInputStream = inputStream;
+    }
+
+    @Override
+    public void run() {
+        byte[] buffer = new byte[CHUNK_SIZE];
+        try {
+            while (!mQuit) {
+                int bytes = 0;
+                do {
+                    int read = mInputStream.read(buffer, bytes, CHUNK_SIZE - bytes);
+                    if (read <= 0) break;
+                    bytes += read;
+                } while (bytes < CHUNK_SIZE);
+
+                if (bytes == 0) {
+                    break;
+                }
+                mChunks.put(Arrays.copyOf(buffer, bytes));
+            }
+        } catch (IOException e) {
+            LOG.warn("error reading install file", e);
+        } catch (InterruptedException e) {
+            return;
+        }
+        try {
+            mChunks.put(END_OF_STREAM);
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    /**
+     * Returns the next chunk, blocking until it has been read.
+     * @return the chunk, or an empty array at the end of the file
+     */
+    byte[] nextChunk() {
+        try {
+            byte[] chunk = mChunks.take();
+            if (chunk == END_OF_STREAM) {
+                mChunks.offer(END_OF_STREAM); // subsequent calls also return the end
+            }
+            return chunk;
+        } catch (InterruptedException e) {
+            return END_OF_STREAM;
+        }
+    }
+
+    /**
+     * Stops prefetching and closes the input stream.
+     */
+    void close() {
+        mQuit = true;
+        interrupt();
+        try {
+            mInputStream.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
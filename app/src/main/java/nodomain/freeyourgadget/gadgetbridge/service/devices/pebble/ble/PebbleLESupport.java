@@ -18,47 +18,71 @@ package nodomain.freeyourgadget.gadgetbridge.service.devices.pebble.ble;
 
 import android.bluetooth.BluetoothDevice;
 import android.content.Context;
-import android.os.Handler;
-import android.os.HandlerThread;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.util.ByteRingBuffer;
+import nodomain.freeyourgadget.gadgetbridge.util.GBScheduler;
 
 public class PebbleLESupport {
     private static final Logger LOG = LoggerFactory.getLogger(PebbleLESupport.class);
+
+    private static final int PPOGATT_COMMAND_DATA = 0;
+    private static final int PPOGATT_COMMAND_ACK = 1;
+    private static final int PPOGATT_COMMAND_RESET_REQUEST = 2;
+    private static final int PPOGATT_COMMAND_RESET_COMPLETE = 3;
+    private static final int PPOGATT_SERIAL_MASK = 0x1f;
+    private static final int MAX_WINDOW_SIZE = 25;
+    private static final int LEGACY_WINDOW_SIZE = 4;
+    private static final long ACK_TIMEOUT_MILLIS = 5000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     private final BluetoothDevice mBtDevice;
-    private PipeReader mPipeReader;
+    private PacketSender mPacketSender;
     private PebbleGATTServer mPebbleGATTServer;
     private PebbleGATTClient mPebbleGATTClient;
-    private PipedInputStream mPipedInputStream;
-    private PipedOutputStream mPipedOutputStream;
-    private int mMTU = 20;
+    // watch -> PebbleIoThread and PebbleIoThread -> watch
+    private final ByteRingBuffer mRxBuffer = new ByteRingBuffer(BUFFER_SIZE);
+    private final ByteRingBuffer mTxBuffer = new ByteRingBuffer(BUFFER_SIZE);
+    private volatile int mMTU = 20;
     private int mMTULimit = Integer.MAX_VALUE;
     public boolean clientOnly = false; // currently experimental, and only possible for Pebble 2
     private boolean mIsConnected = false;
-    private HandlerThread mWriteHandlerThread;
-    private Handler mWriteHandler;
+    private final ExecutorService mWriteExecutor;
+
+    // sliding window for outgoing packets, guarded by mWindowLock
+    private final Object mWindowLock = new Object();
+    private int mTxWindowSize = MAX_WINDOW_SIZE;
+    private int mPacketsInFlight;
+    private int mOldestUnackedSerial;
+
+    // cumulative ACKs for incoming packets
+    private volatile boolean mCoalesceAcks = true;
+    private volatile int mLastReceivedSerial;
+    private final AtomicBoolean mAckPending = new AtomicBoolean();
+    private final Runnable mSendAckRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mAckPending.set(false);
+            sendAckToPebble(mLastReceivedSerial);
+        }
+    };
 
-    public PebbleLESupport(Context context, final BluetoothDevice btDevice, PipedInputStream pipedInputStream, PipedOutputStream pipedOutputStream) throws IOException {
+    public PebbleLESupport(Context context, final BluetoothDevice btDevice) throws IOException {
         mBtDevice = btDevice;
-        mPipedInputStream = new PipedInputStream();
-        mPipedOutputStream = new PipedOutputStream();
-        try {
-            pipedOutputStream.connect(mPipedInputStream);
-            pipedInputStream.connect(mPipedOutputStream);
-        } catch (IOException e) {
-            LOG.warn("could not connect input stream");
-        }
 
-        mWriteHandlerThread = new HandlerThread("write handler thread");
-        mWriteHandlerThread.start();
-        mWriteHandler = new Handler(mWriteHandlerThread.getLooper());
+        mWriteExecutor = GBScheduler.newSerialExecutor("Pebble LE Writer");
 
         mMTULimit = GBApplication.getPrefs().getInt("pebble_mtu_limit", 512);
         mMTULimit = Math.max(mMTULimit, 20);
@@ -85,16 +109,22 @@ public class PebbleLESupport {
         throw new IOException("connection failed");
     }
 
-    private void writeToPipedOutputStream(byte[] value, int offset, int count) {
-        try {
-            mPipedOutputStream.write(value, offset, count);
-        } catch (IOException e) {
-            LOG.warn("error writing to output stream", e);
-        }
+    /**
+     * Returns the stream of data received from the watch.
+     */
+    public InputStream getInputStream() {
+        return mRxBuffer.getInputStream();
+    }
+
+    /**
+     * Returns the stream for data to be sent to the watch.
+     */
+    public OutputStream getOutputStream() {
+        return mTxBuffer.getOutputStream();
     }
 
     synchronized public void close() {
-        destroyPipedInputReader();
+        destroyPacketSender();
         if (mPebbleGATTServer != null) {
             mPebbleGATTServer.close();
             mPebbleGATTServer = null;
@@ -103,37 +133,39 @@ public class PebbleLESupport {
             mPebbleGATTClient.close();
             mPebbleGATTClient = null;
         }
+        mRxBuffer.close();
+        mTxBuffer.close();
+        mWriteExecutor.shutdownNow();
+    }
+
+    /**
+     * Executes the task on the writer thread, or drops it after #close().
+     */
+    private void postToWriter(Runnable task) {
         try {
-            mPipedInputStream.close();
-        } catch (IOException ignore) {
-        }
-        try {
-            mPipedOutputStream.close();
-        } catch (IOException ignore) {
-        }
-        if (mWriteHandlerThread != null) {
-            mWriteHandlerThread.quit();
+            mWriteExecutor.execute(task);
+        } catch (RejectedExecutionException ignored) {
         }
     }
 
-    private synchronized void createPipedInputReader() {
-        if (mPipeReader == null) {
-            mPipeReader = new PipeReader();
+    private synchronized void createPacketSender() {
+        if (mPacketSender == null) {
+            mPacketSender = new PacketSender();
         }
-        if (!mPipeReader.isAlive()) {
-            mPipeReader.start();
+        if (!mPacketSender.isAlive()) {
+            mPacketSender.start();
         }
     }
 
-    synchronized private void destroyPipedInputReader() {
-        if (mPipeReader != null) {
-            mPipeReader.interrupt();
+    synchronized private void destroyPacketSender() {
+        if (mPacketSender != null) {
+            mPacketSender.interrupt();
             try {
-                mPipeReader.join();
+                mPacketSender.join();
             } catch (InterruptedException e) {
                 LOG.error(e.getMessage());
             }
-            mPipeReader = null;
+            mPacketSender = null;
         }
     }
 
@@ -152,102 +184,179 @@ public class PebbleLESupport {
         int header = value[0] & 0xff;
         int command = header & 7;
         int serial = header >> 3;
-        if (command == 0x01) {
-            LOG.info("got ACK for serial = " + serial);
+        switch (command) {
+            case PPOGATT_COMMAND_DATA:
+                try {
+                    mRxBuffer.offerBlocking(value, 1, value.length - 1);
+                } catch (IOException e) {
+                    LOG.warn("error writing to input buffer", e);
+                    return;
+                }
+                mLastReceivedSerial = serial;
+                if (!mCoalesceAcks) {
+                    postAckToPebble(serial);
+                } else if (mAckPending.compareAndSet(false, true)) {
+                    // all packets received until the write handler gets to this are ACKed at once
+                    postToWriter(mSendAckRunnable);
+                }
+                break;
+            case PPOGATT_COMMAND_ACK:
+                handleAck(serial);
+                break;
+            case PPOGATT_COMMAND_RESET_REQUEST:
+                LOG.info("got PPoGATT reset request");
+                resetWindow(value.length > 1);
+                if (value.length > 1) {
+                    // PPoGATT v1: announce our receive and transmit window sizes
+                    postDataToPebble(new byte[]{PPOGATT_COMMAND_RESET_COMPLETE, MAX_WINDOW_SIZE, MAX_WINDOW_SIZE});
+                    createPacketSender(); // FIXME: maybe not here
+                } else {
+                    postDataToPebble(new byte[]{PPOGATT_COMMAND_RESET_COMPLETE});
+                }
+                break;
+            case PPOGATT_COMMAND_RESET_COMPLETE:
+                if (value.length > 2) {
+                    int watchRxWindow = value[1] & 0xff;
+                    LOG.info("PPoGATT window sizes of watch: rx = " + watchRxWindow + ", tx = " + (value[2] & 0xff));
+                    synchronized (mWindowLock) {
+                        mTxWindowSize = Math.max(1, Math.min(MAX_WINDOW_SIZE, watchRxWindow));
+                        mWindowLock.notifyAll();
+                    }
+                }
+                break;
+            default:
+                LOG.info("unknown PPoGATT command " + command);
         }
-        if (command == 0x02) { // some request?
-            LOG.info("got command 0x02");
-            if (value.length > 1) {
-                sendDataToPebble(new byte[]{0x03, 0x19, 0x19}); // no we don't know what that means
-                createPipedInputReader(); // FIXME: maybe not here
-            } else {
-                sendDataToPebble(new byte[]{0x03}); // no we don't know what that means
-            }
-        } else if (command == 0) { // normal package
-            LOG.info("got PPoGATT package serial = " + serial + " sending ACK");
+    }
 
-            sendAckToPebble(serial);
+    private void resetWindow(boolean supportsWindowNegotiation) {
+        mCoalesceAcks = supportsWindowNegotiation;
+        mLastReceivedSerial = 0;
+        synchronized (mWindowLock) {
+            mTxWindowSize = supportsWindowNegotiation ? MAX_WINDOW_SIZE : LEGACY_WINDOW_SIZE;
+            mPacketsInFlight = 0;
+            mOldestUnackedSerial = 0;
+            mWindowLock.notifyAll();
+        }
+        PacketSender packetSender = mPacketSender;
+        if (packetSender != null) {
+            packetSender.resetSerial();
+        }
+    }
+
+    /**
+     * ACKs are cumulative, the given serial acknowledges all packets up to and including it.
+     */
+    private void handleAck(int serial) {
+        synchronized (mWindowLock) {
+            int acked = ((serial - mOldestUnackedSerial) & PPOGATT_SERIAL_MASK) + 1;
+            if (acked > mPacketsInFlight) {
+                LOG.warn("unexpected ACK for serial " + serial);
+                return;
+            }
+            mPacketsInFlight -= acked;
+            mOldestUnackedSerial = (serial + 1) & PPOGATT_SERIAL_MASK;
+            mWindowLock.notifyAll();
+        }
+    }
 
-            writeToPipedOutputStream(value, 1, value.length - 1);
+    /**
+     * Blocks until another packet may be sent within the window.
+     */
+    private void acquireWindowSlot() throws InterruptedException {
+        synchronized (mWindowLock) {
+            long deadline = System.currentTimeMillis() + ACK_TIMEOUT_MILLIS;
+            while (mPacketsInFlight >= mTxWindowSize) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    LOG.warn("no PPoGATT ACK for " + mPacketsInFlight + " packets within " + ACK_TIMEOUT_MILLIS + "ms, continuing");
+                    mOldestUnackedSerial = (mOldestUnackedSerial + mPacketsInFlight) & PPOGATT_SERIAL_MASK;
+                    mPacketsInFlight = 0;
+                    break;
+                }
+                mWindowLock.wait(remaining);
+            }
+            mPacketsInFlight++;
         }
     }
 
     private void sendAckToPebble(int serial) {
-        sendDataToPebble(new byte[]{(byte) (((serial << 3) | 1) & 0xff)});
+        sendDataToPebble(new byte[]{(byte) (((serial << 3) | PPOGATT_COMMAND_ACK) & 0xff)});
     }
 
-    private synchronized void sendDataToPebble(final byte[] bytes) {
-        if (mPebbleGATTServer != null) {
-            mWriteHandler.post(new Runnable() {
-                @Override
-                public void run() {
-                    mPebbleGATTServer.sendDataToPebble(bytes);
-                }
-            });
+    private void postAckToPebble(final int serial) {
+        postToWriter(new Runnable() {
+            @Override
+            public void run() {
+                sendAckToPebble(serial);
+            }
+        });
+    }
+
+    private void postDataToPebble(final byte[] bytes) {
+        postToWriter(new Runnable() {
+            @Override
+            public void run() {
+                sendDataToPebble(bytes);
+            }
+        });
+    }
+
+    /**
+     * Sends the packet and blocks until it has been sent. Must not be called from a GATT
+     * callback.
+     */
+    private void sendDataToPebble(byte[] bytes) {
+        PebbleGATTServer gattServer = mPebbleGATTServer;
+        if (gattServer != null) {
+            gattServer.sendDataToPebble(bytes);
         } else {
             // For now only in experimental client only code
-            mWriteHandler.post(new Runnable() {
-                @Override
-                public void run() {
-                    mPebbleGATTClient.sendDataToPebble(bytes);
-                }
-            });
+            PebbleGATTClient gattClient = mPebbleGATTClient;
+            if (gattClient != null) {
+                gattClient.sendDataToPebble(bytes);
+            }
         }
     }
 
-    private class PipeReader extends Thread {
-        int mmSequence = 0;
+    /**
+     * Sends the data written by PebbleIoThread as PPoGATT data packets. The stream is split
+     * into packets regardless of Pebble Protocol frame boundaries, so every packet uses the
+     * full MTU when enough data is queued.
+     */
+    private class PacketSender extends Thread {
+        private volatile int mmSequence = 0;
+
+        void resetSerial() {
+            mmSequence = 0;
+        }
 
         @Override
         public void run() {
-            byte[] buf = new byte[8192];
-            int bytesRead;
-            while (true) {
-                try {
-                    // this code is very similar to iothread, that is bad
-                    // because we are the ones who prepared the buffer, there should be no
-                    // need to do crazy stuff just to find out the PP boundaries again.
-                    bytesRead = mPipedInputStream.read(buf, 0, 4);
-                    while (bytesRead < 4) {
-                        bytesRead += mPipedInputStream.read(buf, bytesRead, 4 - bytesRead);
-                    }
-
-                    int length = (buf[0] & 0xff) << 8 | (buf[1] & 0xff);
-                    bytesRead = mPipedInputStream.read(buf, 4, length);
-
-                    while (bytesRead < length) {
-                        bytesRead += mPipedInputStream.read(buf, bytesRead + 4, length - bytesRead);
-                    }
-
-
-                    int payloadToSend = bytesRead + 4;
-                    int srcPos = 0;
-                    while (payloadToSend > 0) {
-                        int chunkSize = (payloadToSend < (mMTU - 4)) ? payloadToSend : mMTU - 4;
-                        byte[] outBuf = new byte[chunkSize + 1];
-                        outBuf[0] = (byte) ((mmSequence++ << 3) & 0xff);
-                        System.arraycopy(buf, srcPos, outBuf, 1, chunkSize);
-                        sendDataToPebble(outBuf);
-                        srcPos += chunkSize;
-                        payloadToSend -= chunkSize;
+            byte[] buf = new byte[512];
+            try {
+                while (!isInterrupted()) {
+                    acquireWindowSlot();
+                    int count = mTxBuffer.pollBlocking(buf, 1, mMTU - 4);
+                    if (count < 0) {
+                        break;
                     }
-                } catch (IOException e) {
-                    LOG.info(e.getMessage());
-                    Thread.currentThread().interrupt();
-                    break;
+                    int sequence = mmSequence;
+                    mmSequence = (sequence + 1) & PPOGATT_SERIAL_MASK;
+                    buf[0] = (byte) ((sequence << 3) & 0xff);
+                    sendDataToPebble(Arrays.copyOf(buf, count + 1));
                 }
+            } catch (InterruptedException | InterruptedIOException e) {
+                LOG.info("packet sender interrupted");
             }
-            LOG.info("Pipereader thread shut down");
+            LOG.info("packet sender thread shut down");
         }
 
         @Override
         public void interrupt() {
             super.interrupt();
-            try {
-                LOG.info("closing piped inputstream");
-                mPipedInputStream.close();
-            } catch (IOException ignore) {
-            }
+            LOG.info("closing output buffer");
+            mTxBuffer.close();
         }
     }
 
@@ -259,4 +368,3 @@ public class PebbleLESupport {
         return true;
     }
 }
-
@@ -68,6 +68,7 @@ import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.SetDeviceStateA
 import nodomain.freeyourgadget.gadgetbridge.util.AlarmUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
 import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
+import nodomain.freeyourgadget.gadgetbridge.util.ProgressReporter;
 
 /**
  * Created by Kranz on 08.02.2018.
@@ -87,6 +88,7 @@ public class ZeTimeDeviceSupport extends AbstractBTLEDeviceSupport {
     private int progressSteps;
     private int progressSleep;
     private int progressHeartRate;
+    private ProgressReporter fetchProgress;
     private final int maxMsgLength = 20;
     private boolean callIncoming = false;
     private String songtitle = null;
@@ -1034,6 +1036,7 @@ public class ZeTimeDeviceSupport extends AbstractBTLEDeviceSupport {
         availableStepsData = (int) ((msg[5] & 0xff) | (msg[6] << 8) & 0xff00);
         availableSleepData = (int) ((msg[7] & 0xff) | (msg[8] << 8) & 0xff00);
         availableHeartRateData = (int) ((msg[9] & 0xff) | (msg[10] << 8) & 0xff00);
+        fetchProgress = new ProgressReporter(getContext(), ProgressReporter.Type.TRANSFER, null, getContext().getString(R.string.busy_task_fetch_activity_data));
         if (availableStepsData > 0) {
             getStepData();
         } else if (availableHeartRateData > 0) {
@@ -1044,6 +1047,8 @@ public class ZeTimeDeviceSupport extends AbstractBTLEDeviceSupport {
     }
 
     private void getStepData() {
+        // each kind of data has its own total, even if it is the same as the previous one
+        getFetchProgress().startPhase();
         try {
             TransactionBuilder builder = performInitialized("fetchStepData");
             builder.write(writeCharacteristic, new byte[]{ZeTimeConstants.CMD_PREAMBLE,
@@ -1078,6 +1083,7 @@ public class ZeTimeDeviceSupport extends AbstractBTLEDeviceSupport {
     }
 
     private void getHeartRateData() {
+        getFetchProgress().startPhase();
         try {
             TransactionBuilder builder = performInitialized("fetchHeartRateData");
             builder.write(writeCharacteristic, new byte[]{ZeTimeConstants.CMD_PREAMBLE,
@@ -1111,6 +1117,7 @@ public class ZeTimeDeviceSupport extends AbstractBTLEDeviceSupport {
     }
 
     private void getSleepData() {
+        getFetchProgress().startPhase();
         try {
             TransactionBuilder builder = performInitialized("fetchSleepData");
             builder.write(writeCharacteristic, new byte[]{ZeTimeConstants.CMD_PREAMBLE,
@@ -1169,12 +1176,12 @@ public class ZeTimeDeviceSupport extends AbstractBTLEDeviceSupport {
         }
 
         progressSteps = (msg[5] & 0xff) | ((msg[6] << 8) & 0xff00);
-        GB.updateTransferNotification(null, getContext().getString(R.string.busy_task_fetch_activity_data), true, (int) (progressSteps * 100 / availableStepsData), getContext());
+        getFetchProgress().update(progressSteps, availableStepsData);
         if (progressSteps == availableStepsData) {
             Prefs prefs = GBApplication.getPrefs();
             progressSteps = 0;
             availableStepsData = 0;
-            GB.updateTransferNotification(null, "", false, 100, getContext());
+            getFetchProgress().finish("");
             if (getDevice().isBusy()) {
                 getDevice().unsetBusyTask();
                 getDevice().sendDeviceUpdateIntent(getContext());
@@ -1190,6 +1197,13 @@ public class ZeTimeDeviceSupport extends AbstractBTLEDeviceSupport {
         }
     }
 
+    private ProgressReporter getFetchProgress() {
+        if (fetchProgress == null) {
+            fetchProgress = new ProgressReporter(getContext(), ProgressReporter.Type.TRANSFER, null, getContext().getString(R.string.busy_task_fetch_activity_data));
+        }
+        return fetchProgress;
+    }
+
     private void handleSleepData(byte[] msg) {
         ZeTimeActivitySample sample = new ZeTimeActivitySample();
         Calendar now = GregorianCalendar.getInstance();
@@ -1216,12 +1230,12 @@ public class ZeTimeDeviceSupport extends AbstractBTLEDeviceSupport {
         }
 
         progressSleep = (msg[5] & 0xff) | (msg[6] << 8) & 0xff00;
-        GB.updateTransferNotification(null, getContext().getString(R.string.busy_task_fetch_activity_data), true, (int) (progressSleep * 100 / availableSleepData), getContext());
+        getFetchProgress().update(progressSleep, availableSleepData);
         if (progressSleep == availableSleepData) {
             Prefs prefs = GBApplication.getPrefs();
             progressSleep = 0;
             availableSleepData = 0;
-            GB.updateTransferNotification(null, "", false, 100, getContext());
+            getFetchProgress().finish("");
             if (getDevice().isBusy()) {
                 getDevice().unsetBusyTask();
                 GB.signalActivityDataFinish();
@@ -1252,7 +1266,7 @@ public class ZeTimeDeviceSupport extends AbstractBTLEDeviceSupport {
         }
 
         progressHeartRate = (msg[5] & 0xff) | ((msg[6] << 8) & 0xff00);
-        GB.updateTransferNotification(null, getContext().getString(R.string.busy_task_fetch_activity_data), true, (int) (progressHeartRate * 100 / availableHeartRateData), getContext());
+        getFetchProgress().update(progressHeartRate, availableHeartRateData);
 
         if (((msg[4] << 8) & 0xff00 | (msg[3] & 0xff)) == 0xe) // if the message is longer than 0x7, than it has two measurements (payload = 0xe)
         {
@@ -1273,14 +1287,14 @@ public class ZeTimeDeviceSupport extends AbstractBTLEDeviceSupport {
             }
 
             progressHeartRate = (msg[12] & 0xff) | ((msg[13] << 8) & 0xff00);
-            GB.updateTransferNotification(null, getContext().getString(R.string.busy_task_fetch_activity_data), true, (int) (progressHeartRate * 100 / availableHeartRateData), getContext());
+            getFetchProgress().update(progressHeartRate, availableHeartRateData);
         }
 
         if (progressHeartRate == availableHeartRateData) {
             Prefs prefs = GBApplication.getPrefs();
             progressHeartRate = 0;
             availableHeartRateData = 0;
-            GB.updateTransferNotification(null, "", false, 100, getContext());
+            getFetchProgress().finish("");
             if (getDevice().isBusy()) {
                 getDevice().unsetBusyTask();
                 getDevice().sendDeviceUpdateIntent(getContext());
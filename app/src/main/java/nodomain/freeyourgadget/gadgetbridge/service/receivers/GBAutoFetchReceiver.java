@@ -25,6 +25,7 @@ import org.apache.commons.lang3.time.DateUtils;
 import java.util.Date;
 
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.RecordedDataTypes;
 
 
@@ -35,7 +36,9 @@ public class GBAutoFetchReceiver extends BroadcastReceiver {
     public void onReceive(Context context, Intent intent) {
         Date nextSync = DateUtils.addMinutes(lastSync, GBApplication.getPrefs().getInt("auto_fetch_interval_limit", 0));
         if (nextSync.before(new Date())) {
-            GBApplication.deviceService().onFetchRecordedData(RecordedDataTypes.TYPE_ACTIVITY);
+            for (GBDevice device : GBApplication.app().getDeviceManager().getInitializedDevices()) {
+                GBApplication.deviceService(device).onFetchRecordedData(RecordedDataTypes.TYPE_ACTIVITY);
+            }
             lastSync = new Date();
         }
     }
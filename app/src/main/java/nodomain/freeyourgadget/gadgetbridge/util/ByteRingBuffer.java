@@ -0,0 +1,283 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * A fixed-size byte buffer for passing a byte stream from exactly one producer thread to
+ * exactly one consumer thread. Reading and writing do not take a lock, a lock is only used
+ * to park a thread that has to wait for data or free space.
+ * <p/>
+ * The non-blocking {@link #offer(byte[], int, int)} and {@link #poll(byte[], int, int)}
+ * transfer as many bytes as possible right away, {@link #getInputStream()} and
+ * {@link #getOutputStream()} provide blocking stream views, replacing a pair of
+ * PipedInputStream and PipedOutputStream.
+ */
+public class ByteRingBuffer {
+    private final byte[] buffer;
+    private final int mask;
+    private final Object waitLock = new Object();
+
+    // total number of bytes ever written and read, only modified by the producer and
+    // consumer respectively
+    private volatile long writePosition;
+    private volatile long readPosition;
+    private volatile boolean closed;
+    private volatile boolean readerWaiting;
+    private volatile boolean writerWaiting;
+
+    private final InputStream inputStream = new RingInputStream();
+    private final OutputStream outputStream = new RingOutputStream();
+
+    /**
+     * @param capacity the capacity in bytes, will be rounded up to the next power of two
+     */
+    public ByteRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("invalid capacity: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        buffer = new byte[size];
+        mask = size - 1;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Returns the number of bytes that can be read without blocking.
+     */
+    public int available() {
+        return (int) (writePosition - readPosition);
+    }
+
+    /**
+     * Returns the number of bytes that can be written without blocking.
+     */
+    public int free() {
+        return buffer.length - available();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Closes the buffer. Blocked readers and writers are woken up, remaining bytes can
+     * still be read.
+     */
+    public void close() {
+        closed = true;
+        signal();
+    }
+
+    /**
+     * Writes as many bytes as currently fit into the buffer. May only be called by the
+     * producer thread.
+     * @return the number of bytes written
+     */
+    public int offer(byte[] src, int offset, int length) {
+        long write = writePosition;
+        int count = Math.min(length, buffer.length - (int) (write - readPosition));
+        if (count <= 0) {
+            return 0;
+        }
+        int start = (int) (write & mask);
+        int first = Math.min(count, buffer.length - start);
+        System.arraycopy(src, offset, buffer, start, first);
+        System.arraycopy(src, offset + first, buffer, 0, count - first);
+        writePosition = write + count;
+        if (readerWaiting) {
+            signal();
+        }
+        return count;
+    }
+
+    /**
+     * Reads as many bytes as are currently available, up to the given length. May only be
+     * called by the consumer thread.
+     * @return the number of bytes read
+     */
+    public int poll(byte[] dst, int offset, int length) {
+        long read = readPosition;
+        int count = Math.min(length, (int) (writePosition - read));
+        if (count <= 0) {
+            return 0;
+        }
+        int start = (int) (read & mask);
+        int first = Math.min(count, buffer.length - start);
+        System.arraycopy(buffer, start, dst, offset, first);
+        System.arraycopy(buffer, 0, dst, offset + first, count - first);
+        readPosition = read + count;
+        if (writerWaiting) {
+            signal();
+        }
+        return count;
+    }
+
+    /**
+     * Like {@link #poll(byte[], int, int)}, but blocks until at least one byte is available.
+     * @return the number of bytes read, or -1 if the buffer is closed and empty
+     */
+    public int pollBlocking(byte[] dst, int offset, int length) throws InterruptedIOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (true) {
+            int count = poll(dst, offset, length);
+            if (count > 0) {
+                return count;
+            }
+            if (closed) {
+                // bytes might have been written right before closing
+                count = poll(dst, offset, length);
+                return count > 0 ? count : -1;
+            }
+            awaitData();
+        }
+    }
+
+    /**
+     * Writes all given bytes, blocking while the buffer is full.
+     */
+    public void offerBlocking(byte[] src, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (closed) {
+                throw new IOException("ring buffer closed");
+            }
+            int count = offer(src, offset, length);
+            offset += count;
+            length -= count;
+            if (length > 0) {
+                awaitSpace();
+            }
+        }
+    }
+
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    private void awaitData() throws InterruptedIOException {
+        synchronized (waitLock) {
+            // the flag is set before checking the condition, so that the producer either sees
+            // it after publishing new data or this thread sees the new data
+            readerWaiting = true;
+            try {
+                while (!closed && available() == 0) {
+                    waitLock.wait();
+                }
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            } finally {
+                readerWaiting = false;
+            }
+        }
+    }
+
+    private void awaitSpace() throws InterruptedIOException {
+        synchronized (waitLock) {
+            writerWaiting = true;
+            try {
+                while (!closed && free() == 0) {
+                    waitLock.wait();
+                }
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            } finally {
+                writerWaiting = false;
+            }
+        }
+    }
+
+    private void signal() {
+        synchronized (waitLock) {
+            waitLock.notifyAll();
+        }
+    }
+
+    private class RingInputStream extends InputStream {
+        private final byte[] single = new byte[1];
+
+        @Override
+        public int read() throws IOException {
+            int count = pollBlocking(single, 0, 1);
+            return count < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return pollBlocking(b, off, len);
+        }
+
+        @Override
+        public int available() {
+            return ByteRingBuffer.this.available();
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            byte[] skipBuffer = new byte[(int) Math.min(n, 512)];
+            while (skipped < n) {
+                int count = pollBlocking(skipBuffer, 0, (int) Math.min(n - skipped, skipBuffer.length));
+                if (count < 0) {
+                    break;
+                }
+                skipped += count;
+            }
+            return skipped;
+        }
+
+        @Override
+        public void close() {
+            ByteRingBuffer.this.close();
+        }
+    }
+
+    private class RingOutputStream extends OutputStream {
+        private final byte[] single = new byte[1];
+
+        @Override
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            offerBlocking(single, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            offerBlocking(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            ByteRingBuffer.this.close();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.util;
+
+import nodomain.freeyourgadget.gadgetbridge.devices.miband.MiBandConst;
+
+/**
+ * An immutable, typed copy of the device specific preferences that are read for every
+ * notification or event sent to the device. Use
+ * {@link PrefsSnapshotCache#getDeviceSnapshot(String)} to get the current one.
+ */
+public final class DevicePrefsSnapshot {
+    public final boolean textNotifications;
+
+    DevicePrefsSnapshot(Prefs prefs) {
+        textNotifications = prefs.getBoolean(MiBandConst.PREF_MI2_ENABLE_TEXT_NOTIFICATIONS, true);
+    }
+}
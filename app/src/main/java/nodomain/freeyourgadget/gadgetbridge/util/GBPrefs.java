@@ -29,6 +29,8 @@ public class GBPrefs {
     public static final String AUTO_EXPORT_ENABLED = "auto_export_enabled";
     public static final String AUTO_EXPORT_LOCATION = "auto_export_location";
     public static final String AUTO_EXPORT_INTERVAL = "auto_export_interval";
+    public static final String ACTIVITY_RETENTION_BUCKET = "activity_retention_bucket";
+    public static final String ACTIVITY_RETENTION_DAYS = "activity_retention_days";
     private static final boolean AUTO_START_DEFAULT = true;
     private static final String BG_JS_ENABLED = "pebble_enable_background_javascript";
     private static final boolean BG_JS_ENABLED_DEFAULT = false;
@@ -42,6 +44,8 @@ public class GBPrefs {
 
     public static final String CHART_MAX_HEART_RATE = "chart_max_heart_rate";
     public static final String CHART_MIN_HEART_RATE = "chart_min_heart_rate";
+    public static final String CHART_LIVE_HISTORY_MINUTES = "chart_live_history_minutes";
+    public static final int CHART_LIVE_HISTORY_MINUTES_DEFAULT = 60;
 
     private final Prefs mPrefs;
 
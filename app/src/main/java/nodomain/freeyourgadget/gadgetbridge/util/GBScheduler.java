@@ -0,0 +1,185 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A scheduler for the delayed and periodic work of all devices, like sending keep-alive
+ * messages, polling for data or storing realtime samples. All tasks share a small, fixed
+ * pool of threads, so the number of threads and wakeups does not grow with the number of
+ * connected devices. Tasks must therefore be short and must not block; blocking I/O still
+ * belongs on the thread of the respective device.
+ * <p/>
+ * For every execution, the lag between the time the task was due and the time it actually
+ * started is recorded, see {@link #getLagHistogram()}. An exception thrown by a periodic
+ * task is logged and does not cancel further executions.
+ */
+public class GBScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(GBScheduler.class);
+
+    private static final int POOL_SIZE = 2;
+    private static final long SERIAL_EXECUTOR_KEEP_ALIVE_SECONDS = 30;
+
+    private static GBScheduler instance;
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final LatencyHistogram lagHistogram = new LatencyHistogram();
+    private final AtomicInteger executionCount = new AtomicInteger();
+
+    public static synchronized GBScheduler getInstance() {
+        if (instance == null) {
+            instance = new GBScheduler(POOL_SIZE);
+        }
+        return instance;
+    }
+
+    GBScheduler(int poolSize) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor = new ScheduledThreadPoolExecutor(poolSize, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "GB Scheduler " + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Creates an executor for work of a single device that may block, like writing to the
+     * device. Tasks are executed one after another, in order. The thread of the executor
+     * terminates when it has been idle for a while, so idle devices do not hold a thread.
+     */
+    public static ExecutorService newSerialExecutor(final String threadName) {
+        return new ThreadPoolExecutor(0, 1, SERIAL_EXECUTOR_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, threadName);
+            }
+        });
+    }
+
+    /**
+     * Runs the task once after the given delay.
+     * @param name describes the task in the log
+     */
+    public ScheduledFuture<?> schedule(String name, Runnable task, long delay, TimeUnit unit) {
+        ScheduledTask scheduledTask = new ScheduledTask(name, task, unit.toNanos(delay), 0);
+        return executor.schedule(scheduledTask, delay, unit);
+    }
+
+    /**
+     * Runs the task periodically at a fixed rate, like Timer#scheduleAtFixedRate().
+     * Executions are not run concurrently; if one takes longer than the period, the next
+     * one starts late.
+     */
+    public ScheduledFuture<?> scheduleAtFixedRate(String name, Runnable task, long initialDelay, long period, TimeUnit unit) {
+        ScheduledTask scheduledTask = new ScheduledTask(name, task, unit.toNanos(initialDelay), unit.toNanos(period));
+        return executor.scheduleAtFixedRate(scheduledTask, initialDelay, period, unit);
+    }
+
+    /**
+     * Runs the task periodically, with the given delay between the end of one execution
+     * and the start of the next.
+     */
+    public ScheduledFuture<?> scheduleWithFixedDelay(String name, Runnable task, long initialDelay, long delay, TimeUnit unit) {
+        ScheduledTask scheduledTask = new ScheduledTask(name, task, unit.toNanos(initialDelay), -unit.toNanos(delay));
+        return executor.scheduleWithFixedDelay(scheduledTask, initialDelay, delay, unit);
+    }
+
+    /**
+     * Returns the lag of all task executions, in microseconds.
+     */
+    public LatencyHistogram getLagHistogram() {
+        return lagHistogram;
+    }
+
+    /**
+     * Returns the number of tasks that are waiting to be executed, including periodic ones
+     * and those that have been cancelled but not yet removed.
+     */
+    public int getQueuedTaskCount() {
+        return executor.getQueue().size();
+    }
+
+    public void resetStatistics() {
+        lagHistogram.reset();
+        executionCount.set(0);
+    }
+
+    /**
+     * Returns a human readable summary of the task lag, in milliseconds.
+     */
+    public String dump() {
+        return String.format(Locale.US, "Scheduler: %d threads, %d queued tasks, %d executions\n  lag: p50=%.1f p95=%.1f p99=%.1f ms\n",
+                executor.getPoolSize(), getQueuedTaskCount(), executionCount.get(),
+                lagHistogram.getPercentile(0.5) / 1000f, lagHistogram.getPercentile(0.95) / 1000f, lagHistogram.getPercentile(0.99) / 1000f);
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private class ScheduledTask implements Runnable {
+        private final String name;
+        private final Runnable task;
+        /**
+         * The period in nanoseconds: positive for a fixed rate, negative for a fixed delay,
+         * 0 for a one-shot task.
+         */
+        private final long period;
+        private long dueTime;
+
+        ScheduledTask(String name, Runnable task, long initialDelay, long period) {
+            this.name = name;
+            this.task = task;
+            this.period = period;
+            dueTime = System.nanoTime() + initialDelay;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            lagHistogram.record((start - dueTime) / 1000);
+            executionCount.incrementAndGet();
+            try {
+                task.run();
+            } catch (Exception ex) {
+                LOG.error("Error executing scheduled task " + name, ex);
+            }
+            if (period > 0) {
+                dueTime += period;
+            } else if (period < 0) {
+                dueTime = System.nanoTime() - period;
+            }
+        }
+    }
+}
@@ -101,7 +101,7 @@ public class LanguageUtils {
      */
     public static boolean transliterate()
     {
-        return GBApplication.getPrefs().getBoolean("transliteration", false);
+        return GBApplication.getPrefsSnapshot().transliteration;
     }
 
     /**
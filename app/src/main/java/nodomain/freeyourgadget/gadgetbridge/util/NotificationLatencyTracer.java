@@ -0,0 +1,186 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.util;
+
+import android.os.SystemClock;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Measures how long notifications take from being posted on the phone until they are
+ * written to the device. The start time is carried in NotificationSpec#traceStart, and
+ * every stage on the way records the time elapsed since then, both overall and per device.
+ * <p/>
+ * Stages that run inside a device's onNotification() do not see the NotificationSpec, they
+ * find the trace of the notification being handled on the current thread through
+ * {@link #getCurrentTrace()}.
+ */
+public class NotificationLatencyTracer {
+    public enum Stage {
+        /** Passed all filters in the NotificationListener */
+        FILTERED,
+        /** Received by the DeviceCommunicationService */
+        DISPATCHED,
+        SANITIZED,
+        /** Passed busy and throttling checks */
+        THROTTLED,
+        /** Encoded and queued by the device support */
+        ENCODED,
+        /** Written to the device */
+        WRITTEN,
+    }
+
+    public static class Trace {
+        public final long start;
+        @Nullable
+        public final String deviceAddress;
+        // the writes of the notification that have been queued, but not written yet
+        private final AtomicInteger pendingWrites = new AtomicInteger();
+        private final AtomicBoolean written = new AtomicBoolean();
+
+        Trace(long start, @Nullable String deviceAddress) {
+            this.start = start;
+            this.deviceAddress = deviceAddress;
+        }
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final LatencyHistogram[] overall = createHistograms();
+    private static final ConcurrentMap<String, LatencyHistogram[]> perDevice = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Trace> currentTrace = new ThreadLocal<>();
+
+    private NotificationLatencyTracer() {
+    }
+
+    /**
+     * Returns the start time of a new trace.
+     */
+    public static long start() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * Records that the notification with the given trace start reached the given stage.
+     * Does nothing if the notification is not traced.
+     */
+    public static void record(Stage stage, @Nullable String deviceAddress, long traceStart) {
+        if (traceStart == 0) {
+            return;
+        }
+        long micros = (SystemClock.elapsedRealtimeNanos() - traceStart) / 1000;
+        overall[stage.ordinal()].record(micros);
+        if (deviceAddress != null) {
+            LatencyHistogram[] histograms = perDevice.get(deviceAddress);
+            if (histograms == null) {
+                perDevice.putIfAbsent(deviceAddress, createHistograms());
+                histograms = perDevice.get(deviceAddress);
+            }
+            histograms[stage.ordinal()].record(micros);
+        }
+    }
+
+    public static void record(Stage stage, Trace trace) {
+        record(stage, trace.deviceAddress, trace.start);
+    }
+
+    /**
+     * To be called before a write of the traced notification is queued, see
+     * {@link #writeCompleted(Trace)}.
+     */
+    public static void writeQueued(@Nullable Trace trace) {
+        if (trace != null) {
+            trace.pendingWrites.incrementAndGet();
+        }
+    }
+
+    /**
+     * To be called by the writer once a queued write of the traced notification has been
+     * written to the device. {@link Stage#WRITTEN} is recorded only once per trace, when all
+     * writes queued so far are done. Writes that are dropped keep it from being recorded.
+     */
+    public static void writeCompleted(@Nullable Trace trace) {
+        if (trace != null && trace.pendingWrites.decrementAndGet() == 0 && trace.written.compareAndSet(false, true)) {
+            record(Stage.WRITTEN, trace);
+        }
+    }
+
+    /**
+     * Makes the given trace the current one of the calling thread, until {@link #exitTrace()}.
+     */
+    public static void enterTrace(long traceStart, @Nullable String deviceAddress) {
+        if (traceStart != 0) {
+            currentTrace.set(new Trace(traceStart, deviceAddress));
+        }
+    }
+
+    public static void exitTrace() {
+        currentTrace.remove();
+    }
+
+    @Nullable
+    public static Trace getCurrentTrace() {
+        return currentTrace.get();
+    }
+
+    public static void reset() {
+        for (LatencyHistogram histogram : overall) {
+            histogram.reset();
+        }
+        perDevice.clear();
+    }
+
+    /**
+     * Returns a human readable summary with the percentiles of all stages, in milliseconds.
+     */
+    public static String dump() {
+        StringBuilder builder = new StringBuilder();
+        dump("All devices", overall, builder);
+        for (Map.Entry<String, LatencyHistogram[]> entry : new TreeMap<>(perDevice).entrySet()) {
+            dump(entry.getKey(), entry.getValue(), builder);
+        }
+        return builder.toString();
+    }
+
+    private static void dump(String title, LatencyHistogram[] histograms, StringBuilder builder) {
+        builder.append(title).append('\n');
+        for (Stage stage : STAGES) {
+            LatencyHistogram histogram = histograms[stage.ordinal()];
+            long count = histogram.getCount();
+            if (count == 0) {
+                continue;
+            }
+            builder.append(String.format(Locale.US, "  %s: n=%d p50=%.1f p95=%.1f p99=%.1f ms\n", stage, count,
+                    histogram.getPercentile(0.5) / 1000f, histogram.getPercentile(0.95) / 1000f, histogram.getPercentile(0.99) / 1000f));
+        }
+    }
+
+    private static LatencyHistogram[] createHistograms() {
+        LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+}
@@ -0,0 +1,422 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Captures the raw packets exchanged with the devices into a compact binary file in the log
+ * directory, while file logging is enabled. Capturing a packet only copies its bytes into a
+ * ring buffer; a separate thread writes the buffer to the file in batches. The packets are
+ * only formatted as text when the capture is exported, see {@link #dump(InputStream, Writer)}.
+ * <p/>
+ * When the ring buffer is full, packets are dropped instead of blocking the caller. Once the
+ * file exceeds {@link #MAX_FILE_SIZE}, a new one is started and the previous one is kept as
+ * {@link #PREVIOUS_FILE_NAME}.
+ */
+public class PacketCapture {
+    private static final Logger LOG = LoggerFactory.getLogger(PacketCapture.class);
+
+    public static final int DIRECTION_IN = 0;
+    public static final int DIRECTION_OUT = 1;
+
+    public static final String FILE_NAME = "packets.bin";
+    public static final String PREVIOUS_FILE_NAME = "packets.1.bin";
+    public static final String TEXT_FILE_NAME = "packets.txt";
+    public static final int MAX_FILE_SIZE = 4 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int WRITE_CHUNK_SIZE = 64 * 1024;
+    private static final long WRITE_INTERVAL_MILLIS = 200;
+    private static final byte[] FILE_HEADER = new byte[]{'G', 'B', 'P', 'C', 1};
+
+    private static final byte RECORD_DEVICE = 1;
+    private static final byte RECORD_GATT = 2;
+    private static final byte RECORD_ENDPOINT = 3;
+    // type, timestamp, direction, device, uuid and length of a gatt record
+    private static final int MAX_RECORD_HEADER_LENGTH = 1 + 8 + 1 + 1 + 16 + 4;
+    private static final int MAX_DEVICES = 255;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static volatile PacketCapture instance;
+
+    private final File directory;
+    private final ByteRingBuffer ringBuffer = new ByteRingBuffer(BUFFER_SIZE);
+    private final CaptureWriter writer = new CaptureWriter();
+    private final Object writerLock = new Object();
+
+    // the producer state is guarded by this
+    private final ByteBuffer recordHeader = ByteBuffer.allocate(MAX_RECORD_HEADER_LENGTH);
+    private final Map<String, Integer> deviceIndexes = new HashMap<>();
+    private long offeredBytes;
+    private long fileStartPosition;
+    private long droppedPackets;
+
+    // the stream position at which the writer has to start a new file, or -1
+    private volatile long rotationPosition = -1;
+
+    /**
+     * Starts capturing into the given directory, unless already capturing.
+     */
+    public static synchronized void start(File directory) {
+        if (instance == null) {
+            PacketCapture capture = new PacketCapture(directory);
+            capture.open();
+            instance = capture;
+        }
+    }
+
+    /**
+     * Stops capturing, after the packets captured so far have been written.
+     */
+    public static synchronized void stop() {
+        if (instance != null) {
+            instance.close();
+            instance = null;
+        }
+    }
+
+    public static boolean isCapturing() {
+        return instance != null;
+    }
+
+    /**
+     * Captures a packet written to or received from a GATT characteristic.
+     */
+    public static void captureGatt(String address, UUID characteristic, int direction, @Nullable byte[] data) {
+        PacketCapture capture = instance;
+        if (capture != null && data != null) {
+            capture.addGattPacket(address, characteristic, direction, data);
+        }
+    }
+
+    /**
+     * Captures a packet written to or received from an endpoint of a serial protocol,
+     * e.g. a Pebble endpoint.
+     */
+    public static void captureEndpoint(String address, int endpoint, int direction, byte[] data, int offset, int length) {
+        PacketCapture capture = instance;
+        if (capture != null) {
+            capture.addEndpointPacket(address, endpoint, direction, data, offset, length);
+        }
+    }
+
+    public PacketCapture(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Starts writing to the capture file. Only needed for instances that have not been
+     * started with {@link #start(File)}.
+     */
+    public void open() {
+        writer.start();
+    }
+
+    public synchronized void addGattPacket(String address, UUID characteristic, int direction, byte[] data) {
+        int deviceIndex = prepareRecord(address);
+        if (deviceIndex < 0) {
+            return;
+        }
+        recordHeader.put(RECORD_GATT)
+                .putLong(System.currentTimeMillis())
+                .put((byte) direction)
+                .put((byte) deviceIndex)
+                .putLong(characteristic.getMostSignificantBits())
+                .putLong(characteristic.getLeastSignificantBits())
+                .putInt(data.length);
+        offerRecord(data, 0, data.length);
+    }
+
+    public synchronized void addEndpointPacket(String address, int endpoint, int direction, byte[] data, int offset, int length) {
+        int deviceIndex = prepareRecord(address);
+        if (deviceIndex < 0) {
+            return;
+        }
+        recordHeader.put(RECORD_ENDPOINT)
+                .putLong(System.currentTimeMillis())
+                .put((byte) direction)
+                .put((byte) deviceIndex)
+                .putShort((short) endpoint)
+                .putInt(length);
+        offerRecord(data, offset, length);
+    }
+
+    /**
+     * Returns the number of packets that were dropped because the buffer was full.
+     */
+    public synchronized long getDroppedPackets() {
+        return droppedPackets;
+    }
+
+    /**
+     * Stops capturing and waits until the captured packets have been written.
+     */
+    public void close() {
+        synchronized (this) {
+            ringBuffer.close();
+        }
+        // not interrupting the writer, that would close the file channel
+        synchronized (writerLock) {
+            writerLock.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long dropped = getDroppedPackets();
+        if (dropped > 0) {
+            LOG.warn("Dropped " + dropped + " packets, the capture buffer was full");
+        }
+    }
+
+    /**
+     * Starts a new file if necessary and returns the index of the device in the current
+     * file, or -1 if the packet cannot be captured.
+     */
+    private int prepareRecord(String address) {
+        if (ringBuffer.isClosed()) {
+            return -1;
+        }
+        if (offeredBytes - fileStartPosition >= MAX_FILE_SIZE && rotationPosition < 0) {
+            rotationPosition = offeredBytes;
+            fileStartPosition = offeredBytes;
+            // the device records have to be repeated in the new file
+            deviceIndexes.clear();
+        }
+        recordHeader.clear();
+        Integer index = deviceIndexes.get(address);
+        if (index != null) {
+            return index;
+        }
+        if (deviceIndexes.size() >= MAX_DEVICES) {
+            return -1;
+        }
+        index = deviceIndexes.size();
+        byte[] addressBytes = address.getBytes(UTF_8);
+        recordHeader.put(RECORD_DEVICE).put(index.byteValue()).putShort((short) addressBytes.length);
+        if (!offerRecord(addressBytes, 0, addressBytes.length)) {
+            return -1;
+        }
+        deviceIndexes.put(address, index);
+        recordHeader.clear();
+        return index;
+    }
+
+    private boolean offerRecord(byte[] data, int offset, int length) {
+        int headerLength = recordHeader.position();
+        if (ringBuffer.free() < headerLength + length) {
+            droppedPackets++;
+            return false;
+        }
+        ringBuffer.offer(recordHeader.array(), 0, headerLength);
+        ringBuffer.offer(data, offset, length);
+        offeredBytes += headerLength + length;
+        return true;
+    }
+
+    private class CaptureWriter extends Thread {
+        private final byte[] chunk = new byte[WRITE_CHUNK_SIZE];
+        private FileChannel channel;
+        private long position;
+
+        CaptureWriter() {
+            super("Packet Capture Writer");
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    boolean closed = ringBuffer.isClosed();
+                    // the available bytes must be determined before the rotation position,
+                    // so that a rotation requested in between is not missed
+                    long available = ringBuffer.available();
+                    long rotation = rotationPosition;
+                    while (available > 0) {
+                        if (rotation == position) {
+                            closeFile();
+                            rotationPosition = -1;
+                            rotation = -1;
+                        }
+                        int length = (int) Math.min(chunk.length, available);
+                        if (rotation >= 0) {
+                            length = (int) Math.min(length, rotation - position);
+                        }
+                        int count = ringBuffer.poll(chunk, 0, length);
+                        write(count);
+                        available -= count;
+                    }
+                    if (closed) {
+                        break;
+                    }
+                    synchronized (writerLock) {
+                        if (!ringBuffer.isClosed()) {
+                            writerLock.wait(WRITE_INTERVAL_MILLIS);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                LOG.error("Error writing packet capture, stopping", e);
+                ringBuffer.close();
+            } catch (InterruptedException e) {
+                LOG.warn("Packet capture writer interrupted", e);
+                ringBuffer.close();
+            } finally {
+                closeFile();
+            }
+        }
+
+        private void write(int count) throws IOException {
+            if (channel == null) {
+                openFile();
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, count);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            position += count;
+        }
+
+        private void openFile() throws IOException {
+            File file = new File(directory, FILE_NAME);
+            if (file.exists()) {
+                File previousFile = new File(directory, PREVIOUS_FILE_NAME);
+                if (previousFile.exists() && !previousFile.delete() || !file.renameTo(previousFile)) {
+                    LOG.warn("Unable to keep the previous packet capture");
+                }
+            }
+            channel = new FileOutputStream(file).getChannel();
+            channel.write(ByteBuffer.wrap(FILE_HEADER));
+        }
+
+        private void closeFile() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    LOG.warn("Error closing packet capture", e);
+                }
+                channel = null;
+            }
+        }
+    }
+
+    /**
+     * Writes the captures in the given directory as text into {@link #TEXT_FILE_NAME},
+     * the previous one first.
+     * @return the text file, or null if nothing has been captured
+     */
+    @Nullable
+    public static File exportText(File directory) throws IOException {
+        File[] captures = new File[]{new File(directory, PREVIOUS_FILE_NAME), new File(directory, FILE_NAME)};
+        File textFile = null;
+        Writer out = null;
+        try {
+            for (File capture : captures) {
+                if (!capture.exists()) {
+                    continue;
+                }
+                if (out == null) {
+                    textFile = new File(directory, TEXT_FILE_NAME);
+                    out = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(textFile)), UTF_8);
+                }
+                try (InputStream in = new BufferedInputStream(new FileInputStream(capture))) {
+                    dump(in, out);
+                }
+            }
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+        }
+        return textFile;
+    }
+
+    /**
+     * Writes the given capture as text, one packet per line.
+     */
+    public static void dump(InputStream capture, Writer out) throws IOException {
+        DataInputStream in = new DataInputStream(capture);
+        byte[] header = new byte[FILE_HEADER.length];
+        in.readFully(header);
+        for (int i = 0; i < header.length; i++) {
+            if (header[i] != FILE_HEADER[i]) {
+                throw new IOException("not a packet capture");
+            }
+        }
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+        Map<Integer, String> addresses = new HashMap<>();
+        try {
+            int type;
+            while ((type = in.read()) >= 0) {
+                if (type == RECORD_DEVICE) {
+                    int index = in.readUnsignedByte();
+                    byte[] address = new byte[in.readUnsignedShort()];
+                    in.readFully(address);
+                    addresses.put(index, new String(address, UTF_8));
+                    continue;
+                }
+                long timestamp = in.readLong();
+                int direction = in.readUnsignedByte();
+                String address = addresses.get(in.readUnsignedByte());
+                String channel;
+                if (type == RECORD_GATT) {
+                    channel = new UUID(in.readLong(), in.readLong()).toString();
+                } else if (type == RECORD_ENDPOINT) {
+                    channel = "endpoint " + in.readUnsignedShort();
+                } else {
+                    throw new IOException("invalid record type: " + type);
+                }
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+
+                out.write(dateFormat.format(new Date(timestamp)));
+                out.write(direction == DIRECTION_OUT ? " > " : " < ");
+                out.write(address + " " + channel + ": " + GB.hexdump(data, 0, data.length) + "\n");
+            }
+        } catch (EOFException e) {
+            // the last record may be incomplete
+        }
+        out.flush();
+    }
+}
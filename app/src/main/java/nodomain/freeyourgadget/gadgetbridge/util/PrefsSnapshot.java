@@ -0,0 +1,71 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.util;
+
+import java.util.ArrayList;
+
+/**
+ * An immutable, typed copy of the global preferences that are read for every notification
+ * or event. Reading them through {@link Prefs} means a map lookup, and for values stored as
+ * strings by a ListPreference, a caught ClassCastException and parsing, every time.
+ * <p/>
+ * Do not create instances directly, use {@link PrefsSnapshotCache#getSnapshot()}, which
+ * always returns the snapshot of the current preferences.
+ */
+public final class PrefsSnapshot {
+    public static final String NOTIFICATION_MODE_ALWAYS = "always";
+    public static final String NOTIFICATION_MODE_WHEN_SCREEN_OFF = "when_screen_off";
+    public static final String NOTIFICATION_MODE_NEVER = "never";
+
+    private static final int MAX_CANNED_REPLIES = 16;
+
+    public final boolean notificationSupportVoipCalls;
+    public final long notificationsTimeoutMillis;
+    public final boolean notificationsGenericWhenScreenOn;
+    public final boolean autoremoveNotifications;
+    public final String notificationModeSms;
+    public final String notificationModeCalls;
+    public final String[] cannedReplies;
+
+    public final boolean transliteration;
+    public final boolean rtlSupport;
+    public final boolean rtlContextualArabic;
+    public final int rtlMaxLineLength;
+
+    PrefsSnapshot(Prefs prefs) {
+        notificationSupportVoipCalls = prefs.getBoolean("notification_support_voip_calls", false);
+        notificationsTimeoutMillis = prefs.getInt("notifications_timeout", 0) * 1000L;
+        notificationsGenericWhenScreenOn = prefs.getBoolean("notifications_generic_whenscreenon", false);
+        autoremoveNotifications = prefs.getBoolean("autoremove_notifications", false);
+        notificationModeSms = prefs.getString("notification_mode_sms", NOTIFICATION_MODE_WHEN_SCREEN_OFF);
+        notificationModeCalls = prefs.getString("notification_mode_calls", NOTIFICATION_MODE_ALWAYS);
+
+        ArrayList<String> replies = new ArrayList<>();
+        for (int i = 1; i <= MAX_CANNED_REPLIES; i++) {
+            String reply = prefs.getString("canned_reply_" + i, null);
+            if (reply != null && !reply.equals("")) {
+                replies.add(reply);
+            }
+        }
+        cannedReplies = replies.toArray(new String[replies.size()]);
+
+        transliteration = prefs.getBoolean("transliteration", false);
+        rtlSupport = prefs.getBoolean(GBPrefs.RTL_SUPPORT, false);
+        rtlContextualArabic = prefs.getBoolean(GBPrefs.RTL_CONTEXTUAL_ARABIC, false);
+        rtlMaxLineLength = prefs.getInt("rtl_max_line_length", 18);
+    }
+}
@@ -0,0 +1,85 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.util;
+
+import android.content.SharedPreferences;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+
+/**
+ * Keeps the {@link PrefsSnapshot} and the {@link DevicePrefsSnapshot}s up to date by
+ * rebuilding them whenever a preference changes, so that hot paths only read plain fields.
+ * <p/>
+ * SharedPreferences only keeps weak references to its listeners, so the listeners are
+ * referenced from here, and this cache from GBApplication.
+ */
+public class PrefsSnapshotCache implements SharedPreferences.OnSharedPreferenceChangeListener {
+    private final Prefs prefs;
+    private final Map<String, DeviceEntry> deviceEntries = new ConcurrentHashMap<>();
+    private volatile PrefsSnapshot snapshot;
+
+    public PrefsSnapshotCache(Prefs prefs) {
+        this.prefs = prefs;
+        snapshot = new PrefsSnapshot(prefs);
+        prefs.getPreferences().registerOnSharedPreferenceChangeListener(this);
+    }
+
+    public PrefsSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns the snapshot of the preferences of the given device, creating it on first use.
+     */
+    public DevicePrefsSnapshot getDeviceSnapshot(String deviceAddress) {
+        DeviceEntry entry = deviceEntries.get(deviceAddress);
+        if (entry == null) {
+            synchronized (deviceEntries) {
+                entry = deviceEntries.get(deviceAddress);
+                if (entry == null) {
+                    entry = new DeviceEntry(new Prefs(GBApplication.getDeviceSpecificSharedPrefs(deviceAddress)));
+                    deviceEntries.put(deviceAddress, entry);
+                }
+            }
+        }
+        return entry.snapshot;
+    }
+
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        snapshot = new PrefsSnapshot(prefs);
+    }
+
+    private static class DeviceEntry implements SharedPreferences.OnSharedPreferenceChangeListener {
+        private final Prefs prefs;
+        private volatile DevicePrefsSnapshot snapshot;
+
+        DeviceEntry(Prefs prefs) {
+            this.prefs = prefs;
+            snapshot = new DevicePrefsSnapshot(prefs);
+            prefs.getPreferences().registerOnSharedPreferenceChangeListener(this);
+        }
+
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+            snapshot = new DevicePrefsSnapshot(prefs);
+        }
+    }
+}
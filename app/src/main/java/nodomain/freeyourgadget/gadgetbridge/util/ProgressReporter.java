@@ -0,0 +1,211 @@
+/*  Copyright (C) 2019 Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.util;
+
+import android.content.Context;
+import android.text.format.DateUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import androidx.annotation.Nullable;
+import nodomain.freeyourgadget.gadgetbridge.R;
+
+/**
+ * Reports the progress of a long running device operation, like fetching activity data or
+ * installing a firmware, in the transfer or install notification.
+ * <p/>
+ * Progress updates are cheap and may be reported for every packet or sample. The
+ * notification is only updated when the percentage changes, and at most every
+ * {@link #MIN_UPDATE_INTERVAL_MILLIS}, since Android drops notification updates that are
+ * posted too frequently anyway. The remaining time is estimated from the throughput so far
+ * and shown in the notification.
+ */
+public class ProgressReporter {
+    private static final Logger LOG = LoggerFactory.getLogger(ProgressReporter.class);
+
+    public enum Type {
+        TRANSFER,
+        INSTALL,
+    }
+
+    public static final long MIN_UPDATE_INTERVAL_MILLIS = 250;
+    // the estimate is too unreliable at the beginning
+    private static final long MIN_ESTIMATE_ELAPSED_MILLIS = 2000;
+
+    private final Context context;
+    private final Type type;
+    private final String title;
+    private String text;
+
+    private long total = -1;
+    private long done;
+    private long phaseStartTime;
+    private long phaseStartDone;
+
+    private int lastPublishedPercentage = -1;
+    private long lastPublishTime;
+    private boolean textChanged;
+
+    /**
+     * @param title the notification title, only used for transfer notifications; null for
+     *              the app name
+     * @param text the text describing the operation
+     */
+    public ProgressReporter(Context context, Type type, @Nullable String title, String text) {
+        this.context = context;
+        this.type = type;
+        this.title = title;
+        this.text = text;
+        phaseStartTime = currentTimeMillis();
+    }
+
+    public synchronized void setText(String text) {
+        if (!text.equals(this.text)) {
+            this.text = text;
+            textChanged = true;
+        }
+    }
+
+    /**
+     * Sets the total amount of work, in an arbitrary unit like bytes or samples. Changing
+     * the total starts a new phase, for which percentage and throughput are computed anew.
+     */
+    public synchronized void setTotal(long total) {
+        if (total != this.total) {
+            this.total = total;
+            startPhase();
+        }
+    }
+
+    /**
+     * Starts a new phase with the same total, e.g. when an operation is started again or
+     * the next part of it, which happens to have the same size, is transferred.
+     */
+    public synchronized void startPhase() {
+        done = 0;
+        phaseStartDone = 0;
+        phaseStartTime = currentTimeMillis();
+        lastPublishedPercentage = -1;
+    }
+
+    /**
+     * Reports that the given amount of work has been done since the last report.
+     */
+    public synchronized void tick(long amount) {
+        done += amount;
+        maybePublish();
+    }
+
+    /**
+     * Reports the absolute amount of work done so far, out of the given total.
+     */
+    public synchronized void update(long done, long total) {
+        setTotal(total);
+        this.done = done;
+        maybePublish();
+    }
+
+    /**
+     * For callers that only know the percentage.
+     */
+    public void setPercentage(int percentage) {
+        update(percentage, 100);
+    }
+
+    public synchronized int getPercentage() {
+        if (total <= 0) {
+            return 0;
+        }
+        return (int) Math.min(100, done * 100 / total);
+    }
+
+    /**
+     * Returns the units of work per second in the current phase.
+     */
+    public synchronized long getThroughput() {
+        long elapsed = currentTimeMillis() - phaseStartTime;
+        if (elapsed <= 0) {
+            return 0;
+        }
+        return (done - phaseStartDone) * 1000 / elapsed;
+    }
+
+    /**
+     * Returns the estimated remaining time of the current phase in milliseconds, or -1 if
+     * it cannot be estimated yet.
+     */
+    public synchronized long getRemainingMillis() {
+        long elapsed = currentTimeMillis() - phaseStartTime;
+        long progress = done - phaseStartDone;
+        if (total <= 0 || progress <= 0 || elapsed < MIN_ESTIMATE_ELAPSED_MILLIS) {
+            return -1;
+        }
+        return Math.max(0, (total - done) * elapsed / progress);
+    }
+
+    /**
+     * Finishes the operation. For transfers the notification is removed, for installations
+     * it is replaced with the given text.
+     */
+    public synchronized void finish(String text) {
+        if (getPercentage() != lastPublishedPercentage || textChanged) {
+            // the last update may have been throttled
+            publish();
+        }
+        LOG.info(type + " finished: " + done + " of " + total + " in " + (currentTimeMillis() - phaseStartTime) + "ms, " + getThroughput() + "/s");
+        updateNotification(type == Type.TRANSFER ? "" : text, false, 100);
+        lastPublishedPercentage = -1;
+    }
+
+    private void maybePublish() {
+        int percentage = getPercentage();
+        if (percentage == lastPublishedPercentage && !textChanged) {
+            return;
+        }
+        if (currentTimeMillis() - lastPublishTime < MIN_UPDATE_INTERVAL_MILLIS) {
+            return;
+        }
+        publish();
+    }
+
+    private void publish() {
+        int percentage = getPercentage();
+        lastPublishedPercentage = percentage;
+        lastPublishTime = currentTimeMillis();
+        textChanged = false;
+
+        String displayText = text;
+        long remainingMillis = getRemainingMillis();
+        if (remainingMillis >= 0) {
+            displayText = context.getString(R.string.progress_time_remaining, text, DateUtils.formatElapsedTime(remainingMillis / 1000));
+        }
+        updateNotification(displayText, true, percentage);
+    }
+
+    protected void updateNotification(String text, boolean ongoing, int percentage) {
+        if (type == Type.TRANSFER) {
+            GB.updateTransferNotification(title, text, ongoing, percentage, context);
+        } else {
+            GB.updateInstallNotification(text, ongoing, percentage, context);
+        }
+    }
+
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+}
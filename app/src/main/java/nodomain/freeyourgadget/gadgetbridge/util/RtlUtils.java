@@ -33,7 +33,7 @@ public class RtlUtils {
      */
     public static boolean rtlSupport()
     {
-        return GBApplication.getPrefs().getBoolean(GBPrefs.RTL_SUPPORT, false);
+        return GBApplication.getPrefsSnapshot().rtlSupport;
     }
 
     public enum characterType{
@@ -80,7 +80,7 @@ public class RtlUtils {
      */
     public static boolean contextualSupport()
     {
-        return GBApplication.getPrefs().getBoolean(GBPrefs.RTL_CONTEXTUAL_ARABIC, false);
+        return GBApplication.getPrefsSnapshot().rtlContextualArabic;
     }
 
     //map with brackets chars to change there direction
@@ -504,7 +504,7 @@ public class RtlUtils {
         String newString = "";
         List<String> lines = new ArrayList<>();
         char[] newWord = new char[length];
-        int line_max_size = GBApplication.getPrefs().getInt("rtl_max_line_length", 18);
+        int line_max_size = GBApplication.getPrefsSnapshot().rtlMaxLineLength;
 
         int startPos = 0;
         int endPos = 0;
@@ -0,0 +1,69 @@
+package nodomain.freeyourgadget.gadgetbridge.database;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import nodomain.freeyourgadget.gadgetbridge.database.schema.GadgetbridgeUpdate_25;
+import nodomain.freeyourgadget.gadgetbridge.devices.miband.MiBandSampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.entities.Device;
+import nodomain.freeyourgadget.gadgetbridge.entities.MiBandActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.entities.SampleWatermark;
+import nodomain.freeyourgadget.gadgetbridge.entities.User;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.model.DeviceType;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BackgroundMigrationTest extends TestBase {
+
+    @Test
+    public void testPending() {
+        BackgroundMigrator.clear();
+        assertFalse(BackgroundMigrator.isPending(GadgetbridgeUpdate_25.class));
+
+        BackgroundMigrator.add(GadgetbridgeUpdate_25.class);
+        BackgroundMigrator.add(GadgetbridgeUpdate_25.class);
+        assertTrue(BackgroundMigrator.isPending(GadgetbridgeUpdate_25.class));
+
+        BackgroundMigrator.clear();
+        assertFalse(BackgroundMigrator.isPending(GadgetbridgeUpdate_25.class));
+    }
+
+    @Test
+    public void testWatermarkBackfill() throws Exception {
+        GBDevice gbDevice = new GBDevice("00:00:00:00:20", "Mi Band", DeviceType.MIBAND);
+        MiBandSampleProvider sampleProvider = new MiBandSampleProvider(gbDevice, daoSession);
+        User user = DBHelper.getUser(daoSession);
+        Device device = DBHelper.getDevice(gbDevice, daoSession);
+        // samples stored before there were watermarks
+        for (int timestamp = 100; timestamp <= 500; timestamp += 100) {
+            MiBandActivitySample sample = sampleProvider.createActivitySample();
+            sample.setTimestamp(timestamp);
+            sample.setRawKind(MiBandSampleProvider.TYPE_ACTIVITY);
+            sample.setUserId(user.getId());
+            sample.setDeviceId(device.getId());
+            sampleProvider.getSampleDao().insert(sample);
+        }
+        assertEquals(0, daoSession.getSampleWatermarkDao().count());
+
+        GadgetbridgeUpdate_25 migration = new GadgetbridgeUpdate_25();
+        long position = 0;
+        int batches = 0;
+        assertEquals(1, migration.getRemainingBatches(dbHandler, position));
+        while ((position = migration.migrateBatch(dbHandler, position)) != BackgroundMigration.DONE) {
+            batches++;
+            assertEquals(device.getId().longValue(), position);
+        }
+        assertEquals(1, batches);
+
+        List<SampleWatermark> watermarks = daoSession.getSampleWatermarkDao().loadAll();
+        assertEquals(1, watermarks.size());
+        assertEquals(100, watermarks.get(0).getEarliestTimestamp());
+        assertEquals(500, watermarks.get(0).getLatestTimestamp());
+        assertEquals(5, watermarks.get(0).getRowCount());
+    }
+}
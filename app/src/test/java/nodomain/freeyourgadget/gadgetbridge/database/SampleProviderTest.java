@@ -2,20 +2,28 @@ package nodomain.freeyourgadget.gadgetbridge.database;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.List;
 
+import nodomain.freeyourgadget.gadgetbridge.devices.SampleBatch;
 import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.devices.miband.MiBandSampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.entities.AbstractActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.entities.Device;
 import nodomain.freeyourgadget.gadgetbridge.entities.MiBandActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.entities.SampleWatermark;
+import nodomain.freeyourgadget.gadgetbridge.entities.SleepNight;
+import nodomain.freeyourgadget.gadgetbridge.entities.SleepNightSession;
 import nodomain.freeyourgadget.gadgetbridge.entities.User;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
+import nodomain.freeyourgadget.gadgetbridge.model.DeviceType;
 import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
@@ -170,4 +178,202 @@ public class SampleProviderTest extends TestBase {
         sleepSamples = sampleProvider.getSleepSamples(1500, 2500);
         assertEquals(1, sleepSamples.size());
     }
+
+    @Test
+    public void testRollUp() {
+        MiBandSampleProvider sampleProvider = new MiBandSampleProvider(dummyGBDevice, daoSession);
+        User user = DBHelper.getUser(daoSession);
+        Device device = DBHelper.getDevice(dummyGBDevice, daoSession);
+
+        for (int i = 0; i < 30; i++) {
+            int kind = i < 20 ? MiBandSampleProvider.TYPE_ACTIVITY : MiBandSampleProvider.TYPE_DEEP_SLEEP;
+            sampleProvider.addGBActivitySample(createSample(sampleProvider, kind, 900 + i * 60, 10, 60 + i, 10, user, device));
+        }
+        assertEquals(0, sampleProvider.getRolledUpUntil());
+        assertEquals(900, sampleProvider.getOldestSampleTimestamp(0));
+
+        assertEquals(30, sampleProvider.rollUp(900, 2700, 900));
+        assertEquals(2700, sampleProvider.getRolledUpUntil());
+        assertEquals(-1, sampleProvider.getOldestSampleTimestamp(0));
+
+        // the aggregates are returned as one sample per bucket
+        List<MiBandActivitySample> samples = sampleProvider.getAllActivitySamples(0, 3000);
+        assertEquals(2, samples.size());
+        assertEquals(900, samples.get(0).getTimestamp());
+        assertEquals(MiBandSampleProvider.TYPE_ACTIVITY, samples.get(0).getRawKind());
+        assertEquals(150, samples.get(0).getSteps());
+        assertEquals(67, samples.get(0).getHeartRate());
+        // the second bucket has ten minutes of sleep and five of activity
+        assertEquals(1800, samples.get(1).getTimestamp());
+        assertEquals(MiBandSampleProvider.TYPE_DEEP_SLEEP, samples.get(1).getRawKind());
+        assertEquals(150, samples.get(1).getSteps());
+        assertEquals(82, samples.get(1).getHeartRate());
+
+        assertEquals(1, sampleProvider.getActivitySamples(0, 3000).size());
+        assertEquals(1, sampleProvider.getSleepSamples(0, 3000).size());
+        // ranges after the rolled up one do not include aggregates
+        assertEquals(0, sampleProvider.getAllActivitySamples(2700, 3000).size());
+
+        // newer samples are returned along with the aggregates
+        sampleProvider.addGBActivitySample(createSample(sampleProvider, MiBandSampleProvider.TYPE_ACTIVITY, 2760, 10, 70, 10, user, device));
+        samples = sampleProvider.getAllActivitySamples(0, 3000);
+        assertEquals(3, samples.size());
+        assertEquals(2760, samples.get(2).getTimestamp());
+    }
+
+    @Test
+    public void testBulkInsert() {
+        MiBandSampleProvider sampleProvider = new MiBandSampleProvider(dummyGBDevice, daoSession);
+        SampleBatch batch = new SampleBatch(1);
+        for (int i = 0; i < 10; i++) {
+            batch.add(1000 + i * 60, MiBandSampleProvider.TYPE_ACTIVITY, 10 + i, i, 70);
+        }
+        sampleProvider.addGBActivitySamples(batch);
+
+        List<MiBandActivitySample> samples = sampleProvider.getAllActivitySamples(0, 2000);
+        assertEquals(10, samples.size());
+        assertEquals(1120, samples.get(2).getTimestamp());
+        assertEquals(12, samples.get(2).getRawIntensity());
+        assertEquals(2, samples.get(2).getSteps());
+        assertEquals(70, samples.get(2).getHeartRate());
+        assertEquals(DBHelper.getDevice(dummyGBDevice, daoSession).getId().longValue(), samples.get(2).getDeviceId());
+
+        // existing samples are replaced
+        batch.clear();
+        batch.add(1120, MiBandSampleProvider.TYPE_ACTIVITY, 99, 5, 80);
+        sampleProvider.addGBActivitySamples(batch);
+        samples = sampleProvider.getAllActivitySamples(0, 2000);
+        assertEquals(10, samples.size());
+        assertEquals(99, samples.get(2).getRawIntensity());
+    }
+
+    @Test
+    public void testWatermark() {
+        MiBandSampleProvider sampleProvider = new MiBandSampleProvider(dummyGBDevice, daoSession);
+        User user = DBHelper.getUser(daoSession);
+        Device device = DBHelper.getDevice(dummyGBDevice, daoSession);
+        assertNull(sampleProvider.getWatermark());
+        assertNull(sampleProvider.getLatestActivitySample());
+
+        sampleProvider.addGBActivitySample(createSample(sampleProvider, MiBandSampleProvider.TYPE_ACTIVITY, 300, 10, 70, 10, user, device));
+        sampleProvider.addGBActivitySamples(new MiBandActivitySample[] {
+                createSample(sampleProvider, MiBandSampleProvider.TYPE_ACTIVITY, 100, 10, 70, 10, user, device),
+                createSample(sampleProvider, MiBandSampleProvider.TYPE_ACTIVITY, 300, 20, 70, 10, user, device),
+        });
+        SampleBatch batch = new SampleBatch(2);
+        batch.add(300, MiBandSampleProvider.TYPE_ACTIVITY, 30, 10, 70);
+        batch.add(500, MiBandSampleProvider.TYPE_ACTIVITY, 30, 10, 70);
+        sampleProvider.addGBActivitySamples(batch);
+
+        SampleWatermark watermark = sampleProvider.getWatermark();
+        assertNotNull(watermark);
+        assertEquals(100, watermark.getEarliestTimestamp());
+        assertEquals(500, watermark.getLatestTimestamp());
+        assertEquals(3, watermark.getRowCount());
+        assertEquals(500, sampleProvider.getLatestActivitySample().getTimestamp());
+
+        // nothing stored outside of the watermark
+        assertEquals(0, sampleProvider.getAllActivitySamples(600, 1000).size());
+        assertEquals(3, sampleProvider.getAllActivitySamples(0, 1000).size());
+    }
+
+    @Test
+    public void testWatermarkFlush() {
+        MiBandSampleProvider sampleProvider = new MiBandSampleProvider(dummyGBDevice, daoSession);
+        SampleBatch batch = new SampleBatch(2);
+        batch.add(300, MiBandSampleProvider.TYPE_ACTIVITY, 30, 10, 70);
+        batch.add(500, MiBandSampleProvider.TYPE_ACTIVITY, 30, 10, 70);
+        sampleProvider.addGBActivitySamples(batch);
+
+        // marked as outdated until flushed
+        SampleWatermark stored = daoSession.getSampleWatermarkDao().queryBuilder().unique();
+        assertEquals(-1, stored.getRowCount());
+        daoSession.getSampleWatermarkDao().detachAll();
+
+        SampleWatermarks.get(daoSession).flush(daoSession);
+        stored = daoSession.getSampleWatermarkDao().queryBuilder().unique();
+        assertEquals(2, stored.getRowCount());
+        assertEquals(300, stored.getEarliestTimestamp());
+        assertEquals(500, stored.getLatestTimestamp());
+    }
+
+    @Test
+    public void testSleepNightsStoredOnFlush() {
+        GBDevice miBand = new GBDevice("11:22:33:44:55:66", "Mi Band", DeviceType.MIBAND);
+        MiBandSampleProvider sampleProvider = new MiBandSampleProvider(miBand, daoSession);
+        Calendar day = Calendar.getInstance();
+        day.set(2019, Calendar.FEBRUARY, 10);
+        int nightStart = SleepNightCache.getNightStart(day);
+        int midnight = nightStart + 12 * 60 * 60;
+
+        // an hour of light sleep after midnight, and a sample after the end of the night
+        SampleBatch batch = new SampleBatch(1);
+        for (int i = 0; i <= 60; i++) {
+            batch.add(midnight + i * 60, MiBandSampleProvider.TYPE_LIGHT_SLEEP, 10, 0, 60);
+        }
+        batch.add(nightStart + SleepNightCache.NIGHT_LENGTH + 60, MiBandSampleProvider.TYPE_ACTIVITY, 50, 10, 80);
+        sampleProvider.addGBActivitySamples(batch);
+        assertEquals(0, daoSession.getSleepNightDao().count());
+
+        // only the complete night is stored
+        SampleWatermarks.get(daoSession).flush(daoSession);
+        SleepNight night = daoSession.getSleepNightDao().queryBuilder().unique();
+        assertNotNull(night);
+        assertEquals(nightStart, night.getNightStart());
+        assertEquals(60 * 60, night.getLightSleepSeconds());
+        assertEquals(1, night.getSessionCount());
+        List<SleepNightSession> sessions = daoSession.getSleepNightSessionDao().loadAll();
+        assertEquals(1, sessions.size());
+        assertEquals(midnight, sessions.get(0).getSleepStart());
+        assertEquals(midnight + 60 * 60, sessions.get(0).getSleepEnd());
+
+        SleepNightCache nightCache = new SleepNightCache(daoSession, miBand, sampleProvider);
+        assertEquals(60 * 60, nightCache.getNight(nightStart).getLightSleepSeconds());
+        assertEquals(midnight, nightCache.getSessions(nightStart).get(0).getSleepStartTimestamp());
+    }
+
+    @Test
+    public void testActivitySamplesPage() {
+        MiBandSampleProvider sampleProvider = new MiBandSampleProvider(dummyGBDevice, daoSession);
+        SampleBatch batch = new SampleBatch(1);
+        for (int i = 0; i < 10; i++) {
+            batch.add(1000 + i * 60, MiBandSampleProvider.TYPE_ACTIVITY, 10 + i, i, 70);
+        }
+        sampleProvider.addGBActivitySamples(batch);
+
+        List<Long> rowids = new ArrayList<>();
+        List<MiBandActivitySample> page = sampleProvider.getActivitySamplesPage(-1, 2000, 4, rowids);
+        assertEquals(4, page.size());
+        assertEquals(4, rowids.size());
+        assertEquals(1000, page.get(0).getTimestamp());
+        assertEquals(1180, page.get(3).getTimestamp());
+
+        // the next page starts after the last rowid of the previous one
+        long after = rowids.get(3);
+        rowids.clear();
+        page = sampleProvider.getActivitySamplesPage(after, 2000, 4, rowids);
+        assertEquals(4, page.size());
+        assertEquals(1240, page.get(0).getTimestamp());
+
+        after = rowids.get(3);
+        rowids.clear();
+        page = sampleProvider.getActivitySamplesPage(after, 2000, 4, rowids);
+        assertEquals(2, page.size());
+        assertEquals(1540, page.get(1).getTimestamp());
+
+        after = rowids.get(1);
+        rowids.clear();
+        assertEquals(0, sampleProvider.getActivitySamplesPage(after, 2000, 4, rowids).size());
+
+        // samples written later are returned next, even those behind the last timestamp
+        batch = new SampleBatch(2);
+        batch.add(940, MiBandSampleProvider.TYPE_ACTIVITY, 5, 1, 70);
+        batch.add(1060, MiBandSampleProvider.TYPE_ACTIVITY, 50, 5, 70);
+        sampleProvider.addGBActivitySamples(batch);
+        page = sampleProvider.getActivitySamplesPage(after, 2000, 4, rowids);
+        assertEquals(2, page.size());
+        assertEquals(940, page.get(0).getTimestamp());
+        assertEquals(1060, page.get(1).getTimestamp());
+        assertEquals(5, page.get(1).getSteps());
+    }
 }
@@ -0,0 +1,110 @@
+package nodomain.freeyourgadget.gadgetbridge.devices.pebble;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.UUID;
+
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDeviceApp;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+import nodomain.freeyourgadget.gadgetbridge.util.FileUtils;
+import nodomain.freeyourgadget.gadgetbridge.util.PebbleUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PBWCacheIndexTest extends TestBase {
+    private static final UUID APP_UUID = UUID.fromString("11111111-2222-3333-4444-555555555555");
+    private static final UUID BROKEN_UUID = UUID.fromString("66666666-7777-8888-9999-000000000000");
+
+    private File cacheDir;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        cacheDir = PebbleUtils.getPbwCacheDir();
+        FileUtils.deleteRecursively(cacheDir);
+        assertTrue(cacheDir.mkdirs());
+        PBWCacheIndex.invalidate();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        PBWCacheIndex.invalidate();
+        FileUtils.deleteRecursively(cacheDir);
+        super.tearDown();
+    }
+
+    @Test
+    public void testRebuildWhenIndexMissing() throws Exception {
+        addCachedApps();
+
+        assertCachedApps(PBWCacheIndex.getApps());
+        assertTrue(getIndexFile().exists());
+
+        // the rebuilt index is used from now on, even without the metadata files
+        new File(cacheDir, APP_UUID + ".json").delete();
+        PBWCacheIndex.invalidate();
+        assertCachedApps(PBWCacheIndex.getApps());
+    }
+
+    @Test
+    public void testRebuildWhenIndexUnreadable() throws Exception {
+        addCachedApps();
+        write(getIndexFile(), "not json");
+
+        assertCachedApps(PBWCacheIndex.getApps());
+    }
+
+    @Test
+    public void testPutAndRemove() throws Exception {
+        addCachedApps();
+        PBWCacheIndex.remove(APP_UUID);
+        PBWCacheIndex.invalidate();
+        assertNull(PBWCacheIndex.getApp(APP_UUID));
+        assertEquals(1, PBWCacheIndex.getApps().size());
+
+        PBWCacheIndex.put(new GBDeviceApp(APP_UUID, "Test App", "Gadgetbridge", "1.0", GBDeviceApp.Type.WATCHFACE));
+        PBWCacheIndex.invalidate();
+        GBDeviceApp app = PBWCacheIndex.getApp(APP_UUID);
+        assertNotNull(app);
+        assertEquals("Test App", app.getName());
+        assertEquals(2, PBWCacheIndex.getApps().size());
+    }
+
+    private void addCachedApps() throws IOException {
+        write(new File(cacheDir, APP_UUID + ".pbw"), "");
+        write(new File(cacheDir, APP_UUID + ".json"), "{\"uuid\":\"" + APP_UUID + "\",\"name\":\"Test App\",\"creator\":\"Gadgetbridge\",\"version\":\"1.0\",\"type\":\"WATCHFACE\"}");
+        write(new File(cacheDir, APP_UUID + "_config.js"), "");
+        // no metadata for this one
+        write(new File(cacheDir, BROKEN_UUID + ".pbw"), "");
+    }
+
+    private void assertCachedApps(Map<String, GBDeviceApp> apps) {
+        assertEquals(2, apps.size());
+        GBDeviceApp app = apps.get(APP_UUID.toString());
+        assertNotNull(app);
+        assertEquals(APP_UUID, app.getUUID());
+        assertEquals("Test App", app.getName());
+        assertEquals(GBDeviceApp.Type.WATCHFACE, app.getType());
+        assertTrue(app.isConfigurable());
+        assertTrue(apps.containsKey(BROKEN_UUID.toString()));
+        assertNull(apps.get(BROKEN_UUID.toString()));
+    }
+
+    private File getIndexFile() {
+        return new File(cacheDir, "index.json");
+    }
+
+    private static void write(File file, String content) throws IOException {
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(content);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package nodomain.freeyourgadget.gadgetbridge.export;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import nodomain.freeyourgadget.gadgetbridge.entities.Device;
+import nodomain.freeyourgadget.gadgetbridge.entities.User;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityPoint;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityTrack;
+import nodomain.freeyourgadget.gadgetbridge.model.GPSCoordinate;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryActivityTrackTest extends TestBase {
+    private static final long BASE_TIME = 1546300800000L; // 2019-01-01T00:00:00Z
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<ActivityPoint> points = createPoints();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (BinaryActivityTrackWriter writer = new BinaryActivityTrackWriter(out, BASE_TIME)) {
+            for (ActivityPoint point : points) {
+                writer.write(point);
+            }
+            assertEquals(points.size(), writer.getPointCount());
+        }
+
+        try (BinaryActivityTrackReader reader = new BinaryActivityTrackReader(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals(BASE_TIME, reader.getBaseTime());
+            for (ActivityPoint point : points) {
+                assertTrue(reader.moveToNext());
+                assertEquals(point.getTime().getTime(), reader.getTime());
+                assertEquals(point.getHeartRate(), reader.getHeartRate());
+                assertEquals(point.getDescription(), reader.getDescription());
+                GPSCoordinate location = point.getLocation();
+                assertEquals(location != null, reader.hasLocation());
+                if (location != null) {
+                    assertEquals(location.getLongitude(), reader.getLongitude(), 0.000001);
+                    assertEquals(location.getLatitude(), reader.getLatitude(), 0.000001);
+                    assertEquals(location.getAltitude(), reader.getAltitude(), 0.01);
+                }
+            }
+            assertFalse(reader.moveToNext());
+        }
+    }
+
+    @Test
+    public void testCompactness() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (BinaryActivityTrackWriter writer = new BinaryActivityTrackWriter(out, BASE_TIME)) {
+            for (int i = 0; i < 3600; i++) {
+                writer.write(BASE_TIME + i * 1000, true, 13.4 + i * 0.00001, 52.5 + i * 0.00001, 40, 120, null);
+            }
+        }
+        // 13 bytes header, then flags + time + 3 * location + hr = 8 bytes per point at most
+        assertTrue(out.size() <= 13 + 3600 * 8);
+    }
+
+    @Test
+    public void testStreamingExports() throws Exception {
+        File trackFile = File.createTempFile("binary-activity-track-test", ".gbtrack");
+        trackFile.deleteOnExit();
+        try (BinaryActivityTrackWriter writer = new BinaryActivityTrackWriter(trackFile, BASE_TIME)) {
+            for (ActivityPoint point : createPoints()) {
+                writer.write(point);
+            }
+        }
+
+        ActivityTrack track = createTrack();
+        File gpxFile = File.createTempFile("binary-activity-track-test", ".gpx");
+        gpxFile.deleteOnExit();
+        GPXExporter gpxExporter = new GPXExporter();
+        gpxExporter.setCreator("Gadgetbridge Test");
+        try (BinaryActivityTrackReader reader = new BinaryActivityTrackReader(trackFile)) {
+            gpxExporter.performExport(track, reader, gpxFile);
+        }
+        assertTrue(gpxFile.length() > 0);
+
+        File tcxFile = File.createTempFile("binary-activity-track-test", ".tcx");
+        tcxFile.deleteOnExit();
+        TCXExporter tcxExporter = new TCXExporter();
+        tcxExporter.setCreator("Gadgetbridge Test");
+        try (BinaryActivityTrackReader reader = new BinaryActivityTrackReader(trackFile)) {
+            tcxExporter.performExport(track, reader, tcxFile);
+        }
+        assertTrue(tcxFile.length() > 0);
+    }
+
+    @Test(expected = ActivityTrackExporter.GPXTrackEmptyException.class)
+    public void testEmptyTrack() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryActivityTrackWriter(out, BASE_TIME).close();
+
+        File gpxFile = File.createTempFile("binary-activity-track-test", ".gpx");
+        gpxFile.deleteOnExit();
+        try (BinaryActivityTrackReader reader = new BinaryActivityTrackReader(new ByteArrayInputStream(out.toByteArray()))) {
+            assertNull(reader.getDescription());
+            new GPXExporter().performExport(createTrack(), reader, gpxFile);
+        }
+    }
+
+    private List<ActivityPoint> createPoints() {
+        List<ActivityPoint> points = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            ActivityPoint point = new ActivityPoint(new Date(BASE_TIME + i * 1000));
+            if (i % 10 != 5) {
+                point.setLocation(new GPSCoordinate(-68.73127 + i * 0.000011, 43.101062 - i * 0.000031, 40 + (i % 7) * 0.5));
+            }
+            if (i % 3 == 0) {
+                point.setHeartRate(80 + i);
+            }
+            if (i == 50) {
+                point.setDescription("Pause");
+            }
+            points.add(point);
+        }
+        return points;
+    }
+
+    private ActivityTrack createTrack() {
+        User user = new User();
+        user.setName("Test User");
+        Device device = new Device();
+        device.setName("Test Device");
+
+        ActivityTrack track = new ActivityTrack();
+        track.setName("Test Track");
+        track.setBaseTime(new Date(BASE_TIME));
+        track.setEndTime(new Date(BASE_TIME + 100 * 1000));
+        track.setUser(user);
+        track.setDevice(device);
+        return track;
+    }
+}
@@ -0,0 +1,88 @@
+package nodomain.freeyourgadget.gadgetbridge.service;
+
+import org.junit.Test;
+
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.model.DeviceType;
+import nodomain.freeyourgadget.gadgetbridge.model.MusicSpec;
+import nodomain.freeyourgadget.gadgetbridge.model.WeatherSpec;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests DeviceCommunicationService.DeviceStruct
+ */
+public class DeviceStructTest extends TestBase {
+
+    @Test
+    public void testMusicResetOnReconnect() {
+        GBDevice device = new GBDevice(DeviceStructTest.class.getName(), "Test Device", DeviceType.TEST);
+        TestDeviceSupport support = new TestDeviceSupport();
+        support.setContext(device, null, getContext());
+        DeviceCommunicationService.DeviceStruct struct = new DeviceCommunicationService.DeviceStruct(support);
+        MusicStateTracker tracker = struct.getMusicStateTracker();
+
+        // the state changes of the same instance are reported, as by the DeviceSupport
+        setState(struct, device, GBDevice.State.INITIALIZED);
+        assertTrue(tracker.updateInfo(createInfo()) != 0);
+        setState(struct, device, GBDevice.State.INITIALIZED);
+        assertEquals(0, tracker.updateInfo(createInfo()));
+
+        setState(struct, device, GBDevice.State.NOT_CONNECTED);
+        setState(struct, device, GBDevice.State.CONNECTING);
+        assertEquals(0, tracker.updateInfo(createInfo()));
+
+        setState(struct, device, GBDevice.State.INITIALIZED);
+        assertTrue(tracker.updateInfo(createInfo()) != 0);
+
+        struct.dispose();
+    }
+
+    @Test
+    public void testWeatherResetOnReconnect() {
+        GBDevice device = new GBDevice(DeviceStructTest.class.getName(), "Test Device", DeviceType.TEST);
+        TestDeviceSupport support = new TestDeviceSupport();
+        support.setContext(device, null, getContext());
+        DeviceCommunicationService.DeviceStruct struct = new DeviceCommunicationService.DeviceStruct(support);
+        WeatherTracker tracker = struct.getWeatherTracker();
+
+        assertTrue(setState(struct, device, GBDevice.State.INITIALIZED));
+        assertEquals(WeatherTracker.ALL_SECTIONS, tracker.update(createWeather()));
+        assertFalse(setState(struct, device, GBDevice.State.INITIALIZED));
+        assertEquals(0, tracker.update(createWeather()));
+
+        assertFalse(setState(struct, device, GBDevice.State.NOT_CONNECTED));
+        assertTrue(setState(struct, device, GBDevice.State.INITIALIZED));
+        assertEquals(WeatherTracker.ALL_SECTIONS, tracker.update(createWeather()));
+
+        struct.dispose();
+    }
+
+    private boolean setState(DeviceCommunicationService.DeviceStruct struct, GBDevice device, GBDevice.State state) {
+        device.setState(state);
+        return struct.setDevice(device);
+    }
+
+    private WeatherSpec createWeather() {
+        WeatherSpec weather = new WeatherSpec();
+        weather.timestamp = 1000;
+        weather.location = "Somewhere";
+        weather.currentTemp = 290;
+        weather.currentCondition = "clear sky";
+        weather.currentConditionCode = 800;
+        weather.forecasts.add(new WeatherSpec.Forecast(281, 296, 801, 50));
+        return weather;
+    }
+
+    private MusicSpec createInfo() {
+        MusicSpec info = new MusicSpec();
+        info.artist = "Artist";
+        info.album = "Album";
+        info.track = "Track";
+        info.duration = 300;
+        return info;
+    }
+}
@@ -0,0 +1,87 @@
+package nodomain.freeyourgadget.gadgetbridge.service;
+
+import org.junit.Test;
+
+import nodomain.freeyourgadget.gadgetbridge.model.MusicSpec;
+import nodomain.freeyourgadget.gadgetbridge.model.MusicStateSpec;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests MusicStateTracker
+ */
+public class MusicStateTrackerTest extends TestBase {
+
+    @Test
+    public void testInfo() {
+        MusicStateTracker tracker = new MusicStateTracker();
+        MusicSpec info = createInfo("Track 1");
+
+        assertTrue(tracker.updateInfo(info) != 0);
+        assertEquals(0, tracker.updateInfo(createInfo("Track 1")));
+        assertEquals(MusicStateTracker.FIELD_TRACK, tracker.updateInfo(createInfo("Track 2")));
+    }
+
+    @Test
+    public void testPositionExtrapolation() {
+        MusicStateTracker tracker = new MusicStateTracker();
+        tracker.updateState(createState(MusicStateSpec.STATE_PLAYING, 10, 100), 0);
+
+        // regular position ticks while playing
+        assertEquals(0, tracker.updateState(createState(MusicStateSpec.STATE_PLAYING, 11, 100), 1000));
+        assertEquals(0, tracker.updateState(createState(MusicStateSpec.STATE_PLAYING, 40, 100), 30000));
+        assertEquals(40, tracker.getExtrapolatedPosition(30000));
+
+        // seeking
+        assertEquals(MusicStateTracker.FIELD_POSITION, tracker.updateState(createState(MusicStateSpec.STATE_PLAYING, 100, 100), 31000));
+        assertEquals(100, tracker.getExtrapolatedPosition(31000));
+
+        // pausing
+        assertEquals(MusicStateTracker.FIELD_STATE, tracker.updateState(createState(MusicStateSpec.STATE_PAUSED, 101, 100), 32000));
+        assertEquals(MusicStateTracker.FIELD_POSITION, tracker.updateState(createState(MusicStateSpec.STATE_PAUSED, 105, 100), 60000));
+    }
+
+    @Test
+    public void testPlayRate() {
+        MusicStateTracker tracker = new MusicStateTracker();
+        tracker.updateState(createState(MusicStateSpec.STATE_PLAYING, 0, 200), 0);
+        assertEquals(0, tracker.updateState(createState(MusicStateSpec.STATE_PLAYING, 20, 200), 10000));
+
+        tracker.updateState(createState(MusicStateSpec.STATE_PLAYING, 0, 0), 20000);
+        assertEquals(10, tracker.getExtrapolatedPosition(30000));
+    }
+
+    @Test
+    public void testTrackChangeAndReset() {
+        MusicStateTracker tracker = new MusicStateTracker();
+        MusicStateSpec state = createState(MusicStateSpec.STATE_PLAYING, 0, 100);
+        tracker.updateInfo(createInfo("Track 1"));
+        tracker.updateState(state, 0);
+
+        tracker.updateInfo(createInfo("Track 2"));
+        assertTrue(tracker.updateState(state, 0) != 0);
+
+        tracker.reset();
+        assertEquals(-1, tracker.getExtrapolatedPosition(0));
+        assertTrue(tracker.updateInfo(createInfo("Track 2")) != 0);
+    }
+
+    private MusicSpec createInfo(String track) {
+        MusicSpec info = new MusicSpec();
+        info.artist = "Artist";
+        info.album = "Album";
+        info.track = track;
+        info.duration = 300;
+        return info;
+    }
+
+    private MusicStateSpec createState(int state, int position, int playRate) {
+        MusicStateSpec stateSpec = new MusicStateSpec();
+        stateSpec.state = (byte) state;
+        stateSpec.position = position;
+        stateSpec.playRate = playRate;
+        return stateSpec;
+    }
+}
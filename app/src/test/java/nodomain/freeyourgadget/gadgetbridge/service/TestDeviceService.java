@@ -29,9 +29,21 @@ class TestDeviceService extends GBDeviceService {
         // calling though to the service natively does not work with robolectric,
         // we have to use the ServiceController to do that
         service.onStartCommand(intent, Service.START_FLAG_REDELIVERY, (int) (Math.random() * 10000));
+        // the commands are executed on the pipeline threads of the devices
+        try {
+            service.awaitPipelines(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
         super.invokeService(intent);
     }
 
+    @Override
+    protected boolean enqueueCommand(DeviceCommand command) {
+        // use the Intent path, which is executed synchronously above
+        return false;
+    }
+
     @Override
     public void start() {
         super.start();
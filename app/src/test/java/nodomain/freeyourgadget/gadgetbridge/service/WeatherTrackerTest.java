@@ -0,0 +1,79 @@
+package nodomain.freeyourgadget.gadgetbridge.service;
+
+import org.junit.Test;
+
+import nodomain.freeyourgadget.gadgetbridge.model.Weather;
+import nodomain.freeyourgadget.gadgetbridge.model.WeatherSpec;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests WeatherTracker
+ */
+public class WeatherTrackerTest extends TestBase {
+
+    @Test
+    public void testSections() {
+        WeatherTracker tracker = new WeatherTracker();
+        assertEquals(WeatherTracker.ALL_SECTIONS, tracker.update(createWeather(1000, 290)));
+
+        // refetched by another provider
+        assertEquals(0, tracker.update(createWeather(1100, 290)));
+
+        assertEquals(WeatherTracker.SECTION_CURRENT, tracker.update(createWeather(1200, 291)));
+
+        WeatherSpec weather = createWeather(1300, 291);
+        weather.forecasts.get(0).maxTemp++;
+        weather.location = "Elsewhere";
+        assertEquals(WeatherTracker.SECTION_FORECAST | WeatherTracker.SECTION_LOCATION, tracker.update(weather));
+
+        tracker.reset();
+        assertEquals(WeatherTracker.ALL_SECTIONS, tracker.update(weather));
+    }
+
+    @Test
+    public void testPending() {
+        WeatherTracker tracker = new WeatherTracker();
+        WeatherSpec first = createWeather(1000, 290);
+        WeatherSpec second = createWeather(1100, 291);
+
+        assertTrue(tracker.offer(first));
+        assertFalse(tracker.offer(second));
+        assertSame(second, tracker.takePending());
+        assertNull(tracker.takePending());
+        assertTrue(tracker.offer(first));
+    }
+
+    @Test
+    public void testNormalize() {
+        WeatherSpec weather = createWeather(1000, 290);
+        weather.location = " Somewhere ";
+        weather.currentCondition = null;
+        weather.currentConditionCode = 800;
+
+        WeatherSpec normalized = Weather.normalize(weather);
+        assertEquals("Somewhere", normalized.location);
+        assertEquals(Weather.getConditionString(800), normalized.currentCondition);
+        assertEquals(weather.forecasts.size(), normalized.forecasts.size());
+        assertEquals(weather.getForecastFingerprint(), normalized.getForecastFingerprint());
+    }
+
+    private WeatherSpec createWeather(int timestamp, int currentTemp) {
+        WeatherSpec weather = new WeatherSpec();
+        weather.timestamp = timestamp;
+        weather.location = "Somewhere";
+        weather.currentTemp = currentTemp;
+        weather.currentCondition = "clear sky";
+        weather.currentConditionCode = 800;
+        weather.todayMinTemp = 280;
+        weather.todayMaxTemp = 295;
+        weather.forecasts.add(new WeatherSpec.Forecast(281, 296, 801, 50));
+        weather.forecasts.add(new WeatherSpec.Forecast(282, 297, 500, 70));
+        return weather;
+    }
+}
@@ -0,0 +1,104 @@
+package nodomain.freeyourgadget.gadgetbridge.service.btle;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests SettingsReconciler
+ */
+public class SettingsReconcilerTest extends TestBase {
+    private final BluetoothGattCharacteristic characteristic = new BluetoothGattCharacteristic(UUID.fromString("00000003-0000-3512-2118-0009af100700"), 0, 0);
+    private final BluetoothGattCharacteristic otherCharacteristic = new BluetoothGattCharacteristic(UUID.fromString("00000008-0000-3512-2118-0009af100700"), 0, 0);
+
+    @Test
+    public void testFingerprint() {
+        long fingerprint = fingerprint(new TransactionBuilder("test").write(characteristic, new byte[]{0x06, 0x01}));
+
+        assertEquals(fingerprint, fingerprint(new TransactionBuilder("test").write(characteristic, new byte[]{0x06, 0x01})));
+        assertNotEquals(fingerprint, fingerprint(new TransactionBuilder("test").write(characteristic, new byte[]{0x06, 0x00})));
+        assertNotEquals(fingerprint, fingerprint(new TransactionBuilder("test").write(otherCharacteristic, new byte[]{0x06, 0x01})));
+        assertNotEquals(fingerprint, fingerprint(new TransactionBuilder("test").read(characteristic)));
+    }
+
+    @Test
+    public void testFingerprintNotify() {
+        long enabled = fingerprint(new TransactionBuilder("test").notify(characteristic, true));
+        long disabled = fingerprint(new TransactionBuilder("test").notify(characteristic, false));
+
+        assertNotEquals(enabled, disabled);
+    }
+
+    @Test
+    public void testApplyChanged() {
+        final SharedPreferences prefs = getContext().getSharedPreferences("settings_reconciler_test", Context.MODE_PRIVATE);
+        prefs.edit().clear().commit();
+        final byte[] value = new byte[]{0x06, 0x01};
+        SettingsReconciler reconciler = new SettingsReconciler(null) {
+            @Override
+            SharedPreferences getPrefs() {
+                return prefs;
+            }
+        };
+        reconciler.addSetting("first", new SettingsReconciler.Setting() {
+            @Override
+            public void apply(TransactionBuilder builder) {
+                builder.write(characteristic, new byte[]{0x01});
+            }
+        });
+        reconciler.addSetting("second", new SettingsReconciler.Setting() {
+            @Override
+            public void apply(TransactionBuilder builder) {
+                builder.write(otherCharacteristic, value);
+            }
+        });
+
+        // nothing applied yet, so all settings are sent
+        TransactionBuilder builder = new TransactionBuilder("test");
+        assertEquals(2, reconciler.applyChanged(builder));
+        List<BtLEAction> actions = builder.getTransaction().getActions();
+        assertEquals(3, actions.size());
+
+        // not persisted before the trailing action has run
+        assertEquals(2, reconciler.applyChanged(new TransactionBuilder("test")));
+        runLast(actions);
+
+        // unchanged settings are skipped
+        builder = new TransactionBuilder("test");
+        assertEquals(0, reconciler.applyChanged(builder));
+        assertTrue(builder.getTransaction().getActions().isEmpty());
+
+        // only the changed setting is sent again
+        value[1] = 0x00;
+        builder = new TransactionBuilder("test");
+        assertEquals(1, reconciler.applyChanged(builder));
+        actions = builder.getTransaction().getActions();
+        assertEquals(2, actions.size());
+        assertEquals(otherCharacteristic, actions.get(0).getCharacteristic());
+        runLast(actions);
+        assertEquals(0, reconciler.applyChanged(new TransactionBuilder("test")));
+
+        // everything is sent again after invalidating
+        reconciler.invalidate();
+        assertEquals(2, reconciler.applyChanged(new TransactionBuilder("test")));
+    }
+
+    private void runLast(List<BtLEAction> actions) {
+        assertTrue(actions.get(actions.size() - 1).run(null));
+    }
+
+    private long fingerprint(TransactionBuilder builder) {
+        return SettingsReconciler.getFingerprint(builder.getTransaction().getActions());
+    }
+}
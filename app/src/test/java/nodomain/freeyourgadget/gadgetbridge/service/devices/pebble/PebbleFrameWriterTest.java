@@ -0,0 +1,166 @@
+package nodomain.freeyourgadget.gadgetbridge.service.devices.pebble;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PebbleFrameWriterTest {
+    private static final long WRITE_TIMEOUT_MILLIS = 3000;
+
+    private final RecordingOutputStream outputStream = new RecordingOutputStream();
+    private PebbleFrameWriter writer;
+
+    @After
+    public void tearDown() throws Exception {
+        if (writer != null) {
+            writer.quit();
+            writer.join(WRITE_TIMEOUT_MILLIS);
+        }
+    }
+
+    @Test
+    public void testGetPriority() {
+        assertEquals(PebbleFrameWriter.PRIORITY_CONTROL, PebbleFrameWriter.getPriority(frame(PebbleProtocol.ENDPOINT_PING, (byte) 0)));
+        assertEquals(PebbleFrameWriter.PRIORITY_CONTROL, PebbleFrameWriter.getPriority(appMessage(PebbleProtocol.APPLICATIONMESSAGE_ACK)));
+        assertEquals(PebbleFrameWriter.PRIORITY_CONTROL, PebbleFrameWriter.getPriority(appMessage(PebbleProtocol.APPLICATIONMESSAGE_NACK)));
+        assertEquals(PebbleFrameWriter.PRIORITY_NORMAL, PebbleFrameWriter.getPriority(appMessage(PebbleProtocol.APPLICATIONMESSAGE_PUSH)));
+        assertEquals(PebbleFrameWriter.PRIORITY_BULK, PebbleFrameWriter.getPriority(frame(PebbleProtocol.ENDPOINT_PUTBYTES, (byte) 2)));
+        assertEquals(PebbleFrameWriter.PRIORITY_NORMAL, PebbleFrameWriter.getPriority(new byte[]{0, 0}));
+    }
+
+    @Test
+    public void testPriorityAndCoalescing() throws Exception {
+        byte[] bulk = frame(PebbleProtocol.ENDPOINT_PUTBYTES, (byte) 2, (byte) 3);
+        byte[] normal = frame(PebbleProtocol.ENDPOINT_PHONEVERSION + 1, (byte) 4);
+        byte[] control = frame(PebbleProtocol.ENDPOINT_PING, (byte) 0);
+        writer = new PebbleFrameWriter(outputStream, false);
+        enqueue(bulk);
+        enqueue(normal);
+        enqueue(control);
+        writer.start();
+
+        // all queued frames are sent in a single write, highest priority first
+        assertArrayEquals(concat(control, normal, bulk), outputStream.nextWrite());
+        assertNull(outputStream.pollWrite(200));
+    }
+
+    @Test
+    public void testTcpFraming() throws Exception {
+        byte[] frame = frame(PebbleProtocol.ENDPOINT_PING, (byte) 0);
+        writer = new PebbleFrameWriter(outputStream, true);
+        writer.start();
+        enqueue(frame);
+
+        byte[] expected = concat(new byte[]{(byte) 0xfe, (byte) 0xed, 0, 1, 0, (byte) frame.length}, frame, new byte[]{(byte) 0xbe, (byte) 0xef});
+        assertArrayEquals(expected, outputStream.nextWrite());
+    }
+
+    @Test
+    public void testAppMessageWaitsForAck() throws Exception {
+        byte[] push = appMessage(PebbleProtocol.APPLICATIONMESSAGE_PUSH);
+        byte[] normal = frame(PebbleProtocol.ENDPOINT_PHONEVERSION + 1, (byte) 4);
+        byte[] ack = appMessage(PebbleProtocol.APPLICATIONMESSAGE_ACK);
+        writer = new PebbleFrameWriter(outputStream, false);
+        enqueue(push);
+        enqueue(normal);
+        writer.start();
+
+        assertArrayEquals(push, outputStream.nextWrite());
+        assertNull(outputStream.pollWrite(200));
+
+        // control frames are not held back
+        enqueue(ack);
+        assertArrayEquals(ack, outputStream.nextWrite());
+
+        writer.onAppMessageAck();
+        assertArrayEquals(normal, outputStream.nextWrite());
+    }
+
+    @Test
+    public void testAppMessageAckTimeout() throws Exception {
+        byte[] push = appMessage(PebbleProtocol.APPLICATIONMESSAGE_PUSH);
+        byte[] normal = frame(PebbleProtocol.ENDPOINT_PHONEVERSION + 1, (byte) 4);
+        writer = new PebbleFrameWriter(outputStream, false);
+        enqueue(push);
+        enqueue(normal);
+        long start = System.currentTimeMillis();
+        writer.start();
+
+        assertArrayEquals(push, outputStream.nextWrite());
+        assertArrayEquals(normal, outputStream.nextWrite());
+        assertTrue(System.currentTimeMillis() - start >= 900);
+    }
+
+    @Test
+    public void testEnqueueAfterQuit() {
+        writer = new PebbleFrameWriter(outputStream, false);
+        writer.quit();
+        assertFalse(writer.enqueue(frame(PebbleProtocol.ENDPOINT_PING, (byte) 0), PebbleFrameWriter.PRIORITY_CONTROL, null));
+    }
+
+    private void enqueue(byte[] frame) {
+        assertTrue(writer.enqueue(frame, PebbleFrameWriter.getPriority(frame), null));
+    }
+
+    private static byte[] appMessage(byte command) {
+        return frame(PebbleProtocol.ENDPOINT_APPLICATIONMESSAGE, command, (byte) 1);
+    }
+
+    private static byte[] frame(int endpoint, byte... payload) {
+        byte[] frame = new byte[4 + payload.length];
+        frame[0] = (byte) (payload.length >> 8);
+        frame[1] = (byte) payload.length;
+        frame[2] = (byte) (endpoint >> 8);
+        frame[3] = (byte) endpoint;
+        System.arraycopy(payload, 0, frame, 4, payload.length);
+        return frame;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Records the bytes of every single write call.
+     */
+    private static class RecordingOutputStream extends OutputStream {
+        private final BlockingQueue<byte[]> writes = new LinkedBlockingQueue<>();
+
+        @Override
+        public void write(int b) {
+            writes.add(new byte[]{(byte) b});
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            writes.add(Arrays.copyOfRange(b, off, off + len));
+        }
+
+        byte[] nextWrite() throws InterruptedException {
+            byte[] write = pollWrite(WRITE_TIMEOUT_MILLIS);
+            assertNotNull("nothing written", write);
+            return write;
+        }
+
+        byte[] pollWrite(long timeoutMillis) throws InterruptedException {
+            return writes.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package nodomain.freeyourgadget.gadgetbridge.test;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nodomain.freeyourgadget.gadgetbridge.activities.charts.ActivityAnalysis;
+import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmount;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmounts;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityStatistics;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests ActivityStatistics
+ */
+public class ActivityStatisticsTest extends TestBase {
+
+    @Test
+    public void testStatistics() {
+        ActivityStatistics statistics = new ActivityStatistics();
+        for (ActivitySample sample : createDay(0)) {
+            statistics.add(sample);
+        }
+
+        // the minute between sleep and activity is shared
+        assertEquals(210, statistics.getSeconds(ActivityKind.TYPE_DEEP_SLEEP));
+        assertEquals(150, statistics.getSeconds(ActivityKind.TYPE_ACTIVITY));
+        assertEquals(300, statistics.getTotalSteps());
+        assertEquals(120, statistics.getMaxStepsPerMinute());
+        assertEquals(60, statistics.getSecondsAtStepsPerMinute(80));
+        assertEquals(60, statistics.getSecondsAtStepsPerMinute(120));
+        assertEquals(100f, statistics.getMeanStepsPerMinute(), 0.001f);
+        assertEquals(50, statistics.getMinHeartRate());
+        assertEquals(100, statistics.getMaxHeartRate());
+        assertEquals(66.667f, statistics.getMeanHeartRate(), 0.001f);
+        assertEquals(180, statistics.getSecondsAtHeartRate(50));
+        assertEquals(120, statistics.getSecondsAtHeartRate(100));
+    }
+
+    @Test
+    public void testMerge() {
+        ActivityAnalysis analysis = new ActivityAnalysis();
+        ActivityStatistics merged = new ActivityStatistics();
+        merged.merge(analysis.calculateStatistics(createDay(0)));
+        merged.merge(analysis.calculateStatistics(createDay(86400)));
+
+        assertEquals(300, merged.getSeconds(ActivityKind.TYPE_ACTIVITY));
+        assertEquals(600, merged.getTotalSteps());
+        assertEquals(120, merged.getSecondsAtStepsPerMinute(120));
+        assertEquals(50, merged.getMinHeartRate());
+
+        ActivityAmounts amounts = merged.getActivityAmounts();
+        assertEquals(2, amounts.getAmounts().size());
+        ActivityAmount activity = amounts.getAmounts().get(1);
+        assertEquals(ActivityKind.TYPE_ACTIVITY, activity.getActivityKind());
+        assertEquals(600, activity.getTotalSteps());
+        assertEquals(41, activity.getPercent());
+        assertEquals((86400 + 7 * 60) * 1000L, activity.getEndDate().getTime());
+    }
+
+    /**
+     * Three minutes of deep sleep, then three minutes of activity.
+     */
+    private List<ActivitySample> createDay(int start) {
+        List<ActivitySample> samples = new ArrayList<>();
+        samples.add(new TestSample(start + 60, ActivityKind.TYPE_DEEP_SLEEP, 0, 50));
+        samples.add(new TestSample(start + 2 * 60, ActivityKind.TYPE_DEEP_SLEEP, 0, 50));
+        samples.add(new TestSample(start + 3 * 60, ActivityKind.TYPE_DEEP_SLEEP, 0, 50));
+        samples.add(new TestSample(start + 4 * 60, ActivityKind.TYPE_DEEP_SLEEP, 0, 50));
+        samples.add(new TestSample(start + 5 * 60, ActivityKind.TYPE_ACTIVITY, 100, 100));
+        samples.add(new TestSample(start + 6 * 60, ActivityKind.TYPE_ACTIVITY, 80, 100));
+        samples.add(new TestSample(start + 7 * 60, ActivityKind.TYPE_ACTIVITY, 120, 0));
+        return samples;
+    }
+
+    private static class TestSample implements ActivitySample {
+        private final int timestamp;
+        private final int kind;
+        private final int steps;
+        private int heartRate;
+
+        TestSample(int timestamp, int kind, int steps, int heartRate) {
+            this.timestamp = timestamp;
+            this.kind = kind;
+            this.steps = steps;
+            this.heartRate = heartRate;
+        }
+
+        @Override
+        public SampleProvider getProvider() {
+            return null;
+        }
+
+        @Override
+        public int getRawKind() {
+            return kind;
+        }
+
+        @Override
+        public int getKind() {
+            return kind;
+        }
+
+        @Override
+        public int getRawIntensity() {
+            return 0;
+        }
+
+        @Override
+        public float getIntensity() {
+            return 0;
+        }
+
+        @Override
+        public int getSteps() {
+            return steps;
+        }
+
+        @Override
+        public int getHeartRate() {
+            return heartRate;
+        }
+
+        @Override
+        public void setHeartRate(int value) {
+            heartRate = value;
+        }
+
+        @Override
+        public int getTimestamp() {
+            return timestamp;
+        }
+    }
+}
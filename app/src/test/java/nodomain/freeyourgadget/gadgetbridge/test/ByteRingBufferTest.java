@@ -0,0 +1,99 @@
+package nodomain.freeyourgadget.gadgetbridge.test;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import nodomain.freeyourgadget.gadgetbridge.util.ByteRingBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests ByteRingBuffer
+ */
+public class ByteRingBufferTest extends TestBase {
+
+    @Test
+    public void testCapacity() {
+        assertEquals(16, new ByteRingBuffer(16).capacity());
+        assertEquals(32, new ByteRingBuffer(17).capacity());
+    }
+
+    @Test
+    public void testOfferPollWrapAround() {
+        ByteRingBuffer buffer = new ByteRingBuffer(8);
+        byte[] out = new byte[8];
+
+        assertEquals(6, buffer.offer(new byte[]{1, 2, 3, 4, 5, 6}, 0, 6));
+        assertEquals(4, buffer.poll(out, 0, 4));
+        // wraps around the end of the internal array
+        assertEquals(6, buffer.offer(new byte[]{7, 8, 9, 10, 11, 12, 13}, 0, 7));
+        assertEquals(0, buffer.free());
+
+        assertEquals(8, buffer.poll(out, 0, 8));
+        assertArrayEquals(new byte[]{5, 6, 7, 8, 9, 10, 11, 12}, out);
+        assertEquals(0, buffer.poll(out, 0, 8));
+    }
+
+    @Test
+    public void testClose() throws IOException {
+        ByteRingBuffer buffer = new ByteRingBuffer(8);
+        buffer.offer(new byte[]{1, 2}, 0, 2);
+        buffer.close();
+
+        InputStream in = buffer.getInputStream();
+        assertEquals(1, in.read());
+        assertEquals(2, in.read());
+        assertEquals(-1, in.read());
+
+        try {
+            buffer.getOutputStream().write(3);
+            fail("writing to a closed buffer should fail");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testStreams() throws Exception {
+        final ByteRingBuffer buffer = new ByteRingBuffer(64);
+        final byte[] data = new byte[100000];
+        new Random(42).nextBytes(data);
+
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    OutputStream out = buffer.getOutputStream();
+                    Random random = new Random(1);
+                    int offset = 0;
+                    while (offset < data.length) {
+                        int length = Math.min(data.length - offset, 1 + random.nextInt(200));
+                        out.write(data, offset, length);
+                        offset += length;
+                    }
+                    out.close();
+                } catch (IOException e) {
+                    buffer.close();
+                }
+            }
+        };
+        producer.start();
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        InputStream in = buffer.getInputStream();
+        byte[] chunk = new byte[37];
+        int count;
+        while ((count = in.read(chunk, 0, chunk.length)) >= 0) {
+            result.write(chunk, 0, count);
+        }
+        producer.join();
+        assertArrayEquals(data, result.toByteArray());
+    }
+}
@@ -0,0 +1,68 @@
+package nodomain.freeyourgadget.gadgetbridge.test;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import nodomain.freeyourgadget.gadgetbridge.service.btle.BtLEQueue;
+import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.HuamiChunkedWriter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests ChunkedWriter
+ */
+public class ChunkedWriterTest extends TestBase {
+
+    @Test
+    public void testDefaultMtu() {
+        HuamiChunkedWriter writer = new HuamiChunkedWriter(3);
+        assertEquals(17, writer.getMaxChunkLength(BtLEQueue.DEFAULT_MTU));
+
+        List<byte[]> chunks = writer.split(createData(40), BtLEQueue.DEFAULT_MTU);
+        assertEquals(3, chunks.size());
+        assertArrayEquals(new byte[]{0, 0x03, 0}, header(chunks.get(0)));
+        assertArrayEquals(new byte[]{0, 0x43, 1}, header(chunks.get(1)));
+        assertArrayEquals(new byte[]{0, (byte) 0x83, 2}, header(chunks.get(2)));
+        assertEquals(20, chunks.get(0).length);
+        assertEquals(9, chunks.get(2).length);
+        assertArrayEquals(createData(40), join(chunks));
+    }
+
+    @Test
+    public void testLargeMtu() {
+        HuamiChunkedWriter writer = new HuamiChunkedWriter(1);
+        List<byte[]> chunks = writer.split(createData(300), 247);
+        assertEquals(2, chunks.size());
+        assertEquals(244, chunks.get(0).length);
+        assertArrayEquals(createData(300), join(chunks));
+
+        chunks = writer.split(createData(100), 247);
+        assertEquals(1, chunks.size());
+        assertArrayEquals(new byte[]{0, (byte) 0xc1, 0}, header(chunks.get(0)));
+
+        assertEquals(0, writer.split(new byte[0], 247).size());
+    }
+
+    private byte[] createData(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    private byte[] header(byte[] chunk) {
+        return new byte[]{chunk[0], chunk[1], chunk[2]};
+    }
+
+    private byte[] join(List<byte[]> chunks) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] chunk : chunks) {
+            out.write(chunk, 3, chunk.length - 3);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,85 @@
+package nodomain.freeyourgadget.gadgetbridge.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nodomain.freeyourgadget.gadgetbridge.util.GBScheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests GBScheduler
+ */
+public class GBSchedulerTest extends TestBase {
+    private GBScheduler scheduler;
+
+    @Before
+    public void setUpScheduler() {
+        scheduler = GBScheduler.getInstance();
+        scheduler.resetStatistics();
+    }
+
+    @After
+    public void tearDownScheduler() {
+        scheduler.resetStatistics();
+    }
+
+    @Test
+    public void testSchedule() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        scheduler.schedule("test", new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        }, 10, TimeUnit.MILLISECONDS);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, scheduler.getLagHistogram().getCount());
+    }
+
+    @Test
+    public void testFixedRateSurvivesExceptions() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(3);
+        ScheduledFuture<?> future = scheduler.scheduleAtFixedRate("test", new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+                latch.countDown();
+                throw new IllegalStateException("expected");
+            }
+        }, 0, 5, TimeUnit.MILLISECONDS);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        future.cancel(false);
+        int count = runs.get();
+        Thread.sleep(50);
+        assertEquals(count, runs.get());
+        assertTrue(scheduler.getLagHistogram().getCount() >= 3);
+    }
+
+    @Test
+    public void testSerialExecutor() throws Exception {
+        ExecutorService executor = GBScheduler.newSerialExecutor("test");
+        final StringBuilder order = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            final int index = i;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    order.append(index);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals("0123456789", order.toString());
+    }
+}
@@ -50,6 +50,33 @@ public class HuamiActivityDetailsParserTest extends TestBase {
         }
     }
 
+    @Test
+    public void testIncrementalActivityDetails() throws Exception {
+        BipActivitySummary summary = createSummary();
+
+        HuamiActivityDetailsParser parser = new HuamiActivityDetailsParser(summary);
+        parser.setSkipCounterByte(true);
+        try (InputStream in = getContents(DETAILS_1)) {
+            byte[] bytes = FileUtils.readAll(in, MAX_DETAILS);
+            // feed the parser in chunks that do not align with the record boundaries
+            for (int offset = 0; offset < bytes.length; offset += 13) {
+                parser.consume(bytes, offset, Math.min(13, bytes.length - offset));
+            }
+            ActivityTrack track = parser.finish();
+
+            HuamiActivityDetailsParser referenceParser = new HuamiActivityDetailsParser(createSummary());
+            referenceParser.setSkipCounterByte(true);
+            List<ActivityPoint> referencePoints = referenceParser.parse(bytes).getTrackPoints();
+
+            List<ActivityPoint> trackPoints = track.getTrackPoints();
+            assertEquals(972, trackPoints.size());
+            for (int i = 0; i < trackPoints.size(); i++) {
+                assertEquals(referencePoints.get(i).getTime(), trackPoints.get(i).getTime());
+                assertEquals(referencePoints.get(i).getHeartRate(), trackPoints.get(i).getHeartRate());
+            }
+        }
+    }
+
     private BipActivitySummary createSummary() {
         BipActivitySummary summary = new BipActivitySummary();
         summary.setBaseLongitude(1);
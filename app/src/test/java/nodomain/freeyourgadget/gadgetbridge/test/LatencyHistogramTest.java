@@ -0,0 +1,52 @@
+package nodomain.freeyourgadget.gadgetbridge.test;
+
+import org.junit.Test;
+
+import nodomain.freeyourgadget.gadgetbridge.util.LatencyHistogram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests LatencyHistogram
+ */
+public class LatencyHistogramTest extends TestBase {
+
+    @Test
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(0.5));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertApproximately(500000, histogram.getPercentile(0.5));
+        assertApproximately(950000, histogram.getPercentile(0.95));
+        assertApproximately(990000, histogram.getPercentile(0.99));
+    }
+
+    @Test
+    public void testSmallAndHugeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(3);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(3, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(0));
+        assertEquals(3, histogram.getPercentile(0.5));
+        assertTrue(histogram.getPercentile(1) > 1000000000000L);
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+    }
+
+    private void assertApproximately(long expected, long actual) {
+        assertTrue("expected about " + expected + " but was " + actual, Math.abs(expected - actual) <= expected / 8);
+    }
+}
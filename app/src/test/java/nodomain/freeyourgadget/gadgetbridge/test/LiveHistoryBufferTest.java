@@ -0,0 +1,110 @@
+package nodomain.freeyourgadget.gadgetbridge.test;
+
+import com.github.mikephil.charting.data.Entry;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nodomain.freeyourgadget.gadgetbridge.activities.charts.LiveHistoryBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests LiveHistoryBuffer
+ */
+public class LiveHistoryBufferTest extends TestBase {
+
+    @Test
+    public void testRecentWrapAround() {
+        LiveHistoryBuffer buffer = new LiveHistoryBuffer(4, 4, 2);
+        for (int x = 0; x < 10; x++) {
+            buffer.add(x, x * 10);
+        }
+
+        assertEquals(4, buffer.size());
+        assertEntries(buffer, new float[][]{{6, 60}, {7, 70}, {8, 80}, {9, 90}});
+    }
+
+    @Test
+    public void testOlderValuesDownsampled() {
+        LiveHistoryBuffer buffer = new LiveHistoryBuffer(4, 12, 4);
+        float[] values = {5, 1, 9, 3, 7, 8, 2, 4, 0, 0, 0, 0};
+        for (int x = 0; x < values.length; x++) {
+            buffer.add(x, values[x]);
+        }
+
+        // min and max of each bucket in chronological order, then the recent values
+        assertEntries(buffer, new float[][]{{1, 1}, {2, 9}, {5, 8}, {6, 2}, {8, 0}, {9, 0}, {10, 0}, {11, 0}});
+    }
+
+    @Test
+    public void testIncompleteBucketNotShown() {
+        LiveHistoryBuffer buffer = new LiveHistoryBuffer(4, 12, 4);
+        for (int x = 0; x < 7; x++) {
+            buffer.add(x, x);
+        }
+
+        assertEntries(buffer, new float[][]{{3, 3}, {4, 4}, {5, 5}, {6, 6}});
+    }
+
+    @Test
+    public void testHistoryWindow() {
+        LiveHistoryBuffer buffer = new LiveHistoryBuffer(4, 12, 4);
+        float[] values = {5, 1, 9, 3, 7, 8, 2, 4};
+        for (int x = 0; x < values.length; x++) {
+            buffer.add(x, values[x]);
+        }
+        for (int x = values.length; x < 16; x++) {
+            buffer.add(x, x);
+        }
+
+        // the oldest bucket has moved out of the history window
+        assertEquals(8, buffer.size());
+        assertEntries(buffer, new float[][]{{5, 8}, {6, 2}, {8, 8}, {11, 11}, {12, 12}, {13, 13}, {14, 14}, {15, 15}});
+    }
+
+    @Test
+    public void testClear() {
+        LiveHistoryBuffer buffer = new LiveHistoryBuffer(4, 12, 4);
+        for (int x = 0; x < 12; x++) {
+            buffer.add(x, x);
+        }
+        buffer.clear();
+        assertEquals(0, buffer.size());
+
+        buffer.add(20, 1);
+        assertEntries(buffer, new float[][]{{20, 1}});
+    }
+
+    @Test
+    public void testEntriesReused() {
+        LiveHistoryBuffer buffer = new LiveHistoryBuffer(4, 4, 2);
+        buffer.add(0, 1);
+        List<Entry> entries = new ArrayList<>();
+        buffer.fillEntries(entries);
+        Entry first = entries.get(0);
+
+        buffer.add(1, 2);
+        buffer.fillEntries(entries);
+        assertEquals(2, entries.size());
+        assertSame(first, entries.get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBucketSize() {
+        new LiveHistoryBuffer(4, 12, 1);
+    }
+
+    private void assertEntries(LiveHistoryBuffer buffer, float[][] expected) {
+        List<Entry> entries = new ArrayList<>();
+        buffer.fillEntries(entries);
+        assertEquals(expected.length, entries.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("x of entry " + i, expected[i][0], entries.get(i).getX(), 0);
+            assertEquals("y of entry " + i, expected[i][1], entries.get(i).getY(), 0);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package nodomain.freeyourgadget.gadgetbridge.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.UUID;
+
+import nodomain.freeyourgadget.gadgetbridge.util.FileUtils;
+import nodomain.freeyourgadget.gadgetbridge.util.PacketCapture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests PacketCapture
+ */
+public class PacketCaptureTest extends TestBase {
+    private static final UUID CHARACTERISTIC = UUID.fromString("00000001-0000-3512-2118-0009af100700");
+
+    private File captureDir;
+
+    @Before
+    public void setUpCaptureDir() throws Exception {
+        captureDir = FileUtils.createTempDir("capture");
+    }
+
+    @After
+    public void deleteCaptureDir() {
+        FileUtils.deleteRecursively(captureDir);
+    }
+
+    @Test
+    public void testCaptureAndDump() throws Exception {
+        PacketCapture capture = new PacketCapture(captureDir);
+        capture.open();
+        capture.addGattPacket("AA:BB:CC:DD:EE:FF", CHARACTERISTIC, PacketCapture.DIRECTION_OUT, new byte[]{1, 2, 3});
+        capture.addEndpointPacket("11:22:33:44:55:66", 2000, PacketCapture.DIRECTION_IN, new byte[]{9, 9, 4, 5, 6}, 2, 3);
+        capture.addGattPacket("AA:BB:CC:DD:EE:FF", CHARACTERISTIC, PacketCapture.DIRECTION_IN, new byte[]{(byte) 0xff});
+        capture.close();
+
+        String[] lines = dump(new File(captureDir, PacketCapture.FILE_NAME));
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].endsWith(" > AA:BB:CC:DD:EE:FF " + CHARACTERISTIC + ": 010203"));
+        assertTrue(lines[1].endsWith(" < 11:22:33:44:55:66 endpoint 2000: 040506"));
+        assertTrue(lines[2].endsWith(" < AA:BB:CC:DD:EE:FF " + CHARACTERISTIC + ": FF"));
+    }
+
+    @Test
+    public void testPreviousCaptureIsKept() throws Exception {
+        PacketCapture capture = new PacketCapture(captureDir);
+        capture.open();
+        capture.addGattPacket("AA:BB:CC:DD:EE:FF", CHARACTERISTIC, PacketCapture.DIRECTION_OUT, new byte[]{1});
+        capture.close();
+
+        capture = new PacketCapture(captureDir);
+        capture.open();
+        capture.addGattPacket("AA:BB:CC:DD:EE:FF", CHARACTERISTIC, PacketCapture.DIRECTION_OUT, new byte[]{2});
+        capture.close();
+
+        assertTrue(dump(new File(captureDir, PacketCapture.PREVIOUS_FILE_NAME))[0].endsWith(": 01"));
+        assertTrue(dump(new File(captureDir, PacketCapture.FILE_NAME))[0].endsWith(": 02"));
+        assertEquals(2, FileUtils.getStringFromFile(PacketCapture.exportText(captureDir)).trim().split("\n").length);
+    }
+
+    @Test
+    public void testDropWhenFull() throws Exception {
+        // not opened, so nothing is written and the buffer fills up
+        PacketCapture capture = new PacketCapture(captureDir);
+        byte[] data = new byte[4096];
+        for (int i = 0; i < 100; i++) {
+            capture.addGattPacket("AA:BB:CC:DD:EE:FF", CHARACTERISTIC, PacketCapture.DIRECTION_OUT, data);
+        }
+        assertTrue(capture.getDroppedPackets() > 0);
+        capture.close();
+        assertFalse(new File(captureDir, PacketCapture.FILE_NAME).exists());
+    }
+
+    private String[] dump(File file) throws Exception {
+        StringWriter out = new StringWriter();
+        try (InputStream in = new FileInputStream(file)) {
+            PacketCapture.dump(in, out);
+        }
+        return out.toString().split("\n");
+    }
+}
@@ -0,0 +1,74 @@
+package nodomain.freeyourgadget.gadgetbridge.test;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import nodomain.freeyourgadget.gadgetbridge.service.btle.PacketReassembler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests PacketReassembler
+ */
+public class PacketReassemblerTest extends TestBase {
+
+    @Test
+    public void testRecordsSpanningPackets() throws Exception {
+        final ByteArrayOutputStream records = new ByteArrayOutputStream();
+        PacketReassembler reassembler = new PacketReassembler(1, 0, 3, new PacketReassembler.RecordHandler() {
+            @Override
+            public void onRecord(PacketReassembler.Cursor record) {
+                assertEquals(3, record.getLength());
+                records.write(record.getUint8(0) + record.getUint8(1) + record.getUint8(2));
+            }
+        });
+        reassembler.reset(0);
+
+        assertTrue(reassembler.consume(new byte[]{0, 1, 1, 1, 2, 2}));
+        assertEquals(2, reassembler.getPendingLength());
+        assertTrue(reassembler.consume(new byte[]{1, 2, 3, 3, 3}));
+        assertEquals(0, reassembler.getPendingLength());
+        assertEquals(2, reassembler.getPacketCount());
+        assertEquals(9, reassembler.getPayloadLength());
+
+        byte[] sums = records.toByteArray();
+        assertEquals(3, sums.length);
+        assertEquals(3, sums[0]);
+        assertEquals(6, sums[1]);
+        assertEquals(9, sums[2]);
+        reassembler.release();
+    }
+
+    @Test
+    public void testCounterGap() throws Exception {
+        PacketReassembler reassembler = new PacketReassembler(1, 0, PacketReassembler.UNFRAMED, null);
+        reassembler.reset(255);
+
+        assertTrue(reassembler.consume(new byte[]{(byte) 255, 1}));
+        assertTrue(reassembler.consume(new byte[]{0, 2}));
+        assertFalse(reassembler.consume(new byte[]{2, 3}));
+        assertFalse(reassembler.consume(new byte[0]));
+        assertEquals(0, reassembler.getLastCounter());
+        assertEquals(1, reassembler.getExpectedCounter());
+    }
+
+    @Test
+    public void testBufferedData() throws Exception {
+        PacketReassembler reassembler = new PacketReassembler(1, 0, PacketReassembler.UNFRAMED, null);
+        reassembler.reset(0);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(reassembler.consume(new byte[]{(byte) i, 0x34, 0x12, 0, 0}));
+        }
+
+        ByteBuffer data = reassembler.getBufferedData();
+        assertEquals(400, data.remaining());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0x1234, data.getInt());
+        }
+        reassembler.release();
+    }
+}
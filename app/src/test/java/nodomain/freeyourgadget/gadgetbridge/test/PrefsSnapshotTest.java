@@ -0,0 +1,94 @@
+package nodomain.freeyourgadget.gadgetbridge.test;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.junit.Test;
+
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.devices.miband.MiBandConst;
+import nodomain.freeyourgadget.gadgetbridge.util.GBPrefs;
+import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
+import nodomain.freeyourgadget.gadgetbridge.util.PrefsSnapshot;
+import nodomain.freeyourgadget.gadgetbridge.util.PrefsSnapshotCache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests PrefsSnapshot and PrefsSnapshotCache
+ */
+public class PrefsSnapshotTest extends TestBase {
+    private static final String DEVICE_ADDRESS = "00:11:22:33:44:55";
+
+    private SharedPreferences preferences;
+    private PrefsSnapshotCache cache;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        preferences = app.getSharedPreferences("prefs_snapshot_test", Context.MODE_PRIVATE);
+        preferences.edit().clear().commit();
+        GBApplication.getDeviceSpecificSharedPrefs(DEVICE_ADDRESS).edit().clear().commit();
+        cache = new PrefsSnapshotCache(new Prefs(preferences));
+    }
+
+    @Test
+    public void testDefaults() {
+        PrefsSnapshot snapshot = cache.getSnapshot();
+        assertFalse(snapshot.notificationSupportVoipCalls);
+        assertEquals(0, snapshot.notificationsTimeoutMillis);
+        assertEquals(PrefsSnapshot.NOTIFICATION_MODE_WHEN_SCREEN_OFF, snapshot.notificationModeSms);
+        assertEquals(PrefsSnapshot.NOTIFICATION_MODE_ALWAYS, snapshot.notificationModeCalls);
+        assertEquals(0, snapshot.cannedReplies.length);
+        assertFalse(snapshot.rtlSupport);
+        assertEquals(18, snapshot.rtlMaxLineLength);
+        assertTrue(cache.getDeviceSnapshot(DEVICE_ADDRESS).textNotifications);
+    }
+
+    @Test
+    public void testTypedValues() {
+        preferences.edit()
+                // stored as strings by ListPreferences
+                .putString("notifications_timeout", "5")
+                .putString("rtl_max_line_length", "20")
+                .putString("notification_mode_sms", PrefsSnapshot.NOTIFICATION_MODE_NEVER)
+                .putString("canned_reply_1", "yes")
+                .putString("canned_reply_2", "")
+                .putString("canned_reply_3", "no")
+                .putBoolean(GBPrefs.RTL_SUPPORT, true)
+                .commit();
+
+        PrefsSnapshot snapshot = cache.getSnapshot();
+        assertEquals(5000, snapshot.notificationsTimeoutMillis);
+        assertEquals(20, snapshot.rtlMaxLineLength);
+        assertEquals(PrefsSnapshot.NOTIFICATION_MODE_NEVER, snapshot.notificationModeSms);
+        assertArrayEquals(new String[]{"yes", "no"}, snapshot.cannedReplies);
+        assertTrue(snapshot.rtlSupport);
+    }
+
+    @Test
+    public void testSnapshotReplacedOnChange() {
+        PrefsSnapshot before = cache.getSnapshot();
+        preferences.edit().putBoolean("transliteration", true).commit();
+
+        PrefsSnapshot after = cache.getSnapshot();
+        assertNotSame(before, after);
+        assertTrue(after.transliteration);
+        // earlier snapshots are not modified
+        assertFalse(before.transliteration);
+    }
+
+    @Test
+    public void testDeviceSnapshotReplacedOnChange() {
+        assertTrue(cache.getDeviceSnapshot(DEVICE_ADDRESS).textNotifications);
+        GBApplication.getDeviceSpecificSharedPrefs(DEVICE_ADDRESS).edit()
+                .putBoolean(MiBandConst.PREF_MI2_ENABLE_TEXT_NOTIFICATIONS, false)
+                .commit();
+
+        assertFalse(cache.getDeviceSnapshot(DEVICE_ADDRESS).textNotifications);
+    }
+}
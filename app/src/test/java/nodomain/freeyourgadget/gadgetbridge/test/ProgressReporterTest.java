@@ -0,0 +1,129 @@
+package nodomain.freeyourgadget.gadgetbridge.test;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nodomain.freeyourgadget.gadgetbridge.util.ProgressReporter;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the throttling of ProgressReporter
+ */
+public class ProgressReporterTest {
+    private static final long START = 1000000;
+
+    private TestProgressReporter reporter;
+
+    @Before
+    public void setUp() {
+        reporter = new TestProgressReporter();
+        reporter.now = START;
+        reporter.setTotal(100);
+    }
+
+    @Test
+    public void testPublishOnlyChangedPercentage() {
+        reporter.tick(1);
+        reporter.now += 300;
+        reporter.tick(0);
+        assertEquals(1, reporter.updates.size());
+        assertEquals("1 ongoing", reporter.updates.get(0));
+    }
+
+    @Test
+    public void testThrottled() {
+        reporter.tick(1);
+        reporter.now += 100;
+        reporter.tick(1);
+        reporter.now += 100;
+        reporter.tick(1);
+        assertEquals(1, reporter.updates.size());
+
+        reporter.now += ProgressReporter.MIN_UPDATE_INTERVAL_MILLIS;
+        reporter.tick(1);
+        assertEquals(2, reporter.updates.size());
+        assertEquals("4 ongoing", reporter.updates.get(1));
+    }
+
+    @Test
+    public void testFinishPublishesThrottledUpdate() {
+        reporter.tick(1);
+        reporter.tick(50);
+        reporter.finish("done");
+
+        assertEquals(3, reporter.updates.size());
+        assertEquals("51 ongoing", reporter.updates.get(1));
+        assertEquals("100 finished", reporter.updates.get(2));
+    }
+
+    @Test
+    public void testFinishWithoutPendingUpdate() {
+        reporter.tick(1);
+        reporter.finish("done");
+
+        assertEquals(2, reporter.updates.size());
+        assertEquals("100 finished", reporter.updates.get(1));
+    }
+
+    @Test
+    public void testTextChange() {
+        reporter.tick(1);
+        reporter.setText("next");
+        reporter.tick(0);
+        assertEquals(1, reporter.updates.size());
+
+        reporter.now += ProgressReporter.MIN_UPDATE_INTERVAL_MILLIS;
+        reporter.tick(0);
+        assertEquals(2, reporter.updates.size());
+        assertEquals("next", reporter.texts.get(1));
+    }
+
+    @Test
+    public void testStartPhase() {
+        reporter.tick(10);
+        reporter.now += ProgressReporter.MIN_UPDATE_INTERVAL_MILLIS;
+        reporter.startPhase();
+        reporter.tick(10);
+
+        // same percentage, but a new phase
+        assertEquals(2, reporter.updates.size());
+        assertEquals("10 ongoing", reporter.updates.get(1));
+    }
+
+    @Test
+    public void testRemainingTime() {
+        reporter.setTotal(1000);
+        reporter.now += 1000;
+        reporter.tick(250);
+        assertEquals(-1, reporter.getRemainingMillis());
+
+        reporter.now += 1000;
+        assertEquals(125, reporter.getThroughput());
+        assertEquals(6000, reporter.getRemainingMillis());
+    }
+
+    private static class TestProgressReporter extends ProgressReporter {
+        private final List<String> updates = new ArrayList<>();
+        private final List<String> texts = new ArrayList<>();
+        private long now;
+
+        TestProgressReporter() {
+            super(null, Type.TRANSFER, "title", "text");
+        }
+
+        @Override
+        protected void updateNotification(String text, boolean ongoing, int percentage) {
+            updates.add(percentage + (ongoing ? " ongoing" : " finished"));
+            texts.add(text);
+        }
+
+        @Override
+        protected long currentTimeMillis() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package nodomain.freeyourgadget.gadgetbridge.test;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
+import nodomain.freeyourgadget.gadgetbridge.model.SleepSession;
+import nodomain.freeyourgadget.gadgetbridge.model.SleepSessionDetector;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests SleepSessionDetector
+ */
+public class SleepSessionDetectorTest extends TestBase {
+    private static final int MINUTE = 60;
+
+    private int timestamp;
+
+    @Test
+    public void testSessions() {
+        SleepSessionDetector detector = new SleepSessionDetector();
+        consume(detector, ActivityKind.TYPE_LIGHT_SLEEP, 21);
+        consume(detector, ActivityKind.TYPE_DEEP_SLEEP, 10);
+        // not more than two hours awake, so the session continues
+        consume(detector, ActivityKind.TYPE_ACTIVITY, 60);
+        consume(detector, ActivityKind.TYPE_LIGHT_SLEEP, 5);
+        // more than two hours awake closes the first session
+        consume(detector, ActivityKind.TYPE_ACTIVITY, 150);
+        assertEquals(1, detector.getSessions().size());
+
+        // too short to be a session of its own
+        consume(detector, ActivityKind.TYPE_DEEP_SLEEP, 3);
+        consume(detector, ActivityKind.TYPE_ACTIVITY, 150);
+        assertEquals(1, detector.getSessions().size());
+
+        consume(detector, ActivityKind.TYPE_DEEP_SLEEP, 10);
+        List<SleepSession> sessions = detector.finish();
+        assertEquals(2, sessions.size());
+
+        SleepSession first = sessions.get(0);
+        assertEquals(0, first.getSleepStartTimestamp());
+        assertEquals((21 + 10 + 60 + 5 - 1) * MINUTE, first.getSleepEndTimestamp());
+        assertEquals(25 * MINUTE, first.getLightSleepDuration());
+        assertEquals(10 * MINUTE, first.getDeepSleepDuration());
+
+        SleepSession second = sessions.get(1);
+        assertEquals(0, second.getLightSleepDuration());
+        assertEquals(10 * MINUTE, second.getDeepSleepDuration());
+        assertEquals(timestamp - MINUTE, second.getSleepEndTimestamp());
+
+        assertEquals(25 * MINUTE, detector.getTotalLightSleepDuration());
+        assertEquals(20 * MINUTE, detector.getTotalDeepSleepDuration());
+    }
+
+    @Test
+    public void testNoSleep() {
+        SleepSessionDetector detector = new SleepSessionDetector();
+        consume(detector, ActivityKind.TYPE_ACTIVITY, 300);
+        assertEquals(0, detector.finish().size());
+        assertEquals(0, detector.getTotalLightSleepDuration());
+        assertEquals(0, detector.getTotalDeepSleepDuration());
+    }
+
+    /**
+     * Consumes one sample of the given kind per minute.
+     */
+    private void consume(SleepSessionDetector detector, int kind, int minutes) {
+        for (int i = 0; i < minutes; i++) {
+            detector.consume(timestamp, kind);
+            timestamp += MINUTE;
+        }
+    }
+}